@@ -0,0 +1,370 @@
+package searchEngine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <code>Benchmark</code> class times the hot paths of the search engine on
+ * synthetic graphs made by <code>GraphGenerator</code>: loading a graph from
+ * its files, looking up pages, searching, adding links and ranking every page.
+ * Each operation is run at every graph size and thread count given, for at
+ * least WARMUP_NANOS to warm up and then ROUNDS more times. The fastest round
+ * is reported, since other work on the machine can only slow a round down,
+ * along with the median bytes allocated per operation.
+ *
+ * Given a baseline file, the results are compared with the ones in it, and the
+ * run fails with exit status 1 if any operation has become more than
+ * REGRESSION_TOLERANCE slower. A baseline file that does not exist yet is
+ * written instead.
+ *
+ * Usage: <code>java searchEngine.Benchmark [sizes] [threads] [baseline
+ * file]</code>, where sizes and threads are lists such as
+ * <code>10000,100000</code>
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+public class Benchmark {
+	/**
+	 * How much slower than its baseline an operation may become before the run
+	 * fails.
+	 */
+	public static final double REGRESSION_TOLERANCE = 0.25;
+	/**
+	 * The number of measured rounds of each operation.
+	 */
+	public static final int ROUNDS = 5;
+	/**
+	 * The least time spent warming up each operation before it is measured, in
+	 * nanoseconds.
+	 */
+	public static final long WARMUP_NANOS = 1_000_000_000;
+	private static final int LOOKUPS = 200_000;
+	// Searches for common keywords return a good part of the graph, so fewer
+	// searches are run on larger graphs.
+	private static final long SEARCHED_PAGES = 20_000_000;
+	private static final int LINKS = 2_000;
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+	// Searches print their results, so the table is printed to the real output.
+	private static final PrintStream OUT = System.out;
+
+	/**
+	 * Run the benchmarks.
+	 */
+	public static void main(String[] args) throws Exception {
+		int[] sizes = parseList(args.length > 0 ? args[0] : "10000,100000");
+		int[] threadCounts = parseList(
+				args.length > 1 ? args[1] : "1," + Runtime.getRuntime().availableProcessors());
+		Path baseline = args.length > 2 ? Paths.get(args[2]) : null;
+		THREADS.setThreadAllocatedMemoryEnabled(true);
+		Map<String, double[]> results = new LinkedHashMap<String, double[]>();
+		OUT.println("Cores: " + Runtime.getRuntime().availableProcessors() + ", max heap: "
+				+ Runtime.getRuntime().maxMemory() / (1 << 20) + " MB, rounds: " + ROUNDS);
+		OUT.println(String.format("%-19s | %-9s | %-7s | %-12s | %-12s | %-10s", "Benchmark", "Pages",
+				"Threads", "Ops/s", "us/op", "B/op"));
+		OUT.println("=====================================================================================");
+		Path directory = Files.createTempDirectory("benchmark");
+		try {
+			for (int size : sizes) {
+				GraphGenerator generator = new GraphGenerator(size);
+				Path pagesFile = directory.resolve("pages" + size + ".txt");
+				Path linksFile = directory.resolve("links" + size + ".txt");
+				generator.write(pagesFile, linksFile);
+				for (int threads : threadCounts) {
+					run(results, generator, pagesFile, linksFile, threads);
+				}
+				Files.delete(pagesFile);
+				Files.delete(linksFile);
+			}
+		} finally {
+			Files.delete(directory);
+		}
+		if (baseline != null && Files.exists(baseline)) {
+			if (compare(results, baseline) > 0) {
+				System.exit(1);
+			}
+		} else if (baseline != null) {
+			write(results, baseline);
+			OUT.println("\nBaseline written to " + baseline + ".");
+		}
+	}
+
+	/**
+	 * Runs every benchmark on one graph with one thread count.
+	 */
+	private static void run(Map<String, double[]> results, GraphGenerator generator, Path pagesFile, Path linksFile,
+			int threads) throws Exception {
+		int pages = generator.getPages();
+		measure(results, "buildFromFiles", pages, threads, 1, (thread, from, to) -> {
+			GraphLoader loader = new GraphLoader();
+			loader.setParallelism(threads);
+			loader.load(pagesFile, linksFile);
+		});
+
+		WebGraph graph = WebGraph.buildFromFiles(pagesFile.toString(), linksFile.toString());
+		Random random = new Random(pages);
+		String[] urls = new String[LOOKUPS];
+		for (int i = 0; i < urls.length; i++) {
+			urls[i] = generator.url(random.nextInt(pages));
+		}
+		measure(results, "getIndex", pages, threads, LOOKUPS, (thread, from, to) -> {
+			for (int i = from; i < to; i++) {
+				graph.getIndex(urls[i]);
+			}
+		});
+
+		// Every search is run through the scoring path rather than the cache.
+		graph.setCacheCapacity(0);
+		String[] queries = new String[(int) Math.max(10, SEARCHED_PAGES / pages)];
+		for (int i = 0; i < queries.length; i++) {
+			String keyword = generator.keyword(generator.nextKeyword(random));
+			queries[i] = i % 2 == 0 ? keyword
+					: keyword + " AND " + generator.keyword(generator.nextKeyword(random));
+		}
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			measure(results, "printSearchResults", pages, threads, queries.length, (thread, from, to) -> {
+				for (int i = from; i < to; i++) {
+					graph.printSearchResults(queries[i]);
+				}
+			});
+		} finally {
+			System.setOut(OUT);
+		}
+
+		measure(results, "addLink", pages, threads, LINKS, (thread, from, to) -> {
+			Random links = new Random(random.nextLong() + thread);
+			for (int i = from; i < to; i++) {
+				try {
+					graph.addLink(generator.url(links.nextInt(pages)), generator.url(generator.nextDestination(links)));
+				} catch (IllegalArgumentException e) {
+					// The link exists already, or is a page linking to itself.
+				}
+			}
+		});
+
+		measure(results, "updatePageRanks", pages, threads, 1, (thread, from, to) -> {
+			graph.getRanker().setParallelism(threads);
+			try {
+				graph.updatePageRanks();
+			} finally {
+				graph.getRanker().setParallelism(1);
+			}
+		});
+		graph.close();
+	}
+
+	/**
+	 * <code>Task</code> interface is a benchmarked operation, which each thread
+	 * runs on its own share of the operations of a round.
+	 */
+	private interface Task {
+		/**
+		 * @param thread The number of the thread, from 0
+		 * @param from   The first operation of the thread's share
+		 * @param to     One past the last operation of the thread's share
+		 */
+		void run(int thread, int from, int to) throws Exception;
+	}
+
+	/**
+	 * Times a task and prints and records its fastest round. A task with a single
+	 * operation is run on one thread, which it may split up itself.
+	 */
+	private static void measure(Map<String, double[]> results, String name, int pages, int threads,
+			int operations, Task task) throws Exception {
+		double[] nanos = new double[ROUNDS];
+		double[] bytes = new double[ROUNDS];
+		long warmup = System.nanoTime();
+		do {
+			runRound(operations == 1 ? 1 : threads, operations, task);
+		} while (System.nanoTime() - warmup < WARMUP_NANOS);
+		for (int round = 0; round < ROUNDS; round++) {
+			Map<Long, Long> allocated = allocations();
+			long start = System.nanoTime();
+			long workerBytes = runRound(operations == 1 ? 1 : threads, operations, task);
+			long elapsed = System.nanoTime() - start;
+			nanos[round] = (double) elapsed / operations;
+			bytes[round] = (double) (allocatedSince(allocated) + workerBytes) / operations;
+		}
+		Arrays.sort(nanos);
+		Arrays.sort(bytes);
+		double nanosPerOperation = nanos[0];
+		double bytesPerOperation = bytes[ROUNDS / 2];
+		results.put(name + " " + pages + " " + threads, new double[] { nanosPerOperation, bytesPerOperation });
+		OUT.println(String.format("%-19s | %-9d | %-7d | %-12.1f | %-12.2f | %-10.0f", name, pages, threads,
+				1e9 / nanosPerOperation, nanosPerOperation / 1e3, bytesPerOperation));
+	}
+
+	/**
+	 * Runs one round of a task, splitting its operations evenly between the
+	 * threads.
+	 *
+	 * @return The bytes allocated by the threads started for the round, which
+	 *         have ended by the time it returns
+	 */
+	private static long runRound(int threads, int operations, Task task) throws Exception {
+		if (threads == 1) {
+			task.run(0, 0, operations);
+			return 0;
+		}
+		List<Thread> workers = new ArrayList<Thread>();
+		Exception[] failure = new Exception[1];
+		AtomicLong allocated = new AtomicLong();
+		for (int t = 0; t < threads; t++) {
+			int thread = t;
+			int from = (int) ((long) operations * t / threads);
+			int to = (int) ((long) operations * (t + 1) / threads);
+			Thread worker = new Thread(() -> {
+				long id = Thread.currentThread().getId();
+				long before = THREADS.getThreadAllocatedBytes(id);
+				try {
+					task.run(thread, from, to);
+				} catch (Exception e) {
+					synchronized (failure) {
+						failure[0] = e;
+					}
+				}
+				allocated.addAndGet(THREADS.getThreadAllocatedBytes(id) - before);
+			});
+			workers.add(worker);
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		return allocated.get();
+	}
+
+	/**
+	 * @return The bytes each live thread has allocated so far, by thread id
+	 */
+	private static Map<Long, Long> allocations() {
+		long[] ids = THREADS.getAllThreadIds();
+		long[] allocated = THREADS.getThreadAllocatedBytes(ids);
+		Map<Long, Long> allocations = new HashMap<Long, Long>();
+		for (int i = 0; i < ids.length; i++) {
+			allocations.put(ids[i], allocated[i]);
+		}
+		return allocations;
+	}
+
+	/**
+	 * @return The bytes allocated since an earlier call to allocations by the
+	 *         threads alive now. Threads that have ended in between, such as
+	 *         those of a pool a task made for itself, are not counted.
+	 */
+	private static long allocatedSince(Map<Long, Long> before) {
+		long total = 0;
+		for (Map.Entry<Long, Long> entry : allocations().entrySet()) {
+			if (entry.getValue() > 0) {
+				total += entry.getValue() - before.getOrDefault(entry.getKey(), 0L);
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Compares results with a baseline file and prints every change.
+	 *
+	 * @return The number of operations that became more than
+	 *         REGRESSION_TOLERANCE slower
+	 */
+	private static int compare(Map<String, double[]> results, Path baseline) throws IOException {
+		Map<String, double[]> previous = read(baseline);
+		int regressions = 0;
+		OUT.println("\nAgainst " + baseline + ":");
+		for (Map.Entry<String, double[]> entry : results.entrySet()) {
+			double[] before = previous.get(entry.getKey());
+			if (before == null) {
+				continue;
+			}
+			double change = entry.getValue()[0] / before[0] - 1;
+			boolean regressed = change > REGRESSION_TOLERANCE;
+			if (regressed) {
+				regressions += 1;
+			}
+			OUT.println(String.format("%-40s %+7.1f%% time %+7.1f%% bytes%s", entry.getKey(), 100 * change,
+					before[1] == 0 ? 0 : 100 * (entry.getValue()[1] / before[1] - 1), regressed ? "  REGRESSION" : ""));
+		}
+		OUT.println(regressions == 0 ? "No regressions." : regressions + " regressions.");
+		return regressions;
+	}
+
+	/**
+	 * Writes results as lines of name, pages, threads, nanoseconds per operation
+	 * and bytes per operation.
+	 */
+	private static void write(Map<String, double[]> results, Path file) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		for (Map.Entry<String, double[]> entry : results.entrySet()) {
+			lines.add(entry.getKey() + " " + entry.getValue()[0] + " " + entry.getValue()[1]);
+		}
+		Files.write(file, lines, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads results written by write.
+	 *
+	 * @throws IllegalArgumentException If a line is not formatted correctly
+	 */
+	private static Map<String, double[]> read(Path file) throws IOException, IllegalArgumentException {
+		Map<String, double[]> results = new HashMap<String, double[]>();
+		int lineNumber = 0;
+		for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+			lineNumber += 1;
+			String[] fields = line.trim().split("\\s+");
+			if (fields.length == 1 && fields[0].isEmpty()) {
+				continue;
+			}
+			if (fields.length != 5) {
+				throw new IllegalArgumentException(file.getFileName() + ":" + lineNumber + ": Expected 5 fields.");
+			}
+			try {
+				results.put(fields[0] + " " + fields[1] + " " + fields[2],
+						new double[] { Double.parseDouble(fields[3]), Double.parseDouble(fields[4]) });
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(file.getFileName() + ":" + lineNumber + ": " + e.getMessage());
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * @return The positive numbers in a comma-separated list
+	 * @throws IllegalArgumentException If an entry is not a positive number
+	 */
+	private static int[] parseList(String list) throws IllegalArgumentException {
+		String[] entries = list.split(",");
+		int[] values = new int[entries.length];
+		for (int i = 0; i < entries.length; i++) {
+			try {
+				values[i] = Integer.parseInt(entries[i].trim());
+			} catch (NumberFormatException e) {
+				values[i] = 0;
+			}
+			if (values[i] < 1) {
+				throw new IllegalArgumentException("Expected a positive number, not " + entries[i] + ".");
+			}
+		}
+		return values;
+	}
+}
@@ -0,0 +1,112 @@
+package searchEngine;
+
+/**
+ * <code>Bm25</code> class scores how relevant a keyword is to a page with the
+ * Okapi BM25 formula, from how often the keyword occurs on the page, how many
+ * keywords the page has, and how many pages have the keyword.
+ *
+ * An instance holds the collection statistics the formula needs: the number
+ * of pages and their average number of keywords, each rounded down to a
+ * power of 1 + 1 / 64. The index replaces it only when one of those moves to
+ * another power, so the per-page relevance of each keyword, quantized to a
+ * byte, can be computed once and reused across many mutations and queries.
+ * Since the rounded statistics depend only on the current collection, two
+ * graphs with the same pages score them the same, whatever their history.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+final class Bm25 {
+	// How quickly repeated occurrences stop adding relevance.
+	static final double K1 = 1.2;
+	// How much long pages are penalized, from 0 for not at all to 1 for fully.
+	static final double B = 0.75;
+	// Statistics are rounded down to a power of this base.
+	private static final double BASE = 1 + 1.0 / 64;
+	private static final int LEVELS = 255;
+
+	private final int documentLevel;
+	private final int lengthLevel;
+	private final double documents;
+	private final double averageLength;
+
+	/**
+	 * Returns an instance of Bm25 for a collection.
+	 *
+	 * @param documents   The number of pages
+	 * @param totalLength The number of keywords on all pages together
+	 */
+	Bm25(int documents, long totalLength) {
+		this.documentLevel = level(documents);
+		this.lengthLevel = level(average(documents, totalLength));
+		this.documents = Math.pow(BASE, documentLevel);
+		this.averageLength = Math.pow(BASE, lengthLevel);
+	}
+
+	/**
+	 * @return true if a collection's statistics round differently from these
+	 */
+	boolean isStale(int documents, long totalLength) {
+		return level(documents) != documentLevel || level(average(documents, totalLength)) != lengthLevel;
+	}
+
+	private static double average(int documents, long totalLength) {
+		return documents == 0 ? 0 : (double) totalLength / documents;
+	}
+
+	/**
+	 * @return The power of the base a statistic rounds down to, where anything
+	 *         below 1 counts as 1
+	 */
+	private static int level(double value) {
+		return value <= 1 ? 0 : (int) Math.floor(Math.log(value) / Math.log(BASE));
+	}
+
+	/**
+	 * @param pages The number of pages with a keyword
+	 * @return The inverse document frequency of the keyword, which is larger
+	 *         for rarer keywords and never negative
+	 */
+	double idf(int pages) {
+		return Math.log(1 + (Math.max(documents, pages) - pages + 0.5) / (pages + 0.5));
+	}
+
+	/**
+	 * Computes the relevance of a keyword to every page in its posting list.
+	 *
+	 * @param postings The posting list of the keyword
+	 * @param lengths  The number of keywords on each page, by id
+	 * @return The relevance of the keyword to each page in the list
+	 */
+	Impacts impacts(PostingList postings, int[] lengths) {
+		byte[] levels = new byte[postings.size()];
+		for (int i = 0; i < levels.length; i++) {
+			double frequency = postings.frequency(i);
+			double norm = K1 * (1 - B + B * lengths[postings.get(i)] / averageLength);
+			// Saturates below 1 as the frequency grows.
+			double saturation = frequency / (frequency + norm);
+			levels[i] = (byte) Math.round(saturation * LEVELS);
+		}
+		return new Impacts(this, idf(postings.size()) * (K1 + 1) / LEVELS, levels);
+	}
+
+	/**
+	 * <code>Impacts</code> class holds the relevance of one keyword to each page
+	 * with it, as one unsigned byte per page and one scale for the keyword, so
+	 * that the score of a position i is <code>scale * (levels[i] &amp;
+	 * 0xFF)</code>. Its fields are final, so readers that race with the search
+	 * storing it still see it whole.
+	 */
+	static final class Impacts {
+		// The statistics the impacts were computed from.
+		final Bm25 model;
+		final double scale;
+		final byte[] levels;
+
+		private Impacts(Bm25 model, double scale, byte[] levels) {
+			this.model = model;
+			this.scale = scale;
+			this.levels = levels;
+		}
+	}
+}
@@ -0,0 +1,525 @@
+package searchEngine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * <code>ConcurrentWebGraph</code> class lets many threads query a
+ * <code>WebGraph</code> while another one changes it, without readers ever
+ * taking a lock or waiting for a writer.
+ *
+ * It keeps two identical copies of the graph (the left-right technique).
+ * Readers always use the active copy. A writer applies a mutation to the
+ * spare copy, publishes it as the active one, waits for the readers still on
+ * the old copy to leave, and then applies the same mutation to the old copy.
+ * A reader therefore sees one consistent version of the graph for as long as
+ * it holds it, and only writers wait. Writers are serialized, and each
+ * mutation is applied twice, so the price is double the memory and write
+ * cost.
+ *
+ * Readers announce themselves on one of two pairs of striped counters, so
+ * they do not contend on a shared lock word.
+ *
+ * The copies are compacted the same way as mutations are applied, one after
+ * the other, once removed pages leave enough indices unused. Both copies are
+ * renumbered alike, so they stay identical.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+public class ConcurrentWebGraph implements AutoCloseable {
+	// A write is timed from when it starts waiting for other writers until both
+	// copies have it, and the wait for the log is timed on its own.
+	private static final Metrics.Timer WRITE_TIMER = Metrics.timer("ConcurrentWebGraph.write");
+	private static final Metrics.Timer DRAIN_TIMER = Metrics.timer("ConcurrentWebGraph.drain");
+	private static final Metrics.Timer AWAIT_LOG_TIMER = Metrics.timer("ConcurrentWebGraph.awaitLog");
+	private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "concurrent-web-graph-compactor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final WebGraph[] copies;
+	// The copy readers use.
+	private volatile int active;
+	// The pair of counters new readers arrive on.
+	private volatile int versionIndex;
+	private final LongAdder[] arrivals = { new LongAdder(), new LongAdder() };
+	private final LongAdder[] departures = { new LongAdder(), new LongAdder() };
+	private final Object writer = new Object();
+	private MutationLog log;
+	private volatile long version;
+	// Whether a compaction has been started and not yet run. Guarded by writer.
+	private boolean compactionScheduled;
+
+	/**
+	 * Returns an instance of ConcurrentWebGraph that takes over a graph and its
+	 * log. The graph must not be used directly afterwards.
+	 *
+	 * @param graph The graph to share
+	 * @throws IOException If the second copy cannot be made
+	 */
+	public ConcurrentWebGraph(WebGraph graph) throws IOException {
+		this.log = graph.detachLog();
+		WebGraph copy = graph.copy();
+		graph.disableLocking();
+		copy.disableLocking();
+		this.copies = new WebGraph[] { graph, copy };
+	}
+
+	/**
+	 * Runs a query against one version of the graph. Mutations made while the
+	 * query runs are not visible to it, and do not wait for it unless they need
+	 * its copy.
+	 *
+	 * @param query A function that only reads the graph and does not keep it
+	 * @return The result of the query
+	 */
+	public <T> T read(Function<WebGraph, T> query) {
+		int index = versionIndex;
+		arrivals[index].increment();
+		try {
+			return query.apply(copies[active]);
+		} finally {
+			departures[index].increment();
+		}
+	}
+
+	/**
+	 * @return The number of mutations published so far
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return The LSN of the last mutation applied to the graph
+	 */
+	public long getLsn() {
+		return read(graph -> graph.getLsn());
+	}
+
+	/**
+	 * @see WebGraph#getIndex(String)
+	 */
+	public int getIndex(String url) {
+		return read(graph -> graph.getIndex(url));
+	}
+
+	/**
+	 * @see WebGraph#getPageRank(String)
+	 */
+	public double getPageRank(String url) throws IllegalArgumentException {
+		return read(graph -> graph.getPageRank(url));
+	}
+
+	/**
+	 * @see WebGraph#getLinkString(String)
+	 */
+	public String getLinkString(String url) {
+		return read(graph -> graph.getLinkString(url));
+	}
+
+	/**
+	 * @see WebGraph#search(String)
+	 */
+	public ArrayList<SearchResult> search(String keyword) {
+		return read(graph -> graph.search(keyword));
+	}
+
+	/**
+	 * @see WebGraph#search(String, int, int)
+	 */
+	public ArrayList<SearchResult> search(String keyword, int k, int offset) throws IllegalArgumentException {
+		return read(graph -> graph.search(keyword, k, offset));
+	}
+
+	/**
+	 * @see WebGraph#query(String, int, int)
+	 */
+	public ArrayList<SearchResult> query(String query, int k, int offset) throws IllegalArgumentException {
+		return read(graph -> graph.query(query, k, offset));
+	}
+
+	/**
+	 * @see WebGraph#suggest(String, int)
+	 */
+	public ArrayList<String> suggest(String prefix, int count) throws IllegalArgumentException {
+		return read(graph -> graph.suggest(prefix, count));
+	}
+
+	/**
+	 * @see WebGraph#printSearchResults(String)
+	 */
+	public void printSearchResults(String query) throws IllegalArgumentException {
+		read(graph -> {
+			graph.printSearchResults(query);
+			return null;
+		});
+	}
+
+	/**
+	 * @see WebGraph#printSearchResults(String, int, int)
+	 */
+	public int printSearchResults(String query, int k, int offset) throws IllegalArgumentException {
+		return read(graph -> graph.printSearchResults(query, k, offset));
+	}
+
+	/**
+	 * Prints the graph in tabular form in the given order.
+	 *
+	 * @param comparator The order to list pages in
+	 */
+	public void printTable(Comparator<WebPage> comparator) {
+		read(graph -> {
+			graph.printTable(comparator);
+			return null;
+		});
+	}
+
+	/**
+	 * @see WebGraph#printTable(Comparator, int, int)
+	 */
+	public boolean printTable(Comparator<WebPage> comparator, int offset, int limit) throws IllegalArgumentException {
+		return read(graph -> graph.printTable(comparator, offset, limit));
+	}
+
+	/**
+	 * @see WebGraph#getRankWeight()
+	 */
+	public double getRankWeight() {
+		return read(graph -> graph.getRankWeight());
+	}
+
+	/**
+	 * Sets how much PageRank counts in search scores, on both copies.
+	 *
+	 * @see WebGraph#setRankWeight(double)
+	 */
+	public void setRankWeight(double weight) throws IllegalArgumentException {
+		synchronized (writer) {
+			int spare = 1 - active;
+			copies[spare].setRankWeight(weight);
+			active = spare;
+			version += 1;
+			drain();
+			copies[1 - spare].setRankWeight(weight);
+		}
+	}
+
+	/**
+	 * @see WebGraph#getPageCount()
+	 */
+	public int getPageCount() {
+		return read(graph -> graph.getPageCount());
+	}
+
+	/**
+	 * @see WebGraph#getLinkCount()
+	 */
+	public long getLinkCount() {
+		return read(graph -> graph.getLinkCount());
+	}
+
+	/**
+	 * @see WebGraph#getKeywordCount()
+	 */
+	public int getKeywordCount() {
+		return read(graph -> graph.getKeywordCount());
+	}
+
+	/**
+	 * @return The counters of the result caches of both copies, added together
+	 */
+	public ResultCache.Statistics getCacheStatistics() {
+		return copies[0].getCacheStatistics().plus(copies[1].getCacheStatistics());
+	}
+
+	/**
+	 * Sets the capacity of the result cache of each copy. The caches lock
+	 * themselves, so this does not wait for writers.
+	 *
+	 * @see WebGraph#setCacheCapacity(long)
+	 */
+	public void setCacheCapacity(long capacity) throws IllegalArgumentException {
+		copies[0].setCacheCapacity(capacity);
+		copies[1].setCacheCapacity(capacity);
+	}
+
+	/**
+	 * @see WebGraph#addPage(String, LinkedList)
+	 */
+	public void addPage(String url, LinkedList<String> keywords) throws IllegalArgumentException, FullGraphException {
+		write(beginBatch().addPage(url, keywords));
+	}
+
+	/**
+	 * @see WebGraph#removePage(String)
+	 */
+	public void removePage(String url) {
+		try {
+			write(beginBatch().removePage(url));
+		} catch (FullGraphException e) {
+			// Removing a page never needs more memory.
+		}
+	}
+
+	/**
+	 * @see WebGraph#addLink(String, String)
+	 */
+	public void addLink(String source, String destination) throws IllegalArgumentException, FullGraphException {
+		write(beginBatch().addLink(source, destination));
+	}
+
+	/**
+	 * @see WebGraph#removeLink(String, String)
+	 */
+	public void removeLink(String source, String destination) {
+		try {
+			write(beginBatch().removeLink(source, destination));
+		} catch (FullGraphException e) {
+			// Removing a link never needs more memory.
+		}
+	}
+
+	/**
+	 * Starts a batch of mutations, which are published together at commit.
+	 *
+	 * @return An empty batch for this graph
+	 */
+	public Batch beginBatch() {
+		return new Batch();
+	}
+
+	/**
+	 * <code>Batch</code> class buffers mutations for
+	 * <code>ConcurrentWebGraph</code>, with the semantics of
+	 * <code>WebGraph.Batch</code>.
+	 */
+	public class Batch {
+		private final WebGraph.Batch mutations = copies[0].beginBatch();
+
+		private Batch() {
+		}
+
+		/**
+		 * @return The number of mutations in the batch
+		 */
+		public int size() {
+			return mutations.size();
+		}
+
+		/**
+		 * @see WebGraph.Batch#addPage(String, LinkedList)
+		 */
+		public Batch addPage(String url, LinkedList<String> keywords) {
+			mutations.addPage(url, keywords);
+			return this;
+		}
+
+		/**
+		 * @see WebGraph.Batch#removePage(String)
+		 */
+		public Batch removePage(String url) {
+			mutations.removePage(url);
+			return this;
+		}
+
+		/**
+		 * @see WebGraph.Batch#addLink(String, String)
+		 */
+		public Batch addLink(String source, String destination) {
+			mutations.addLink(source, destination);
+			return this;
+		}
+
+		/**
+		 * @see WebGraph.Batch#removeLink(String, String)
+		 */
+		public Batch removeLink(String source, String destination) {
+			mutations.removeLink(source, destination);
+			return this;
+		}
+
+		/**
+		 * @see WebGraph.Batch#commit()
+		 */
+		public void commit() throws IllegalArgumentException, FullGraphException {
+			write(this);
+		}
+	}
+
+	/**
+	 * Writes every later mutation to a log before it returns. The log must have
+	 * been replayed over the graph first.
+	 *
+	 * @see WebGraph#attachLog(MutationLog)
+	 */
+	public void attachLog(MutationLog log) throws IOException, IllegalArgumentException {
+		synchronized (writer) {
+			long lsn = copies[active].getLsn();
+			if (log.getLastLsn() > lsn) {
+				throw new IllegalArgumentException("The log should be replayed first.");
+			} else if (log.getLastLsn() < lsn) {
+				log.reset(lsn);
+			}
+			this.log = log;
+		}
+	}
+
+	/**
+	 * Writes the graph to a snapshot. Readers carry on while it is written.
+	 *
+	 * @see WebGraph#save(Path)
+	 */
+	public void save(Path file) throws IOException {
+		synchronized (writer) {
+			copies[active].save(file);
+		}
+	}
+
+	/**
+	 * Saves a snapshot and then empties the log. Writers wait while the snapshot
+	 * is written; readers do not.
+	 *
+	 * @see WebGraph#checkpoint(Path)
+	 */
+	public void checkpoint(Path file) throws IOException {
+		synchronized (writer) {
+			WebGraph graph = copies[active];
+			graph.save(file);
+			if (log != null) {
+				log.reset(graph.getLsn());
+			}
+		}
+	}
+
+	/**
+	 * @return true if the graph keeps its URLs and links outside the heap
+	 */
+	public boolean isOffHeap() {
+		return copies[0].isOffHeap();
+	}
+
+	/**
+	 * Closes both copies. The spare copy is closed and published first, so
+	 * readers only ever see a copy that is open or already empty, and the other
+	 * copy is closed once its readers have left.
+	 *
+	 * @see WebGraph#close()
+	 */
+	@Override
+	public void close() {
+		synchronized (writer) {
+			int spare = 1 - active;
+			copies[spare].close();
+			active = spare;
+			version += 1;
+			drain();
+			copies[1 - spare].close();
+		}
+	}
+
+	/**
+	 * Compacts both copies. The spare copy is compacted and published first, so
+	 * readers never wait, and the other copy is compacted once its readers have
+	 * left.
+	 *
+	 * @see WebGraph#compact()
+	 */
+	public void compact() {
+		synchronized (writer) {
+			compactionScheduled = false;
+			int spare = 1 - active;
+			copies[spare].compact();
+			active = spare;
+			version += 1;
+			drain();
+			copies[1 - spare].compact();
+		}
+	}
+
+	/**
+	 * Applies a batch to both copies, publishing it in between, and logs it.
+	 * The batch is empty afterwards.
+	 */
+	private void write(Batch batch) throws IllegalArgumentException, FullGraphException {
+		long start = Metrics.start();
+		long logged = 0;
+		synchronized (writer) {
+			try {
+				int spare = 1 - active;
+				// Nothing is changed if the batch fails here, and the other copy is
+				// in the same state, so it would fail there too.
+				copies[spare].replay(batch.mutations);
+				if (log != null) {
+					logged = batch.mutations.appendTo(log);
+					copies[spare].setLsn(logged);
+				}
+				active = spare;
+				version += 1;
+				drain();
+				copies[1 - spare].replay(batch.mutations);
+				if (logged > 0) {
+					copies[1 - spare].setLsn(logged);
+				}
+				if (!compactionScheduled && copies[spare].needsCompaction()) {
+					compactionScheduled = true;
+					COMPACTOR.execute(this::compact);
+				}
+			} finally {
+				batch.mutations.clear();
+			}
+		}
+		WRITE_TIMER.stop(start);
+		if (logged > 0) {
+			start = Metrics.start();
+			log.sync(logged);
+			AWAIT_LOG_TIMER.stop(start);
+		}
+	}
+
+	/**
+	 * Waits until no reader can still be using the copy that was active before
+	 * the last switch. New readers are moved to the other pair of counters
+	 * first, so waiting cannot be starved by a stream of new readers.
+	 */
+	private void drain() {
+		long start = Metrics.start();
+		int previous = versionIndex;
+		int next = 1 - previous;
+		waitForReaders(next);
+		versionIndex = next;
+		waitForReaders(previous);
+		DRAIN_TIMER.stop(start);
+	}
+
+	/**
+	 * Waits until every reader that arrived on a pair of counters has departed.
+	 * The departures are read before the arrivals; both only grow, so equal sums
+	 * mean there was a moment in between with no reader on the pair.
+	 */
+	private void waitForReaders(int index) {
+		for (int spins = 0;; spins++) {
+			long departed = departures[index].sum();
+			if (arrivals[index].sum() == departed) {
+				return;
+			}
+			if (spins < 100) {
+				Thread.onSpinWait();
+			} else {
+				// Let the readers run, which matters when there are more threads than
+				// cores.
+				LockSupport.parkNanos(10_000);
+			}
+		}
+	}
+}
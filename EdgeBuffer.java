@@ -0,0 +1,153 @@
+package searchEngine;
+
+import java.util.Arrays;
+
+/**
+ * <code>EdgeBuffer</code> class is a small sorted set of directed edges packed
+ * into primitive longs. It is used by <code>LinkStore</code> to buffer link
+ * mutations between compactions.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+class EdgeBuffer {
+	private long[] keys;
+	private int size;
+
+	/**
+	 * Returns an empty instance of EdgeBuffer
+	 */
+	EdgeBuffer() {
+		this.keys = new long[16];
+		this.size = 0;
+	}
+
+	/**
+	 * Returns an instance of EdgeBuffer holding the given keys.
+	 *
+	 * @param keys  Packed keys in ascending order, without duplicates
+	 * @param count The number of keys
+	 */
+	EdgeBuffer(long[] keys, int count) {
+		this.keys = keys.length > 0 ? keys : new long[16];
+		this.size = count;
+	}
+
+	/**
+	 * Packs an edge into a single key. Keys sort by source, then by destination.
+	 *
+	 * @param source      The source id
+	 * @param destination The destination id
+	 * @return The packed key
+	 */
+	static long key(int source, int destination) {
+		return ((long) source << 32) | (destination & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * @return The source id of a packed key
+	 */
+	static int source(long key) {
+		return (int) (key >>> 32);
+	}
+
+	/**
+	 * @return The destination id of a packed key
+	 */
+	static int destination(long key) {
+		return (int) key;
+	}
+
+	/**
+	 * @return The number of edges in the buffer
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return The key stored at position i
+	 */
+	long get(int i) {
+		return keys[i];
+	}
+
+	/**
+	 * @return The number of bytes held by the buffer
+	 */
+	long bytes() {
+		return 8L * keys.length;
+	}
+
+	/**
+	 * @return true if the buffer contains the edge
+	 */
+	boolean contains(int source, int destination) {
+		return Arrays.binarySearch(keys, 0, size, key(source, destination)) >= 0;
+	}
+
+	/**
+	 * Adds an edge to the buffer.
+	 *
+	 * @return true if the edge was not already in the buffer
+	 */
+	boolean add(int source, int destination) {
+		long key = key(source, destination);
+		int position = Arrays.binarySearch(keys, 0, size, key);
+		if (position >= 0) {
+			return false;
+		}
+		position = -position - 1;
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, keys.length * 2);
+		}
+		System.arraycopy(keys, position, keys, position + 1, size - position);
+		keys[position] = key;
+		size += 1;
+		return true;
+	}
+
+	/**
+	 * Removes an edge from the buffer.
+	 *
+	 * @return true if the edge was in the buffer
+	 */
+	boolean remove(int source, int destination) {
+		int position = Arrays.binarySearch(keys, 0, size, key(source, destination));
+		if (position < 0) {
+			return false;
+		}
+		System.arraycopy(keys, position + 1, keys, position, size - position - 1);
+		size -= 1;
+		return true;
+	}
+
+	/**
+	 * @return The position of the first edge leaving source, or the position it
+	 *         would be inserted at.
+	 */
+	int firstFrom(int source) {
+		int position = Arrays.binarySearch(keys, 0, size, key(source, 0));
+		return position >= 0 ? position : -position - 1;
+	}
+
+	/**
+	 * Empties the buffer.
+	 */
+	void clear() {
+		size = 0;
+		if (keys.length > 1024) {
+			keys = new long[16];
+		}
+	}
+
+	/**
+	 * @return A copy of this buffer
+	 */
+	EdgeBuffer copy() {
+		EdgeBuffer copy = new EdgeBuffer();
+		copy.keys = Arrays.copyOf(keys, Math.max(size, 16));
+		copy.size = size;
+		return copy;
+	}
+}
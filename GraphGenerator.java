@@ -0,0 +1,253 @@
+package searchEngine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Random;
+
+/**
+ * <code>GraphGenerator</code> class makes synthetic web graphs that look like
+ * crawled ones: the number of links a page has follows a power law, a few
+ * pages collect most of the links, and keywords are drawn from a vocabulary
+ * with Zipf-distributed popularity. The same seed always makes the same graph.
+ *
+ * A graph is written as a pages file and a links file in the format
+ * {@link WebGraph#buildFromFiles(String, String)} reads.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+public class GraphGenerator {
+	public static final double DEFAULT_MEAN_DEGREE = 8;
+	public static final double DEFAULT_DEGREE_EXPONENT = 2.1;
+	public static final int DEFAULT_VOCABULARY = 10_000;
+	public static final double DEFAULT_KEYWORD_SKEW = 1.0;
+	public static final int DEFAULT_KEYWORDS_PER_PAGE = 5;
+
+	private final int pages;
+	private double meanDegree = DEFAULT_MEAN_DEGREE;
+	private double degreeExponent = DEFAULT_DEGREE_EXPONENT;
+	private int vocabulary = DEFAULT_VOCABULARY;
+	private double keywordSkew = DEFAULT_KEYWORD_SKEW;
+	private int keywordsPerPage = DEFAULT_KEYWORDS_PER_PAGE;
+	private long seed = 214;
+	// The probability of drawing each keyword rank or a better one.
+	private double[] keywordCdf;
+
+	/**
+	 * Returns an instance of GraphGenerator with the default parameters
+	 *
+	 * @param pages The number of pages to generate
+	 * @throws IllegalArgumentException If pages is not positive
+	 */
+	public GraphGenerator(int pages) throws IllegalArgumentException {
+		if (pages < 1) {
+			throw new IllegalArgumentException("The number of pages should be positive.");
+		}
+		this.pages = pages;
+	}
+
+	/**
+	 * @return The number of pages to generate
+	 */
+	public int getPages() {
+		return pages;
+	}
+
+	/**
+	 * @param meanDegree The average number of links leaving a page
+	 * @throws IllegalArgumentException If meanDegree is negative
+	 */
+	public void setMeanDegree(double meanDegree) throws IllegalArgumentException {
+		if (!(meanDegree >= 0)) {
+			throw new IllegalArgumentException("The mean degree should not be negative.");
+		}
+		this.meanDegree = meanDegree;
+	}
+
+	/**
+	 * @param degreeExponent The exponent of the power law the number of links
+	 *                       leaving a page follows. Smaller exponents give more
+	 *                       pages with very many links.
+	 * @throws IllegalArgumentException If degreeExponent is not greater than 2,
+	 *                                  for which the mean is infinite
+	 */
+	public void setDegreeExponent(double degreeExponent) throws IllegalArgumentException {
+		if (!(degreeExponent > 2)) {
+			throw new IllegalArgumentException("The degree exponent should be greater than 2.");
+		}
+		this.degreeExponent = degreeExponent;
+	}
+
+	/**
+	 * @param vocabulary The number of distinct keywords
+	 * @throws IllegalArgumentException If vocabulary is not positive
+	 */
+	public void setVocabulary(int vocabulary) throws IllegalArgumentException {
+		if (vocabulary < 1) {
+			throw new IllegalArgumentException("The vocabulary should not be empty.");
+		}
+		this.vocabulary = vocabulary;
+		this.keywordCdf = null;
+	}
+
+	/**
+	 * @param keywordSkew The Zipf exponent of keyword popularity. 0 makes every
+	 *                    keyword equally common; larger values concentrate pages
+	 *                    on the first few keywords.
+	 * @throws IllegalArgumentException If keywordSkew is negative
+	 */
+	public void setKeywordSkew(double keywordSkew) throws IllegalArgumentException {
+		if (!(keywordSkew >= 0)) {
+			throw new IllegalArgumentException("The keyword skew should not be negative.");
+		}
+		this.keywordSkew = keywordSkew;
+		this.keywordCdf = null;
+	}
+
+	/**
+	 * @param keywordsPerPage The greatest number of keywords on a page. Each page
+	 *                        has between one and this many.
+	 * @throws IllegalArgumentException If keywordsPerPage is not positive
+	 */
+	public void setKeywordsPerPage(int keywordsPerPage) throws IllegalArgumentException {
+		if (keywordsPerPage < 1) {
+			throw new IllegalArgumentException("A page should have at least one keyword.");
+		}
+		this.keywordsPerPage = keywordsPerPage;
+	}
+
+	/**
+	 * @param seed The seed of the random numbers the graph is drawn from
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @param id The index of a page, from 0 to one less than the number of pages
+	 * @return The URL of the page
+	 */
+	public String url(int id) {
+		return "www.site" + id / 64 + ".com/page" + id;
+	}
+
+	/**
+	 * @param rank The popularity rank of a keyword, 0 being the most common
+	 * @return The keyword
+	 */
+	public String keyword(int rank) {
+		return "kw" + rank;
+	}
+
+	/**
+	 * Draws the popularity rank of a keyword.
+	 *
+	 * @param random The random numbers to draw from
+	 * @return A rank from 0 to one less than the vocabulary
+	 */
+	public int nextKeyword(Random random) {
+		if (keywordCdf == null) {
+			double[] cdf = new double[vocabulary];
+			double total = 0;
+			for (int rank = 0; rank < vocabulary; rank++) {
+				total += 1 / Math.pow(rank + 1, keywordSkew);
+				cdf[rank] = total;
+			}
+			for (int rank = 0; rank < vocabulary; rank++) {
+				cdf[rank] /= total;
+			}
+			keywordCdf = cdf;
+		}
+		int position = Arrays.binarySearch(keywordCdf, random.nextDouble());
+		return Math.min(vocabulary - 1, position < 0 ? -position - 1 : position);
+	}
+
+	/**
+	 * Draws the keywords of a page.
+	 *
+	 * @param random The random numbers to draw from
+	 * @return Between one and the most keywords a page has
+	 */
+	public LinkedList<String> nextKeywords(Random random) {
+		LinkedList<String> keywords = new LinkedList<String>();
+		int count = 1 + random.nextInt(keywordsPerPage);
+		for (int i = 0; i < count; i++) {
+			keywords.add(keyword(nextKeyword(random)));
+		}
+		return keywords;
+	}
+
+	/**
+	 * Draws the number of links leaving a page from a discrete Pareto
+	 * distribution with the configured mean.
+	 *
+	 * @param random The random numbers to draw from
+	 * @return A number of links from 0 to one less than the number of pages
+	 */
+	public int nextDegree(Random random) {
+		// A Pareto variable with minimum m has mean m * (a - 1) / (a - 2).
+		double minimum = meanDegree * (degreeExponent - 2) / (degreeExponent - 1);
+		double degree = minimum / Math.pow(1 - random.nextDouble(), 1 / (degreeExponent - 1));
+		return (int) Math.min(pages - 1, Math.round(degree));
+	}
+
+	/**
+	 * Draws the destination of a link, so that a few pages collect most of the
+	 * links.
+	 *
+	 * @param random The random numbers to draw from
+	 * @return The index of a page
+	 */
+	public int nextDestination(Random random) {
+		return (int) (pages * Math.pow(random.nextDouble(), 3));
+	}
+
+	/**
+	 * Writes a graph to a pages file and a links file. A page's links go to
+	 * distinct pages other than itself.
+	 *
+	 * @param pagesFile The file to write the pages to
+	 * @param linksFile The file to write the links to
+	 * @return The number of links written
+	 * @throws IOException If either file cannot be written
+	 */
+	public long write(Path pagesFile, Path linksFile) throws IOException {
+		Random random = new Random(seed);
+		try (BufferedWriter out = Files.newBufferedWriter(pagesFile, StandardCharsets.UTF_8)) {
+			for (int id = 0; id < pages; id++) {
+				out.write(url(id));
+				for (String keyword : nextKeywords(random)) {
+					out.write(' ');
+					out.write(keyword);
+				}
+				out.newLine();
+			}
+		}
+		long links = 0;
+		try (BufferedWriter out = Files.newBufferedWriter(linksFile, StandardCharsets.UTF_8)) {
+			for (int id = 0; id < pages; id++) {
+				int degree = nextDegree(random);
+				LongHashSet targets = new LongHashSet();
+				String source = url(id);
+				// Popular pages are drawn again and again, so give up on a page after
+				// a few misses per link rather than insist on its full degree.
+				for (int tries = 0; targets.size() < degree && tries < 4 * degree; tries++) {
+					int destination = nextDestination(random);
+					if (destination != id && targets.add(destination)) {
+						out.write(source);
+						out.write(' ');
+						out.write(url(destination));
+						out.newLine();
+						links += 1;
+					}
+				}
+			}
+		}
+		return links;
+	}
+}
@@ -0,0 +1,458 @@
+package searchEngine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * <code>GraphLoader</code> class builds a <code>WebGraph</code> from a pages
+ * file and a links file by memory-mapping them and tokenizing the bytes in
+ * place.
+ *
+ * Each line of the pages file holds a URL followed by its keywords, and each
+ * line of the links file holds a source URL and a destination URL, separated
+ * by spaces. URLs are looked up by their bytes, keywords are interned into
+ * term ids straight from their bytes, and links are collected into primitive
+ * arrays that are turned into CSR arrays in one pass. Duplicate links are
+ * kept once.
+ *
+ * The links file is split at line breaks into chunks that are parsed on
+ * separate threads. Each thread resolves URLs through the URL dictionary,
+ * which is only read once the pages are loaded, into its own edge buffers,
+ * and the buffers are merged into CSR arrays by a parallel counting sort.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+public class GraphLoader {
+	// Files are mapped in windows of at most this many bytes.
+	private static final int WINDOW = 1 << 30;
+	// The timers of a whole load and of its phases. Building the links includes
+	// ranking every page, which WebGraph.updatePageRanks also times.
+	private static final Metrics.Timer LOAD_TIMER = Metrics.timer("GraphLoader.load");
+	private static final Metrics.Timer PAGES_TIMER = Metrics.timer("GraphLoader.loadPages");
+	private static final Metrics.Timer PARSE_LINKS_TIMER = Metrics.timer("GraphLoader.parseLinks");
+	private static final Metrics.Timer BUILD_LINKS_TIMER = Metrics.timer("GraphLoader.buildLinks");
+
+	private long bytesRead;
+	private long nanos;
+	private int pageCount;
+	private int linkCount;
+	// Reused for every token, so lookups do not create a String per token.
+	private byte[] token = new byte[256];
+	private int[] terms = new int[16];
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private boolean offHeap;
+
+	/**
+	 * @return The number of threads links are parsed and sorted on
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @param parallelism The number of threads links are parsed and sorted on
+	 * @throws IllegalArgumentException If parallelism is not positive
+	 */
+	public void setParallelism(int parallelism) throws IllegalArgumentException {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("The parallelism should be positive.");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return true if loaded graphs keep their URLs and links outside the heap
+	 */
+	public boolean isOffHeap() {
+		return offHeap;
+	}
+
+	/**
+	 * @param offHeap true to keep the URLs and links of loaded graphs outside
+	 *                the heap
+	 */
+	public void setOffHeap(boolean offHeap) {
+		this.offHeap = offHeap;
+	}
+
+	/**
+	 * Handles one line of a mapped file.
+	 */
+	private interface LineHandler {
+		void line(MappedByteBuffer buffer, int start, int end, long lineNumber) throws FullGraphException;
+	}
+
+	/**
+	 * Loads a graph from the indicated files.
+	 *
+	 * @param pagesFile The path to the pages file
+	 * @param linksFile The path to the links file
+	 * @return The loaded graph
+	 * @throws IllegalArgumentException If a file cannot be read or a line is not
+	 *                                  formatted correctly. The message names the
+	 *                                  file and line.
+	 * @throws FullGraphException       If the graph does not fit in its memory
+	 *                                  budget
+	 */
+	public WebGraph load(Path pagesFile, Path linksFile) throws IllegalArgumentException, FullGraphException {
+		long start = System.nanoTime();
+		WebGraph webGraph = new WebGraph(WebGraph.DEFAULT_MEMORY_BUDGET, offHeap);
+		boolean loaded = false;
+		try {
+			load(webGraph, pagesFile, linksFile);
+			loaded = true;
+		} finally {
+			if (!loaded) {
+				webGraph.close();
+			}
+		}
+		nanos = System.nanoTime() - start;
+		LOAD_TIMER.record(nanos);
+		return webGraph;
+	}
+
+	/**
+	 * Loads the pages and then the links of a graph.
+	 */
+	private void load(WebGraph webGraph, Path pagesFile, Path linksFile)
+			throws IllegalArgumentException, FullGraphException {
+		String pagesName = pagesFile.getFileName().toString();
+		String linksName = linksFile.getFileName().toString();
+		long start = Metrics.start();
+		scan(pagesFile, (buffer, from, to, lineNumber) -> {
+			int end = nextToken(buffer, from, to);
+			int length = copyToken(buffer, from, end);
+			if (webGraph.findPage(token, 0, length) != -1) {
+				throw new IllegalArgumentException(pagesName + ":" + lineNumber + ": The URL "
+						+ new String(token, 0, length, StandardCharsets.UTF_8) + " is not unique.");
+			}
+			String url = new String(token, 0, length, StandardCharsets.UTF_8);
+			KeywordDictionary dictionary = webGraph.keywordDictionary();
+			int count = 0;
+			for (int i = skipSpaces(buffer, end, to); i < to; i = skipSpaces(buffer, end, to)) {
+				end = nextToken(buffer, i, to);
+				if (count == terms.length) {
+					terms = Arrays.copyOf(terms, count * 2);
+				}
+				terms[count++] = dictionary.intern(token, 0, copyToken(buffer, i, end));
+			}
+			webGraph.loadPage(url, terms, count);
+			pageCount += 1;
+		});
+		PAGES_TIMER.stop(start);
+		loadLinks(linksFile, webGraph);
+	}
+
+	/**
+	 * @return The number of bytes read from both files
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * @return The number of seconds the load took
+	 */
+	public double getSeconds() {
+		return nanos / 1e9;
+	}
+
+	/**
+	 * @return The read throughput of the load in MB/s
+	 */
+	public double getThroughput() {
+		return nanos == 0 ? 0 : bytesRead / 1e6 / getSeconds();
+	}
+
+	/**
+	 * @return The number of pages loaded
+	 */
+	public int getPageCount() {
+		return pageCount;
+	}
+
+	/**
+	 * @return The number of link lines loaded, including duplicates
+	 */
+	public int getLinkCount() {
+		return linkCount;
+	}
+
+	/**
+	 * @return A one-line summary of the load
+	 */
+	public String report() {
+		return String.format("Loaded %d pages and %d links (%.1f MB in %.2f s, %.1f MB/s).", pageCount, linkCount,
+				bytesRead / 1e6, getSeconds(), getThroughput());
+	}
+
+	/**
+	 * Maps a file window by window and hands every non-blank line to the
+	 * handler. A window always ends on a line break, so no line is split.
+	 */
+	private void scan(Path file, LineHandler handler) throws IllegalArgumentException, FullGraphException {
+		String name = file.getFileName().toString();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = 0;
+			long lineNumber = 0;
+			while (position < size) {
+				int length = (int) Math.min(WINDOW, size - position);
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				int limit = length;
+				if (position + length < size) {
+					while (limit > 0 && buffer.get(limit - 1) != '\n') {
+						limit--;
+					}
+					if (limit == 0) {
+						throw new IllegalArgumentException(name + ":" + (lineNumber + 1) + ": The line is too long.");
+					}
+				}
+				int start = 0;
+				while (start < limit) {
+					int end = start;
+					while (end < limit && buffer.get(end) != '\n') {
+						end++;
+					}
+					lineNumber += 1;
+					int from = skipSpaces(buffer, start, end);
+					int to = end;
+					while (to > from && isSpace(buffer.get(to - 1))) {
+						to--;
+					}
+					if (from < to) {
+						handler.line(buffer, from, to, lineNumber);
+					}
+					start = end + 1;
+				}
+				position += limit;
+				bytesRead += limit;
+			}
+		} catch (IOException e) {
+			throw new IllegalArgumentException(name + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Parses the links file in chunks and loads the links into the graph.
+	 */
+	private void loadLinks(Path file, WebGraph webGraph) throws IllegalArgumentException, FullGraphException {
+		String name = file.getFileName().toString();
+		StringDictionary urls = webGraph.urlDictionary();
+		ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+		long phase = Metrics.start();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long chunkCount = Math.max(parallelism * 4L, (size + WINDOW / 2 - 1) / (WINDOW / 2));
+			ArrayList<LinkChunk> chunks = new ArrayList<LinkChunk>();
+			long start = 0;
+			for (long c = 1; c <= chunkCount && start < size; c++) {
+				long end = c == chunkCount ? size : lineStart(channel, size * c / chunkCount);
+				if (end > start) {
+					chunks.add(new LinkChunk(channel, start, end, urls));
+					start = end;
+				}
+			}
+			if (pool == null) {
+				for (LinkChunk chunk : chunks) {
+					chunk.call();
+				}
+			} else {
+				pool.invokeAll(chunks);
+			}
+			// Report the first error. Every chunk before it parsed all its lines,
+			// so their line counts give the line number in the whole file.
+			long linesBefore = 0;
+			int[][] sources = new int[chunks.size()][];
+			int[][] destinations = new int[chunks.size()][];
+			int[] counts = new int[chunks.size()];
+			for (int c = 0; c < chunks.size(); c++) {
+				LinkChunk chunk = chunks.get(c);
+				if (chunk.error != null) {
+					throw new IllegalArgumentException(name + ":" + (linesBefore + chunk.errorLine) + ": " + chunk.error);
+				}
+				linesBefore += chunk.lines;
+				sources[c] = chunk.sources;
+				destinations[c] = chunk.destinations;
+				counts[c] = chunk.count;
+				linkCount += chunk.count;
+				bytesRead += chunk.end - chunk.start;
+			}
+			PARSE_LINKS_TIMER.stop(phase);
+			phase = Metrics.start();
+			webGraph.loadLinks(sources, destinations, counts, pool);
+			BUILD_LINKS_TIMER.stop(phase);
+		} catch (IOException e) {
+			throw new IllegalArgumentException(name + ": " + e.getMessage(), e);
+		} finally {
+			if (pool != null) {
+				pool.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * @return The position just past the first line break at or after position,
+	 *         or the end of the file
+	 */
+	private static long lineStart(FileChannel channel, long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		long size = channel.size();
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	/**
+	 * A range of whole lines of the links file, parsed into its own primitive
+	 * edge buffers.
+	 */
+	private static final class LinkChunk implements Callable<Void> {
+		private final FileChannel channel;
+		private final long start;
+		private final long end;
+		private final StringDictionary urls;
+		private byte[] token = new byte[256];
+		private int[] sources = new int[1024];
+		private int[] destinations = new int[1024];
+		private int count;
+		private long lines;
+		private String error;
+		private long errorLine;
+
+		LinkChunk(FileChannel channel, long start, long end, StringDictionary urls) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+			this.urls = urls;
+		}
+
+		@Override
+		public Void call() {
+			MappedByteBuffer buffer;
+			try {
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+			} catch (IOException e) {
+				error = e.getMessage();
+				errorLine = 1;
+				return null;
+			}
+			int limit = (int) (end - start);
+			int position = 0;
+			while (position < limit && error == null) {
+				int lineEnd = position;
+				while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+					lineEnd++;
+				}
+				lines += 1;
+				int from = skipSpaces(buffer, position, lineEnd);
+				int to = lineEnd;
+				while (to > from && isSpace(buffer.get(to - 1))) {
+					to--;
+				}
+				if (from < to) {
+					line(buffer, from, to);
+				}
+				position = lineEnd + 1;
+			}
+			return null;
+		}
+
+		private void line(MappedByteBuffer buffer, int from, int to) {
+			int end = nextToken(buffer, from, to);
+			int source = find(buffer, from, end);
+			int next = skipSpaces(buffer, end, to);
+			if (next == to) {
+				fail("Expected a source and a destination URL.");
+				return;
+			}
+			end = nextToken(buffer, next, to);
+			int destination = find(buffer, next, end);
+			if (skipSpaces(buffer, end, to) != to) {
+				fail("Expected only two URLs.");
+			} else if (source == -1) {
+				fail("The source is not in the graph.");
+			} else if (destination == -1) {
+				fail("The destination is not in the graph.");
+			} else {
+				if (count == sources.length) {
+					sources = Arrays.copyOf(sources, sources.length * 2);
+					destinations = Arrays.copyOf(destinations, destinations.length * 2);
+				}
+				sources[count] = source;
+				destinations[count] = destination;
+				count += 1;
+			}
+		}
+
+		private int find(MappedByteBuffer buffer, int start, int end) {
+			int length = end - start;
+			if (length > token.length) {
+				token = new byte[Math.max(length, token.length * 2)];
+			}
+			buffer.get(start, token, 0, length);
+			return urls.find(token, 0, length);
+		}
+
+		private void fail(String message) {
+			error = message;
+			errorLine = lines;
+		}
+	}
+
+	/**
+	 * Copies the bytes of a token into the token buffer.
+	 *
+	 * @return The length of the token
+	 */
+	private int copyToken(MappedByteBuffer buffer, int start, int end) {
+		int length = end - start;
+		if (length > token.length) {
+			token = new byte[Math.max(length, token.length * 2)];
+		}
+		buffer.get(start, token, 0, length);
+		return length;
+	}
+
+	/**
+	 * @return The position just past the token starting at start
+	 */
+	private static int nextToken(MappedByteBuffer buffer, int start, int end) {
+		while (start < end && !isSpace(buffer.get(start))) {
+			start++;
+		}
+		return start;
+	}
+
+	/**
+	 * @return The position of the first non-space byte at or after start
+	 */
+	private static int skipSpaces(MappedByteBuffer buffer, int start, int end) {
+		while (start < end && isSpace(buffer.get(start))) {
+			start++;
+		}
+		return start;
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+}
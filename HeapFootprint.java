@@ -0,0 +1,104 @@
+package searchEngine;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * <code>HeapFootprint</code> class measures how much of a synthetic graph
+ * lives on the heap, and how long a full garbage collection takes with it,
+ * when the graph keeps its URLs and links on the heap and when it keeps them
+ * outside.
+ *
+ * Usage: <code>java searchEngine.HeapFootprint [pages] [links per page]
+ * [collections]</code>
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+public class HeapFootprint {
+	/**
+	 * Run the measurement.
+	 */
+	public static void main(String[] args) throws FullGraphException {
+		int pages = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		int degree = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int collections = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		System.out.println("Pages: " + pages + ", links per page: " + degree + ", max heap: "
+				+ Runtime.getRuntime().maxMemory() / (1 << 20) + " MB");
+		System.out.println(String.format("%-9s | %-10s | %-10s | %-12s | %-12s", "Storage", "Heap (MB)",
+				"Off (MB)", "Full GC (ms)", "GC time (ms)"));
+		System.out.println("=================================================================");
+		for (boolean offHeap : new boolean[] { false, true }) {
+			collect(collections);
+			long before = usedHeap();
+			long gcBefore = gcMillis();
+			WebGraph graph = build(pages, degree, offHeap);
+			long heap = usedHeap() - before;
+			double[] pauses = new double[collections];
+			for (int i = 0; i < collections; i++) {
+				long start = System.nanoTime();
+				System.gc();
+				pauses[i] = (System.nanoTime() - start) / 1e6;
+			}
+			Arrays.sort(pauses);
+			System.out.println(String.format("%-9s | %-10.1f | %-10.1f | %-12.1f | %-12d",
+					offHeap ? "off-heap" : "heap", heap / 1e6, OffHeap.reserved() / 1e6, pauses[collections / 2],
+					gcMillis() - gcBefore));
+			graph.close();
+		}
+	}
+
+	/**
+	 * Builds a graph whose pages have a few keywords each, and whose links are
+	 * skewed so a few pages collect most of them.
+	 */
+	private static WebGraph build(int pages, int degree, boolean offHeap) throws FullGraphException {
+		WebGraph graph = new WebGraph(Long.MAX_VALUE, offHeap);
+		KeywordDictionary dictionary = graph.keywordDictionary();
+		Random random = new Random(214);
+		int[] terms = new int[4];
+		for (int id = 0; id < pages; id++) {
+			for (int i = 0; i < terms.length; i++) {
+				terms[i] = dictionary.intern("keyword" + random.nextInt(10_000));
+			}
+			graph.loadPage("www.site" + id / 100 + ".com/page" + id, terms, terms.length);
+		}
+		int count = pages * degree;
+		int[] sources = new int[count];
+		int[] destinations = new int[count];
+		for (int i = 0; i < count; i++) {
+			sources[i] = random.nextInt(pages);
+			destinations[i] = (int) (pages * Math.pow(random.nextDouble(), 3));
+		}
+		graph.loadLinks(new int[][] { sources }, new int[][] { destinations }, new int[] { count }, null);
+		return graph;
+	}
+
+	/**
+	 * @return The number of bytes in use on the heap once garbage is collected
+	 */
+	private static long usedHeap() {
+		collect(3);
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static void collect(int times) {
+		for (int i = 0; i < times; i++) {
+			System.gc();
+		}
+	}
+
+	/**
+	 * @return The total time all collectors have spent collecting
+	 */
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, collector.getCollectionTime());
+		}
+		return millis;
+	}
+}
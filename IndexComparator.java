@@ -1,6 +1,7 @@
 package searchEngine;
 
 import java.util.Comparator;
+import java.util.function.IntBinaryOperator;
 
 /**
  * Compares two WebPages by their index in descending order.
@@ -8,7 +9,7 @@ import java.util.Comparator;
  * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
  *         Brook ID: 110261379
  **/
-public class IndexComparator implements Comparator<WebPage> {
+public class IndexComparator implements Comparator<WebPage>, PageStore.Order {
 	@Override
 	public int compare(WebPage w1, WebPage w2) {
 		if (w1.getIndex() == w2.getIndex())
@@ -18,4 +19,9 @@ public class IndexComparator implements Comparator<WebPage> {
 		else
 			return -1;
 	}
+
+	@Override
+	public IntBinaryOperator order(PageStore pages) {
+		return Integer::compare;
+	}
 }
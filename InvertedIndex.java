@@ -0,0 +1,485 @@
+package searchEngine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * <code>InvertedIndex</code> class maps each keyword to the sorted list of
+ * pages that contain it, and keeps the statistics needed to score how
+ * relevant a keyword is to each of those pages. Keywords are numbered by a
+ * <code>KeywordDictionary</code>, and the posting lists are held in an array
+ * indexed by term id.
+ *
+ * Keywords are found by prefix, pattern or edits through a
+ * <code>TermTrie</code> of the dictionary weighted by the number of pages of
+ * each keyword. The trie is built on the first such lookup and kept up to date
+ * as pages come and go, but keywords new since it was built are compared one
+ * by one, until there are more than TAIL_LIMIT of them and it is built again.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+class InvertedIndex {
+	private static final int[] NO_PAGES = new int[0];
+	/**
+	 * The most edits between what has been typed and a keyword suggested for
+	 * it. Fewer are allowed for short text: none below three characters, and
+	 * one below six.
+	 */
+	static final int SUGGESTION_EDITS = 2;
+	/**
+	 * The most keywords added since the trie was built that lookups compare
+	 * one by one before the trie is built again.
+	 */
+	static final int TAIL_LIMIT = 256;
+	private KeywordDictionary dictionary;
+	// The posting list of each term id, or null if no page has the keyword.
+	private PostingList[] postings;
+	private int termCount;
+	// The number of keywords on each page, by id.
+	private int[] lengths;
+	private int documents;
+	private long totalLength;
+	private Bm25 model;
+	// The trie of the dictionary, or null until a lookup needs it. A renumbered
+	// copy shares it, since its keywords are on as many pages.
+	private volatile TermTrie trie;
+
+	/**
+	 * Returns an empty instance of InvertedIndex
+	 */
+	InvertedIndex() {
+		this.dictionary = new KeywordDictionary();
+		this.postings = new PostingList[16];
+		this.lengths = new int[16];
+		this.model = new Bm25(0, 0);
+	}
+
+	/**
+	 * @return The number of distinct keywords in the index
+	 */
+	int termCount() {
+		return termCount;
+	}
+
+	/**
+	 * @return The dictionary that numbers the keywords of the index
+	 */
+	KeywordDictionary dictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * Adds a page under each of its keywords.
+	 *
+	 * @param id    The id of the page
+	 * @param terms The term ids of the keywords of the page
+	 */
+	void addPage(int id, int[] terms) {
+		TermTrie trie = this.trie;
+		for (int term : terms) {
+			if (term >= postings.length) {
+				postings = Arrays.copyOf(postings, Math.max(term + 1, postings.length * 2));
+			}
+			if (postings[term] == null) {
+				postings[term] = new PostingList();
+				termCount += 1;
+			}
+			postings[term].add(id);
+			if (trie != null) {
+				trie.weigh(term, postings[term].size());
+			}
+		}
+		addLength(id, terms.length);
+	}
+
+	/**
+	 * Removes a page from under each of its keywords. Keywords left without pages
+	 * are dropped from the index, but keep their term ids.
+	 *
+	 * @param id    The id of the page
+	 * @param terms The term ids of the keywords of the page
+	 */
+	void removePage(int id, int[] terms) {
+		TermTrie trie = this.trie;
+		for (int term : terms) {
+			PostingList list = get(term);
+			if (list != null) {
+				list.remove(id);
+				if (trie != null) {
+					trie.weigh(term, list.size());
+				}
+				if (list.size() == 0) {
+					postings[term] = null;
+					termCount -= 1;
+				}
+			}
+		}
+		// Pages without keywords were never counted, and may be past the end.
+		if (id < lengths.length && lengths[id] > 0) {
+			documents -= 1;
+			totalLength -= lengths[id];
+			lengths[id] = 0;
+			refreshModel();
+		}
+	}
+
+	/**
+	 * Records the number of keywords on a new page. Pages without keywords can
+	 * never be found, so they are not counted in the statistics.
+	 */
+	private void addLength(int id, int length) {
+		if (length == 0) {
+			return;
+		}
+		if (id >= lengths.length) {
+			lengths = Arrays.copyOf(lengths, Math.max(id + 1, lengths.length * 2));
+		}
+		lengths[id] = length;
+		documents += 1;
+		totalLength += length;
+		refreshModel();
+	}
+
+	/**
+	 * Replaces the scoring statistics once the collection has drifted from them,
+	 * which makes every posting list recompute its impacts when next searched.
+	 */
+	private void refreshModel() {
+		if (model.isStale(documents, totalLength)) {
+			model = new Bm25(documents, totalLength);
+		}
+	}
+
+	/**
+	 * Copies the index with its pages renumbered. The renumbering keeps the
+	 * order of the pages, so each posting list stays sorted, and the copy shares
+	 * the dictionary and the relevance statistics of this index.
+	 *
+	 * @param ids   The new id of each page id, or -1 for ids without a page
+	 * @param count The number of pages
+	 * @return The renumbered index
+	 */
+	InvertedIndex renumber(int[] ids, int count) {
+		InvertedIndex renumbered = new InvertedIndex();
+		renumbered.dictionary = dictionary;
+		renumbered.postings = new PostingList[postings.length];
+		for (int term = 0; term < postings.length; term++) {
+			if (postings[term] != null) {
+				renumbered.postings[term] = postings[term].renumber(ids);
+			}
+		}
+		renumbered.termCount = termCount;
+		renumbered.lengths = new int[Math.max(16, count)];
+		for (int id = 0; id < Math.min(ids.length, lengths.length); id++) {
+			if (ids[id] >= 0) {
+				renumbered.lengths[ids[id]] = lengths[id];
+			}
+		}
+		renumbered.documents = documents;
+		renumbered.totalLength = totalLength;
+		renumbered.model = model;
+		renumbered.trie = trie;
+		return renumbered;
+	}
+
+	/**
+	 * @return The relevance statistics, which are replaced rather than changed
+	 */
+	Bm25 model() {
+		return model;
+	}
+
+	/**
+	 * Returns the relevance of a keyword to each page with it, computing it if
+	 * the list or the statistics have changed since it was last computed.
+	 *
+	 * @param list A posting list of the index
+	 * @return The relevance of the keyword to each page in the list
+	 */
+	Bm25.Impacts impacts(PostingList list) {
+		Bm25.Impacts impacts = list.impacts();
+		if (impacts == null || impacts.model != model) {
+			impacts = model.impacts(list, lengths);
+			list.setImpacts(impacts);
+		}
+		return impacts;
+	}
+
+	/**
+	 * @return The posting list of the keyword, or null if no page has it
+	 */
+	PostingList get(String keyword) {
+		return get(dictionary.find(keyword));
+	}
+
+	/**
+	 * @return The posting list of the term id, or null if no page has it
+	 */
+	PostingList get(int term) {
+		return term >= 0 && term < postings.length ? postings[term] : null;
+	}
+
+	/**
+	 * @param pattern A pattern, as <code>TermTrie.wildcard</code> reads it
+	 * @return The keywords with pages that match the pattern
+	 */
+	String[] matchPattern(String pattern) {
+		TermTrie trie = trie();
+		Found found = new Found();
+		trie.wildcard(pattern, found);
+		for (int term = trie.idLimit(); term < dictionary.idLimit(); term++) {
+			if (dictionary.contains(term) && TermTrie.matches(pattern, dictionary.get(term))) {
+				found.match(term, 0);
+			}
+		}
+		return found.keywords();
+	}
+
+	/**
+	 * @param keyword  A keyword
+	 * @param maxEdits The greatest number of edits
+	 * @return The keywords with pages within the number of edits of the keyword
+	 */
+	String[] matchFuzzy(String keyword, int maxEdits) {
+		TermTrie trie = trie();
+		Found found = new Found();
+		trie.fuzzy(keyword, maxEdits, found);
+		for (int term = trie.idLimit(); term < dictionary.idLimit(); term++) {
+			if (dictionary.contains(term)) {
+				int edits = TermTrie.distance(keyword, dictionary.get(term), maxEdits);
+				if (edits <= maxEdits) {
+					found.match(term, edits);
+				}
+			}
+		}
+		return found.keywords();
+	}
+
+	/**
+	 * Suggests keywords for what has been typed so far: the keywords that
+	 * start with it, on the most pages first, and then, if there are too few,
+	 * the keywords within SUGGESTION_EDITS of it, fewest edits first. Keywords
+	 * on as many pages are suggested in sorted order.
+	 *
+	 * @param prefix The text typed so far
+	 * @param count  The greatest number of keywords to suggest
+	 * @return The keywords suggested, best first
+	 */
+	ArrayList<String> suggest(String prefix, int count) {
+		count = Math.min(count, termCount);
+		ArrayList<String> suggestions = new ArrayList<String>(count);
+		if (count == 0) {
+			return suggestions;
+		}
+		TermTrie trie = trie();
+		ArrayList<Suggestion> found = new ArrayList<Suggestion>();
+		trie.top(prefix, count, (term, edits) -> found.add(new Suggestion(term, 0)));
+		for (int term = trie.idLimit(); term < dictionary.idLimit(); term++) {
+			if (get(term) != null && dictionary.get(term).startsWith(prefix)) {
+				found.add(new Suggestion(term, 0));
+			}
+		}
+		found.sort(null);
+		for (int i = 0; i < found.size() && suggestions.size() < count; i++) {
+			suggestions.add(found.get(i).keyword);
+		}
+		int maxEdits = prefix.length() < 3 ? 0 : prefix.length() < 6 ? 1 : SUGGESTION_EDITS;
+		if (suggestions.size() < count && maxEdits > 0) {
+			found.clear();
+			trie.fuzzy(prefix, maxEdits, (term, edits) -> found.add(new Suggestion(term, edits)));
+			for (int term = trie.idLimit(); term < dictionary.idLimit(); term++) {
+				if (get(term) != null) {
+					int edits = TermTrie.distance(prefix, dictionary.get(term), maxEdits);
+					if (edits <= maxEdits) {
+						found.add(new Suggestion(term, edits));
+					}
+				}
+			}
+			found.removeIf(suggestion -> suggestion.pages == 0 || suggestion.keyword.startsWith(prefix));
+			found.sort(null);
+			for (int i = 0; i < found.size() && suggestions.size() < count; i++) {
+				suggestions.add(found.get(i).keyword);
+			}
+		}
+		return suggestions;
+	}
+
+	/**
+	 * Returns the trie of the dictionary, building it if there is none yet or
+	 * too many keywords have been added since it was built. Builds happen
+	 * under the read lock of the graph, so they never race a change to the
+	 * weights.
+	 */
+	private TermTrie trie() {
+		TermTrie trie = this.trie;
+		if (trie == null || dictionary.idLimit() - trie.idLimit() > TAIL_LIMIT) {
+			synchronized (this) {
+				trie = this.trie;
+				if (trie == null || dictionary.idLimit() - trie.idLimit() > TAIL_LIMIT) {
+					trie = buildTrie();
+					this.trie = trie;
+				}
+			}
+		}
+		return trie;
+	}
+
+	/**
+	 * @return A trie of every keyword of the dictionary, weighted by the number
+	 *         of pages with it
+	 */
+	private TermTrie buildTrie() {
+		int idLimit = dictionary.idLimit();
+		String[] keywords = new String[dictionary.size()];
+		int[] ids = new int[keywords.length];
+		int[] weights = new int[keywords.length];
+		int count = 0;
+		for (int term = 0; term < idLimit; term++) {
+			if (dictionary.contains(term)) {
+				PostingList list = get(term);
+				keywords[count] = dictionary.get(term);
+				ids[count] = term;
+				weights[count] = list == null ? 0 : list.size();
+				count += 1;
+			}
+		}
+		return TermTrie.build(keywords, ids, weights, count, idLimit);
+	}
+
+	/**
+	 * <code>Suggestion</code> class is a keyword that may be suggested, ordered
+	 * by fewest edits, then most pages, then the keyword itself.
+	 */
+	private final class Suggestion implements Comparable<Suggestion> {
+		final String keyword;
+		final int edits;
+		final int pages;
+
+		Suggestion(int term, int edits) {
+			PostingList list = get(term);
+			this.keyword = dictionary.get(term);
+			this.edits = edits;
+			this.pages = list == null ? 0 : list.size();
+		}
+
+		@Override
+		public int compareTo(Suggestion other) {
+			if (edits != other.edits) {
+				return Integer.compare(edits, other.edits);
+			} else if (pages != other.pages) {
+				return Integer.compare(other.pages, pages);
+			}
+			return keyword.compareTo(other.keyword);
+		}
+	}
+
+	/**
+	 * <code>Found</code> class gathers the keywords of a lookup that are on at
+	 * least one page.
+	 */
+	private final class Found implements TermTrie.Matches {
+		private final ArrayList<String> keywords = new ArrayList<String>();
+
+		@Override
+		public void match(int term, int edits) {
+			if (get(term) != null) {
+				keywords.add(dictionary.get(term));
+			}
+		}
+
+		String[] keywords() {
+			return keywords.toArray(new String[0]);
+		}
+	}
+
+	/**
+	 * @return The ids of the pages with the keyword in ascending order
+	 */
+	int[] lookup(String keyword) {
+		PostingList list = get(keyword);
+		return list == null ? NO_PAGES : list.toArray();
+	}
+
+	/**
+	 * Writes the posting lists to a snapshot as one array of ids, grouped by
+	 * term id. The dictionary is written separately.
+	 */
+	void write(SnapshotWriter out) throws IOException {
+		int termLimit = dictionary.idLimit();
+		int[] offsets = new int[termLimit + 1];
+		for (int term = 0; term < termLimit; term++) {
+			PostingList list = get(term);
+			offsets[term + 1] = offsets[term] + (list == null ? 0 : list.size());
+		}
+		int[] ids = new int[offsets[termLimit]];
+		for (int term = 0; term < termLimit; term++) {
+			if (offsets[term + 1] > offsets[term]) {
+				postings[term].copyTo(ids, offsets[term]);
+			}
+		}
+		out.writeInt(offsets.length);
+		out.writeInts(offsets, 0, offsets.length);
+		out.writeInt(ids.length);
+		out.writeInts(ids, 0, ids.length);
+	}
+
+	/**
+	 * Replaces the contents of the index with posting lists read from a
+	 * snapshot. The snapshot holds only the ids, so the frequencies and page
+	 * lengths are counted again from the keywords of the pages, walking the
+	 * pages in id order so that each list is read front to back. The dictionary
+	 * must have been read first.
+	 *
+	 * @param pageOffsets Where the term ids of each page start in pageTerms, by
+	 *                    page id, with one more entry for the end
+	 * @param pageTerms   The term id of every keyword of every page
+	 * @throws IllegalArgumentException If the index in the snapshot is
+	 *                                  inconsistent
+	 */
+	void read(SnapshotReader in, int[] pageOffsets, int[] pageTerms) throws IOException, IllegalArgumentException {
+		int termLimit = dictionary.idLimit();
+		int[] offsets = new int[in.readLength(4)];
+		in.readInts(offsets, 0, offsets.length);
+		int[] ids = new int[in.readLength(4)];
+		in.readInts(ids, 0, ids.length);
+		if (offsets.length != termLimit + 1 || offsets[termLimit] != ids.length) {
+			throw in.corrupt("The posting lists do not match the keywords.");
+		}
+		PostingList[] lists = new PostingList[Math.max(16, termLimit)];
+		termCount = 0;
+		for (int term = 0; term < termLimit; term++) {
+			int size = offsets[term + 1] - offsets[term];
+			if (size > 0) {
+				lists[term] = new PostingList(Arrays.copyOfRange(ids, offsets[term], offsets[term + 1]), size);
+				lists[term].clearFrequencies();
+				termCount += 1;
+			}
+		}
+		postings = lists;
+		trie = null;
+		lengths = new int[Math.max(16, pageOffsets.length - 1)];
+		documents = 0;
+		totalLength = 0;
+		int[] cursors = new int[termLimit];
+		for (int id = 0; id + 1 < pageOffsets.length; id++) {
+			int length = pageOffsets[id + 1] - pageOffsets[id];
+			if (length == 0) {
+				continue;
+			}
+			for (int i = pageOffsets[id]; i < pageOffsets[id + 1]; i++) {
+				int term = pageTerms[i];
+				int position = lists[term] == null ? -1 : lists[term].count(cursors[term], id);
+				if (position < 0) {
+					throw in.corrupt("The posting lists do not match the pages.");
+				}
+				cursors[term] = position;
+			}
+			lengths[id] = length;
+			documents += 1;
+			totalLength += length;
+		}
+		model = new Bm25(documents, totalLength);
+	}
+}
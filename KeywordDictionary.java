@@ -0,0 +1,259 @@
+package searchEngine;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * <code>KeywordDictionary</code> class maps every distinct keyword of a graph
+ * to a dense int term id, so that pages and the index can store keywords as
+ * ints instead of Strings. Each keyword is held once, as UTF-8 bytes in a
+ * <code>StringDictionary</code>, and as one shared String once it has been
+ * asked for. Term ids are never reused, so they stay valid for as long as
+ * the dictionary lives.
+ *
+ * It also packs the term ids of a page into bytes: each id is written as its
+ * difference from the previous id, zigzag-encoded so that small negative
+ * differences stay small, in a varint of seven bits per byte. Pages mostly
+ * repeat a few common keywords, which have small ids, so most keywords take
+ * one or two bytes.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+class KeywordDictionary {
+	private static final int[] NO_TERMS = new int[0];
+
+	private StringDictionary terms;
+	// The keyword of each term id, decoded the first time it is asked for.
+	private String[] strings;
+
+	/**
+	 * Returns an empty instance of KeywordDictionary
+	 */
+	KeywordDictionary() {
+		this.terms = new StringDictionary();
+		this.strings = new String[16];
+	}
+
+	/**
+	 * @return The number of keywords in the dictionary
+	 */
+	int size() {
+		return terms.size();
+	}
+
+	/**
+	 * @return One more than the greatest term id handed out
+	 */
+	int idLimit() {
+		return terms.idLimit();
+	}
+
+	/**
+	 * @return true if the id refers to a keyword in the dictionary
+	 */
+	boolean contains(int id) {
+		return terms.contains(id);
+	}
+
+	/**
+	 * @return The term id of the keyword, or -1 if it is not in the dictionary
+	 */
+	int find(String keyword) {
+		return terms.find(keyword);
+	}
+
+	/**
+	 * Returns the term id of a keyword, adding it if it is new.
+	 *
+	 * @throws FullGraphException If the dictionary cannot hold the keyword
+	 */
+	int intern(String keyword) throws FullGraphException {
+		int id = terms.find(keyword);
+		if (id == -1) {
+			id = terms.add(keyword);
+			remember(id, keyword);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the term id of a keyword given as UTF-8 bytes, adding it if it is
+	 * new. Used by <code>GraphLoader</code>, so that loading creates no String
+	 * per keyword.
+	 *
+	 * @throws FullGraphException If the dictionary cannot hold the keyword
+	 */
+	int intern(byte[] bytes, int offset, int length) throws FullGraphException {
+		int id = terms.find(bytes, offset, length);
+		if (id == -1) {
+			id = terms.add(bytes, offset, length);
+			remember(id, null);
+		}
+		return id;
+	}
+
+	/**
+	 * @param id A term id handed out by the dictionary
+	 * @return The keyword, shared by every caller
+	 */
+	String get(int id) {
+		String keyword = strings[id];
+		if (keyword == null) {
+			// Racing readers may each decode it; any of the copies will do.
+			keyword = terms.get(id);
+			strings[id] = keyword;
+		}
+		return keyword;
+	}
+
+	/**
+	 * @return The number of bytes held by the dictionary, not counting the
+	 *         Strings decoded from it
+	 */
+	long bytes() {
+		return terms.bytes() + 4L * strings.length;
+	}
+
+	/**
+	 * Makes room for a new term id and records its String, if known.
+	 */
+	private void remember(int id, String keyword) {
+		if (id >= strings.length) {
+			strings = Arrays.copyOf(strings, Math.max(id + 1, strings.length * 2));
+		}
+		strings[id] = keyword;
+	}
+
+	/**
+	 * Writes the dictionary to a snapshot.
+	 */
+	void write(SnapshotWriter out) throws IOException {
+		terms.write(out);
+	}
+
+	/**
+	 * Replaces the contents of the dictionary with one read from a snapshot.
+	 *
+	 * @throws IllegalArgumentException If the dictionary in the snapshot is
+	 *                                  inconsistent
+	 */
+	void read(SnapshotReader in) throws IOException, IllegalArgumentException {
+		terms.read(in);
+		strings = new String[Math.max(16, terms.idLimit())];
+	}
+
+	/**
+	 * Packs term ids into bytes.
+	 *
+	 * @param ids  The term ids, in the order of the page's keywords
+	 * @param from The position of the first id to pack
+	 * @param to   The position just past the last id to pack
+	 * @return The packed ids
+	 */
+	static byte[] pack(int[] ids, int from, int to) {
+		byte[] packed = new byte[packedLength(ids, from, to)];
+		pack(ids, from, to, packed, 0);
+		return packed;
+	}
+
+	/**
+	 * @return The number of bytes <code>pack</code> turns the ids into
+	 */
+	static int packedLength(int[] ids, int from, int to) {
+		int length = 0;
+		int previous = 0;
+		for (int i = from; i < to; i++) {
+			length += varintLength(zigzag(ids[i] - previous));
+			previous = ids[i];
+		}
+		return length;
+	}
+
+	/**
+	 * Packs term ids into an existing array, which must have room for them.
+	 *
+	 * @param packed   The array to pack into
+	 * @param position The position in packed of the first byte
+	 * @return The position just past the last byte
+	 */
+	static int pack(int[] ids, int from, int to, byte[] packed, int position) {
+		int previous = 0;
+		for (int i = from; i < to; i++) {
+			int value = zigzag(ids[i] - previous);
+			previous = ids[i];
+			while ((value & ~0x7F) != 0) {
+				packed[position++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			packed[position++] = (byte) value;
+		}
+		return position;
+	}
+
+	/**
+	 * @param packed Term ids packed by <code>pack</code>
+	 * @return The number of term ids packed
+	 */
+	static int count(byte[] packed) {
+		return count(packed, 0, packed.length);
+	}
+
+	/**
+	 * @return The number of term ids packed between two positions of an array
+	 */
+	static int count(byte[] packed, int from, int to) {
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			// Every varint ends in the one byte with its high bit clear.
+			count += packed[i] >= 0 ? 1 : 0;
+		}
+		return count;
+	}
+
+	/**
+	 * @param packed Term ids packed by <code>pack</code>
+	 * @return The term ids, in order
+	 */
+	static int[] unpack(byte[] packed) {
+		return unpack(packed, 0, packed.length);
+	}
+
+	/**
+	 * @return The term ids packed between two positions of an array, in order
+	 */
+	static int[] unpack(byte[] packed, int from, int to) {
+		if (from == to) {
+			return NO_TERMS;
+		}
+		int[] ids = new int[count(packed, from, to)];
+		int position = from;
+		int previous = 0;
+		for (int i = 0; i < ids.length; i++) {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = packed[position++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			previous += (value >>> 1) ^ -(value & 1);
+			ids[i] = previous;
+		}
+		return ids;
+	}
+
+	private static int zigzag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	private static int varintLength(int value) {
+		int length = 1;
+		while ((value & ~0x7F) != 0) {
+			length += 1;
+			value >>>= 7;
+		}
+		return length;
+	}
+}
@@ -0,0 +1,876 @@
+package searchEngine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * <code>LinkStore</code> class stores the links of a <code>WebGraph</code> in
+ * compressed sparse row (CSR) form. Forward and reverse adjacency are kept in
+ * primitive int arrays, and link mutations go into a small sorted delta buffer
+ * that is merged back into the CSR arrays by a background compaction.
+ *
+ * The CSR arrays can be kept outside the heap. They are then built on the
+ * heap as before and copied out once complete, and each set of arrays is
+ * released as soon as the store replaces it. Arrays are only replaced while
+ * nothing else reads them: callers of {@link #compact()} read the arrays it
+ * returns only until the next change to the store.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+class LinkStore {
+	/**
+	 * Number of buffered mutations that triggers a background compaction.
+	 */
+	static final int COMPACT_THRESHOLD = 1 << 12;
+	// Bulk loads sort links in at most 2^BUCKET_BITS buckets of sources, and
+	// split other per-node work into blocks of BLOCK nodes.
+	private static final int BUCKET_BITS = 12;
+	private static final int BLOCK = 1 << 12;
+	private static final long REMOVE_OP = Long.MIN_VALUE;
+	private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "link-store-compactor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final long memoryBudget;
+	private final boolean offHeap;
+	private int nodeCount;
+	private long edgeCount;
+	private int[] outDegree;
+	private int[] inDegree;
+	private Csr csr;
+	private EdgeBuffer added;
+	private EdgeBuffer addedReverse;
+	private EdgeBuffer removed;
+	private boolean compacting;
+	private long[] pendingOps;
+	private int pendingCount;
+
+	/**
+	 * An immutable CSR snapshot of the links. The arrays are never modified once
+	 * built; compaction replaces the whole snapshot. They are int buffers, which
+	 * either wrap arrays on the heap or view memory outside it.
+	 */
+	static final class Csr {
+		final int nodes;
+		final IntBuffer forwardOffsets;
+		final IntBuffer forwardTargets;
+		final IntBuffer reverseOffsets;
+		final IntBuffer reverseSources;
+		// The direct buffers behind the arrays, or null if they are on the heap.
+		private final ByteBuffer[] memory;
+
+		Csr(int nodes, int[] forwardOffsets, int[] forwardTargets, int[] reverseOffsets, int[] reverseSources) {
+			this.nodes = nodes;
+			this.forwardOffsets = IntBuffer.wrap(forwardOffsets);
+			this.forwardTargets = IntBuffer.wrap(forwardTargets);
+			this.reverseOffsets = IntBuffer.wrap(reverseOffsets);
+			this.reverseSources = IntBuffer.wrap(reverseSources);
+			this.memory = null;
+		}
+
+		private Csr(int nodes, ByteBuffer[] memory) {
+			this.nodes = nodes;
+			this.forwardOffsets = memory[0].asIntBuffer();
+			this.forwardTargets = memory[1].asIntBuffer();
+			this.reverseOffsets = memory[2].asIntBuffer();
+			this.reverseSources = memory[3].asIntBuffer();
+			this.memory = memory;
+		}
+
+		/**
+		 * @return A copy of the snapshot outside the heap
+		 */
+		Csr offHeap() {
+			IntBuffer[] arrays = { forwardOffsets, forwardTargets, reverseOffsets, reverseSources };
+			ByteBuffer[] copies = new ByteBuffer[arrays.length];
+			for (int i = 0; i < arrays.length; i++) {
+				copies[i] = OffHeap.bytes(4 * arrays[i].limit());
+				copies[i].asIntBuffer().put(arrays[i].duplicate());
+			}
+			return new Csr(nodes, copies);
+		}
+
+		/**
+		 * Releases the memory outside the heap behind the arrays, if there is any.
+		 * The snapshot must not be read afterwards.
+		 */
+		void free() {
+			if (memory != null) {
+				for (ByteBuffer buffer : memory) {
+					OffHeap.free(buffer);
+				}
+			}
+		}
+
+		/**
+		 * @return The number of links
+		 */
+		int edges() {
+			return forwardTargets.limit();
+		}
+
+		/**
+		 * @return true if the CSR arrays contain the link
+		 */
+		boolean contains(int source, int destination) {
+			if (source >= nodes) {
+				return false;
+			}
+			int low = forwardOffsets.get(source);
+			int high = forwardOffsets.get(source + 1) - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				int target = forwardTargets.get(middle);
+				if (target < destination) {
+					low = middle + 1;
+				} else if (target > destination) {
+					high = middle - 1;
+				} else {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @return The number of bytes held by the arrays
+		 */
+		long bytes() {
+			return 4L * (forwardOffsets.limit() + forwardTargets.limit() + reverseOffsets.limit()
+					+ reverseSources.limit());
+		}
+	}
+
+	/**
+	 * Returns an empty instance of LinkStore that keeps its arrays on the heap
+	 *
+	 * @param memoryBudget The number of bytes the store may grow to
+	 */
+	LinkStore(long memoryBudget) {
+		this(memoryBudget, false);
+	}
+
+	/**
+	 * Returns an empty instance of LinkStore
+	 *
+	 * @param memoryBudget The number of bytes the store may grow to
+	 * @param offHeap      true to keep the CSR arrays outside the heap
+	 */
+	LinkStore(long memoryBudget, boolean offHeap) {
+		this.memoryBudget = memoryBudget;
+		this.offHeap = offHeap;
+		this.nodeCount = 0;
+		this.edgeCount = 0;
+		this.outDegree = new int[16];
+		this.inDegree = new int[16];
+		this.csr = new Csr(0, new int[1], new int[0], new int[1], new int[0]);
+		this.added = new EdgeBuffer();
+		this.addedReverse = new EdgeBuffer();
+		this.removed = new EdgeBuffer();
+		this.pendingOps = new long[16];
+	}
+
+	/**
+	 * @return true if the CSR arrays are kept outside the heap
+	 */
+	boolean isOffHeap() {
+		return offHeap;
+	}
+
+	/**
+	 * @return The number of nodes in the store
+	 */
+	synchronized int nodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * @return The number of links in the store
+	 */
+	synchronized long edgeCount() {
+		return edgeCount;
+	}
+
+	/**
+	 * @return The estimated number of bytes held by the store
+	 */
+	synchronized long bytes() {
+		return csr.bytes() + 8L * outDegree.length + added.bytes() + addedReverse.bytes() + removed.bytes();
+	}
+
+	/**
+	 * Adds a node with no links to the store. Any missing nodes with smaller ids
+	 * are added as well.
+	 *
+	 * @param id The id of the new node
+	 * @throws FullGraphException If the memory budget does not allow another node
+	 */
+	synchronized void addNode(int id) throws FullGraphException {
+		if (id < nodeCount) {
+			return;
+		}
+		ensureBudget(id + 1, edgeCount);
+		if (id >= outDegree.length) {
+			int capacity = Math.max(id + 1, outDegree.length + (outDegree.length >> 1));
+			outDegree = Arrays.copyOf(outDegree, capacity);
+			inDegree = Arrays.copyOf(inDegree, capacity);
+		}
+		nodeCount = id + 1;
+	}
+
+	/**
+	 * Removes every link entering or leaving a node. The node keeps its id.
+	 *
+	 * @param id The id of the node
+	 */
+	synchronized void removeNode(int id) {
+		if (id >= nodeCount) {
+			return;
+		}
+		for (int destination : outNeighbors(id)) {
+			removeEdge(id, destination);
+		}
+		for (int source : inNeighbors(id)) {
+			removeEdge(source, id);
+		}
+	}
+
+	/**
+	 * Adds and removes many links at once. Large sets are merged straight into
+	 * new CSR arrays instead of going through the delta buffer.
+	 *
+	 * @param adds    Packed keys of links that are not in the store, ascending
+	 * @param removes Packed keys of links that are in the store, ascending
+	 * @throws FullGraphException If the links do not fit in the memory budget
+	 */
+	synchronized void apply(long[] adds, long[] removes) throws FullGraphException {
+		ensureBudget(nodeCount, edgeCount + adds.length - removes.length);
+		if (adds.length + removes.length < COMPACT_THRESHOLD) {
+			for (long key : removes) {
+				removeEdge(EdgeBuffer.source(key), EdgeBuffer.destination(key));
+			}
+			for (long key : adds) {
+				addEdge(EdgeBuffer.source(key), EdgeBuffer.destination(key));
+			}
+			return;
+		}
+		compact();
+		replace(place(merge(csr, nodeCount, new EdgeBuffer(adds, adds.length),
+				new EdgeBuffer(removes, removes.length))));
+		edgeCount = csr.edges();
+		for (int u = 0; u < nodeCount; u++) {
+			outDegree[u] = csr.forwardOffsets.get(u + 1) - csr.forwardOffsets.get(u);
+			inDegree[u] = csr.reverseOffsets.get(u + 1) - csr.reverseOffsets.get(u);
+		}
+	}
+
+	/**
+	 * Checks that a store of the given size fits in the memory budget.
+	 *
+	 * @throws FullGraphException If it does not
+	 */
+	synchronized void checkBudget(int nodes, long edges) throws FullGraphException {
+		ensureBudget(nodes, edges);
+	}
+
+	/**
+	 * Replaces the contents of the store with the given links. Duplicate links
+	 * are kept once.
+	 *
+	 * @param nodes        The number of nodes
+	 * @param sources      The source of each link
+	 * @param destinations The destination of each link
+	 * @param count        The number of links in the arrays
+	 * @throws FullGraphException If the links do not fit in the memory budget
+	 */
+	synchronized void load(int nodes, int[] sources, int[] destinations, int count) throws FullGraphException {
+		load(nodes, new int[][] { sources }, new int[][] { destinations }, new int[] { count }, null);
+	}
+
+	/**
+	 * Replaces the contents of the store with links given in chunks, building the
+	 * CSR arrays with a counting sort by source. Duplicate links are kept once.
+	 *
+	 * @param nodes        The number of nodes
+	 * @param sources      The sources of the links in each chunk
+	 * @param destinations The destinations of the links in each chunk
+	 * @param counts       The number of links in each chunk
+	 * @param pool         The pool to sort on, or null to sort on this thread
+	 * @throws FullGraphException If the links do not fit in the memory budget
+	 */
+	synchronized void load(int nodes, int[][] sources, int[][] destinations, int[] counts, ForkJoinPool pool)
+			throws FullGraphException {
+		long total = 0;
+		for (int count : counts) {
+			total += count;
+		}
+		ensureBudget(nodes, total);
+		compact();
+		int[][] forward = group(nodes, sources, destinations, counts, pool);
+		int[] offsets = forward[0];
+		int[] targets = forward[1];
+		// Reverse adjacency is the same grouping with the pairs flipped.
+		int[] expanded = new int[targets.length];
+		forEach(pool, (nodes + BLOCK - 1) / BLOCK, block -> {
+			for (int u = block * BLOCK; u < Math.min(nodes, (block + 1) * BLOCK); u++) {
+				Arrays.fill(expanded, offsets[u], offsets[u + 1], u);
+			}
+		});
+		int[][] reverse = group(nodes, new int[][] { targets }, new int[][] { expanded },
+				new int[] { targets.length }, pool);
+		replace(place(new Csr(nodes, offsets, targets, reverse[0], reverse[1])));
+		nodeCount = nodes;
+		edgeCount = targets.length;
+		outDegree = new int[Math.max(16, nodes)];
+		inDegree = new int[Math.max(16, nodes)];
+		for (int u = 0; u < nodes; u++) {
+			outDegree[u] = offsets[u + 1] - offsets[u];
+			inDegree[u] = reverse[0][u + 1] - reverse[0][u];
+		}
+	}
+
+	/**
+	 * Writes the compacted CSR arrays to a snapshot.
+	 */
+	synchronized void write(SnapshotWriter out) throws IOException {
+		Csr current = compact();
+		int edges = current.forwardOffsets.get(current.nodes);
+		out.writeInt(current.nodes + 1);
+		out.writeInts(current.forwardOffsets, 0, current.nodes + 1);
+		out.writeInt(edges);
+		out.writeInts(current.forwardTargets, 0, edges);
+		out.writeInt(current.nodes + 1);
+		out.writeInts(current.reverseOffsets, 0, current.nodes + 1);
+		out.writeInt(edges);
+		out.writeInts(current.reverseSources, 0, edges);
+	}
+
+	/**
+	 * Replaces the contents of the store with CSR arrays read from a snapshot.
+	 *
+	 * @throws IllegalArgumentException If the arrays in the snapshot are
+	 *                                  inconsistent
+	 * @throws FullGraphException       If the links do not fit in the memory
+	 *                                  budget
+	 */
+	synchronized void read(SnapshotReader in) throws IOException, IllegalArgumentException, FullGraphException {
+		int[] offsets = new int[in.readLength(4)];
+		in.readInts(offsets, 0, offsets.length);
+		int nodes = offsets.length - 1;
+		int[] targets = new int[in.readLength(4)];
+		in.readInts(targets, 0, targets.length);
+		int[] reverseOffsets = new int[in.readLength(4)];
+		in.readInts(reverseOffsets, 0, reverseOffsets.length);
+		int[] sources = new int[in.readLength(4)];
+		in.readInts(sources, 0, sources.length);
+		if (nodes < 0 || reverseOffsets.length != nodes + 1 || offsets[nodes] != targets.length
+				|| reverseOffsets[nodes] != targets.length || sources.length != targets.length) {
+			throw in.corrupt("The link arrays do not match.");
+		}
+		ensureBudget(nodes, targets.length);
+		compact();
+		replace(place(new Csr(nodes, offsets, targets, reverseOffsets, sources)));
+		nodeCount = nodes;
+		edgeCount = targets.length;
+		outDegree = new int[Math.max(16, nodes)];
+		inDegree = new int[Math.max(16, nodes)];
+		for (int u = 0; u < nodes; u++) {
+			outDegree[u] = offsets[u + 1] - offsets[u];
+			inDegree[u] = reverseOffsets[u + 1] - reverseOffsets[u];
+		}
+	}
+
+	/**
+	 * Groups (key, value) pairs into CSR rows indexed by key, with each row sorted
+	 * and free of duplicates. The pairs are first partitioned into buckets of
+	 * consecutive keys, each chunk writing through its own cursors, and then each
+	 * bucket is sorted on its own. No step needs atomics, and the result does not
+	 * depend on the pool.
+	 *
+	 * @return The row offsets and the values
+	 */
+	private static int[][] group(int nodes, int[][] keys, int[][] values, int[] counts, ForkJoinPool pool) {
+		int shift = Math.max(0, 32 - Integer.numberOfLeadingZeros(Math.max(1, nodes - 1)) - BUCKET_BITS);
+		int buckets = ((Math.max(1, nodes) - 1) >>> shift) + 1;
+		int chunks = keys.length;
+		int[][] cursors = new int[chunks][buckets];
+		forEach(pool, chunks, c -> {
+			for (int i = 0; i < counts[c]; i++) {
+				cursors[c][keys[c][i] >>> shift]++;
+			}
+		});
+		int[] bucketStarts = new int[buckets + 1];
+		int position = 0;
+		for (int b = 0; b < buckets; b++) {
+			bucketStarts[b] = position;
+			for (int c = 0; c < chunks; c++) {
+				int count = cursors[c][b];
+				cursors[c][b] = position;
+				position += count;
+			}
+		}
+		bucketStarts[buckets] = position;
+		int[] pairKeys = new int[position];
+		int[] pairValues = new int[position];
+		forEach(pool, chunks, c -> {
+			int[] cursor = cursors[c];
+			for (int i = 0; i < counts[c]; i++) {
+				int slot = cursor[keys[c][i] >>> shift]++;
+				pairKeys[slot] = keys[c][i];
+				pairValues[slot] = values[c][i];
+			}
+		});
+		int[] sorted = new int[position];
+		int[] rowStarts = new int[nodes];
+		int[] rowLengths = new int[nodes];
+		forEach(pool, buckets, b -> {
+			int first = b << shift;
+			int last = Math.min(nodes, (b + 1) << shift);
+			int start = bucketStarts[b];
+			int[] next = new int[last - first];
+			for (int i = start; i < bucketStarts[b + 1]; i++) {
+				next[pairKeys[i] - first]++;
+			}
+			for (int k = first, row = start; k < last; k++) {
+				int count = next[k - first];
+				rowStarts[k] = row;
+				next[k - first] = row;
+				row += count;
+			}
+			for (int i = start; i < bucketStarts[b + 1]; i++) {
+				sorted[next[pairKeys[i] - first]++] = pairValues[i];
+			}
+			for (int k = first; k < last; k++) {
+				int rowStart = rowStarts[k];
+				int rowEnd = k + 1 == last ? bucketStarts[b + 1] : rowStarts[k + 1];
+				Arrays.sort(sorted, rowStart, rowEnd);
+				int length = 0;
+				for (int i = rowStart; i < rowEnd; i++) {
+					if (i == rowStart || sorted[i] != sorted[i - 1]) {
+						sorted[rowStart + length++] = sorted[i];
+					}
+				}
+				rowLengths[k] = length;
+			}
+		});
+		int[] offsets = new int[nodes + 1];
+		for (int k = 0; k < nodes; k++) {
+			offsets[k + 1] = offsets[k] + rowLengths[k];
+		}
+		if (offsets[nodes] == position) {
+			return new int[][] { offsets, sorted };
+		}
+		int[] targets = new int[offsets[nodes]];
+		forEach(pool, (nodes + BLOCK - 1) / BLOCK, block -> {
+			for (int k = block * BLOCK; k < Math.min(nodes, (block + 1) * BLOCK); k++) {
+				System.arraycopy(sorted, rowStarts[k], targets, offsets[k], rowLengths[k]);
+			}
+		});
+		return new int[][] { offsets, targets };
+	}
+
+	/**
+	 * Runs a task for every index in [0, count), on the pool if there is one.
+	 */
+	private static void forEach(ForkJoinPool pool, int count, IntConsumer task) {
+		if (pool == null) {
+			for (int i = 0; i < count; i++) {
+				task.accept(i);
+			}
+		} else {
+			pool.submit(() -> IntStream.range(0, count).parallel().forEach(task)).join();
+		}
+	}
+
+	/**
+	 * @return true if the store contains the link
+	 */
+	synchronized boolean hasEdge(int source, int destination) {
+		if (added.contains(source, destination)) {
+			return true;
+		}
+		return csr.contains(source, destination) && !removed.contains(source, destination);
+	}
+
+	/**
+	 * Adds a link to the store.
+	 *
+	 * @return true if the link was not already in the store
+	 * @throws FullGraphException If the memory budget does not allow another link
+	 */
+	synchronized boolean addEdge(int source, int destination) throws FullGraphException {
+		if (hasEdge(source, destination)) {
+			return false;
+		}
+		ensureBudget(nodeCount, edgeCount + 1);
+		setPresent(source, destination, true);
+		outDegree[source] += 1;
+		inDegree[destination] += 1;
+		edgeCount += 1;
+		recordPending(EdgeBuffer.key(source, destination));
+		maybeCompact();
+		return true;
+	}
+
+	/**
+	 * Removes a link from the store.
+	 *
+	 * @return true if the link was in the store
+	 */
+	synchronized boolean removeEdge(int source, int destination) {
+		if (!hasEdge(source, destination)) {
+			return false;
+		}
+		setPresent(source, destination, false);
+		outDegree[source] -= 1;
+		inDegree[destination] -= 1;
+		edgeCount -= 1;
+		recordPending(EdgeBuffer.key(source, destination) | REMOVE_OP);
+		maybeCompact();
+		return true;
+	}
+
+	/**
+	 * @return The number of links leaving the node
+	 */
+	synchronized int outDegree(int id) {
+		return outDegree[id];
+	}
+
+	/**
+	 * @return The number of links entering the node
+	 */
+	synchronized int inDegree(int id) {
+		return inDegree[id];
+	}
+
+	/**
+	 * @return The ids the node links to, in ascending order
+	 */
+	synchronized int[] outNeighbors(int id) {
+		int[] result = new int[outDegree[id]];
+		int count = 0;
+		int i = id < csr.nodes ? csr.forwardOffsets.get(id) : 0;
+		int end = id < csr.nodes ? csr.forwardOffsets.get(id + 1) : 0;
+		int j = added.firstFrom(id);
+		while (i < end || (j < added.size() && EdgeBuffer.source(added.get(j)) == id)) {
+			int fromCsr = i < end ? csr.forwardTargets.get(i) : Integer.MAX_VALUE;
+			int fromDelta = j < added.size() && EdgeBuffer.source(added.get(j)) == id
+					? EdgeBuffer.destination(added.get(j))
+					: Integer.MAX_VALUE;
+			if (fromDelta < fromCsr) {
+				result[count++] = fromDelta;
+				j++;
+			} else {
+				if (!removed.contains(id, fromCsr)) {
+					result[count++] = fromCsr;
+				}
+				i++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return The ids that link to the node, in ascending order
+	 */
+	synchronized int[] inNeighbors(int id) {
+		int[] result = new int[inDegree[id]];
+		int count = 0;
+		int i = id < csr.nodes ? csr.reverseOffsets.get(id) : 0;
+		int end = id < csr.nodes ? csr.reverseOffsets.get(id + 1) : 0;
+		int j = addedReverse.firstFrom(id);
+		while (i < end || (j < addedReverse.size() && EdgeBuffer.source(addedReverse.get(j)) == id)) {
+			int fromCsr = i < end ? csr.reverseSources.get(i) : Integer.MAX_VALUE;
+			int fromDelta = j < addedReverse.size() && EdgeBuffer.source(addedReverse.get(j)) == id
+					? EdgeBuffer.destination(addedReverse.get(j))
+					: Integer.MAX_VALUE;
+			if (fromDelta < fromCsr) {
+				result[count++] = fromDelta;
+				j++;
+			} else {
+				if (!removed.contains(fromCsr, id)) {
+					result[count++] = fromCsr;
+				}
+				i++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Merges the delta buffer into the CSR arrays and returns them. Waits for a
+	 * running background compaction to finish first.
+	 *
+	 * @return A CSR snapshot covering every node in the store
+	 */
+	synchronized Csr compact() {
+		while (compacting) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		if (added.size() > 0 || removed.size() > 0 || csr.nodes != nodeCount) {
+			replace(place(merge(csr, nodeCount, added, removed)));
+			added.clear();
+			addedReverse.clear();
+			removed.clear();
+		}
+		return csr;
+	}
+
+	/**
+	 * Copies the links into a new store with the nodes renumbered. The
+	 * renumbering keeps the order of the nodes, so the rows of the copy are
+	 * sorted without sorting them again. Nodes dropped by the renumbering must
+	 * have no links.
+	 *
+	 * @param ids   The new id of each id, or -1 for a dropped node
+	 * @param count The number of nodes in the new store
+	 * @return The new store, with the same memory budget, which keeps its arrays
+	 *         where this one does
+	 */
+	synchronized LinkStore renumber(int[] ids, int count) {
+		Csr current = compact();
+		LinkStore renumbered = new LinkStore(memoryBudget, offHeap);
+		int[][] forward = renumber(current.forwardOffsets, current.forwardTargets, current.nodes, ids, count);
+		int[][] reverse = renumber(current.reverseOffsets, current.reverseSources, current.nodes, ids, count);
+		renumbered.replace(renumbered.place(new Csr(count, forward[0], forward[1], reverse[0], reverse[1])));
+		renumbered.nodeCount = count;
+		renumbered.edgeCount = edgeCount;
+		renumbered.outDegree = new int[Math.max(16, count)];
+		renumbered.inDegree = new int[Math.max(16, count)];
+		for (int u = 0; u < count; u++) {
+			renumbered.outDegree[u] = forward[0][u + 1] - forward[0][u];
+			renumbered.inDegree[u] = reverse[0][u + 1] - reverse[0][u];
+		}
+		return renumbered;
+	}
+
+	/**
+	 * Renumbers the rows of one direction of the CSR arrays and the ids in
+	 * them.
+	 *
+	 * @return The new row offsets and the new ids
+	 */
+	private static int[][] renumber(IntBuffer offsets, IntBuffer values, int nodes, int[] ids, int count) {
+		int[] renumberedOffsets = new int[count + 1];
+		int[] renumberedValues = new int[offsets.get(nodes)];
+		int position = 0;
+		for (int u = 0; u < nodes; u++) {
+			if (ids[u] < 0) {
+				continue;
+			}
+			for (int i = offsets.get(u); i < offsets.get(u + 1); i++) {
+				renumberedValues[position++] = ids[values.get(i)];
+			}
+			renumberedOffsets[ids[u] + 1] = position;
+		}
+		// Nodes past the old arrays have no links.
+		for (int v = 1; v <= count; v++) {
+			renumberedOffsets[v] = Math.max(renumberedOffsets[v], renumberedOffsets[v - 1]);
+		}
+		return new int[][] { renumberedOffsets, renumberedValues };
+	}
+
+	/**
+	 * Releases the CSR arrays outside the heap, if there are any, once a running
+	 * background compaction has finished, and empties the store.
+	 */
+	synchronized void close() {
+		compact();
+		replace(new Csr(0, new int[1], new int[0], new int[1], new int[0]));
+		nodeCount = 0;
+		edgeCount = 0;
+		outDegree = new int[16];
+		inDegree = new int[16];
+	}
+
+	/**
+	 * @return The arrays, copied outside the heap if the store keeps them there
+	 */
+	private Csr place(Csr built) {
+		return offHeap ? built.offHeap() : built;
+	}
+
+	/**
+	 * Installs new CSR arrays and releases the ones they replace.
+	 */
+	private void replace(Csr next) {
+		Csr previous = csr;
+		csr = next;
+		if (previous != next) {
+			previous.free();
+		}
+	}
+
+	/**
+	 * Makes the link present or absent in the delta buffer without touching the
+	 * degree counts.
+	 */
+	private void setPresent(int source, int destination, boolean present) {
+		if (csr.contains(source, destination)) {
+			if (present) {
+				removed.remove(source, destination);
+			} else {
+				removed.add(source, destination);
+			}
+		} else if (present) {
+			added.add(source, destination);
+			addedReverse.add(destination, source);
+		} else {
+			added.remove(source, destination);
+			addedReverse.remove(destination, source);
+		}
+	}
+
+	/**
+	 * Remembers a mutation made while a background compaction is running, so it
+	 * can be replayed over the compacted arrays.
+	 */
+	private void recordPending(long op) {
+		if (!compacting) {
+			return;
+		}
+		if (pendingCount == pendingOps.length) {
+			pendingOps = Arrays.copyOf(pendingOps, pendingOps.length * 2);
+		}
+		pendingOps[pendingCount++] = op;
+	}
+
+	/**
+	 * Starts a background compaction once the delta buffer is full.
+	 */
+	private void maybeCompact() {
+		if (compacting || added.size() + removed.size() < COMPACT_THRESHOLD) {
+			return;
+		}
+		compacting = true;
+		pendingCount = 0;
+		final Csr base = csr;
+		final int nodes = nodeCount;
+		final EdgeBuffer addedCopy = added.copy();
+		final EdgeBuffer removedCopy = removed.copy();
+		COMPACTOR.execute(() -> {
+			Csr merged = null;
+			try {
+				merged = place(merge(base, nodes, addedCopy, removedCopy));
+			} finally {
+				install(merged);
+			}
+		});
+	}
+
+	/**
+	 * Swaps in the arrays built by a background compaction and replays the
+	 * mutations made while it ran.
+	 */
+	private synchronized void install(Csr merged) {
+		if (merged != null) {
+			replace(merged);
+			added.clear();
+			addedReverse.clear();
+			removed.clear();
+			for (int i = 0; i < pendingCount; i++) {
+				long op = pendingOps[i];
+				long key = op & ~REMOVE_OP;
+				setPresent(EdgeBuffer.source(key), EdgeBuffer.destination(key), op >= 0);
+			}
+		}
+		pendingCount = 0;
+		compacting = false;
+		notifyAll();
+	}
+
+	/**
+	 * @throws FullGraphException If a store of the given size would not fit in
+	 *                            the memory budget
+	 */
+	private void ensureBudget(int nodes, long edges) throws FullGraphException {
+		// Forward and reverse CSR arrays, doubled while a compaction builds their
+		// replacement, plus the degree counts and a full delta buffer.
+		long required = 2 * (8L * edges + 8L * nodes) + 8L * nodes + 24L * COMPACT_THRESHOLD;
+		if (required > memoryBudget || edges >= Integer.MAX_VALUE - COMPACT_THRESHOLD) {
+			throw new FullGraphException("The link store has reached its memory budget.");
+		}
+	}
+
+	/**
+	 * Builds new CSR arrays from a base snapshot and a delta.
+	 */
+	private static Csr merge(Csr base, int nodes, EdgeBuffer added, EdgeBuffer removed) {
+		int[] offsets = new int[nodes + 1];
+		int a = 0;
+		int r = 0;
+		for (int u = 0; u < nodes; u++) {
+			int count = u < base.nodes ? base.forwardOffsets.get(u + 1) - base.forwardOffsets.get(u) : 0;
+			for (; a < added.size() && EdgeBuffer.source(added.get(a)) == u; a++) {
+				count++;
+			}
+			for (; r < removed.size() && EdgeBuffer.source(removed.get(r)) == u; r++) {
+				count--;
+			}
+			offsets[u + 1] = offsets[u] + count;
+		}
+		int[] targets = new int[offsets[nodes]];
+		a = 0;
+		r = 0;
+		for (int u = 0; u < nodes; u++) {
+			int out = offsets[u];
+			int i = u < base.nodes ? base.forwardOffsets.get(u) : 0;
+			int end = u < base.nodes ? base.forwardOffsets.get(u + 1) : 0;
+			while (i < end || (a < added.size() && EdgeBuffer.source(added.get(a)) == u)) {
+				int fromBase = i < end ? base.forwardTargets.get(i) : Integer.MAX_VALUE;
+				int fromAdded = a < added.size() && EdgeBuffer.source(added.get(a)) == u
+						? EdgeBuffer.destination(added.get(a))
+						: Integer.MAX_VALUE;
+				if (fromAdded < fromBase) {
+					targets[out++] = fromAdded;
+					a++;
+				} else {
+					if (r < removed.size() && removed.get(r) == EdgeBuffer.key(u, fromBase)) {
+						r++;
+					} else {
+						targets[out++] = fromBase;
+					}
+					i++;
+				}
+			}
+		}
+		return transpose(nodes, offsets, targets);
+	}
+
+	/**
+	 * Builds the reverse adjacency for forward CSR arrays with a counting sort.
+	 */
+	static Csr transpose(int nodes, int[] offsets, int[] targets) {
+		int[] reverseOffsets = new int[nodes + 1];
+		for (int i = 0; i < offsets[nodes]; i++) {
+			reverseOffsets[targets[i] + 1]++;
+		}
+		for (int v = 0; v < nodes; v++) {
+			reverseOffsets[v + 1] += reverseOffsets[v];
+		}
+		int[] next = Arrays.copyOf(reverseOffsets, nodes);
+		int[] sources = new int[offsets[nodes]];
+		for (int u = 0; u < nodes; u++) {
+			for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+				sources[next[targets[i]]++] = u;
+			}
+		}
+		return new Csr(nodes, offsets, targets, reverseOffsets, sources);
+	}
+}
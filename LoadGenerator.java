@@ -0,0 +1,215 @@
+package searchEngine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <code>LoadGenerator</code> class sends requests to a
+ * <code>SearchServer</code> from many clients at once and reports the
+ * throughput and the latency percentiles it sees.
+ *
+ * Each client sends one request at a time and waits for the answer. Most
+ * requests search for keywords drawn the way <code>GraphGenerator</code>
+ * draws them, some look up PageRanks, and the given percentage add or remove
+ * links. Requests in the first WARMUP_NANOS are not counted.
+ *
+ * Without a server URL, a graph is generated, loaded and served on a free
+ * local port for the run. With one, the server should hold a graph generated
+ * with the same number of pages, so that the requests name pages it has.
+ *
+ * Usage: <code>java searchEngine.LoadGenerator [pages] [clients] [seconds]
+ * [write percent] [server URL]</code>
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+public class LoadGenerator {
+	/**
+	 * The time spent warming up before requests are counted, in nanoseconds.
+	 */
+	public static final long WARMUP_NANOS = 2_000_000_000L;
+
+	private final GraphGenerator generator;
+	private final String server;
+	private final int writePercent;
+	private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong rejections = new AtomicLong();
+
+	/**
+	 * Returns an instance of LoadGenerator.
+	 *
+	 * @param generator    The generator of the graph the server holds
+	 * @param server       The URL of the server, such as
+	 *                     <code>http://localhost:8080</code>
+	 * @param writePercent The percentage of requests that add or remove links
+	 */
+	public LoadGenerator(GraphGenerator generator, String server, int writePercent) {
+		this.generator = generator;
+		this.server = server.endsWith("/") ? server.substring(0, server.length() - 1) : server;
+		this.writePercent = writePercent;
+	}
+
+	/**
+	 * Run the load.
+	 */
+	public static void main(String[] args) throws Exception {
+		int pages = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+		int clients = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		int writePercent = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+		GraphGenerator generator = new GraphGenerator(pages);
+		if (args.length > 4) {
+			new LoadGenerator(generator, args[4], writePercent).run(clients, seconds);
+			return;
+		}
+		System.out.println("Generating " + pages + " pages...");
+		ConcurrentWebGraph web;
+		Path directory = Files.createTempDirectory("load");
+		Path pagesFile = directory.resolve("pages.txt");
+		Path linksFile = directory.resolve("links.txt");
+		try {
+			generator.write(pagesFile, linksFile);
+			web = new ConcurrentWebGraph(new GraphLoader().load(pagesFile, linksFile));
+		} finally {
+			Files.deleteIfExists(pagesFile);
+			Files.deleteIfExists(linksFile);
+			Files.delete(directory);
+		}
+		try (SearchServer server = new SearchServer(web, new InetSocketAddress("localhost", 0))) {
+			server.start();
+			new LoadGenerator(generator, "http://localhost:" + server.getPort(), writePercent).run(clients, seconds);
+		} finally {
+			web.close();
+		}
+	}
+
+	/**
+	 * Sends requests from the clients for the given time, then prints a report.
+	 *
+	 * @param clients The number of clients sending requests at once
+	 * @param seconds How long to count requests for, after the warm-up
+	 */
+	public void run(int clients, int seconds) throws InterruptedException {
+		long start = System.nanoTime();
+		long counted = start + WARMUP_NANOS;
+		long end = counted + seconds * 1_000_000_000L;
+		long[][] latencies = new long[clients][];
+		int[] counts = new int[clients];
+		Thread[] threads = new Thread[clients];
+		for (int t = 0; t < clients; t++) {
+			int client = t;
+			threads[t] = new Thread(() -> {
+				Random random = new Random(client);
+				long[] own = new long[1024];
+				int count = 0;
+				for (long now = System.nanoTime(); now < end; now = System.nanoTime()) {
+					send(random);
+					long latency = System.nanoTime() - now;
+					if (now < counted) {
+						continue;
+					}
+					if (count == own.length) {
+						own = Arrays.copyOf(own, count * 2);
+					}
+					own[count++] = latency;
+				}
+				latencies[client] = own;
+				counts[client] = count;
+			}, "load-client-" + t);
+			threads[t].start();
+		}
+		int total = 0;
+		for (int t = 0; t < clients; t++) {
+			threads[t].join();
+			total += counts[t];
+		}
+		long[] all = new long[total];
+		for (int t = 0, at = 0; t < clients; t++) {
+			System.arraycopy(latencies[t], 0, all, at, counts[t]);
+			at += counts[t];
+		}
+		Arrays.sort(all);
+		System.out.println(String.format("%-8s | %-10s | %-10s | %-9s | %-9s | %-9s | %-9s | %-8s", "Clients",
+				"Requests", "QPS", "p50 ms", "p90 ms", "p99 ms", "max ms", "Errors"));
+		System.out.println(
+				"=============================================================================================");
+		System.out.println(String.format("%-8d | %-10d | %-10.1f | %-9.3f | %-9.3f | %-9.3f | %-9.3f | %-8d", clients,
+				total, total / (double) seconds, percentile(all, 0.50), percentile(all, 0.90),
+				percentile(all, 0.99), total == 0 ? 0 : all[total - 1] / 1e6, failures.get()));
+		if (rejections.get() > 0) {
+			System.out.println(rejections.get() + " requests were refused by the graph, such as links that exist.");
+		}
+	}
+
+	/**
+	 * @return The latency below which the fraction of sorted latencies fall, in
+	 *         milliseconds
+	 */
+	private static double percentile(long[] sorted, double fraction) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		return sorted[(int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1)] / 1e6;
+	}
+
+	/**
+	 * Sends one request, drawn at random, and waits for the answer.
+	 *
+	 * @param random The random numbers to draw from
+	 */
+	private void send(Random random) {
+		HttpRequest request;
+		int draw = random.nextInt(100);
+		if (draw < writePercent) {
+			String form = "source=" + encode(generator.url(random.nextInt(generator.getPages()))) + "&destination="
+					+ encode(generator.url(generator.nextDestination(random)));
+			request = HttpRequest.newBuilder(URI.create(server + "/links"))
+					.header("Content-Type", "application/x-www-form-urlencoded")
+					.method(random.nextBoolean() ? "POST" : "DELETE", HttpRequest.BodyPublishers.ofString(form))
+					.build();
+		} else if (draw < writePercent + (100 - writePercent) / 10) {
+			request = HttpRequest
+					.newBuilder(URI.create(
+							server + "/rank?url=" + encode(generator.url(generator.nextDestination(random)))))
+					.build();
+		} else {
+			String query = generator.keyword(generator.nextKeyword(random));
+			if (random.nextBoolean()) {
+				query += " AND " + generator.keyword(generator.nextKeyword(random));
+			}
+			request = HttpRequest.newBuilder(URI.create(server + "/search?k=10&q=" + encode(query))).build();
+		}
+		try {
+			int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+			if (status >= 500) {
+				failures.incrementAndGet();
+			} else if (status >= 400) {
+				rejections.incrementAndGet();
+			}
+		} catch (IOException e) {
+			failures.incrementAndGet();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failures.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return The string encoded for a URL
+	 */
+	private static String encode(String value) {
+		return URLEncoder.encode(value, StandardCharsets.UTF_8);
+	}
+}
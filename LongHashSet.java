@@ -0,0 +1,134 @@
+package searchEngine;
+
+import java.util.Arrays;
+
+/**
+ * <code>LongHashSet</code> class is an open-addressing hash set of primitive
+ * longs.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+class LongHashSet {
+	// Long.MIN_VALUE marks an empty slot, so it cannot be stored.
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private long[] table;
+	private int size;
+
+	/**
+	 * Returns an empty instance of LongHashSet
+	 */
+	LongHashSet() {
+		this.table = new long[16];
+		Arrays.fill(table, EMPTY);
+		this.size = 0;
+	}
+
+	/**
+	 * @return The number of values in the set
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if the set contains the value
+	 */
+	boolean contains(long value) {
+		int mask = table.length - 1;
+		for (int slot = hash(value) & mask;; slot = (slot + 1) & mask) {
+			if (table[slot] == value) {
+				return true;
+			} else if (table[slot] == EMPTY) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Adds a value to the set.
+	 *
+	 * @return true if the value was not already in the set
+	 */
+	boolean add(long value) {
+		if ((size + 1) * 2L > table.length) {
+			rehash(table.length * 2);
+		}
+		int mask = table.length - 1;
+		int slot = hash(value) & mask;
+		while (table[slot] != EMPTY) {
+			if (table[slot] == value) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = value;
+		size += 1;
+		return true;
+	}
+
+	/**
+	 * Removes a value from the set.
+	 *
+	 * @return true if the value was in the set
+	 */
+	boolean remove(long value) {
+		int mask = table.length - 1;
+		int slot = hash(value) & mask;
+		while (table[slot] != value) {
+			if (table[slot] == EMPTY) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		// Shift later entries of the probe run back so lookups never stop early.
+		int gap = slot;
+		for (int next = (gap + 1) & mask; table[next] != EMPTY; next = (next + 1) & mask) {
+			int home = hash(table[next]) & mask;
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				table[gap] = table[next];
+				gap = next;
+			}
+		}
+		table[gap] = EMPTY;
+		size -= 1;
+		return true;
+	}
+
+	/**
+	 * @return The values of the set in ascending order
+	 */
+	long[] toSortedArray() {
+		long[] values = new long[size];
+		int count = 0;
+		for (long value : table) {
+			if (value != EMPTY) {
+				values[count++] = value;
+			}
+		}
+		Arrays.sort(values);
+		return values;
+	}
+
+	private void rehash(int capacity) {
+		long[] old = table;
+		table = new long[capacity];
+		Arrays.fill(table, EMPTY);
+		int mask = capacity - 1;
+		for (long value : old) {
+			if (value != EMPTY) {
+				int slot = hash(value) & mask;
+				while (table[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = value;
+			}
+		}
+	}
+
+	private static int hash(long value) {
+		value *= 0x9E3779B97F4A7C15L;
+		return (int) (value ^ (value >>> 32));
+	}
+}
@@ -0,0 +1,364 @@
+package searchEngine;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * <code>Metrics</code> class counts and times the operations of the search
+ * engine, and keeps gauges of the size of the graph, so that a slow request
+ * can be traced to the operation that made it slow.
+ *
+ * A <code>Timer</code> counts its operations and their total time on striped
+ * counters, and files each time into a histogram whose buckets are a
+ * sixteenth of a power of two wide, so percentiles are within about 6% at any
+ * scale without locking. A gauge reads a value when it is asked for.
+ *
+ * The metrics are listed by {@link #dump()} and published over JMX as
+ * <code>searchEngine:type=Metrics</code> by {@link #registerMBean()}.
+ * Starting the JVM with <code>-DsearchEngine.metrics=off</code> turns timing
+ * off. ENABLED is then a constant false, so the JIT drops the timing code from
+ * the callers.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+public final class Metrics {
+	/**
+	 * Whether operations are timed.
+	 */
+	public static final boolean ENABLED = !"off".equals(System.getProperty("searchEngine.metrics"));
+	/**
+	 * The name the metrics are published under over JMX.
+	 */
+	public static final String OBJECT_NAME = "searchEngine:type=Metrics";
+	// Each power of two is split into 2^SUB_BITS buckets.
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+	private static final ConcurrentSkipListMap<String, Timer> TIMERS = new ConcurrentSkipListMap<String, Timer>();
+	private static final ConcurrentSkipListMap<String, LongSupplier> GAUGES = new ConcurrentSkipListMap<String, LongSupplier>();
+
+	private Metrics() {
+	}
+
+	/**
+	 * @param name The name of an operation, such as <code>WebGraph.search</code>
+	 * @return The timer of the operation, made on first use
+	 */
+	public static Timer timer(String name) {
+		return TIMERS.computeIfAbsent(name, Timer::new);
+	}
+
+	/**
+	 * Adds a gauge, or replaces the one with the same name.
+	 *
+	 * @param name  The name of the gauge, such as <code>graph.pages</code>
+	 * @param value Reads the current value. It is called from whichever thread
+	 *              asks for the metrics.
+	 */
+	public static void gauge(String name, LongSupplier value) {
+		GAUGES.put(name, value);
+	}
+
+	/**
+	 * Starts timing an operation.
+	 *
+	 * @return The time to hand to {@link Timer#stop(long)}
+	 */
+	public static long start() {
+		return ENABLED ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Empties every timer. Gauges are left as they are.
+	 */
+	public static void reset() {
+		for (Timer timer : TIMERS.values()) {
+			timer.reset();
+		}
+	}
+
+	/**
+	 * @return Every timer and gauge in tabular form, in order of name
+	 */
+	public static String dump() {
+		StringBuilder text = new StringBuilder();
+		text.append(String.format("%-30s | %-10s | %-10s | %-10s | %-10s | %-10s%n", "Operation", "Count", "Mean us",
+				"p50 us", "p99 us", "Max us"));
+		text.append("==============================================================================================")
+				.append(System.lineSeparator());
+		for (Timer timer : TIMERS.values()) {
+			long count = timer.getCount();
+			if (count == 0) {
+				continue;
+			}
+			text.append(String.format("%-30s | %-10d | %-10.1f | %-10.1f | %-10.1f | %-10.1f%n", timer.name, count,
+					timer.getTotalNanos() / 1e3 / count, timer.percentile(0.50) / 1e3, timer.percentile(0.99) / 1e3,
+					timer.getMaxNanos() / 1e3));
+		}
+		if (!ENABLED) {
+			text.append("Timing is off.").append(System.lineSeparator());
+		}
+		text.append(System.lineSeparator());
+		text.append(String.format("%-30s | %-10s%n", "Gauge", "Value"));
+		text.append("===========================================").append(System.lineSeparator());
+		for (Map.Entry<String, LongSupplier> gauge : GAUGES.entrySet()) {
+			text.append(String.format("%-30s | %-10d%n", gauge.getKey(), gauge.getValue().getAsLong()));
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Publishes the metrics over JMX, unless they already are.
+	 *
+	 * @throws IllegalArgumentException If the platform MBean server refuses them
+	 */
+	public static void registerMBean() throws IllegalArgumentException {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(), new ObjectName(OBJECT_NAME));
+		} catch (InstanceAlreadyExistsException e) {
+			// Published already.
+		} catch (JMException e) {
+			throw new IllegalArgumentException("The metrics could not be published: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return The histogram bucket of a time
+	 */
+	private static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) Math.max(0, nanos);
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * @return The middle of the times in a histogram bucket
+	 */
+	private static long value(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long width = 1L << (exponent - SUB_BITS);
+		return (SUB_BUCKETS + bucket % SUB_BUCKETS) * width + width / 2;
+	}
+
+	/**
+	 * <code>Timer</code> class counts and times one operation.
+	 */
+	public static final class Timer {
+		private final String name;
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+		private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+		private Timer(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Records an operation that began at the given time.
+		 *
+		 * @param start The time {@link Metrics#start()} returned
+		 */
+		public void stop(long start) {
+			if (ENABLED) {
+				record(System.nanoTime() - start);
+			}
+		}
+
+		/**
+		 * Records an operation that took the given time.
+		 *
+		 * @param nanos The time in nanoseconds
+		 */
+		public void record(long nanos) {
+			if (!ENABLED) {
+				return;
+			}
+			count.increment();
+			totalNanos.add(nanos);
+			maxNanos.accumulate(nanos);
+			histogram.incrementAndGet(bucket(nanos));
+		}
+
+		/**
+		 * @return The name of the operation
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return The number of operations recorded
+		 */
+		public long getCount() {
+			return count.sum();
+		}
+
+		/**
+		 * @return The total time of the operations recorded, in nanoseconds
+		 */
+		public long getTotalNanos() {
+			return totalNanos.sum();
+		}
+
+		/**
+		 * @return The longest time recorded, in nanoseconds
+		 */
+		public long getMaxNanos() {
+			return maxNanos.get();
+		}
+
+		/**
+		 * @param fraction A fraction between 0 and 1, such as 0.99
+		 * @return The time that the fraction of the operations recorded took at
+		 *         most, in nanoseconds, or 0 if none were recorded
+		 */
+		public long percentile(double fraction) {
+			long[] counts = new long[BUCKETS];
+			long total = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = histogram.get(i);
+				total += counts[i];
+			}
+			long rank = Math.max(1, (long) Math.ceil(fraction * total));
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return Math.min(value(i), getMaxNanos());
+				}
+			}
+			return 0;
+		}
+
+		private void reset() {
+			count.reset();
+			totalNanos.reset();
+			maxNanos.reset();
+			for (int i = 0; i < BUCKETS; i++) {
+				histogram.set(i, 0);
+			}
+		}
+	}
+
+	/**
+	 * <code>MBean</code> class publishes the timers and gauges over JMX as
+	 * attributes such as <code>WebGraph.search.p99Micros</code> and
+	 * <code>graph.pages</code>, with the operations dump and reset.
+	 */
+	private static final class MBean implements DynamicMBean {
+		private static final String[] STATISTICS = { "count", "meanMicros", "p50Micros", "p99Micros", "maxMicros" };
+
+		@Override
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			LongSupplier gauge = GAUGES.get(attribute);
+			if (gauge != null) {
+				return gauge.getAsLong();
+			}
+			int dot = attribute.lastIndexOf('.');
+			Timer timer = dot == -1 ? null : TIMERS.get(attribute.substring(0, dot));
+			if (timer != null) {
+				long count = timer.getCount();
+				switch (attribute.substring(dot + 1)) {
+				case "count":
+					return count;
+				case "meanMicros":
+					return count == 0 ? 0.0 : timer.getTotalNanos() / 1e3 / count;
+				case "p50Micros":
+					return timer.percentile(0.50) / 1e3;
+				case "p99Micros":
+					return timer.percentile(0.99) / 1e3;
+				case "maxMicros":
+					return timer.getMaxNanos() / 1e3;
+				default:
+					break;
+				}
+			}
+			throw new AttributeNotFoundException(attribute);
+		}
+
+		@Override
+		public AttributeList getAttributes(String[] attributes) {
+			AttributeList list = new AttributeList();
+			for (String attribute : attributes) {
+				try {
+					list.add(new Attribute(attribute, getAttribute(attribute)));
+				} catch (AttributeNotFoundException e) {
+					// Attributes that do not exist are left out.
+				}
+			}
+			return list;
+		}
+
+		@Override
+		public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+			throw new AttributeNotFoundException(attribute.getName() + " is read-only.");
+		}
+
+		@Override
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+
+		@Override
+		public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+			switch (actionName) {
+			case "dump":
+				return dump();
+			case "reset":
+				reset();
+				return null;
+			default:
+				throw new ReflectionException(new NoSuchMethodException(actionName));
+			}
+		}
+
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			ArrayList<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+			for (String name : TIMERS.keySet()) {
+				for (String statistic : STATISTICS) {
+					attributes.add(new MBeanAttributeInfo(name + "." + statistic,
+							statistic.equals("count") ? "long" : "double", statistic + " of " + name, true, false,
+							false));
+				}
+			}
+			for (String name : GAUGES.keySet()) {
+				attributes.add(new MBeanAttributeInfo(name, "long", name, true, false, false));
+			}
+			MBeanOperationInfo[] operations = {
+					new MBeanOperationInfo("dump", "Lists every metric", new MBeanParameterInfo[0], "java.lang.String",
+							MBeanOperationInfo.INFO),
+					new MBeanOperationInfo("reset", "Empties every timer", new MBeanParameterInfo[0], "void",
+							MBeanOperationInfo.ACTION) };
+			return new MBeanInfo(Metrics.class.getName(), "Search engine metrics",
+					attributes.toArray(new MBeanAttributeInfo[0]), null, operations, null);
+		}
+	}
+}
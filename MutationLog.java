@@ -0,0 +1,472 @@
+package searchEngine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * <code>MutationLog</code> class is an append-only write-ahead log of the
+ * mutations made to a <code>WebGraph</code>. Every successful
+ * <code>addPage</code>, <code>removePage</code>, <code>addLink</code>,
+ * <code>removeLink</code> and committed batch becomes one record with a log
+ * sequence number (LSN). A snapshot remembers the LSN it includes, so on
+ * startup only the records after it are replayed.
+ *
+ * With a sync interval of 0, a mutation returns once its record is forced to
+ * disk. Mutations that arrive while a force is running are written and forced
+ * together by the next one, so concurrent writers share fsyncs. With a
+ * positive interval, mutations return at once and a background thread forces
+ * the log every interval, so a crash loses at most that much.
+ *
+ * Each record holds its length, the CRC32C of its body, its LSN and its
+ * mutations. A torn record at the end of the file, left by a crash during a
+ * write, is cut off when the log is opened.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+public class MutationLog implements AutoCloseable {
+	static final int ADD_PAGE = 0;
+	static final int REMOVE_PAGE = 1;
+	static final int ADD_LINK = 2;
+	static final int REMOVE_LINK = 3;
+	/**
+	 * Number of mutations replayed in one batch.
+	 */
+	static final int REPLAY_BATCH = 1 << 16;
+	// "WGLG" read as a little-endian int.
+	private static final int MAGIC = 0x474C4757;
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 16;
+	private static final int RECORD_HEADER_BYTES = 8;
+	private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "mutation-log-flusher");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final String name;
+	private final FileChannel channel;
+	// Records appended but not yet written. Guarded by this.
+	private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+	private long lastLsn;
+	private long baseLsn;
+	private long written;
+	// Guarded by syncLock.
+	private final Object syncLock = new Object();
+	private long durableLsn;
+	private long syncInterval;
+	private ScheduledFuture<?> flusher;
+
+	/**
+	 * Opens a log file, creating it if it does not exist. A torn record at the
+	 * end of the file is cut off.
+	 *
+	 * @param file The log file
+	 * @throws IOException              If the file cannot be opened
+	 * @throws IllegalArgumentException If the file is not a mutation log
+	 */
+	public MutationLog(Path file) throws IOException, IllegalArgumentException {
+		this.name = file.getFileName().toString();
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			if (channel.size() < HEADER_BYTES) {
+				writeHeader(0);
+			} else {
+				ByteBuffer header = read(0, HEADER_BYTES);
+				if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+					throw new IllegalArgumentException(name + ": Not a mutation log.");
+				}
+				baseLsn = header.getLong();
+			}
+			lastLsn = baseLsn;
+			written = scan(null);
+			channel.truncate(written);
+			durableLsn = lastLsn;
+		} catch (IOException | IllegalArgumentException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return The number of milliseconds between background forces, or 0 if
+	 *         every mutation waits for its record to be forced
+	 */
+	public synchronized long getSyncInterval() {
+		return syncInterval;
+	}
+
+	/**
+	 * @param syncInterval The number of milliseconds between background forces,
+	 *                     or 0 to have every mutation wait for its record to be
+	 *                     forced
+	 * @throws IllegalArgumentException If syncInterval is negative
+	 */
+	public synchronized void setSyncInterval(long syncInterval) throws IllegalArgumentException {
+		if (syncInterval < 0) {
+			throw new IllegalArgumentException("The sync interval should not be negative.");
+		}
+		if (flusher != null) {
+			flusher.cancel(false);
+			flusher = null;
+		}
+		this.syncInterval = syncInterval;
+		if (syncInterval > 0) {
+			flusher = FLUSHER.scheduleWithFixedDelay(() -> {
+				try {
+					sync(Long.MAX_VALUE);
+				} catch (UncheckedIOException e) {
+					// The next mutation or checkpoint reports it.
+				}
+			}, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * @return The LSN of the last record in the log
+	 */
+	public synchronized long getLastLsn() {
+		return lastLsn;
+	}
+
+	/**
+	 * @return The LSN of the snapshot the log continues from
+	 */
+	public synchronized long getBaseLsn() {
+		return baseLsn;
+	}
+
+	/**
+	 * @return The number of bytes in the log, including records not yet written
+	 */
+	public synchronized long size() {
+		return written + pending.size();
+	}
+
+	/**
+	 * Applies the records the graph does not include yet. When the ranker is
+	 * incremental, each single mutation is applied on its own, exactly as it was
+	 * the first time, so the recovered ranks equal the lost ones. Otherwise every
+	 * mutation would recompute all ranks, so up to REPLAY_BATCH mutations are
+	 * applied as one batch, which gives the same ranks.
+	 *
+	 * @param graph A graph opened from the snapshot the log continues from, or a
+	 *              later one, that has no log attached
+	 * @return The number of records applied
+	 * @throws IllegalArgumentException If the log does not continue the graph, or
+	 *                                  a record cannot be applied
+	 */
+	public int replay(WebGraph graph) throws IllegalArgumentException {
+		if (graph.getLsn() < getBaseLsn()) {
+			throw new IllegalArgumentException(name + ": The log continues from LSN " + getBaseLsn()
+					+ ", but the graph is at LSN " + graph.getLsn() + ".");
+		}
+		boolean exact = graph.getRanker().isIncremental();
+		int[] applied = new int[1];
+		WebGraph.Batch batch = graph.beginBatch();
+		long[] batchLsn = { graph.getLsn() };
+		try {
+			scan((lsn, in) -> {
+				if (lsn <= graph.getLsn()) {
+					return;
+				}
+				int count = in.getInt();
+				if (exact && count == 1) {
+					commit(graph, batch, batchLsn[0]);
+				}
+				for (int i = 0; i < count; i++) {
+					int kind = in.get();
+					String first = readString(in);
+					String second = null;
+					LinkedList<String> keywords = null;
+					if (kind == ADD_PAGE) {
+						keywords = new LinkedList<String>();
+						for (int k = in.getInt(); k > 0; k--) {
+							keywords.add(readString(in));
+						}
+					} else if (kind == ADD_LINK || kind == REMOVE_LINK) {
+						second = readString(in);
+					} else if (kind != REMOVE_PAGE) {
+						throw new IllegalArgumentException("Unknown mutation " + kind + ".");
+					}
+					batch.add(kind, first, second, keywords);
+				}
+				applied[0] += 1;
+				batchLsn[0] = lsn;
+				if ((exact && count == 1) || batch.size() >= REPLAY_BATCH) {
+					commit(graph, batch, lsn);
+				}
+			});
+			commit(graph, batch, batchLsn[0]);
+		} catch (IOException e) {
+			throw new IllegalArgumentException(name + ": " + e.getMessage(), e);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(name + ": " + e.getMessage(), e);
+		}
+		return applied[0];
+	}
+
+	/**
+	 * Applies a batch of replayed records and empties it.
+	 */
+	private static void commit(WebGraph graph, WebGraph.Batch batch, long lsn) throws IllegalArgumentException {
+		try {
+			graph.replay(batch);
+			graph.setLsn(lsn);
+		} catch (FullGraphException e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
+		} finally {
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Forces every record to disk and closes the log.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (flusher != null) {
+				flusher.cancel(false);
+				flusher = null;
+			}
+		}
+		try {
+			sync(Long.MAX_VALUE);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Appends a record holding one mutation. The record is not on disk until
+	 * {@link #sync(long)} returns for its LSN.
+	 *
+	 * @param kind     The kind of mutation
+	 * @param first    The URL of the page, or the source of the link
+	 * @param second   The destination of the link, or null
+	 * @param keywords The keywords of the page, or null
+	 * @return The LSN of the record
+	 */
+	long append(int kind, String first, String second, Collection<String> keywords) {
+		return append(List.of(kind), Collections.singletonList(first), Collections.singletonList(second),
+				Collections.singletonList(keywords));
+	}
+
+	/**
+	 * Appends a record holding a batch of mutations, which are replayed
+	 * together.
+	 *
+	 * @return The LSN of the record
+	 */
+	synchronized long append(List<Integer> kinds, List<String> firsts, List<String> seconds,
+			List<? extends Collection<String>> keywordLists) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream body = new DataOutputStream(bytes);
+		try {
+			long lsn = lastLsn + 1;
+			body.writeLong(Long.reverseBytes(lsn));
+			body.writeInt(Integer.reverseBytes(kinds.size()));
+			for (int i = 0; i < kinds.size(); i++) {
+				int kind = kinds.get(i);
+				body.writeByte(kind);
+				writeString(body, firsts.get(i));
+				if (kind == ADD_PAGE) {
+					body.writeInt(Integer.reverseBytes(keywordLists.get(i).size()));
+					for (String keyword : keywordLists.get(i)) {
+						writeString(body, keyword);
+					}
+				} else if (kind == ADD_LINK || kind == REMOVE_LINK) {
+					writeString(body, seconds.get(i));
+				}
+			}
+			byte[] record = bytes.toByteArray();
+			CRC32C crc = new CRC32C();
+			crc.update(record, 0, record.length);
+			ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(record.length);
+			header.putInt((int) crc.getValue());
+			pending.write(header.array(), 0, RECORD_HEADER_BYTES);
+			pending.write(record, 0, record.length);
+			lastLsn = lsn;
+			return lsn;
+		} catch (IOException e) {
+			// Writing to a byte array does not fail.
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Waits until the record with the given LSN is on disk. Returns at once when
+	 * a positive sync interval is set, unless called by the background flusher.
+	 * Records appended before the force starts are forced with it.
+	 *
+	 * @param lsn The LSN to wait for
+	 * @throws UncheckedIOException If the log cannot be written
+	 */
+	void sync(long lsn) throws UncheckedIOException {
+		if (lsn != Long.MAX_VALUE && getSyncInterval() > 0) {
+			return;
+		}
+		synchronized (syncLock) {
+			if (durableLsn >= lsn) {
+				return;
+			}
+			byte[] data;
+			long upTo;
+			long position;
+			synchronized (this) {
+				data = pending.toByteArray();
+				upTo = lastLsn;
+				position = written;
+				pending.reset();
+				written += data.length;
+			}
+			try {
+				ByteBuffer buffer = ByteBuffer.wrap(data);
+				while (buffer.hasRemaining()) {
+					position += channel.write(buffer, position);
+				}
+				channel.force(false);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			durableLsn = upTo;
+		}
+	}
+
+	/**
+	 * Empties the log, so that it continues from a snapshot. Records the
+	 * snapshot does not include are lost, so a checkpoint calls this only while
+	 * no mutation can be appended.
+	 *
+	 * @param lsn The LSN the snapshot includes
+	 */
+	void reset(long lsn) throws IOException {
+		synchronized (syncLock) {
+			synchronized (this) {
+				pending.reset();
+				lastLsn = lsn;
+				baseLsn = lsn;
+				writeHeader(lsn);
+				channel.truncate(HEADER_BYTES);
+				channel.force(true);
+				written = HEADER_BYTES;
+			}
+			durableLsn = lsn;
+		}
+	}
+
+	/**
+	 * Receives each valid record found by a scan.
+	 */
+	private interface RecordHandler {
+		void record(long lsn, ByteBuffer body) throws IOException;
+	}
+
+	/**
+	 * Reads the records of the file in order, stopping at the first torn or
+	 * corrupt one.
+	 *
+	 * @param handler Receives each record, or null to only find the end
+	 * @return The position just past the last valid record
+	 */
+	private long scan(RecordHandler handler) throws IOException {
+		long size = channel.size();
+		long position = HEADER_BYTES;
+		long lsn = baseLsn;
+		CRC32C crc = new CRC32C();
+		while (position + RECORD_HEADER_BYTES <= size) {
+			ByteBuffer header = read(position, RECORD_HEADER_BYTES);
+			int length = header.getInt();
+			int checksum = header.getInt();
+			if (length < 12 || position + RECORD_HEADER_BYTES + length > size) {
+				break;
+			}
+			ByteBuffer body = read(position + RECORD_HEADER_BYTES, length);
+			crc.reset();
+			crc.update(body.duplicate());
+			long next = body.getLong(0);
+			if ((int) crc.getValue() != checksum || next != lsn + 1) {
+				break;
+			}
+			if (handler != null) {
+				body.position(8);
+				handler.record(next, body);
+			}
+			lsn = next;
+			position += RECORD_HEADER_BYTES + length;
+		}
+		if (handler == null) {
+			lastLsn = lsn;
+		}
+		return position;
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of file.");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	private void writeHeader(long lsn) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putLong(lsn);
+		header.flip();
+		while (header.hasRemaining()) {
+			channel.write(header, header.position());
+		}
+		channel.force(true);
+	}
+
+	/**
+	 * Writes a string as its UTF-8 length and bytes. A batch may hold null
+	 * URLs, which are written with length -1.
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(Integer.reverseBytes(bytes.length));
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer in) {
+		int length = in.getInt();
+		if (length == -1) {
+			return null;
+		}
+		String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+		in.position(in.position() + length);
+		return value;
+	}
+}
@@ -0,0 +1,57 @@
+package searchEngine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * <code>NoLock</code> class is a read-write lock that does nothing, for
+ * objects whose callers already keep readers and writers apart.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+final class NoLock implements ReadWriteLock, Lock {
+	static final NoLock INSTANCE = new NoLock();
+
+	private NoLock() {
+	}
+
+	@Override
+	public Lock readLock() {
+		return this;
+	}
+
+	@Override
+	public Lock writeLock() {
+		return this;
+	}
+
+	@Override
+	public void lock() {
+	}
+
+	@Override
+	public void lockInterruptibly() {
+	}
+
+	@Override
+	public boolean tryLock() {
+		return true;
+	}
+
+	@Override
+	public boolean tryLock(long time, TimeUnit unit) {
+		return true;
+	}
+
+	@Override
+	public void unlock() {
+	}
+
+	@Override
+	public Condition newCondition() {
+		throw new UnsupportedOperationException("A NoLock has no conditions.");
+	}
+}
@@ -0,0 +1,87 @@
+package searchEngine;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <code>OffHeap</code> class allocates and releases the direct buffers that
+ * hold the large arrays of a graph kept outside the Java heap. The garbage
+ * collector only sees the small buffer objects, never the memory behind them,
+ * so the arrays add nothing to the time it takes to trace the heap.
+ *
+ * A direct buffer is normally freed only once the collector finds it
+ * unreachable. The stores that own buffers release them as soon as they
+ * replace them, and a graph releases the rest when it is closed, so the
+ * memory held follows the graph rather than the collector. A buffer must not
+ * be read once it is released.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+final class OffHeap {
+	// Frees a direct buffer at once, if the running JVM offers a way to.
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+	private static final AtomicLong RESERVED = new AtomicLong();
+
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			Class<?> type = Class.forName("sun.misc.Unsafe");
+			Field field = type.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = field.get(null);
+			invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// Buffers are then freed by the garbage collector.
+			unsafe = null;
+			invokeCleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
+	private OffHeap() {
+	}
+
+	/**
+	 * @param capacity The number of bytes
+	 * @return A new direct buffer of zeros in the platform's byte order
+	 */
+	static ByteBuffer bytes(int capacity) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+		RESERVED.addAndGet(capacity);
+		return buffer;
+	}
+
+	/**
+	 * Releases a buffer allocated by this class. Buffers on the heap are left to
+	 * the garbage collector.
+	 *
+	 * @param buffer The buffer, which must not be a view of another buffer
+	 */
+	static void free(ByteBuffer buffer) {
+		if (buffer == null || !buffer.isDirect()) {
+			return;
+		}
+		RESERVED.addAndGet(-buffer.capacity());
+		if (INVOKE_CLEANER != null) {
+			try {
+				INVOKE_CLEANER.invoke(UNSAFE, buffer);
+			} catch (ReflectiveOperationException e) {
+				// Left to the garbage collector.
+			}
+		}
+	}
+
+	/**
+	 * @return The number of bytes allocated by this class and not yet released
+	 */
+	static long reserved() {
+		return RESERVED.get();
+	}
+}
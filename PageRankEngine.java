@@ -0,0 +1,571 @@
+package searchEngine;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <code>PageRankEngine</code> class computes damped PageRank scores over a
+ * <code>LinkStore</code>.
+ *
+ * The scores solve x(v) = (1 - d) + d * sum(x(w) / outDegree(w)) over every
+ * page w linking to v. Pages without links simply leak their share, so a
+ * change to one link only moves scores near that link. This lets the engine
+ * re-propagate a single link change by pushing residuals outward from it
+ * instead of recomputing every score.
+ *
+ * Full computations can run on several threads. The pages are split into
+ * fixed-size chunks that are swept by fork-join tasks, and every sum is taken
+ * in the same order whatever the thread count, so parallel results are
+ * bit-for-bit equal to sequential ones. The threads are started by the first
+ * computation that needs them and stopped by <code>close()</code>.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+public class PageRankEngine {
+	public static final double DEFAULT_DAMPING = 0.85;
+	public static final double DEFAULT_TOLERANCE = 1e-4;
+	public static final int DEFAULT_MAX_ITERATIONS = 100;
+	/**
+	 * Number of pages swept by one fork-join task.
+	 */
+	static final int CHUNK_SIZE = 1 << 12;
+	// Scratch space for the offsets and the sources a chunk reads, per thread.
+	private static final ThreadLocal<Window[]> WINDOWS = ThreadLocal
+			.withInitial(() -> new Window[] { new Window(), new Window() });
+
+	private double damping;
+	private double tolerance;
+	private int maxIterations;
+	private boolean incremental;
+	private int parallelism;
+	// Started by the first parallel computation, or null.
+	private ForkJoinPool pool;
+	private int iterations;
+	private double[] scores;
+	private double[] residuals;
+	private int nodes;
+	// Circular worklist of nodes whose residual is above the tolerance. It is
+	// one longer than the node arrays, since a node is queued at most once.
+	private int[] queue;
+	private boolean[] queued;
+	private int[] touched;
+	private int touchedCount;
+
+	/**
+	 * Returns an instance of PageRankEngine with the default parameters and
+	 * incremental updates turned on.
+	 */
+	public PageRankEngine() {
+		this.damping = DEFAULT_DAMPING;
+		this.tolerance = DEFAULT_TOLERANCE;
+		this.maxIterations = DEFAULT_MAX_ITERATIONS;
+		this.incremental = true;
+		this.parallelism = 1;
+		this.scores = new double[16];
+		this.residuals = new double[16];
+		this.queued = new boolean[16];
+		this.queue = new int[17];
+		this.touched = new int[16];
+		this.nodes = 0;
+	}
+
+	/**
+	 * @return The damping factor
+	 */
+	public double getDamping() {
+		return damping;
+	}
+
+	/**
+	 * @param damping The new damping factor, between 0 and 1
+	 * @throws IllegalArgumentException If damping is not in [0, 1)
+	 */
+	public void setDamping(double damping) throws IllegalArgumentException {
+		if (!(damping >= 0 && damping < 1)) {
+			throw new IllegalArgumentException("The damping factor should be in [0, 1).");
+		}
+		this.damping = damping;
+	}
+
+	/**
+	 * @return The convergence tolerance per page
+	 */
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * @param tolerance The new convergence tolerance per page
+	 * @throws IllegalArgumentException If tolerance is not positive
+	 */
+	public void setTolerance(double tolerance) throws IllegalArgumentException {
+		if (!(tolerance > 0)) {
+			throw new IllegalArgumentException("The tolerance should be positive.");
+		}
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * @return The iteration cap of a full computation
+	 */
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	/**
+	 * @param maxIterations The new iteration cap of a full computation
+	 * @throws IllegalArgumentException If maxIterations is not positive
+	 */
+	public void setMaxIterations(int maxIterations) throws IllegalArgumentException {
+		if (maxIterations < 1) {
+			throw new IllegalArgumentException("The iteration cap should be positive.");
+		}
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * @return true if link changes are re-propagated locally
+	 */
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * @param incremental true to re-propagate link changes locally, false to
+	 *                    recompute every score after each change
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	/**
+	 * @return The number of threads a full computation runs on
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @param parallelism The number of threads a full computation runs on. 1
+	 *                    runs it on the calling thread.
+	 * @throws IllegalArgumentException If parallelism is not positive
+	 */
+	public void setParallelism(int parallelism) throws IllegalArgumentException {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("The parallelism should be positive.");
+		}
+		close();
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Stops the threads of full computations. The engine can still be used,
+	 * and starts them again if a later computation needs them.
+	 */
+	public void close() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	/**
+	 * @return The number of iterations the last full computation ran
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * @return The score of a page
+	 */
+	public double score(int id) {
+		return id < nodes ? scores[id] : 1 - damping;
+	}
+
+	/**
+	 * Recomputes every score with power iteration.
+	 *
+	 * @param links The links to rank
+	 */
+	void compute(LinkStore links) {
+		LinkStore.Csr csr = links.compact();
+		ensureCapacity(csr.nodes);
+		nodes = csr.nodes;
+		Sweep sweep = new Sweep(csr, damping);
+		Arrays.fill(sweep.current, 1 - damping);
+		iterations = 0;
+		while (iterations < maxIterations) {
+			iterations += 1;
+			run(sweep, Sweep.SHARES);
+			run(sweep, Sweep.PULL);
+			double change = 0;
+			for (int c = 0; c < sweep.changes.length; c++) {
+				change += sweep.changes[c];
+			}
+			sweep.swap();
+			if (change <= tolerance * nodes) {
+				break;
+			}
+		}
+		System.arraycopy(sweep.current, 0, scores, 0, nodes);
+		// Record what is left over so later link changes can be pushed from here.
+		run(sweep, Sweep.SHARES);
+		run(sweep, Sweep.PULL);
+		for (int v = 0; v < nodes; v++) {
+			residuals[v] = sweep.next[v] - scores[v];
+			queued[v] = false;
+		}
+	}
+
+	/**
+	 * Runs one phase of a sweep over every chunk, on the pool if the engine runs
+	 * on several threads.
+	 */
+	private void run(Sweep sweep, int phase) {
+		sweep.phase = phase;
+		int chunks = sweep.changes.length;
+		if (parallelism == 1 || chunks == 1) {
+			for (int c = 0; c < chunks; c++) {
+				sweep.run(c);
+			}
+		} else {
+			if (pool == null) {
+				pool = new ForkJoinPool(parallelism);
+			}
+			pool.invoke(new ChunkTask(sweep, 0, chunks));
+		}
+	}
+
+	/**
+	 * The double-buffered state of a full computation. One phase fills each
+	 * page's share of its score, the next pulls the shares into new scores.
+	 */
+	private static final class Sweep {
+		static final int SHARES = 0;
+		static final int PULL = 1;
+
+		final LinkStore.Csr csr;
+		final double damping;
+		final double[] share;
+		// Sum of the score changes within each chunk.
+		final double[] changes;
+		double[] current;
+		double[] next;
+		int phase;
+
+		Sweep(LinkStore.Csr csr, double damping) {
+			this.csr = csr;
+			this.damping = damping;
+			this.share = new double[csr.nodes];
+			this.changes = new double[Math.max(1, (csr.nodes + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+			this.current = new double[csr.nodes];
+			this.next = new double[csr.nodes];
+		}
+
+		void swap() {
+			double[] swap = current;
+			current = next;
+			next = swap;
+		}
+
+		void run(int chunk) {
+			int start = chunk * CHUNK_SIZE;
+			int end = Math.min(csr.nodes, start + CHUNK_SIZE);
+			Window[] windows = WINDOWS.get();
+			if (phase == SHARES) {
+				Window offsets = windows[0].read(csr.forwardOffsets, start, end + 1);
+				int[] o = offsets.ints;
+				int shift = offsets.shift;
+				for (int u = start; u < end; u++) {
+					int degree = o[u + 1 - shift] - o[u - shift];
+					share[u] = degree == 0 ? 0 : current[u] / degree;
+				}
+				return;
+			}
+			Window offsets = windows[0].read(csr.reverseOffsets, start, end + 1);
+			int[] o = offsets.ints;
+			int shift = offsets.shift;
+			Window sources = windows[1].read(csr.reverseSources, o[start - shift], o[end - shift]);
+			int[] ids = sources.ints;
+			int idShift = sources.shift;
+			double change = 0;
+			for (int v = start; v < end; v++) {
+				double sum = 0;
+				for (int i = o[v - shift], to = o[v + 1 - shift]; i < to; i++) {
+					sum += share[ids[i - idShift]];
+				}
+				next[v] = (1 - damping) + damping * sum;
+				change += Math.abs(next[v] - current[v]);
+			}
+			changes[chunk] = change;
+		}
+	}
+
+	/**
+	 * A run of one of the CSR arrays as a plain int array, in which the int at
+	 * position i of the CSR array is at i - shift. Arrays on the heap are used
+	 * in place. Arrays outside it are copied into scratch space in one bulk
+	 * read, which costs far less than reading them one int at a time.
+	 */
+	private static final class Window {
+		int[] ints;
+		int shift;
+		private int[] scratch = new int[CHUNK_SIZE + 1];
+
+		Window read(IntBuffer buffer, int from, int to) {
+			if (buffer.hasArray()) {
+				ints = buffer.array();
+				shift = -buffer.arrayOffset();
+			} else {
+				if (to - from > scratch.length) {
+					scratch = new int[Math.max(to - from, scratch.length * 2)];
+				}
+				buffer.get(from, scratch, 0, to - from);
+				ints = scratch;
+				shift = from;
+			}
+			return this;
+		}
+	}
+
+	/**
+	 * Fork-join task that runs a sweep phase over a range of chunks.
+	 */
+	private static final class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Sweep sweep;
+		private final int start;
+		private final int end;
+
+		ChunkTask(Sweep sweep, int start, int end) {
+			this.sweep = sweep;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start == 1) {
+				sweep.run(start);
+				return;
+			}
+			int middle = (start + end) >>> 1;
+			invokeAll(new ChunkTask(sweep, start, middle), new ChunkTask(sweep, middle, end));
+		}
+	}
+
+	/**
+	 * Writes the parameters, scores and residuals to a snapshot. The thread count
+	 * is not written, since it belongs to the machine rather than the graph.
+	 */
+	void write(SnapshotWriter out) throws IOException {
+		out.writeDouble(damping);
+		out.writeDouble(tolerance);
+		out.writeInt(maxIterations);
+		out.writeInt(incremental ? 1 : 0);
+		out.writeInt(nodes);
+		out.writeDoubles(scores, 0, nodes);
+		out.writeInt(nodes);
+		out.writeDoubles(residuals, 0, nodes);
+	}
+
+	/**
+	 * Replaces the parameters, scores and residuals with ones read from a
+	 * snapshot, so incremental updates carry on where they left off.
+	 *
+	 * @throws IllegalArgumentException If the ranks in the snapshot are
+	 *                                  inconsistent
+	 */
+	void read(SnapshotReader in) throws IOException, IllegalArgumentException {
+		double damping = in.readDouble();
+		double tolerance = in.readDouble();
+		int maxIterations = in.readInt();
+		boolean incremental = in.readInt() != 0;
+		int count = in.readLength(8);
+		if (!(damping >= 0 && damping < 1) || !(tolerance > 0) || maxIterations < 1) {
+			throw in.corrupt("The ranker parameters are out of range.");
+		}
+		ensureCapacity(count);
+		in.readDoubles(scores, 0, count);
+		if (in.readLength(8) != count) {
+			throw in.corrupt("The scores and residuals have different lengths.");
+		}
+		in.readDoubles(residuals, 0, count);
+		this.damping = damping;
+		this.tolerance = tolerance;
+		this.maxIterations = maxIterations;
+		this.incremental = incremental;
+		this.nodes = count;
+	}
+
+	/**
+	 * Gives a new page its starting score.
+	 *
+	 * @param id The id of the page
+	 */
+	void nodeAdded(int id) {
+		ensureCapacity(id + 1);
+		for (int v = nodes; v <= id; v++) {
+			scores[v] = 1 - damping;
+			residuals[v] = 0;
+		}
+		nodes = Math.max(nodes, id + 1);
+	}
+
+	/**
+	 * Sets the score of a page to one computed elsewhere, as for a shard whose
+	 * links span other processes. Nothing is left to push from the page.
+	 *
+	 * @param id    The id of the page
+	 * @param score The score
+	 */
+	void setScore(int id, double score) {
+		nodeAdded(id);
+		scores[id] = score;
+		residuals[id] = 0;
+	}
+
+	/**
+	 * Renumbers the pages, carrying their scores and residuals over. Removed
+	 * pages have no links, so dropping them moves no other score.
+	 *
+	 * @param ids   The new id of each id, or -1 for ids without a page
+	 * @param count The number of pages
+	 */
+	void renumber(int[] ids, int count) {
+		double[] renumberedScores = new double[Math.max(16, count)];
+		double[] renumberedResiduals = new double[renumberedScores.length];
+		for (int v = 0; v < Math.min(nodes, ids.length); v++) {
+			if (ids[v] >= 0) {
+				renumberedScores[ids[v]] = scores[v];
+				renumberedResiduals[ids[v]] = residuals[v];
+			}
+		}
+		for (int v = nodes; v < ids.length; v++) {
+			if (ids[v] >= 0) {
+				renumberedScores[ids[v]] = 1 - damping;
+			}
+		}
+		scores = renumberedScores;
+		residuals = renumberedResiduals;
+		queued = new boolean[renumberedScores.length];
+		queue = new int[renumberedScores.length + 1];
+		nodes = count;
+	}
+
+	/**
+	 * Re-propagates scores after a link has been added to the store.
+	 *
+	 * @return The ids of the pages whose score changed
+	 */
+	int[] linkAdded(LinkStore links, int source, int destination) {
+		return linkChanged(links, source, destination, true);
+	}
+
+	/**
+	 * Re-propagates scores after a link has been removed from the store.
+	 *
+	 * @return The ids of the pages whose score changed
+	 */
+	int[] linkRemoved(LinkStore links, int source, int destination) {
+		return linkChanged(links, source, destination, false);
+	}
+
+	/**
+	 * Adjusts the residuals around a changed link and pushes them until every
+	 * residual is within the tolerance.
+	 */
+	private int[] linkChanged(LinkStore links, int source, int destination, boolean added) {
+		nodeAdded(Math.max(source, destination));
+		touchedCount = 0;
+		int[] neighbors = links.outNeighbors(source);
+		int degree = neighbors.length;
+		int oldDegree = added ? degree - 1 : degree + 1;
+		double weight = damping * scores[source];
+		for (int w : neighbors) {
+			if (w != destination || !added) {
+				addResidual(w, weight * (1.0 / degree - 1.0 / oldDegree));
+			}
+		}
+		addResidual(destination, added ? weight / degree : -weight / oldDegree);
+		push(links);
+		return Arrays.copyOf(touched, touchedCount);
+	}
+
+	/**
+	 * Moves residuals into scores until all of them are within the tolerance.
+	 * Falls back to a full computation if the change spreads too far.
+	 */
+	private void push(LinkStore links) {
+		long budget = (long) nodes * maxIterations;
+		int head = 0;
+		int tail = 0;
+		for (int i = 0; i < touchedCount; i++) {
+			int v = touched[i];
+			if (!queued[v] && Math.abs(residuals[v]) > tolerance) {
+				queued[v] = true;
+				tail = enqueue(tail, v);
+			}
+		}
+		while (head != tail) {
+			int v = queue[head];
+			head = (head + 1) % queue.length;
+			queued[v] = false;
+			double residual = residuals[v];
+			residuals[v] = 0;
+			scores[v] += residual;
+			int[] neighbors = links.outNeighbors(v);
+			budget -= neighbors.length + 1;
+			if (budget < 0) {
+				compute(links);
+				touchedCount = 0;
+				for (int u = 0; u < nodes; u++) {
+					markTouched(u);
+				}
+				return;
+			}
+			for (int w : neighbors) {
+				addResidual(w, damping * residual / neighbors.length);
+				if (!queued[w] && Math.abs(residuals[w]) > tolerance) {
+					queued[w] = true;
+					tail = enqueue(tail, w);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The new tail of the worklist
+	 */
+	private int enqueue(int tail, int v) {
+		queue[tail] = v;
+		return (tail + 1) % queue.length;
+	}
+
+	private void addResidual(int v, double amount) {
+		residuals[v] += amount;
+		markTouched(v);
+	}
+
+	private void markTouched(int v) {
+		if (touchedCount == touched.length) {
+			touched = Arrays.copyOf(touched, touched.length * 2);
+		}
+		touched[touchedCount++] = v;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > scores.length) {
+			int size = Math.max(capacity, scores.length + (scores.length >> 1));
+			scores = Arrays.copyOf(scores, size);
+			residuals = Arrays.copyOf(residuals, size);
+			queued = Arrays.copyOf(queued, size);
+			queue = new int[size + 1];
+		}
+	}
+}
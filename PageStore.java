@@ -0,0 +1,346 @@
+package searchEngine;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * <code>PageStore</code> class holds the pages of a graph as parallel
+ * primitive arrays indexed by page id, instead of as one object per page: a
+ * flag byte, the rank, and the range of the page's packed keywords in one
+ * shared byte array. The URL of a page is the string with the same id in the
+ * graph's URL dictionary, which already keeps its offset and length, so it is
+ * not stored twice. Passes over every page read a few dense arrays, and the
+ * garbage collector has only the arrays to trace however many pages there
+ * are.
+ *
+ * A <code>WebPage</code> of a graph is a view of one id of its store, made
+ * when it is asked for. Pages are sorted as arrays of ids, with the keys of
+ * the order read straight from the arrays.
+ *
+ * A removed page only has its flag cleared, so its id stays unused until the
+ * graph renumbers its pages into a new store.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+class PageStore {
+	private static final byte PRESENT = 1;
+	// Runs this short are sorted by insertion instead of being merged.
+	private static final int INSERTION_RUN = 16;
+
+	private final StringDictionary urls;
+	private final KeywordDictionary dictionary;
+	private byte[] flags;
+	private double[] ranks;
+	// Each page's keywords are the bytes of terms from its start to its end.
+	private int[] termStarts;
+	private int[] termEnds;
+	private byte[] terms;
+	private int termSize;
+	// Bytes of terms that belong to no page since their page was removed.
+	private int garbage;
+	private int idLimit;
+	private int size;
+
+	/**
+	 * Returns an empty instance of PageStore
+	 *
+	 * @param urls       The URL dictionary of the graph, in which each page's URL
+	 *                   has the page's id
+	 * @param dictionary The dictionary the keywords of the pages are interned in
+	 */
+	PageStore(StringDictionary urls, KeywordDictionary dictionary) {
+		this.urls = urls;
+		this.dictionary = dictionary;
+		this.flags = new byte[16];
+		this.ranks = new double[16];
+		this.termStarts = new int[16];
+		this.termEnds = new int[16];
+		this.terms = new byte[256];
+	}
+
+	/**
+	 * @return The number of pages in the store
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return One more than the greatest id ever added
+	 */
+	int idLimit() {
+		return idLimit;
+	}
+
+	/**
+	 * @return true if the id refers to a page in the store
+	 */
+	boolean contains(int id) {
+		return id >= 0 && id < idLimit && flags[id] == PRESENT;
+	}
+
+	/**
+	 * @return The dictionary the keywords of the pages are interned in
+	 */
+	KeywordDictionary dictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * Adds a page with a rank of 0.
+	 *
+	 * @param id    The id of the page, which its URL already has
+	 * @param ids   The term ids of its keywords, in order
+	 * @param count The number of term ids in ids
+	 * @throws FullGraphException If the keywords of all pages no longer fit in
+	 *                            one array
+	 */
+	void add(int id, int[] ids, int count) throws FullGraphException {
+		int length = KeywordDictionary.packedLength(ids, 0, count);
+		if ((long) termSize + length > Integer.MAX_VALUE - 8 && garbage > 0) {
+			compact();
+		}
+		if ((long) termSize + length > Integer.MAX_VALUE - 8) {
+			throw new FullGraphException("The page store has run out of space.");
+		}
+		if (termSize + length > terms.length) {
+			terms = Arrays.copyOf(terms, (int) Math.min(Integer.MAX_VALUE - 8,
+					Math.max((long) terms.length * 2, (long) termSize + length)));
+		}
+		if (id >= flags.length) {
+			int capacity = Math.max(id + 1, flags.length * 2);
+			flags = Arrays.copyOf(flags, capacity);
+			ranks = Arrays.copyOf(ranks, capacity);
+			termStarts = Arrays.copyOf(termStarts, capacity);
+			termEnds = Arrays.copyOf(termEnds, capacity);
+		}
+		flags[id] = PRESENT;
+		ranks[id] = 0;
+		termStarts[id] = termSize;
+		termSize = KeywordDictionary.pack(ids, 0, count, terms, termSize);
+		termEnds[id] = termSize;
+		idLimit = Math.max(idLimit, id + 1);
+		size += 1;
+	}
+
+	/**
+	 * Removes a page. Its keywords are reclaimed once removed pages hold half of
+	 * the keyword bytes.
+	 *
+	 * @param id The id of the page to remove
+	 */
+	void remove(int id) {
+		if (!contains(id)) {
+			return;
+		}
+		flags[id] = 0;
+		garbage += termEnds[id] - termStarts[id];
+		termStarts[id] = 0;
+		termEnds[id] = 0;
+		size -= 1;
+		if (garbage > termSize / 2) {
+			compact();
+		}
+	}
+
+	/**
+	 * Moves the keywords of the pages together in order of id, dropping the
+	 * bytes of removed pages.
+	 */
+	private void compact() {
+		byte[] compacted = new byte[Math.max(256, termSize - garbage)];
+		int position = 0;
+		for (int id = 0; id < idLimit; id++) {
+			int length = termEnds[id] - termStarts[id];
+			System.arraycopy(terms, termStarts[id], compacted, position, length);
+			termStarts[id] = position;
+			position += length;
+			termEnds[id] = position;
+		}
+		terms = compacted;
+		termSize = position;
+		garbage = 0;
+	}
+
+	/**
+	 * @return The number of ids below the id limit that belong to no page,
+	 *         because their page was removed
+	 */
+	int removedCount() {
+		return idLimit - size;
+	}
+
+	/**
+	 * Copies the pages into a new store, renumbered in order so that their ids
+	 * are dense. Ranks are copied with the pages.
+	 *
+	 * @param ids  The new id of each id, or -1 for ids without a page
+	 * @param urls The URL dictionary renumbered the same way
+	 * @return The new store
+	 */
+	PageStore renumber(int[] ids, StringDictionary urls) {
+		PageStore renumbered = new PageStore(urls, dictionary);
+		int capacity = Math.max(16, size);
+		renumbered.flags = new byte[capacity];
+		renumbered.ranks = new double[capacity];
+		renumbered.termStarts = new int[capacity];
+		renumbered.termEnds = new int[capacity];
+		renumbered.terms = new byte[Math.max(256, termSize - garbage)];
+		for (int id = 0; id < idLimit; id++) {
+			int next = ids[id];
+			if (next >= 0) {
+				int length = termEnds[id] - termStarts[id];
+				System.arraycopy(terms, termStarts[id], renumbered.terms, renumbered.termSize, length);
+				renumbered.flags[next] = PRESENT;
+				renumbered.ranks[next] = ranks[id];
+				renumbered.termStarts[next] = renumbered.termSize;
+				renumbered.termSize += length;
+				renumbered.termEnds[next] = renumbered.termSize;
+			}
+		}
+		renumbered.idLimit = size;
+		renumbered.size = size;
+		return renumbered;
+	}
+
+	/**
+	 * @param id The id of a page in the store
+	 * @return The URL of the page
+	 */
+	String url(int id) {
+		return urls.get(id);
+	}
+
+	/**
+	 * @param id The id of a page in the store
+	 * @return The rank of the page
+	 */
+	double rank(int id) {
+		return ranks[id];
+	}
+
+	/**
+	 * @param id   The id of a page in the store
+	 * @param rank The new rank of the page
+	 */
+	void setRank(int id, double rank) {
+		ranks[id] = rank;
+	}
+
+	/**
+	 * @param id The id of a page in the store
+	 * @return The term ids of the keywords of the page, in order
+	 */
+	int[] terms(int id) {
+		return KeywordDictionary.unpack(terms, termStarts[id], termEnds[id]);
+	}
+
+	/**
+	 * @param id The id of a page in the store
+	 * @return The number of keywords of the page
+	 */
+	int keywordCount(int id) {
+		return KeywordDictionary.count(terms, termStarts[id], termEnds[id]);
+	}
+
+	/**
+	 * @param id The id of a page
+	 * @return A view of the page, or null if the store does not have it
+	 */
+	WebPage page(int id) {
+		return contains(id) ? new WebPage(this, id) : null;
+	}
+
+	/**
+	 * @return The number of bytes held by the store, not counting the
+	 *         dictionaries
+	 */
+	long bytes() {
+		return 17L * flags.length + terms.length;
+	}
+
+	/**
+	 * Lists the ids of the pages in an order. The orders of this package read
+	 * their keys straight from the store; any other comparator is handed views
+	 * of the pages. The sort is stable, so pages the order ranks equally stay
+	 * in order of id.
+	 *
+	 * @param order The order to list pages in
+	 * @return The ids of the pages in order
+	 */
+	int[] sort(Comparator<WebPage> order) {
+		int[] ids = new int[size];
+		int count = 0;
+		for (int id = 0; id < idLimit; id++) {
+			if (flags[id] == PRESENT) {
+				ids[count++] = id;
+			}
+		}
+		IntBinaryOperator compare;
+		if (order instanceof Order) {
+			compare = ((Order) order).order(this);
+		} else {
+			compare = (a, b) -> order.compare(new WebPage(this, a), new WebPage(this, b));
+		}
+		sort(ids, new int[ids.length], 0, ids.length, compare);
+		return ids;
+	}
+
+	/**
+	 * Sorts part of an array of ids with a stable merge sort.
+	 *
+	 * @param ids     The ids to sort
+	 * @param buffer  An array as long as ids to merge through
+	 * @param from    The position of the first id to sort
+	 * @param to      The position just past the last id to sort
+	 * @param compare Compares two ids the way a comparator compares their pages
+	 */
+	private static void sort(int[] ids, int[] buffer, int from, int to, IntBinaryOperator compare) {
+		if (to - from <= INSERTION_RUN) {
+			for (int i = from + 1; i < to; i++) {
+				int id = ids[i];
+				int j = i;
+				while (j > from && compare.applyAsInt(ids[j - 1], id) > 0) {
+					ids[j] = ids[j - 1];
+					j -= 1;
+				}
+				ids[j] = id;
+			}
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		sort(ids, buffer, from, middle, compare);
+		sort(ids, buffer, middle, to, compare);
+		// Halves that are already in order, as ids are for the order of index,
+		// need no merging.
+		if (compare.applyAsInt(ids[middle - 1], ids[middle]) <= 0) {
+			return;
+		}
+		System.arraycopy(ids, from, buffer, from, to - from);
+		int i = from;
+		int j = middle;
+		for (int k = from; k < to; k++) {
+			if (j == to || (i < middle && compare.applyAsInt(buffer[i], buffer[j]) <= 0)) {
+				ids[k] = buffer[i++];
+			} else {
+				ids[k] = buffer[j++];
+			}
+		}
+	}
+
+	/**
+	 * <code>Order</code> interface is implemented by the comparators of this
+	 * package, so that a store can sort its pages by id without making a view
+	 * of each one.
+	 */
+	interface Order {
+		/**
+		 * @param pages The store whose pages are sorted
+		 * @return A comparison of two ids of the store that agrees with the
+		 *         comparator's comparison of their pages
+		 */
+		IntBinaryOperator order(PageStore pages);
+	}
+}
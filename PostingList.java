@@ -0,0 +1,313 @@
+package searchEngine;
+
+import java.util.Arrays;
+
+/**
+ * <code>PostingList</code> class is a sorted set of page ids stored in a
+ * primitive int array, with the number of times the keyword occurs on each
+ * page.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+class PostingList {
+	private int[] ids;
+	// How often the keyword occurs on each page, or null if once on every page.
+	private short[] frequencies;
+	private int size;
+	// The ids in order of score, or null if the list has changed since.
+	private Ranking ranking;
+	// The score version the list was last searched at.
+	private long searchedAt = -1;
+	// The relevance of the keyword to each page, or null if the list has changed
+	// since.
+	private Bm25.Impacts impacts;
+
+	/**
+	 * Returns an empty instance of PostingList
+	 */
+	PostingList() {
+		this.ids = new int[4];
+		this.frequencies = new short[4];
+		this.size = 0;
+	}
+
+	/**
+	 * Returns an instance of PostingList that takes over an array of ids, each
+	 * of which occurs once.
+	 *
+	 * @param ids  The ids in ascending order, without duplicates
+	 * @param size The number of ids in the array
+	 */
+	PostingList(int[] ids, int size) {
+		this.ids = ids;
+		this.size = size;
+	}
+
+	/**
+	 * @return The number of ids in the list
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return The id at position i
+	 */
+	int get(int i) {
+		return ids[i];
+	}
+
+	/**
+	 * @return The number of times the keyword occurs on the page at position i
+	 */
+	int frequency(int i) {
+		return frequencies == null ? 1 : frequencies[i];
+	}
+
+	/**
+	 * Finds the first position at or after from that holds an id no smaller than
+	 * the given one. The search gallops forward in doubling steps before it
+	 * bisects, so skipping ahead by d positions costs O(log d), which is what
+	 * makes intersecting a short list with a long one cheap.
+	 *
+	 * @param from The position to search from
+	 * @param id   The id to search for
+	 * @return The position found, or the size of the list if every id from
+	 *         position from on is smaller
+	 */
+	int seek(int from, int id) {
+		if (from >= size || ids[from] >= id) {
+			return from;
+		}
+		// ids[low] < id from here on.
+		int low = from;
+		int step = 1;
+		while (low + step < size && ids[low + step] < id) {
+			low += step;
+			step <<= 1;
+		}
+		int high = Math.min(low + step, size);
+		// The answer is in (low, high].
+		while (high - low > 1) {
+			int middle = (low + high) >>> 1;
+			if (ids[middle] < id) {
+				low = middle;
+			} else {
+				high = middle;
+			}
+		}
+		return high;
+	}
+
+	/**
+	 * @return The number of bytes held by the list
+	 */
+	long bytes() {
+		return 4L * ids.length + (frequencies == null ? 0 : 2L * frequencies.length);
+	}
+
+	/**
+	 * Adds one occurrence of the keyword on a page to the list. Ids larger than
+	 * every id in the list are appended in constant time.
+	 *
+	 * @return true if the id was not already in the list
+	 */
+	boolean add(int id) {
+		int position;
+		if (size == 0 || ids[size - 1] < id) {
+			position = size;
+		} else {
+			position = Arrays.binarySearch(ids, 0, size, id);
+			if (position >= 0) {
+				increment(position);
+				return false;
+			}
+			position = -position - 1;
+		}
+		if (frequencies == null) {
+			frequencies = new short[ids.length];
+			Arrays.fill(frequencies, 0, size, (short) 1);
+		}
+		if (size == ids.length) {
+			ids = Arrays.copyOf(ids, ids.length * 2);
+			frequencies = Arrays.copyOf(frequencies, ids.length);
+		}
+		System.arraycopy(ids, position, ids, position + 1, size - position);
+		System.arraycopy(frequencies, position, frequencies, position + 1, size - position);
+		ids[position] = id;
+		frequencies[position] = 1;
+		size += 1;
+		changed();
+		return true;
+	}
+
+	/**
+	 * Sets the number of occurrences on every page to zero, before they are
+	 * counted again with <code>count</code>.
+	 */
+	void clearFrequencies() {
+		frequencies = new short[ids.length];
+		changed();
+	}
+
+	/**
+	 * Adds one occurrence of the keyword on a page that is already in the list.
+	 *
+	 * @param from The position to search for the id from
+	 * @param id   The id of the page
+	 * @return The position of the id, or -1 if it is not in the list at or after
+	 *         position from
+	 */
+	int count(int from, int id) {
+		int position = seek(from, id);
+		if (position == size || ids[position] != id) {
+			return -1;
+		}
+		increment(position);
+		return position;
+	}
+
+	/**
+	 * Adds one occurrence at a position, saturating at the largest short.
+	 */
+	private void increment(int position) {
+		if (frequencies == null) {
+			frequencies = new short[ids.length];
+			Arrays.fill(frequencies, 0, size, (short) 1);
+		}
+		if (frequencies[position] < Short.MAX_VALUE) {
+			frequencies[position] += 1;
+		}
+		changed();
+	}
+
+	/**
+	 * Removes an id from the list.
+	 *
+	 * @return true if the id was in the list
+	 */
+	boolean remove(int id) {
+		int position = Arrays.binarySearch(ids, 0, size, id);
+		if (position < 0) {
+			return false;
+		}
+		System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+		if (frequencies != null) {
+			System.arraycopy(frequencies, position + 1, frequencies, position, size - position - 1);
+		}
+		size -= 1;
+		changed();
+		return true;
+	}
+
+	/**
+	 * Copies the list with its ids renumbered, along with their frequencies.
+	 *
+	 * @param map The new id of each id, which must keep the ids in order
+	 * @return The renumbered list
+	 */
+	PostingList renumber(int[] map) {
+		int[] renumbered = new int[Math.max(4, size)];
+		for (int i = 0; i < size; i++) {
+			renumbered[i] = map[ids[i]];
+		}
+		PostingList list = new PostingList(renumbered, size);
+		if (frequencies != null) {
+			list.frequencies = Arrays.copyOf(frequencies, renumbered.length);
+		}
+		return list;
+	}
+
+	/**
+	 * Copies the ids into an array.
+	 *
+	 * @param target The array to copy into
+	 * @param offset The position of the first id in the array
+	 */
+	void copyTo(int[] target, int offset) {
+		System.arraycopy(ids, 0, target, offset, size);
+	}
+
+	/**
+	 * @return A copy of the ids in ascending order
+	 */
+	int[] toArray() {
+		return Arrays.copyOf(ids, size);
+	}
+
+	/**
+	 * @param version The current score version of the graph
+	 * @return The ids in order of score, or null if they have not been put in
+	 *         order since the list or the scores last changed
+	 */
+	Ranking ranking(long version) {
+		Ranking ranking = this.ranking;
+		return ranking != null && ranking.version == version ? ranking : null;
+	}
+
+	/**
+	 * Keeps a ranking of every id in the list until the list or the scores
+	 * change.
+	 */
+	void setRanking(Ranking ranking) {
+		this.ranking = ranking;
+	}
+
+	/**
+	 * Notes that the list has been searched.
+	 *
+	 * @param version The current score version of the graph
+	 * @return true if the list was already searched at this version
+	 */
+	boolean markSearched(long version) {
+		boolean repeated = searchedAt == version;
+		searchedAt = version;
+		return repeated;
+	}
+
+	/**
+	 * @return The relevance of the keyword to each page, or null if it has not
+	 *         been computed since the list last changed
+	 */
+	Bm25.Impacts impacts() {
+		return impacts;
+	}
+
+	/**
+	 * Keeps the relevance of the keyword to each page until the list changes.
+	 */
+	void setImpacts(Bm25.Impacts impacts) {
+		this.impacts = impacts;
+	}
+
+	/**
+	 * Drops everything derived from the ids and their frequencies.
+	 */
+	private void changed() {
+		ranking = null;
+		impacts = null;
+	}
+
+	/**
+	 * <code>Ranking</code> class pairs an ordering with the scores it was made
+	 * from and the score version it was made at. Its fields are final, so
+	 * readers that race with the search storing it still see it whole.
+	 */
+	static final class Ranking {
+		final int[] ids;
+		final double[] scores;
+		private final long version;
+
+		/**
+		 * @param ids     Ids, best first
+		 * @param scores  The score of each id
+		 * @param version The score version the ids were ordered at
+		 */
+		Ranking(int[] ids, double[] scores, long version) {
+			this.ids = ids;
+			this.scores = scores;
+			this.version = version;
+		}
+	}
+}
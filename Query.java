@@ -0,0 +1,533 @@
+package searchEngine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+
+/**
+ * <code>Query</code> class is a parsed search query that combines keywords
+ * with AND, OR and NOT.
+ *
+ * Operators are written in capitals and bind in the order NOT, AND, OR, and
+ * parentheses group. Keywords next to each other are joined by AND, so
+ * <code>java threads OR (python NOT snakes)</code> finds the pages with both
+ * java and threads, and the pages with python but not snakes. A NOT only
+ * makes sense next to something it can exclude from, so a query that asks
+ * for pages without a keyword, and nothing else, is rejected.
+ *
+ * A keyword with <code>*</code> or <code>?</code> in it is a pattern that
+ * stands for every keyword it matches, with <code>*</code> matching any
+ * characters and <code>?</code> one, so <code>data*</code> finds the pages
+ * with data, database or datum. A keyword ending in <code>~</code> stands for
+ * every keyword within two edits of it, and one ending in <code>~1</code>
+ * within one. Patterns and fuzzy keywords are looked up in the trie of the
+ * keyword dictionary, and a page matches them if it has any of the keywords
+ * they stand for.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+class Query {
+	private static final int TERM = 0;
+	private static final int AND = 1;
+	private static final int OR = 2;
+	private static final int NOT = 3;
+	private static final int PATTERN = 4;
+	private static final int FUZZY = 5;
+	// A pattern or fuzzy keyword with the keywords it stands for.
+	private static final int EXPANDED = 6;
+	private static final PostingList NO_PAGES = new PostingList(new int[0], 0);
+	/**
+	 * The most keywords a pattern or fuzzy keyword may stand for.
+	 */
+	static final int MAX_EXPANSIONS = 1024;
+	/**
+	 * The most edits a fuzzy keyword allows.
+	 */
+	static final int MAX_EDITS = 2;
+	/**
+	 * The keyword searches with patterns or fuzzy keywords are cached under as
+	 * well as the keywords they stand for, since a keyword new to the index can
+	 * change what they stand for.
+	 */
+	static final String PATTERNS = "*";
+
+	private final int kind;
+	private final String term;
+	private final Query[] children;
+	// The number of edits of a fuzzy keyword.
+	private final int edits;
+	// The keywords an expanded keyword stands for.
+	private final String[] expansions;
+
+	private Query(int kind, String term, Query[] children) {
+		this(kind, term, children, 0, null);
+	}
+
+	private Query(int kind, String term, Query[] children, int edits, String[] expansions) {
+		this.kind = kind;
+		this.term = term;
+		this.children = children;
+		this.edits = edits;
+		this.expansions = expansions;
+	}
+
+	/**
+	 * Parses a query.
+	 *
+	 * @param text The query
+	 * @return The parsed query
+	 * @throws IllegalArgumentException If the query is empty, malformed, or only
+	 *                                  excludes pages
+	 */
+	static Query parse(String text) throws IllegalArgumentException {
+		Parser parser = new Parser(text);
+		Query query = parser.parseOr();
+		if (parser.peek() != null) {
+			throw new IllegalArgumentException("Unexpected \"" + parser.peek() + "\" in the query.");
+		}
+		query.checkNegations();
+		return query;
+	}
+
+	/**
+	 * @return The distinct keywords of the query that are not under a NOT,
+	 *         which are the ones that make a page more relevant. Patterns and
+	 *         fuzzy keywords only count once expanded.
+	 */
+	String[] terms() {
+		LinkedHashSet<String> terms = new LinkedHashSet<String>();
+		collectTerms(terms);
+		return terms.toArray(new String[0]);
+	}
+
+	/**
+	 * @return true if the query has a pattern or fuzzy keyword
+	 */
+	boolean hasPatterns() {
+		if (kind == PATTERN || kind == FUZZY || kind == EXPANDED) {
+			return true;
+		}
+		return children != null && Arrays.stream(children).anyMatch(Query::hasPatterns);
+	}
+
+	/**
+	 * Replaces each pattern and fuzzy keyword with the keywords it stands for
+	 * in an index, so that they count towards relevance like any other.
+	 *
+	 * @param index The index to look the keywords up in
+	 * @return The expanded query, or this one if it has no patterns
+	 * @throws IllegalArgumentException If a keyword stands for more than
+	 *                                  MAX_EXPANSIONS keywords
+	 */
+	Query expand(InvertedIndex index) throws IllegalArgumentException {
+		switch (kind) {
+		case PATTERN:
+		case FUZZY: {
+			String[] matches = kind == PATTERN ? index.matchPattern(term) : index.matchFuzzy(term, edits);
+			if (matches.length > MAX_EXPANSIONS) {
+				throw new IllegalArgumentException(
+						"\"" + this + "\" matches more than " + MAX_EXPANSIONS + " keywords. Try a longer one.");
+			}
+			return new Query(EXPANDED, toString(), null, 0, matches);
+		}
+		case TERM:
+		case EXPANDED:
+			return this;
+		default: {
+			if (!hasPatterns()) {
+				return this;
+			}
+			Query[] expanded = new Query[children.length];
+			for (int i = 0; i < children.length; i++) {
+				expanded[i] = children[i].expand(index);
+			}
+			return new Query(kind, term, expanded);
+		}
+		}
+	}
+
+	private void collectTerms(LinkedHashSet<String> terms) {
+		if (kind == TERM) {
+			terms.add(term);
+		} else if (kind == EXPANDED) {
+			terms.addAll(Arrays.asList(expansions));
+		} else if (kind != NOT && children != null) {
+			for (Query child : children) {
+				child.collectTerms(terms);
+			}
+		}
+	}
+
+	/**
+	 * Finds the pages that match the query. Each AND starts from the keyword
+	 * with the fewest pages and gallops through the others, so its cost depends
+	 * on the shortest list far more than on the longest.
+	 *
+	 * @param index The index to search
+	 * @return The ids of the matching pages in ascending order. The list may be
+	 *         one of the index's own and must not be changed.
+	 */
+	PostingList evaluate(InvertedIndex index) {
+		switch (kind) {
+		case TERM: {
+			PostingList list = index.get(term);
+			return list == null ? NO_PAGES : list;
+		}
+		case PATTERN:
+		case FUZZY:
+			return expand(index).evaluate(index);
+		case EXPANDED: {
+			PostingList[] lists = new PostingList[expansions.length];
+			int count = 0;
+			for (String expansion : expansions) {
+				PostingList list = index.get(expansion);
+				if (list != null) {
+					lists[count++] = list;
+				}
+			}
+			return unionAll(lists, count);
+		}
+		case AND: {
+			ArrayList<PostingList> included = new ArrayList<PostingList>();
+			ArrayList<Query> excluded = new ArrayList<Query>();
+			for (Query child : children) {
+				if (child.kind == NOT) {
+					excluded.add(child.children[0]);
+				} else {
+					PostingList list = child.evaluate(index);
+					if (list.size() == 0) {
+						return NO_PAGES;
+					}
+					included.add(list);
+				}
+			}
+			included.sort(Comparator.comparingInt(PostingList::size));
+			PostingList result = intersect(included.toArray(new PostingList[0]));
+			for (Query child : excluded) {
+				if (result.size() == 0) {
+					break;
+				}
+				result = subtract(result, child.evaluate(index));
+			}
+			return result;
+		}
+		case OR: {
+			PostingList[] lists = new PostingList[children.length];
+			for (int i = 0; i < children.length; i++) {
+				lists[i] = children[i].evaluate(index);
+			}
+			// Merging the shortest lists first copies the fewest ids.
+			Arrays.sort(lists, Comparator.comparingInt(PostingList::size));
+			PostingList result = lists[0];
+			for (int i = 1; i < lists.length; i++) {
+				result = union(result, lists[i]);
+			}
+			return result;
+		}
+		default:
+			throw new IllegalStateException("A NOT is only evaluated by its AND.");
+		}
+	}
+
+	/**
+	 * Returns the query in a normal form, in which the operands of each AND and
+	 * OR are sorted, so queries that differ only in order or spacing read the
+	 * same.
+	 */
+	@Override
+	public String toString() {
+		switch (kind) {
+		case TERM:
+		case PATTERN:
+		case EXPANDED:
+			return term;
+		case FUZZY:
+			return term + "~" + edits;
+		case NOT:
+			return "NOT " + children[0].operand();
+		default: {
+			String[] operands = new String[children.length];
+			for (int i = 0; i < children.length; i++) {
+				operands[i] = children[i].operand();
+			}
+			Arrays.sort(operands);
+			return String.join(kind == AND ? " AND " : " OR ", operands);
+		}
+		}
+	}
+
+	/**
+	 * @return The query as an operand, in parentheses if it has operators
+	 */
+	private String operand() {
+		return kind == AND || kind == OR ? "(" + this + ")" : toString();
+	}
+
+	/**
+	 * Checks that every NOT is an operand of an AND that also has an operand
+	 * that is not negated.
+	 *
+	 * @throws IllegalArgumentException If a NOT has nothing to exclude from
+	 */
+	private void checkNegations() throws IllegalArgumentException {
+		if (kind == NOT || (kind == AND && Arrays.stream(children).allMatch(child -> child.kind == NOT))) {
+			throw new IllegalArgumentException("NOT needs a keyword to exclude from, as in \"a NOT b\".");
+		}
+		if (children != null) {
+			for (Query child : children) {
+				if (child.kind == NOT && kind == AND) {
+					child.children[0].checkNegations();
+				} else {
+					child.checkNegations();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Intersects posting lists, shortest first. Every id of the shortest list
+	 * is looked for in the others; a miss skips the shortest list ahead to the
+	 * id found instead.
+	 */
+	private static PostingList intersect(PostingList[] lists) {
+		PostingList rarest = lists[0];
+		if (lists.length == 1) {
+			return rarest;
+		}
+		int[] positions = new int[lists.length];
+		int[] hits = new int[rarest.size()];
+		int count = 0;
+		int i = 0;
+		search: while (i < rarest.size()) {
+			int id = rarest.get(i);
+			for (int j = 1; j < lists.length; j++) {
+				int position = lists[j].seek(positions[j], id);
+				positions[j] = position;
+				if (position == lists[j].size()) {
+					break search;
+				}
+				int found = lists[j].get(position);
+				if (found != id) {
+					i = rarest.seek(i + 1, found);
+					continue search;
+				}
+			}
+			hits[count++] = id;
+			i += 1;
+		}
+		return new PostingList(hits, count);
+	}
+
+	/**
+	 * @return The ids of one list that are not in another
+	 */
+	private static PostingList subtract(PostingList list, PostingList excluded) {
+		int[] hits = new int[list.size()];
+		int count = 0;
+		int position = 0;
+		for (int i = 0; i < list.size(); i++) {
+			int id = list.get(i);
+			position = excluded.seek(position, id);
+			if (position == excluded.size() || excluded.get(position) != id) {
+				hits[count++] = id;
+			}
+		}
+		return new PostingList(hits, count);
+	}
+
+	/**
+	 * @return The ids in either of two lists
+	 */
+	private static PostingList union(PostingList first, PostingList second) {
+		if (first.size() == 0) {
+			return second;
+		}
+		int[] ids = new int[first.size() + second.size()];
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while (i < first.size() && j < second.size()) {
+			int a = first.get(i);
+			int b = second.get(j);
+			ids[count++] = Math.min(a, b);
+			i += a <= b ? 1 : 0;
+			j += b <= a ? 1 : 0;
+		}
+		while (i < first.size()) {
+			ids[count++] = first.get(i++);
+		}
+		while (j < second.size()) {
+			ids[count++] = second.get(j++);
+		}
+		return new PostingList(ids, count);
+	}
+
+	/**
+	 * @return The ids in any of a number of lists. Two lists are merged; more
+	 *         are gathered and sorted at once, which costs less than merging
+	 *         each in turn when a pattern stands for many keywords.
+	 */
+	private static PostingList unionAll(PostingList[] lists, int count) {
+		if (count == 0) {
+			return NO_PAGES;
+		} else if (count == 1) {
+			return lists[0];
+		} else if (count == 2) {
+			return union(lists[0], lists[1]);
+		}
+		int total = 0;
+		for (int i = 0; i < count; i++) {
+			total += lists[i].size();
+		}
+		int[] ids = new int[total];
+		int at = 0;
+		for (int i = 0; i < count; i++) {
+			lists[i].copyTo(ids, at);
+			at += lists[i].size();
+		}
+		Arrays.sort(ids);
+		int distinct = 0;
+		for (int i = 0; i < total; i++) {
+			if (distinct == 0 || ids[distinct - 1] != ids[i]) {
+				ids[distinct++] = ids[i];
+			}
+		}
+		return new PostingList(ids, distinct);
+	}
+
+	/**
+	 * <code>Parser</code> class is a recursive descent parser over the words
+	 * and parentheses of a query.
+	 */
+	private static class Parser {
+		private final ArrayList<String> tokens = new ArrayList<String>();
+		private int next;
+
+		private Parser(String text) {
+			int i = 0;
+			while (i < text.length()) {
+				char c = text.charAt(i);
+				if (Character.isWhitespace(c)) {
+					i += 1;
+				} else if (c == '(' || c == ')') {
+					tokens.add(String.valueOf(c));
+					i += 1;
+				} else {
+					int start = i;
+					while (i < text.length() && !Character.isWhitespace(text.charAt(i)) && text.charAt(i) != '('
+							&& text.charAt(i) != ')') {
+						i += 1;
+					}
+					tokens.add(text.substring(start, i));
+				}
+			}
+		}
+
+		private String peek() {
+			return next < tokens.size() ? tokens.get(next) : null;
+		}
+
+		// or := and ("OR" and)*
+		private Query parseOr() {
+			ArrayList<Query> operands = new ArrayList<Query>();
+			operands.add(parseAnd());
+			while ("OR".equals(peek())) {
+				next += 1;
+				operands.add(parseAnd());
+			}
+			return combine(OR, operands);
+		}
+
+		// and := unary (["AND"] unary)*
+		private Query parseAnd() {
+			ArrayList<Query> operands = new ArrayList<Query>();
+			operands.add(parseUnary());
+			while (true) {
+				String token = peek();
+				if ("AND".equals(token)) {
+					next += 1;
+				} else if (token == null || token.equals(")") || token.equals("OR")) {
+					break;
+				}
+				operands.add(parseUnary());
+			}
+			return combine(AND, operands);
+		}
+
+		// unary := "NOT" unary | "(" or ")" | keyword
+		private Query parseUnary() {
+			String token = peek();
+			if (token == null) {
+				throw new IllegalArgumentException(
+						tokens.isEmpty() ? "The query is empty." : "The query ends in the middle.");
+			}
+			next += 1;
+			switch (token) {
+			case "NOT": {
+				Query operand = parseUnary();
+				return operand.kind == NOT ? operand.children[0] : new Query(NOT, null, new Query[] { operand });
+			}
+			case "(": {
+				Query query = parseOr();
+				if (!")".equals(peek())) {
+					throw new IllegalArgumentException("A parenthesis in the query is not closed.");
+				}
+				next += 1;
+				return query;
+			}
+			case ")":
+			case "AND":
+			case "OR":
+				throw new IllegalArgumentException("Unexpected \"" + token + "\" in the query.");
+			default:
+				return keyword(token);
+			}
+		}
+
+		/**
+		 * @return The query for a keyword, which may be a pattern or fuzzy
+		 * @throws IllegalArgumentException If a fuzzy keyword allows too many
+		 *                                  edits
+		 */
+		private static Query keyword(String token) throws IllegalArgumentException {
+			int tilde = token.lastIndexOf('~');
+			String stem = tilde > 0 ? token.substring(0, tilde) : null;
+			String suffix = tilde > 0 ? token.substring(tilde + 1) : null;
+			if (stem != null && !stem.chars().anyMatch(c -> TermTrie.isWildcard((char) c))
+					&& (suffix.isEmpty() || (suffix.length() == 1 && Character.isDigit(suffix.charAt(0))))) {
+				int edits = suffix.isEmpty() ? MAX_EDITS : suffix.charAt(0) - '0';
+				if (edits > MAX_EDITS) {
+					throw new IllegalArgumentException(
+							"A fuzzy keyword allows at most " + MAX_EDITS + " edits, as in \"" + stem + "~"
+									+ MAX_EDITS + "\".");
+				}
+				return new Query(FUZZY, stem, null, edits, null);
+			}
+			if (token.chars().anyMatch(c -> TermTrie.isWildcard((char) c))) {
+				return new Query(PATTERN, token, null);
+			}
+			return new Query(TERM, token, null);
+		}
+
+		/**
+		 * Joins operands with an operator, merging operands that use the same
+		 * operator, so that a AND (b AND c) is evaluated as one three-way AND.
+		 */
+		private static Query combine(int kind, ArrayList<Query> operands) {
+			if (operands.size() == 1) {
+				return operands.get(0);
+			}
+			ArrayList<Query> flat = new ArrayList<Query>();
+			for (Query operand : operands) {
+				if (operand.kind == kind) {
+					flat.addAll(Arrays.asList(operand.children));
+				} else {
+					flat.add(operand);
+				}
+			}
+			return new Query(kind, null, flat.toArray(new Query[0]));
+		}
+	}
+}
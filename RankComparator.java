@@ -1,6 +1,7 @@
 package searchEngine;
 
 import java.util.Comparator;
+import java.util.function.IntBinaryOperator;
 
 /**
  * Compares two WebPages by their rank in descending order.
@@ -8,14 +9,14 @@ import java.util.Comparator;
  * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
  *         Brook ID: 110261379
  **/
-public class RankComparator implements Comparator<WebPage> {
+public class RankComparator implements Comparator<WebPage>, PageStore.Order {
 	@Override
 	public int compare(WebPage w1, WebPage w2) {
-		if (w1.getRank() == w2.getRank())
-			return 0;
-		else if (w1.getRank() > w2.getRank())
-			return -1;
-		else
-			return 1;
+		return Double.compare(w2.getRank(), w1.getRank());
+	}
+
+	@Override
+	public IntBinaryOperator order(PageStore pages) {
+		return (id1, id2) -> Double.compare(pages.rank(id2), pages.rank(id1));
 	}
 }
@@ -0,0 +1,74 @@
+package searchEngine;
+
+import java.util.Random;
+
+/**
+ * <code>RankSpeedup</code> class measures how a full PageRank computation
+ * scales with the number of threads on a synthetic graph, and checks that
+ * every thread count gives the same scores.
+ *
+ * Usage: <code>java searchEngine.RankSpeedup [pages] [links per page]
+ * [max threads]</code>
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+public class RankSpeedup {
+	/**
+	 * Run the measurement.
+	 */
+	public static void main(String[] args) throws FullGraphException {
+		int pages = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		int degree = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int maxThreads = args.length > 2 ? Integer.parseInt(args[2])
+				: Runtime.getRuntime().availableProcessors();
+		LinkStore links = new LinkStore(Long.MAX_VALUE);
+		Random random = new Random(214);
+		int count = pages * degree;
+		int[] sources = new int[count];
+		int[] destinations = new int[count];
+		for (int i = 0; i < count; i++) {
+			sources[i] = random.nextInt(pages);
+			// Skew destinations so a few pages collect most of the links.
+			destinations[i] = (int) (pages * Math.pow(random.nextDouble(), 3));
+		}
+		links.load(pages, sources, destinations, count);
+		System.out.println("Pages: " + pages + ", links: " + links.edgeCount() + ", cores: "
+				+ Runtime.getRuntime().availableProcessors());
+		System.out.println(String.format("%-8s | %-10s | %-10s | %-8s | %-12s", "Threads", "Time (ms)", "Iterations",
+				"Speedup", "Max diff"));
+		System.out.println("==============================================================");
+		double[] baseline = null;
+		double baseTime = 0;
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			PageRankEngine engine = new PageRankEngine();
+			engine.setParallelism(threads);
+			engine.compute(links);
+			long start = System.nanoTime();
+			engine.compute(links);
+			double time = (System.nanoTime() - start) / 1e6;
+			double[] scores = new double[pages];
+			for (int v = 0; v < pages; v++) {
+				scores[v] = engine.score(v);
+			}
+			double diff = 0;
+			if (baseline == null) {
+				baseline = scores;
+				baseTime = time;
+			} else {
+				for (int v = 0; v < pages; v++) {
+					diff = Math.max(diff, Math.abs(scores[v] - baseline[v]));
+				}
+			}
+			System.out.println(String.format("%-8s | %-10.1f | %-10s | %-8.2f | %-12.3e", threads, time,
+					engine.getIterations(), baseTime / time, diff));
+			engine.setParallelism(1);
+			if (threads == maxThreads) {
+				break;
+			}
+			if (threads * 2 > maxThreads) {
+				threads = maxThreads / 2;
+			}
+		}
+	}
+}
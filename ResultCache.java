@@ -0,0 +1,292 @@
+package searchEngine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <code>ResultCache</code> class keeps the results of recent searches, so that
+ * repeated searches for popular keywords are answered without touching the
+ * index.
+ *
+ * Entries are keyed by the normal form of the query and the page of results
+ * asked for, and the least recently used entries are evicted once the cache
+ * holds more than its capacity in bytes. Each entry is also listed under the
+ * keywords that can bring a page into its results; the graph invalidates a
+ * keyword whenever a page with it is added or removed or changes rank, which
+ * drops exactly the entries that might have changed and leaves the rest.
+ * Cached results are therefore always those of the current graph.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+public class ResultCache {
+	// Rough sizes in bytes of the objects behind an entry, for the capacity.
+	private static final int ENTRY_BYTES = 160;
+	private static final int RESULT_BYTES = 48;
+	private static final int TERM_BYTES = 48;
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private final HashMap<String, HashSet<String>> keysByTerm = new HashMap<String, HashSet<String>>();
+	private long capacity;
+	private long bytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long invalidations;
+
+	/**
+	 * Returns an empty instance of ResultCache
+	 *
+	 * @param capacity The greatest number of bytes to hold, or 0 to cache
+	 *                 nothing
+	 */
+	ResultCache(long capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return The greatest number of bytes the cache holds
+	 */
+	synchronized long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Sets the greatest number of bytes the cache holds, evicting entries if it
+	 * now holds more.
+	 *
+	 * @param capacity The number of bytes, or 0 to cache nothing
+	 */
+	synchronized void setCapacity(long capacity) {
+		this.capacity = capacity;
+		evict();
+	}
+
+	/**
+	 * Looks up the results of a search.
+	 *
+	 * @param key The key of the search
+	 * @return A copy of the cached results, or null if there are none
+	 */
+	synchronized ArrayList<SearchResult> get(String key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			misses += 1;
+			return null;
+		}
+		hits += 1;
+		return new ArrayList<SearchResult>(entry.results);
+	}
+
+	/**
+	 * Caches the results of a search. Results too large to share the cache
+	 * with others are not cached.
+	 *
+	 * @param key     The key of the search
+	 * @param terms   The keywords that can bring a page into the results
+	 * @param results The results, which are copied
+	 */
+	synchronized void put(String key, String[] terms, ArrayList<SearchResult> results) {
+		long size = ENTRY_BYTES + 2L * key.length() + (long) RESULT_BYTES * results.size()
+				+ (long) TERM_BYTES * terms.length;
+		if (size > capacity / 4) {
+			return;
+		}
+		remove(entries.get(key));
+		Entry entry = new Entry(key, terms, new ArrayList<SearchResult>(results), size);
+		entries.put(key, entry);
+		for (String term : terms) {
+			HashSet<String> keys = keysByTerm.get(term);
+			if (keys == null) {
+				keys = new HashSet<String>();
+				keysByTerm.put(term, keys);
+			}
+			keys.add(key);
+		}
+		bytes += size;
+		evict();
+	}
+
+	/**
+	 * Drops the entries whose results could change when a page with a keyword
+	 * changes.
+	 *
+	 * @param term The keyword
+	 */
+	synchronized void invalidate(String term) {
+		if (entries.isEmpty()) {
+			return;
+		}
+		HashSet<String> keys = keysByTerm.remove(term);
+		if (keys != null) {
+			for (String key : keys) {
+				invalidations += 1;
+				remove(entries.get(key));
+			}
+		}
+	}
+
+	/**
+	 * Drops every entry, for changes that can affect any search.
+	 */
+	synchronized void clear() {
+		invalidations += entries.size();
+		entries.clear();
+		keysByTerm.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * @return A snapshot of the counters of the cache
+	 */
+	synchronized Statistics statistics() {
+		return new Statistics(hits, misses, evictions, invalidations, entries.size(), bytes);
+	}
+
+	/**
+	 * Evicts the least recently used entries until the cache fits its capacity.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+		while (bytes > capacity && eldest.hasNext()) {
+			Entry entry = eldest.next().getValue();
+			eldest.remove();
+			unlist(entry);
+			evictions += 1;
+		}
+	}
+
+	/**
+	 * Removes an entry, if there is one.
+	 */
+	private void remove(Entry entry) {
+		if (entry != null) {
+			entries.remove(entry.key);
+			unlist(entry);
+		}
+	}
+
+	/**
+	 * Takes a removed entry off the lists of its keywords and out of the size.
+	 */
+	private void unlist(Entry entry) {
+		for (String term : entry.terms) {
+			HashSet<String> keys = keysByTerm.get(term);
+			if (keys != null) {
+				keys.remove(entry.key);
+				if (keys.isEmpty()) {
+					keysByTerm.remove(term);
+				}
+			}
+		}
+		bytes -= entry.bytes;
+	}
+
+	/**
+	 * <code>Entry</code> class is the cached results of one search.
+	 */
+	private static class Entry {
+		private final String key;
+		private final String[] terms;
+		private final ArrayList<SearchResult> results;
+		private final long bytes;
+
+		private Entry(String key, String[] terms, ArrayList<SearchResult> results, long bytes) {
+			this.key = key;
+			this.terms = terms;
+			this.results = results;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * <code>Statistics</code> class is a snapshot of the counters of one or more
+	 * caches.
+	 */
+	public static class Statistics {
+		private final long hits;
+		private final long misses;
+		private final long evictions;
+		private final long invalidations;
+		private final long entries;
+		private final long bytes;
+
+		private Statistics(long hits, long misses, long evictions, long invalidations, long entries, long bytes) {
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+			this.invalidations = invalidations;
+			this.entries = entries;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * @return The number of searches answered from the cache
+		 */
+		public long getHits() {
+			return hits;
+		}
+
+		/**
+		 * @return The number of searches the cache could not answer
+		 */
+		public long getMisses() {
+			return misses;
+		}
+
+		/**
+		 * @return The fraction of searches answered from the cache, or 0 if there
+		 *         have been none
+		 */
+		public double getHitRate() {
+			return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+		}
+
+		/**
+		 * @return The number of entries evicted to stay within the capacity
+		 */
+		public long getEvictions() {
+			return evictions;
+		}
+
+		/**
+		 * @return The number of entries dropped because the graph changed
+		 */
+		public long getInvalidations() {
+			return invalidations;
+		}
+
+		/**
+		 * @return The number of entries held
+		 */
+		public long getEntries() {
+			return entries;
+		}
+
+		/**
+		 * @return The estimated number of bytes held
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return The counters of this cache and another added together
+		 */
+		public Statistics plus(Statistics other) {
+			return new Statistics(hits + other.hits, misses + other.misses, evictions + other.evictions,
+					invalidations + other.invalidations, entries + other.entries, bytes + other.bytes);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d hits, %d misses (%.1f%% hit rate), %d evictions, %d invalidations, "
+					+ "%d entries in %.1f MB", hits, misses, 100 * getHitRate(), evictions, invalidations, entries,
+					bytes / 1e6);
+		}
+	}
+}
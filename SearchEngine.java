@@ -1,7 +1,20 @@
 package searchEngine;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <code>SearchEngine</code> class simulates a search engine that the user can
@@ -13,20 +26,168 @@ import java.util.Scanner;
 public class SearchEngine {
 	public static final String PAGES_FILE = "pages.txt";
 	public static final String LINKS_FILE = "links.txt";
-	private static WebGraph web;
+	public static final String SNAPSHOT_FILE = "webgraph.snapshot";
+	public static final String LOG_FILE = "webgraph.log";
+	/**
+	 * A checkpoint is taken once the log grows past this many bytes, or once
+	 * CHECKPOINT_SECONDS have passed since the last one with the log not empty.
+	 */
+	public static final long CHECKPOINT_BYTES = 64L << 20;
+	public static final long CHECKPOINT_SECONDS = 300;
+	/**
+	 * The number of rows of a table or of search results printed before the
+	 * user is asked whether to go on.
+	 */
+	public static final int PAGE_ROWS = 50;
+	/**
+	 * The number of keywords suggested when a search finds nothing.
+	 */
+	public static final int SUGGESTIONS = 5;
+	private static ConcurrentWebGraph web;
+	private static MutationLog log;
+	private static long lastCheckpoint;
+	private static final ScheduledExecutorService CHECKPOINTER = Executors
+			.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "checkpointer");
+				thread.setDaemon(true);
+				return thread;
+			});
 	private static Scanner in = new Scanner(System.in);
+	// Set by the --off-heap argument.
+	private static boolean offHeap;
 
 	/**
-	 * Initializes the web graph.
+	 * Initializes the web graph from the snapshot if there is one, and from the
+	 * text files otherwise, then replays the mutations logged since and starts
+	 * the background checkpoints.
 	 */
 	public static void init() {
 		System.out.println("Loading WebGraph data...");
+		WebGraph graph = load();
+		try {
+			log = new MutationLog(Paths.get(LOG_FILE));
+			try {
+				int records = log.replay(graph);
+				if (records > 0) {
+					System.out.println("Recovered " + records + " logged changes.");
+				}
+			} catch (IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+				Path kept = setAsideLog(graph.getLsn());
+				System.out.println("The log does not match the graph. It was kept as " + kept
+						+ " and a new log was started.");
+				log = new MutationLog(Paths.get(LOG_FILE));
+				log.reset(graph.getLsn());
+			}
+			graph.attachLog(log);
+		} catch (IOException | IllegalArgumentException e) {
+			log = null;
+			System.out.println(e.getMessage());
+			System.out.println("Changes will not be saved until quit.");
+		}
+		try {
+			web = new ConcurrentWebGraph(graph);
+		} catch (IOException e) {
+			System.out.println("The graph could not be shared: " + e.getMessage());
+			System.exit(1);
+		}
+		registerMetrics();
+		if (log == null) {
+			return;
+		}
+		lastCheckpoint = System.nanoTime();
+		CHECKPOINTER.scheduleWithFixedDelay(SearchEngine::checkpointIfDue, 1, 1, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Closes the log and renames it out of the way, so that the records it
+	 * holds are kept for the user to recover rather than overwritten by a new
+	 * log.
+	 *
+	 * @param lsn The LSN of the graph the log does not match
+	 * @return The new name of the log
+	 * @throws IOException If the log cannot be renamed, for instance because a
+	 *                     log set aside before has the same name
+	 */
+	private static Path setAsideLog(long lsn) throws IOException {
+		log.close();
+		Path kept = Paths.get(LOG_FILE + ".bad-" + lsn);
 		try {
-			web = WebGraph.buildFromFiles("pages.txt", "links.txt");
-			System.out.println("Success!");
+			return Files.move(Paths.get(LOG_FILE), kept);
+		} catch (FileAlreadyExistsException e) {
+			throw new IOException("The log could not be set aside, since " + kept + " already exists.", e);
+		}
+	}
+
+	/**
+	 * Adds gauges of the size of the graph, its index, its cache and its log to
+	 * the metrics, and publishes them over JMX.
+	 */
+	private static void registerMetrics() {
+		Metrics.gauge("graph.pages", () -> web.getPageCount());
+		Metrics.gauge("graph.links", () -> web.getLinkCount());
+		Metrics.gauge("index.keywords", () -> web.getKeywordCount());
+		Metrics.gauge("cache.hits", () -> web.getCacheStatistics().getHits());
+		Metrics.gauge("cache.misses", () -> web.getCacheStatistics().getMisses());
+		Metrics.gauge("cache.evictions", () -> web.getCacheStatistics().getEvictions());
+		Metrics.gauge("cache.entries", () -> web.getCacheStatistics().getEntries());
+		Metrics.gauge("cache.bytes", () -> web.getCacheStatistics().getBytes());
+		if (log != null) {
+			Metrics.gauge("log.bytes", () -> log.size());
+		}
+		try {
+			Metrics.registerMBean();
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Takes a checkpoint if the log has grown past CHECKPOINT_BYTES, or if
+	 * CHECKPOINT_SECONDS have passed with the log not empty.
+	 */
+	private static void checkpointIfDue() {
+		boolean due = log.size() >= CHECKPOINT_BYTES || (log.getLastLsn() > log.getBaseLsn()
+				&& System.nanoTime() - lastCheckpoint >= TimeUnit.SECONDS.toNanos(CHECKPOINT_SECONDS));
+		if (due) {
+			try {
+				web.checkpoint(Paths.get(SNAPSHOT_FILE));
+				lastCheckpoint = System.nanoTime();
+			} catch (IOException e) {
+				System.out.println("\nA checkpoint failed: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Loads the web graph from the snapshot if there is one, and from the text
+	 * files otherwise.
+	 * 
+	 * @return The loaded graph
+	 */
+	private static WebGraph load() {
+		Path snapshot = Paths.get(SNAPSHOT_FILE);
+		if (Files.exists(snapshot)) {
+			try {
+				long start = System.nanoTime();
+				WebGraph graph = WebGraph.open(snapshot, offHeap);
+				System.out.printf("Success! Opened %s in %.2f s.%n", SNAPSHOT_FILE, (System.nanoTime() - start) / 1e9);
+				return graph;
+			} catch (IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+				System.out.println("Falling back to the text files.");
+			}
+		}
+		try {
+			GraphLoader loader = new GraphLoader();
+			loader.setOffHeap(offHeap);
+			WebGraph graph = loader.load(Paths.get(PAGES_FILE), Paths.get(LINKS_FILE));
+			System.out.println("Success! " + loader.report());
+			return graph;
 		} catch (Exception e) {
-			web = new WebGraph();
+			System.out.println(e.getMessage());
 			System.out.println("Something went wrong. Start from empty WebGraph.");
+			return new WebGraph(WebGraph.DEFAULT_MEMORY_BUDGET, offHeap);
 		}
 	}
 
@@ -43,18 +204,29 @@ public class SearchEngine {
 		System.out.println("\n(AP) - Add a new page to the graph.\r\n" + "(RP) - Remove a page from the graph.\r\n"
 				+ "(AL) - Add a link between  pages in the graph.\r\n"
 				+ "(RL) - Remove a link between pages in the graph.\r\n" + "(P)  - Print the graph.\r\n"
-				+ "(S)  - Search for pages with a keyword.\r\n" + "(Q)  - Quit." + "\n");
+				+ "(S)  - Search for pages with keywords (AND, OR, NOT, data*, colour~).\r\n" + "(M)  - Print the metrics.\r\n"
+				+ "(Q)  - Quit." + "\n");
 	}
 
 	/**
-	 * Delegates which function to run depending on the command entered..
+	 * Delegates which function to run depending on the command entered, until
+	 * the user quits.
 	 * 
 	 * <dl>
 	 * <dt>Postconditions</dt>
-	 * <dd>The command has called the appropriate function.</dd>
+	 * <dd>Each command has called the appropriate function.</dd>
 	 * </dl>
 	 */
 	public static void commandManager() {
+		while (true) {
+			command();
+		}
+	}
+
+	/**
+	 * Reads one command and runs the function it names.
+	 */
+	private static void command() {
 		printMenu();
 		System.out.print("Please select an option: ");
 		String command = in.nextLine().trim();
@@ -84,6 +256,10 @@ public class SearchEngine {
 			search();
 			break;
 		}
+		case ("M"): {
+			printMetrics();
+			break;
+		}
 		case ("Q"): {
 			quit();
 			break;
@@ -92,7 +268,6 @@ public class SearchEngine {
 			System.out.println("That command is not valid. Please try again.");
 		}
 		}
-		commandManager();
 	}
 
 	/**
@@ -142,6 +317,8 @@ public class SearchEngine {
 			System.out.println("\nLinked successfully added from " + source + " to " + destination + "!");
 		} catch (IllegalArgumentException e) {
 			System.out.println(e.getMessage());
+		} catch (FullGraphException e) {
+			System.out.println("The web is already full.");
 		}
 	}
 
@@ -165,47 +342,162 @@ public class SearchEngine {
 				"(I) - Sort based on index.\r\n" + "(U) - Sort based on URL.\r\n" + "(R) - Sort based on rank.\r\n");
 		System.out.print("Please select an option: ");
 		String command = in.nextLine().trim();
+		Comparator<WebPage> comparator;
 		switch (command.toUpperCase()) {
 		case ("I"):
-			web.sortPages(new IndexComparator());
-			web.printTable();
+			comparator = new IndexComparator();
 			break;
 		case ("U"):
-			web.sortPages(new UrlComparator());
-			web.printTable();
+			comparator = new UrlComparator();
 			break;
 		case ("R"):
-			web.sortPages(new RankComparator());
-			web.printTable();
+			comparator = new RankComparator();
 			break;
 		default:
 			System.out.println("That command is not valid. Please try again.");
-			break;
+			return;
 		}
+		int offset = 0;
+		while (web.printTable(comparator, offset, PAGE_ROWS) && nextPage()) {
+			offset += PAGE_ROWS;
+		}
+	}
+
+	/**
+	 * Asks the user whether to print the next page of a long table.
+	 * 
+	 * @return true if the user wants the next page
+	 */
+	private static boolean nextPage() {
+		System.out.print("\nPress Enter for the next page, or Q to stop: ");
+		return !in.nextLine().trim().equalsIgnoreCase("Q");
 	}
 
 	/**
-	 * Allows the user to search for pages by keyword.
+	 * Allows the user to search for pages by keyword, or by keywords combined
+	 * with AND, OR and NOT. If nothing is found, keywords close to the last one
+	 * typed are suggested.
 	 */
 	public static void search() {
-		System.out.print("Search keyword: ");
-		String keyword = in.nextLine();
-		web.printSearchResults(keyword);
+		System.out.print("Search query: ");
+		String query = in.nextLine();
+		try {
+			int offset = 0;
+			int found;
+			while ((found = web.printSearchResults(query, PAGE_ROWS, offset)) > PAGE_ROWS && nextPage()) {
+				offset += PAGE_ROWS;
+			}
+			if (offset == 0 && found == 0) {
+				printSuggestions(query);
+			}
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+		}
 	}
 
 	/**
-	 * Allows the user to exit the program.
+	 * Prints the keywords that complete or correct the last keyword of a query,
+	 * if it is a plain keyword and there are any.
+	 * 
+	 * @param query The query that found nothing
+	 */
+	private static void printSuggestions(String query) {
+		String[] words = query.replace('(', ' ').replace(')', ' ').trim().split("\\s+");
+		String last = words[words.length - 1];
+		if (last.isEmpty() || last.equals("AND") || last.equals("OR") || last.equals("NOT") || last.contains("~")
+				|| last.chars().anyMatch(c -> TermTrie.isWildcard((char) c))) {
+			return;
+		}
+		ArrayList<String> suggestions = web.suggest(last, SUGGESTIONS);
+		suggestions.remove(last);
+		if (!suggestions.isEmpty()) {
+			System.out.println("Did you mean: " + String.join(", ", suggestions) + "?");
+		}
+	}
+
+	/**
+	 * Prints how often each operation has run and how long it took, and the size
+	 * of the graph.
+	 * 
+	 * @see Metrics#dump()
+	 */
+	public static void printMetrics() {
+		System.out.println(Metrics.dump());
+	}
+
+	/**
+	 * Saves the graph to the snapshot, empties the log and exits the program.
 	 */
 	public static void quit() {
+		save();
 		System.out.println("Goodbye.");
 		System.exit(0);
 	}
 
 	/**
-	 * Run the simulation.
+	 * Saves the graph to the snapshot and empties the log.
+	 */
+	private static void save() {
+		try {
+			web.checkpoint(Paths.get(SNAPSHOT_FILE));
+			if (log != null) {
+				log.close();
+			}
+		} catch (IOException e) {
+			System.out.println("The graph could not be saved: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Serves the graph over HTTP instead of reading commands, until the process
+	 * is stopped. The graph is saved on the way out.
+	 * 
+	 * @param port The port to listen on
+	 * @see SearchServer
+	 */
+	public static void serve(int port) {
+		SearchServer server;
+		try {
+			server = new SearchServer(web, new InetSocketAddress(port));
+		} catch (IOException e) {
+			System.out.println("The server could not start: " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.close();
+			save();
+			System.out.println("Goodbye.");
+		}, "search-server-shutdown"));
+		server.start();
+		System.out.println("Serving on http://localhost:" + server.getPort() + "/");
+	}
+
+	/**
+	 * Run the simulation. With the argument <code>--off-heap</code>, the URLs
+	 * and links of the graph are kept outside the heap. With the argument
+	 * <code>--serve</code>, optionally followed by a port, the graph is served
+	 * over HTTP instead. The metrics are published over JMX either way; start the
+	 * JVM with <code>-DsearchEngine.metrics=off</code> to stop timing operations.
 	 */
 	public static void main(String[] args) {
+		List<String> arguments = Arrays.asList(args);
+		offHeap = arguments.contains("--off-heap");
+		int serve = arguments.indexOf("--serve");
+		int port = SearchServer.DEFAULT_PORT;
+		if (serve != -1 && serve + 1 < args.length && !args[serve + 1].startsWith("--")) {
+			try {
+				port = Integer.parseInt(args[serve + 1]);
+			} catch (NumberFormatException e) {
+				System.out.println("The port should be a number.");
+				System.exit(1);
+			}
+		}
 		init();
-		commandManager();
+		if (serve != -1) {
+			serve(port);
+		} else {
+			commandManager();
+		}
 	}
 }
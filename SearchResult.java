@@ -0,0 +1,88 @@
+package searchEngine;
+
+/**
+ * <code>SearchResult</code> class is one row of the results of a search.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+public class SearchResult {
+	private int position;
+	private int index;
+	private String url;
+	private double pageRank;
+	private double score;
+
+	/**
+	 * Returns an instance of SearchResult
+	 * 
+	 * @param position The position of the result in the list, starting at 1
+	 * @param index    The index of the page
+	 * @param url      The URL of the page
+	 * @param pageRank The PageRank of the page
+	 */
+	public SearchResult(int position, int index, String url, double pageRank) {
+		this(position, index, url, pageRank, pageRank);
+	}
+
+	/**
+	 * Returns an instance of SearchResult
+	 * 
+	 * @param position The position of the result in the list, starting at 1
+	 * @param index    The index of the page
+	 * @param url      The URL of the page
+	 * @param pageRank The PageRank of the page
+	 * @param score    The score the results are ordered by
+	 */
+	public SearchResult(int position, int index, String url, double pageRank, double score) {
+		this.position = position;
+		this.index = index;
+		this.url = url;
+		this.pageRank = pageRank;
+		this.score = score;
+	}
+
+	/**
+	 * @return The position of the result in the list, starting at 1
+	 */
+	public int getPosition() {
+		return position;
+	}
+
+	/**
+	 * @return The index of the page
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return The URL of the page
+	 */
+	public String getUrl() {
+		return url;
+	}
+
+	/**
+	 * @return The PageRank of the page
+	 */
+	public double getPageRank() {
+		return pageRank;
+	}
+
+	/**
+	 * @return The score the results are ordered by, which blends the relevance
+	 *         of the keywords to the page with its PageRank
+	 */
+	public double getScore() {
+		return score;
+	}
+
+	/**
+	 * @return a string of data members in tabular form
+	 */
+	@Override
+	public String toString() {
+		return String.format("%-6s | %-10.4f | %-10.4f | %-25s", position, score, pageRank, url);
+	}
+}
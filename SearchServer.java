@@ -0,0 +1,453 @@
+package searchEngine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * <code>SearchServer</code> class serves a <code>ConcurrentWebGraph</code>
+ * over HTTP, so that many clients can search it and change it at once.
+ *
+ * Every endpoint takes its parameters from the query string, or for POST and
+ * DELETE also from a form-encoded body, and answers with compact JSON:
+ * <ul>
+ * <li><code>GET /search?q=&amp;k=&amp;offset=</code> runs a query with AND, OR,
+ * NOT, patterns and fuzzy keywords and returns the k results after
+ * offset.</li>
+ * <li><code>GET /suggest?q=&amp;k=</code> returns up to k keywords that
+ * complete or correct q, for a search box to offer as the user types.</li>
+ * <li><code>GET /pages?url=</code> returns a page with its PageRank and links,
+ * <code>POST /pages</code> with url and space-separated keywords adds one and
+ * <code>DELETE /pages?url=</code> removes one.</li>
+ * <li><code>POST /links</code> and <code>DELETE /links</code> with source and
+ * destination add and remove a link.</li>
+ * <li><code>GET /rank?url=</code> returns the PageRank of a page.</li>
+ * </ul>
+ * Errors are answered with a status code and
+ * <code>{"error":"message"}</code>.
+ *
+ * Each request runs on its own thread. Readers never wait for writers in a
+ * <code>ConcurrentWebGraph</code>, so a slow mutation does not hold up
+ * searches.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+public class SearchServer implements AutoCloseable {
+	public static final int DEFAULT_PORT = 8080;
+	public static final int DEFAULT_RESULTS = 10;
+	// Connections waiting to be accepted before the system refuses more.
+	private static final int BACKLOG = 1024;
+	/**
+	 * The largest request body read, in bytes. A longer one is answered with
+	 * 413 rather than held in memory.
+	 */
+	public static final int MAX_BODY_BYTES = 1 << 20;
+	private static final AtomicInteger THREADS = new AtomicInteger();
+	// The timers of the endpoints, from the request being read to the response
+	// being sent.
+	private static final Metrics.Timer SEARCH_TIMER = Metrics.timer("SearchServer.search");
+	private static final Metrics.Timer SUGGEST_TIMER = Metrics.timer("SearchServer.suggest");
+	private static final Metrics.Timer PAGES_TIMER = Metrics.timer("SearchServer.pages");
+	private static final Metrics.Timer LINKS_TIMER = Metrics.timer("SearchServer.links");
+	private static final Metrics.Timer RANK_TIMER = Metrics.timer("SearchServer.rank");
+
+	static {
+		// The built-in server writes the headers and the body of a response
+		// separately, so with Nagle's algorithm every answer waits for the
+		// client's delayed acknowledgement, about 40 ms.
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	private final ConcurrentWebGraph web;
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 * Returns an instance of SearchServer bound to the address. It does not
+	 * answer requests until it is started.
+	 *
+	 * @param web     The graph to serve
+	 * @param address The address to listen on. Port 0 picks a free port.
+	 * @throws IOException If the address cannot be bound
+	 */
+	public SearchServer(ConcurrentWebGraph web, InetSocketAddress address) throws IOException {
+		this.web = web;
+		this.server = HttpServer.create(address, BACKLOG);
+		this.executor = newRequestExecutor();
+		server.setExecutor(executor);
+		server.createContext("/search", exchange -> handle(exchange, SEARCH_TIMER, this::search));
+		server.createContext("/suggest", exchange -> handle(exchange, SUGGEST_TIMER, this::suggest));
+		server.createContext("/pages", exchange -> handle(exchange, PAGES_TIMER, this::pages));
+		server.createContext("/links", exchange -> handle(exchange, LINKS_TIMER, this::links));
+		server.createContext("/rank", exchange -> handle(exchange, RANK_TIMER, this::rank));
+		server.createContext("/", exchange -> handle(exchange, null, (method, parameters) -> {
+			throw new RequestException(404, "There is nothing at " + exchange.getRequestURI().getPath() + ".");
+		}));
+	}
+
+	/**
+	 * Makes the executor requests run on: a virtual thread per request where the
+	 * runtime has them (Java 21 on), and a growing pool of daemon threads
+	 * otherwise.
+	 *
+	 * @return The executor
+	 */
+	private static ExecutorService newRequestExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "search-server-" + THREADS.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * Starts answering requests.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * @return The port the server listens on
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Stops answering requests, waiting up to a second for the ones in progress.
+	 * The graph is left open.
+	 */
+	@Override
+	public void close() {
+		server.stop(1);
+		executor.shutdown();
+		try {
+			executor.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * An endpoint, which answers a request with JSON.
+	 */
+	private interface Endpoint {
+		String answer(String method, Map<String, String> parameters) throws RequestException, FullGraphException;
+	}
+
+	/**
+	 * A request that cannot be answered, with the status code to say so.
+	 */
+	private static class RequestException extends Exception {
+		private static final long serialVersionUID = 1L;
+		private final int status;
+
+		RequestException(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+	}
+
+	/**
+	 * Answers a request with an endpoint and sends the response.
+	 *
+	 * @param exchange The request and its response
+	 * @param timer    The timer of the endpoint, or null
+	 * @param endpoint The endpoint to answer with
+	 * @throws IOException If the response cannot be sent
+	 */
+	private void handle(HttpExchange exchange, Metrics.Timer timer, Endpoint endpoint) throws IOException {
+		long start = Metrics.start();
+		int status = 200;
+		String body;
+		try {
+			String method = exchange.getRequestMethod();
+			Map<String, String> parameters = new HashMap<String, String>();
+			parse(exchange.getRequestURI().getRawQuery(), parameters);
+			if (!method.equals("GET")) {
+				parse(readBody(exchange.getRequestBody()), parameters);
+			}
+			body = endpoint.answer(method, parameters);
+		} catch (RequestException e) {
+			status = e.status;
+			body = error(e.getMessage());
+		} catch (IllegalArgumentException e) {
+			status = 400;
+			body = error(e.getMessage());
+		} catch (FullGraphException e) {
+			status = 507;
+			body = error("The web is already full.");
+		} catch (RuntimeException e) {
+			// The details stay on the server, since they say nothing a client
+			// could act on.
+			System.err.println("A request to " + exchange.getRequestURI().getPath() + " failed:");
+			e.printStackTrace();
+			status = 500;
+			body = error("Internal error.");
+		}
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+		if (timer != null) {
+			timer.stop(start);
+		}
+	}
+
+	/**
+	 * Answers GET /search.
+	 */
+	private String search(String method, Map<String, String> parameters) throws RequestException {
+		allow(method, "GET");
+		String query = required(parameters, "q");
+		int k = number(parameters, "k", DEFAULT_RESULTS);
+		int offset = number(parameters, "offset", 0);
+		ArrayList<SearchResult> results = web.query(query, k, offset);
+		StringBuilder json = new StringBuilder(64 + 96 * results.size());
+		json.append("{\"query\":");
+		quote(json, query);
+		json.append(",\"results\":[");
+		for (int i = 0; i < results.size(); i++) {
+			SearchResult result = results.get(i);
+			json.append(i == 0 ? "{" : ",{");
+			json.append("\"position\":").append(result.getPosition());
+			json.append(",\"index\":").append(result.getIndex());
+			json.append(",\"url\":");
+			quote(json, result.getUrl());
+			json.append(",\"pageRank\":").append(result.getPageRank());
+			json.append(",\"score\":").append(result.getScore()).append('}');
+		}
+		return json.append("]}").toString();
+	}
+
+	/**
+	 * Answers GET /suggest.
+	 */
+	private String suggest(String method, Map<String, String> parameters) throws RequestException {
+		allow(method, "GET");
+		String prefix = required(parameters, "q");
+		ArrayList<String> suggestions = web.suggest(prefix, number(parameters, "k", DEFAULT_RESULTS));
+		StringBuilder json = new StringBuilder(32 + 16 * suggestions.size());
+		json.append("{\"query\":");
+		quote(json, prefix);
+		json.append(",\"suggestions\":[");
+		for (int i = 0; i < suggestions.size(); i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			quote(json, suggestions.get(i));
+		}
+		return json.append("]}").toString();
+	}
+
+	/**
+	 * Answers GET, POST and DELETE /pages.
+	 */
+	private String pages(String method, Map<String, String> parameters)
+			throws RequestException, FullGraphException {
+		allow(method, "GET", "POST", "DELETE");
+		String url = required(parameters, "url");
+		switch (method) {
+		case "POST": {
+			LinkedList<String> keywords = new LinkedList<String>();
+			for (String keyword : parameters.getOrDefault("keywords", "").split(" ")) {
+				if (!keyword.isEmpty()) {
+					keywords.add(keyword);
+				}
+			}
+			web.addPage(url, keywords);
+			return "{\"added\":" + quote(url) + "}";
+		}
+		case "DELETE": {
+			web.removePage(url);
+			return "{\"removed\":" + quote(url) + "}";
+		}
+		default: {
+			// Every field comes from one version of the graph.
+			String page = web.read(graph -> {
+				int index = graph.getIndex(url);
+				if (index == -1) {
+					return null;
+				}
+				return "{\"url\":" + quote(url) + ",\"index\":" + index + ",\"pageRank\":" + graph.getPageRank(url)
+						+ ",\"links\":[" + graph.getLinkString(url).replace(" ", "") + "]}";
+			});
+			if (page == null) {
+				throw new RequestException(404, "The page is not in the graph.");
+			}
+			return page;
+		}
+		}
+	}
+
+	/**
+	 * Answers POST and DELETE /links.
+	 */
+	private String links(String method, Map<String, String> parameters)
+			throws RequestException, FullGraphException {
+		allow(method, "POST", "DELETE");
+		String source = required(parameters, "source");
+		String destination = required(parameters, "destination");
+		if (method.equals("POST")) {
+			web.addLink(source, destination);
+		} else {
+			web.removeLink(source, destination);
+		}
+		return "{\"source\":" + quote(source) + ",\"destination\":" + quote(destination) + "}";
+	}
+
+	/**
+	 * Answers GET /rank.
+	 */
+	private String rank(String method, Map<String, String> parameters) throws RequestException {
+		allow(method, "GET");
+		String url = required(parameters, "url");
+		try {
+			return "{\"url\":" + quote(url) + ",\"pageRank\":" + web.getPageRank(url) + "}";
+		} catch (IllegalArgumentException e) {
+			throw new RequestException(404, e.getMessage());
+		}
+	}
+
+	/**
+	 * @throws RequestException If the method is not one of the allowed ones
+	 */
+	private static void allow(String method, String... allowed) throws RequestException {
+		for (String name : allowed) {
+			if (name.equals(method)) {
+				return;
+			}
+		}
+		throw new RequestException(405, method + " is not allowed here.");
+	}
+
+	/**
+	 * @return The value of a parameter
+	 * @throws RequestException If the parameter is missing
+	 */
+	private static String required(Map<String, String> parameters, String name) throws RequestException {
+		String value = parameters.get(name);
+		if (value == null) {
+			throw new RequestException(400, "The parameter " + name + " is missing.");
+		}
+		return value;
+	}
+
+	/**
+	 * @return The value of a numeric parameter, or the default if it is missing
+	 * @throws RequestException If the parameter is not a number
+	 */
+	private static int number(Map<String, String> parameters, String name, int defaultValue)
+			throws RequestException {
+		String value = parameters.get(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new RequestException(400, "The parameter " + name + " should be a number.");
+		}
+	}
+
+	/**
+	 * Adds the parameters of a form-encoded string to a map. Later values replace
+	 * earlier ones.
+	 *
+	 * @param form       The string, which may be null
+	 * @param parameters The map to add to
+	 */
+	private static void parse(String form, Map<String, String> parameters) {
+		if (form == null || form.isEmpty()) {
+			return;
+		}
+		for (String pair : form.split("&")) {
+			int equals = pair.indexOf('=');
+			String name = equals == -1 ? pair : pair.substring(0, equals);
+			String value = equals == -1 ? "" : pair.substring(equals + 1);
+			parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+					URLDecoder.decode(value, StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * @return The body of a request as a string
+	 * @throws RequestException If the body is longer than MAX_BODY_BYTES
+	 */
+	private static String readBody(InputStream in) throws IOException, RequestException {
+		try (in) {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+				if (body.size() + read > MAX_BODY_BYTES) {
+					throw new RequestException(413, "The request body should be at most " + MAX_BODY_BYTES + " bytes.");
+				}
+				body.write(buffer, 0, read);
+			}
+			return body.toString(StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * @return An error answer with the message, or a general one if there is
+	 *         no message
+	 */
+	private static String error(String message) {
+		return "{\"error\":" + quote(message == null ? "Bad request." : message) + "}";
+	}
+
+	/**
+	 * @return The string as a JSON string literal
+	 */
+	private static String quote(String value) {
+		StringBuilder json = new StringBuilder(value.length() + 2);
+		quote(json, value);
+		return json.toString();
+	}
+
+	/**
+	 * Appends a string as a JSON string literal.
+	 *
+	 * @param json  The JSON to append to
+	 * @param value The string
+	 */
+	private static void quote(StringBuilder json, String value) {
+		json.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		json.append('"');
+	}
+}
@@ -0,0 +1,811 @@
+package searchEngine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <code>ShardServer</code> class is one shard of a
+ * <code>ShardedWebGraph</code>: a process that owns the pages whose URLs hash
+ * to it, with their keyword index, and both ends of every link that starts
+ * or ends at one of them. The links are held in a <code>LinkStore</code>, by
+ * ids a dictionary gives their ends: the pages of the shard and the pages of
+ * other shards they link with. A link between two shards is held by the
+ * shard of each end, so either end can find it, and counted by the shard of
+ * its source.
+ *
+ * A shard listens on a loopback port and answers requests from its
+ * coordinator one at a time. Each request is a request byte and its
+ * arguments, and each answer is OK followed by the result, or ILLEGAL,
+ * FULL or ERROR followed by a message. ERROR answers a request that failed
+ * in a way the shard did not expect, which is also logged on the shard.
+ *
+ * The shard keeps no ranks of its own. The coordinator runs PageRank across
+ * every shard: each iteration a shard sends the share of its score that each
+ * page passes along links to other shards, and adds up the shares other
+ * shards send it.
+ *
+ * Usage: <code>java searchEngine.ShardServer [port] [--off-heap]</code>. The
+ * shard prints the port it listens on, which is a free one for port 0. With
+ * <code>--off-heap</code> the shard keeps its URLs and links outside the Java
+ * heap.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+public class ShardServer implements AutoCloseable {
+	/**
+	 * The line a shard prints once it listens, followed by its port.
+	 */
+	public static final String READY = "Shard listening on port ";
+
+	// Requests.
+	static final int ADD_PAGES = 1;
+	static final int REMOVE_PAGE = 2;
+	static final int ADD_OUT_LINKS = 3;
+	static final int ADD_IN_LINKS = 4;
+	static final int REMOVE_OUT_LINKS = 5;
+	static final int REMOVE_IN_LINKS = 6;
+	static final int CONTAINS = 7;
+	static final int PAGE_RANK = 8;
+	static final int COUNTS = 9;
+	static final int QUERY = 10;
+	static final int RANK_PREPARE = 11;
+	static final int RANK_RESOLVE = 12;
+	static final int RANK_SCATTER = 13;
+	static final int RANK_GATHER = 14;
+	static final int RANK_FINISH = 15;
+	static final int SHUTDOWN = 16;
+	// Answers.
+	static final int OK = 0;
+	static final int ILLEGAL = 1;
+	static final int FULL = 2;
+	static final int ERROR = 3;
+
+	private static final AtomicInteger CONNECTIONS = new AtomicInteger();
+
+	private final ServerSocket server;
+	private final WebGraph graph;
+	// The ends of the links the shard holds, and the links between them by the
+	// ids of their ends. Both are replaced when the ends are compacted.
+	private StringDictionary ends;
+	private LinkStore links;
+	// The number of links held whose source is on another shard.
+	private long inboundCount;
+	// The number of ids that removed ends left unused.
+	private int removedEnds;
+	// The state of the PageRank computation in progress, if any.
+	private Ranking ranking;
+
+	/**
+	 * Returns an instance of ShardServer listening on a loopback port.
+	 *
+	 * @param port The port, or 0 for a free one
+	 * @throws IOException If the port cannot be bound
+	 */
+	public ShardServer(int port) throws IOException {
+		this(port, false);
+	}
+
+	/**
+	 * Returns an instance of ShardServer listening on a loopback port.
+	 *
+	 * @param port    The port, or 0 for a free one
+	 * @param offHeap Whether to keep the URLs and links outside the Java heap
+	 * @throws IOException If the port cannot be bound
+	 */
+	public ShardServer(int port, boolean offHeap) throws IOException {
+		this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.graph = new WebGraph(WebGraph.DEFAULT_MEMORY_BUDGET, offHeap);
+		this.ends = new StringDictionary(offHeap);
+		this.links = new LinkStore(WebGraph.DEFAULT_MEMORY_BUDGET, offHeap);
+	}
+
+	/**
+	 * @return The port the shard listens on
+	 */
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Accepts connections and answers their requests, each connection on a
+	 * thread of its own, until the shard is closed or told to shut down.
+	 */
+	public void serve() {
+		while (!server.isClosed()) {
+			try {
+				Socket client = server.accept();
+				Thread thread = new Thread(() -> answer(client), "shard-connection-" + CONNECTIONS.incrementAndGet());
+				thread.setDaemon(true);
+				thread.start();
+			} catch (IOException e) {
+				// The socket was closed.
+			}
+		}
+	}
+
+	/**
+	 * Stops accepting connections and releases the graph and its links.
+	 */
+	@Override
+	public void close() {
+		try {
+			server.close();
+		} catch (IOException e) {
+			// Closing anyway.
+		}
+		synchronized (this) {
+			graph.close();
+			links.close();
+			ends.close();
+		}
+	}
+
+	/**
+	 * Answers the requests on a connection until it is closed.
+	 */
+	private void answer(Socket client) {
+		try (Socket socket = client;
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+			socket.setTcpNoDelay(true);
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			DataOutputStream result = new DataOutputStream(buffer);
+			while (true) {
+				int request;
+				try {
+					request = in.readUnsignedByte();
+				} catch (EOFException e) {
+					return;
+				}
+				buffer.reset();
+				// Every request is read in full before anything can fail, so a
+				// failed request leaves the connection in step.
+				try {
+					answer(request, in, result);
+					result.flush();
+					out.writeByte(OK);
+					buffer.writeTo(out);
+				} catch (IllegalArgumentException e) {
+					out.writeByte(ILLEGAL);
+					out.writeUTF(String.valueOf(e.getMessage()));
+				} catch (FullGraphException e) {
+					out.writeByte(FULL);
+					out.writeUTF(String.valueOf(e.getMessage()));
+				} catch (RuntimeException e) {
+					// Answered rather than thrown, since the coordinator has only
+					// this connection to the shard.
+					System.err.println("A shard request " + request + " failed:");
+					e.printStackTrace();
+					out.writeByte(ERROR);
+					out.writeUTF(String.valueOf(e));
+				}
+				out.flush();
+				if (request == SHUTDOWN) {
+					close();
+					return;
+				}
+			}
+		} catch (SocketException e) {
+			// The coordinator went away.
+		} catch (IOException e) {
+			System.err.println("A shard connection failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads a request and writes its result.
+	 *
+	 * @param request The request
+	 * @param in      The arguments
+	 * @param out     The result
+	 */
+	private void answer(int request, DataInputStream in, DataOutputStream out)
+			throws IOException, IllegalArgumentException, FullGraphException {
+		switch (request) {
+		case ADD_PAGES: {
+			int count = in.readInt();
+			String[] urls = new String[count];
+			ArrayList<LinkedList<String>> keywordLists = new ArrayList<LinkedList<String>>(count);
+			for (int i = 0; i < count; i++) {
+				urls[i] = in.readUTF();
+				LinkedList<String> keywords = new LinkedList<String>();
+				for (int k = in.readInt(); k > 0; k--) {
+					keywords.add(in.readUTF());
+				}
+				keywordLists.add(keywords);
+			}
+			synchronized (this) {
+				if (count == 1) {
+					graph.addPage(urls[0], keywordLists.get(0));
+					break;
+				}
+				WebGraph.Batch batch = graph.beginBatch();
+				for (int i = 0; i < count; i++) {
+					batch.addPage(urls[i], keywordLists.get(i));
+				}
+				batch.commit();
+			}
+			break;
+		}
+		case REMOVE_PAGE: {
+			String url = in.readUTF();
+			ArrayList<String> sources = new ArrayList<String>();
+			ArrayList<String> destinations = new ArrayList<String>();
+			synchronized (this) {
+				int id = ends.find(url);
+				if (graph.getIndex(url) != -1) {
+					if (id != -1) {
+						for (int source : links.inNeighbors(id)) {
+							sources.add(ends.get(source));
+						}
+						for (int destination : links.outNeighbors(id)) {
+							destinations.add(ends.get(destination));
+						}
+						// The links are removed while the page is still here, so that
+						// they are told from links with a source on another shard.
+						for (String source : sources) {
+							removeLink(source, url);
+						}
+						for (String destination : destinations) {
+							removeLink(url, destination);
+						}
+						compactEnds();
+					}
+					graph.removePage(url);
+				}
+			}
+			writeStrings(out, sources);
+			writeStrings(out, destinations);
+			break;
+		}
+		case ADD_OUT_LINKS: {
+			boolean strict = in.readBoolean();
+			String[][] links = readLinks(in);
+			synchronized (this) {
+				for (int i = 0; i < links.length; i++) {
+					String source = links[i][0];
+					String prefix = links.length == 1 ? "" : "Link " + (i + 1) + ": ";
+					if (graph.getIndex(source) == -1) {
+						throw new IllegalArgumentException(prefix + "The source is not in the graph.");
+					}
+					if (strict && hasLink(source, links[i][1])) {
+						throw new IllegalArgumentException(prefix + "That link already exists.");
+					}
+				}
+				for (String[] link : links) {
+					addLink(link[0], link[1]);
+				}
+			}
+			break;
+		}
+		case ADD_IN_LINKS: {
+			String[][] links = readLinks(in);
+			synchronized (this) {
+				for (String[] link : links) {
+					addLink(link[0], link[1]);
+				}
+			}
+			break;
+		}
+		case REMOVE_OUT_LINKS: {
+			String[][] links = readLinks(in);
+			int removed = 0;
+			synchronized (this) {
+				for (String[] link : links) {
+					if (removeLink(link[0], link[1])) {
+						removed += 1;
+					}
+				}
+				compactEnds();
+			}
+			out.writeInt(removed);
+			break;
+		}
+		case REMOVE_IN_LINKS: {
+			String[][] links = readLinks(in);
+			synchronized (this) {
+				for (String[] link : links) {
+					removeLink(link[0], link[1]);
+				}
+				compactEnds();
+			}
+			break;
+		}
+		case CONTAINS: {
+			String[] urls = readStrings(in);
+			boolean[] found = new boolean[urls.length];
+			synchronized (this) {
+				for (int i = 0; i < urls.length; i++) {
+					found[i] = graph.getIndex(urls[i]) != -1;
+				}
+			}
+			for (boolean page : found) {
+				out.writeBoolean(page);
+			}
+			break;
+		}
+		case PAGE_RANK: {
+			String url = in.readUTF();
+			out.writeDouble(graph.getPageRank(url));
+			break;
+		}
+		case COUNTS: {
+			synchronized (this) {
+				out.writeInt(graph.getPageCount());
+				out.writeLong(links.edgeCount() - inboundCount);
+			}
+			break;
+		}
+		case QUERY: {
+			String query = in.readUTF();
+			int k = in.readInt();
+			int offset = in.readInt();
+			ArrayList<SearchResult> results = graph.query(query, k, offset);
+			out.writeInt(results.size());
+			for (SearchResult result : results) {
+				out.writeInt(result.getIndex());
+				out.writeUTF(result.getUrl());
+				out.writeDouble(result.getPageRank());
+				out.writeDouble(result.getScore());
+			}
+			break;
+		}
+		case RANK_PREPARE: {
+			int shards = in.readInt();
+			int self = in.readInt();
+			double damping = in.readDouble();
+			synchronized (this) {
+				ranking = new Ranking(shards, self, damping);
+				for (int t = 0; t < shards; t++) {
+					if (t != self) {
+						writeStrings(out, ranking.remoteUrls.get(t));
+					}
+				}
+			}
+			break;
+		}
+		case RANK_RESOLVE: {
+			int source = in.readInt();
+			String[] urls = readStrings(in);
+			synchronized (this) {
+				ranking().resolve(source, urls);
+			}
+			break;
+		}
+		case RANK_SCATTER: {
+			synchronized (this) {
+				Ranking ranking = ranking();
+				ranking.scatter();
+				for (int t = 0; t < ranking.shards; t++) {
+					if (t != ranking.self) {
+						writeDoubles(out, ranking.outgoing[t]);
+					}
+				}
+			}
+			break;
+		}
+		case RANK_GATHER: {
+			int[] sources = new int[in.readInt()];
+			double[][] shares = new double[sources.length][];
+			for (int i = 0; i < sources.length; i++) {
+				sources[i] = in.readInt();
+				shares[i] = readDoubles(in);
+			}
+			synchronized (this) {
+				Ranking ranking = ranking();
+				ranking.gather(sources, shares);
+				out.writeDouble(ranking.step());
+			}
+			break;
+		}
+		case RANK_FINISH: {
+			synchronized (this) {
+				Ranking ranking = ranking();
+				graph.setPageRanks(ranking.urls, ranking.scores, ranking.urls.length);
+				this.ranking = null;
+			}
+			break;
+		}
+		case SHUTDOWN:
+			break;
+		default:
+			throw new IOException("Unknown request " + request + ".");
+		}
+	}
+
+	/**
+	 * @return The PageRank computation in progress
+	 * @throws IllegalArgumentException If none is
+	 */
+	private Ranking ranking() throws IllegalArgumentException {
+		if (ranking == null) {
+			throw new IllegalArgumentException("No PageRank computation is in progress.");
+		}
+		return ranking;
+	}
+
+	/**
+	 * @return true if the shard holds the link
+	 */
+	private boolean hasLink(String source, String destination) {
+		int s = ends.find(source);
+		int d = ends.find(destination);
+		return s != -1 && d != -1 && links.hasEdge(s, d);
+	}
+
+	/**
+	 * Adds a link to the ones the shard holds, with any of its ends that are
+	 * new.
+	 *
+	 * @return true if the shard did not hold the link
+	 * @throws FullGraphException If the memory budget does not allow the link
+	 */
+	private boolean addLink(String source, String destination) throws FullGraphException {
+		int s = addEnd(source);
+		int d = -1;
+		try {
+			d = addEnd(destination);
+			if (!links.addEdge(s, d)) {
+				return false;
+			}
+		} catch (FullGraphException e) {
+			release(s);
+			if (d != -1) {
+				release(d);
+			}
+			throw e;
+		}
+		if (graph.getIndex(source) == -1) {
+			inboundCount += 1;
+		}
+		return true;
+	}
+
+	/**
+	 * Removes a link from the ones the shard holds, with any of its ends that
+	 * are left without links.
+	 *
+	 * @return true if the shard held the link
+	 */
+	private boolean removeLink(String source, String destination) {
+		int s = ends.find(source);
+		int d = ends.find(destination);
+		if (s == -1 || d == -1 || !links.removeEdge(s, d)) {
+			return false;
+		}
+		if (graph.getIndex(source) == -1) {
+			inboundCount -= 1;
+		}
+		release(s);
+		release(d);
+		return true;
+	}
+
+	/**
+	 * @return The id of a link end, which is added if it is new
+	 * @throws FullGraphException If the memory budget does not allow the end
+	 */
+	private int addEnd(String url) throws FullGraphException {
+		int id = ends.find(url);
+		if (id == -1) {
+			id = ends.add(url);
+			try {
+				links.addNode(id);
+			} catch (FullGraphException e) {
+				ends.remove(id);
+				removedEnds += 1;
+				throw e;
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Removes a link end if it has no links left. Its id is left unused.
+	 */
+	private void release(int id) {
+		if (ends.contains(id) && links.outDegree(id) == 0 && links.inDegree(id) == 0) {
+			ends.remove(id);
+			removedEnds += 1;
+		}
+	}
+
+	/**
+	 * Renumbers the link ends in order so that their ids are dense again, once
+	 * removed ends leave as many unused ids as there are ends.
+	 */
+	private void compactEnds() {
+		if (removedEnds < Math.max(WebGraph.COMPACT_MINIMUM, ends.size())) {
+			return;
+		}
+		int[] ids = new int[ends.idLimit()];
+		int count = 0;
+		for (int id = 0; id < ids.length; id++) {
+			ids[id] = ends.contains(id) ? count++ : -1;
+		}
+		StringDictionary renumberedEnds = ends.renumber(ids, count);
+		LinkStore renumberedLinks = links.renumber(ids, count);
+		ends.close();
+		links.close();
+		ends = renumberedEnds;
+		links = renumberedLinks;
+		removedEnds = 0;
+	}
+
+	/**
+	 * <code>Ranking</code> class is one shard's part of a PageRank computation.
+	 * The pages of the shard are numbered by position, and the links leaving
+	 * them are held as arrays: links within the shard by the position of their
+	 * destination, and links to another shard by a slot in the list of that
+	 * shard's pages they reach.
+	 */
+	private final class Ranking {
+		final int shards;
+		final int self;
+		final double damping;
+		final String[] urls;
+		final double[] scores;
+		final double[] sums;
+		final int[] degrees;
+		// The local links leaving each position, in CSR form.
+		final int[] localOffsets;
+		final int[] localTargets;
+		// For each other shard: the URLs of its pages that are linked to, and
+		// the position and slot of each such link.
+		final ArrayList<ArrayList<String>> remoteUrls = new ArrayList<ArrayList<String>>();
+		final int[][] remoteSources;
+		final int[][] remoteSlots;
+		// For each other shard: the positions of the pages its slots name.
+		final int[][] incoming;
+		final double[][] outgoing;
+
+		Ranking(int shards, int self, double damping) {
+			this.shards = shards;
+			this.self = self;
+			this.damping = damping;
+			ArrayList<String> list = graph.listUrls();
+			this.urls = list.toArray(new String[0]);
+			int count = urls.length;
+			// The position of each end that is a page of the shard, and the shard
+			// and slot of each end that is a page of another.
+			int[] positions = new int[ends.idLimit()];
+			int[] owners = new int[positions.length];
+			int[] slots = new int[positions.length];
+			Arrays.fill(positions, -1);
+			Arrays.fill(slots, -1);
+			int[] ids = new int[count];
+			for (int u = 0; u < count; u++) {
+				ids[u] = ends.find(urls[u]);
+				if (ids[u] != -1) {
+					positions[ids[u]] = u;
+				}
+			}
+			LinkStore.Csr csr = links.compact();
+			this.scores = new double[count];
+			Arrays.fill(scores, 1 - damping);
+			this.sums = new double[count];
+			this.degrees = new int[count];
+			this.localOffsets = new int[count + 1];
+			int[] targets = new int[16];
+			int[][] sources = new int[shards][16];
+			int[][] slotIds = new int[shards][16];
+			int[] edges = new int[shards];
+			for (int t = 0; t < shards; t++) {
+				remoteUrls.add(new ArrayList<String>());
+			}
+			int localCount = 0;
+			for (int u = 0; u < count; u++) {
+				if (ids[u] != -1) {
+					int first = csr.forwardOffsets.get(ids[u]);
+					int last = csr.forwardOffsets.get(ids[u] + 1);
+					degrees[u] = last - first;
+					for (int i = first; i < last; i++) {
+						int destination = csr.forwardTargets.get(i);
+						if (positions[destination] != -1) {
+							if (localCount == targets.length) {
+								targets = Arrays.copyOf(targets, localCount * 2);
+							}
+							targets[localCount++] = positions[destination];
+							continue;
+						}
+						if (slots[destination] == -1) {
+							String url = ends.get(destination);
+							int t = ShardedWebGraph.shardOf(url, shards);
+							if (t == self) {
+								continue;
+							}
+							owners[destination] = t;
+							slots[destination] = remoteUrls.get(t).size();
+							remoteUrls.get(t).add(url);
+						}
+						int t = owners[destination];
+						if (edges[t] == sources[t].length) {
+							sources[t] = Arrays.copyOf(sources[t], edges[t] * 2);
+							slotIds[t] = Arrays.copyOf(slotIds[t], edges[t] * 2);
+						}
+						sources[t][edges[t]] = u;
+						slotIds[t][edges[t]++] = slots[destination];
+					}
+				}
+				localOffsets[u + 1] = localCount;
+			}
+			this.localTargets = Arrays.copyOf(targets, localCount);
+			this.remoteSources = new int[shards][];
+			this.remoteSlots = new int[shards][];
+			this.outgoing = new double[shards][];
+			for (int t = 0; t < shards; t++) {
+				remoteSources[t] = Arrays.copyOf(sources[t], edges[t]);
+				remoteSlots[t] = Arrays.copyOf(slotIds[t], edges[t]);
+				outgoing[t] = new double[remoteUrls.get(t).size()];
+			}
+			this.incoming = new int[shards][];
+		}
+
+		/**
+		 * Records which pages of this shard another shard's slots name.
+		 */
+		void resolve(int source, String[] slotUrls) {
+			HashMap<String, Integer> positions = new HashMap<String, Integer>(urls.length * 2);
+			for (int i = 0; i < urls.length; i++) {
+				positions.put(urls[i], i);
+			}
+			int[] ids = new int[slotUrls.length];
+			for (int i = 0; i < slotUrls.length; i++) {
+				Integer position = positions.get(slotUrls[i]);
+				ids[i] = position == null ? -1 : position;
+			}
+			incoming[source] = ids;
+		}
+
+		/**
+		 * Passes each page's share of its score along its links: into the sums
+		 * of this shard, and into the outgoing shares of other shards.
+		 */
+		void scatter() {
+			Arrays.fill(sums, 0);
+			for (int t = 0; t < shards; t++) {
+				Arrays.fill(outgoing[t], 0);
+			}
+			for (int u = 0; u < urls.length; u++) {
+				if (degrees[u] == 0) {
+					continue;
+				}
+				double share = scores[u] / degrees[u];
+				for (int i = localOffsets[u]; i < localOffsets[u + 1]; i++) {
+					sums[localTargets[i]] += share;
+				}
+			}
+			for (int t = 0; t < shards; t++) {
+				int[] sources = remoteSources[t];
+				int[] slots = remoteSlots[t];
+				double[] shares = outgoing[t];
+				for (int i = 0; i < sources.length; i++) {
+					shares[slots[i]] += scores[sources[i]] / degrees[sources[i]];
+				}
+			}
+		}
+
+		/**
+		 * Adds the shares every other shard sent into the sums. Nothing is added
+		 * unless all of them are as resolved.
+		 *
+		 * @param sources The shard each array of shares came from
+		 * @param shares  The shares sent by each shard
+		 */
+		void gather(int[] sources, double[][] shares) throws IllegalArgumentException {
+			if (sources.length != shards - 1) {
+				throw new IllegalArgumentException("Shares came from " + sources.length + " shards, not " + (shards - 1)
+						+ ".");
+			}
+			boolean[] seen = new boolean[shards];
+			for (int i = 0; i < sources.length; i++) {
+				int source = sources[i];
+				if (source < 0 || source >= shards || source == self || seen[source] || incoming[source] == null
+						|| incoming[source].length != shares[i].length) {
+					throw new IllegalArgumentException("Shard " + source + " sent shares this shard did not resolve.");
+				}
+				seen[source] = true;
+			}
+			for (int i = 0; i < sources.length; i++) {
+				int[] ids = incoming[sources[i]];
+				for (int j = 0; j < ids.length; j++) {
+					if (ids[j] != -1) {
+						sums[ids[j]] += shares[i][j];
+					}
+				}
+			}
+		}
+
+		/**
+		 * Moves every score to its next value.
+		 *
+		 * @return The sum of the changes
+		 */
+		double step() {
+			double change = 0;
+			for (int v = 0; v < scores.length; v++) {
+				double next = (1 - damping) + damping * sums[v];
+				change += Math.abs(next - scores[v]);
+				scores[v] = next;
+			}
+			return change;
+		}
+	}
+
+	/**
+	 * Reads a list of links, each a source and a destination.
+	 */
+	private static String[][] readLinks(DataInputStream in) throws IOException {
+		String[][] links = new String[in.readInt()][];
+		for (int i = 0; i < links.length; i++) {
+			links[i] = new String[] { in.readUTF(), in.readUTF() };
+		}
+		return links;
+	}
+
+	static String[] readStrings(DataInputStream in) throws IOException {
+		String[] strings = new String[in.readInt()];
+		for (int i = 0; i < strings.length; i++) {
+			strings[i] = in.readUTF();
+		}
+		return strings;
+	}
+
+	static void writeStrings(DataOutputStream out, Collection<String> strings) throws IOException {
+		out.writeInt(strings.size());
+		for (String string : strings) {
+			out.writeUTF(string);
+		}
+	}
+
+	static double[] readDoubles(DataInputStream in) throws IOException {
+		double[] values = new double[in.readInt()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = in.readDouble();
+		}
+		return values;
+	}
+
+	static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+		out.writeInt(values.length);
+		for (double value : values) {
+			out.writeDouble(value);
+		}
+	}
+
+	/**
+	 * Run a shard until its coordinator shuts it down.
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = 0;
+		boolean offHeap = false;
+		for (String arg : args) {
+			if (arg.equals("--off-heap")) {
+				offHeap = true;
+			} else {
+				port = Integer.parseInt(arg);
+			}
+		}
+		try (ShardServer shard = new ShardServer(port, offHeap)) {
+			System.out.println(READY + shard.getPort());
+			System.out.flush();
+			shard.serve();
+		}
+	}
+}
@@ -0,0 +1,1005 @@
+package searchEngine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * <code>ShardedWebGraph</code> class spreads a graph over several
+ * <code>ShardServer</code> processes and coordinates them. Each page lives on
+ * the shard its URL hashes to, with its keywords, so a shard indexes only its
+ * own pages and a search is sent to every shard at once and their best
+ * results merged.
+ *
+ * A link is kept by the shard of its source and by the shard of its
+ * destination. Adding or removing a link changes the shard of the source
+ * first, and takes that change back if the shard of the destination fails.
+ * PageRank is computed by power iteration across the shards: each iteration
+ * every shard spreads its scores over its own links and sends the shares
+ * that cross to other shards through the coordinator, which hands each shard
+ * the shares addressed to it. The scores are those of
+ * <code>WebGraph.updatePageRanks()</code>, to within the tolerance.
+ *
+ * Ranks are recomputed on the first read after the graph changes, rather than
+ * after each change. BM25 relevance is computed from the statistics of each
+ * shard's own pages, so with few pages per shard the scores differ a little
+ * from those of a single graph. Shards hold their pages in memory only and
+ * keep no log.
+ *
+ * Mutations are made one at a time. Searches and reads may run alongside each
+ * other.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+public class ShardedWebGraph implements AutoCloseable {
+	/**
+	 * The number of pages or links sent to the shards in one request while
+	 * loading.
+	 */
+	public static final int LOAD_CHUNK = 4096;
+	private static final long SHUTDOWN_MILLIS = 5000;
+	// How long a shard started by launch may take to say it listens.
+	private static final long START_MILLIS = 60000;
+
+	private final Shard[] shards;
+	private final ArrayList<Process> processes = new ArrayList<Process>();
+	private final ExecutorService executor;
+	// Held by mutations and PageRank computations.
+	private final Object writer = new Object();
+	private final PageRankEngine parameters = new PageRankEngine();
+	private volatile boolean ranksStale;
+	private int iterations;
+
+	/**
+	 * Returns an instance of ShardedWebGraph coordinating shards that are
+	 * already running.
+	 *
+	 * @param addresses The address of each shard. Every coordinator of the same
+	 *                  shards should list them in the same order.
+	 * @throws IllegalArgumentException If there are no addresses, or a shard
+	 *                                  cannot be reached
+	 */
+	public ShardedWebGraph(List<InetSocketAddress> addresses) throws IllegalArgumentException {
+		if (addresses.isEmpty()) {
+			throw new IllegalArgumentException("There should be at least one shard.");
+		}
+		this.shards = new Shard[addresses.size()];
+		for (int s = 0; s < shards.length; s++) {
+			try {
+				shards[s] = new Shard(s, addresses.get(s));
+			} catch (IOException e) {
+				close();
+				throw new IllegalArgumentException("Shard " + s + " at " + addresses.get(s) + " cannot be reached: "
+						+ e.getMessage(), e);
+			}
+		}
+		this.executor = Executors.newFixedThreadPool(shards.length, runnable -> {
+			Thread thread = new Thread(runnable, "shard-coordinator");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Starts shards as processes on this machine, with the class path of this
+	 * JVM, and coordinates them. Closing the graph stops them.
+	 *
+	 * @param count      The number of shards
+	 * @param jvmOptions Options for each shard JVM, such as <code>-Xmx1g</code>
+	 * @return The graph
+	 * @throws IllegalArgumentException If count is not positive, or a shard
+	 *                                  does not start
+	 */
+	public static ShardedWebGraph launch(int count, String... jvmOptions) throws IllegalArgumentException {
+		if (count < 1) {
+			throw new IllegalArgumentException("There should be at least one shard.");
+		}
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		ArrayList<Process> started = new ArrayList<Process>();
+		ArrayList<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+		try {
+			for (int s = 0; s < count; s++) {
+				ArrayList<String> command = new ArrayList<String>();
+				command.add(java);
+				command.addAll(Arrays.asList(jvmOptions));
+				command.add("-cp");
+				command.add(System.getProperty("java.class.path"));
+				command.add(ShardServer.class.getName());
+				command.add("0");
+				Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+				started.add(process);
+				String line = readReady(process);
+				if (line == null || !line.startsWith(ShardServer.READY)) {
+					throw new IOException("it printed " + line);
+				}
+				int port = Integer.parseInt(line.substring(ShardServer.READY.length()).trim());
+				addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+			}
+			ShardedWebGraph graph = new ShardedWebGraph(addresses);
+			graph.processes.addAll(started);
+			return graph;
+		} catch (IOException | IllegalArgumentException e) {
+			for (Process process : started) {
+				process.destroy();
+			}
+			throw new IllegalArgumentException("Shard " + addresses.size() + " did not start: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Reads the first line a shard process prints, on a thread of its own so
+	 * that a shard that hangs before printing cannot hang the launch.
+	 *
+	 * @return The line, or null if the process ended without printing one
+	 * @throws IOException If the line cannot be read, or is not printed
+	 *                     within START_MILLIS
+	 */
+	private static String readReady(Process process) throws IOException {
+		BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+		FutureTask<String> line = new FutureTask<String>(out::readLine);
+		// Ends once the line is read or the process is destroyed.
+		Thread reader = new Thread(line, "shard-launcher");
+		reader.setDaemon(true);
+		reader.start();
+		try {
+			return line.get(START_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			throw new IOException("it printed nothing within " + START_MILLIS + " ms");
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while waiting for it", e);
+		}
+	}
+
+	/**
+	 * Stops every shard this graph started and closes the connections.
+	 */
+	@Override
+	public void close() {
+		for (Shard shard : shards) {
+			if (shard != null) {
+				if (!processes.isEmpty()) {
+					try {
+						shard.call(ShardServer.SHUTDOWN, out -> {
+						}, in -> null);
+					} catch (RuntimeException e) {
+						// Stopped anyway below.
+					}
+				}
+				shard.close();
+			}
+		}
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		for (Process process : processes) {
+			try {
+				if (!process.waitFor(SHUTDOWN_MILLIS, TimeUnit.MILLISECONDS)) {
+					process.destroy();
+				}
+			} catch (InterruptedException e) {
+				process.destroy();
+				Thread.currentThread().interrupt();
+			}
+		}
+		processes.clear();
+	}
+
+	/**
+	 * @return The number of shards
+	 */
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * @param url   The URL of a page
+	 * @param count The number of shards
+	 * @return The shard that holds the page
+	 */
+	static int shardOf(String url, int count) {
+		int hash = url.hashCode();
+		// Spread the bits, since URLs often differ only at the end.
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		return Math.floorMod(hash, count);
+	}
+
+	/**
+	 * @return The shard that holds the page with a URL
+	 */
+	private Shard shardOf(String url) {
+		return shards[shardOf(url, shards.length)];
+	}
+
+	/**
+	 * Adds a page to the graph.
+	 *
+	 * @param url      The URL of the page
+	 * @param keywords The keywords of the page
+	 * @throws IllegalArgumentException If the URL is null or already in the
+	 *                                  graph
+	 * @throws FullGraphException       If the shard of the page is full
+	 */
+	public void addPage(String url, LinkedList<String> keywords) throws IllegalArgumentException, FullGraphException {
+		if (url == null) {
+			throw new IllegalArgumentException("A URL should not be null.");
+		}
+		synchronized (writer) {
+			shardOf(url).update(ShardServer.ADD_PAGES, out -> {
+				out.writeInt(1);
+				writePage(out, url, keywords);
+			});
+			ranksStale = true;
+		}
+	}
+
+	/**
+	 * Removes a page and its links from the graph. A URL not in the graph is
+	 * ignored.
+	 *
+	 * @param url The URL of the page
+	 */
+	public void removePage(String url) {
+		if (url == null) {
+			return;
+		}
+		synchronized (writer) {
+			String[][] ends = shardOf(url).call(ShardServer.REMOVE_PAGE, out -> out.writeUTF(url),
+					in -> new String[][] { ShardServer.readStrings(in), ShardServer.readStrings(in) });
+			// The pages on the other ends of the links still hold them.
+			ArrayList<ArrayList<String[]>> outLinks = byShard();
+			ArrayList<ArrayList<String[]>> inLinks = byShard();
+			for (String source : ends[0]) {
+				outLinks.get(shardOf(source, shards.length)).add(new String[] { source, url });
+			}
+			for (String destination : ends[1]) {
+				inLinks.get(shardOf(destination, shards.length)).add(new String[] { url, destination });
+			}
+			for (int s = 0; s < shards.length; s++) {
+				if (!outLinks.get(s).isEmpty()) {
+					sendLinks(shards[s], ShardServer.REMOVE_OUT_LINKS, outLinks.get(s), in -> in.readInt());
+				}
+				if (!inLinks.get(s).isEmpty()) {
+					sendLinks(shards[s], ShardServer.REMOVE_IN_LINKS, inLinks.get(s), in -> null);
+				}
+			}
+			ranksStale = true;
+		}
+	}
+
+	/**
+	 * Adds a link between two pages.
+	 *
+	 * @param source      The URL of the page the link starts at
+	 * @param destination The URL of the page the link goes to
+	 * @throws IllegalArgumentException If either URL is null or not in the
+	 *                                  graph, or the link exists
+	 */
+	public void addLink(String source, String destination) throws IllegalArgumentException {
+		if (source == null || destination == null) {
+			throw new IllegalArgumentException("A URL should not be null.");
+		}
+		synchronized (writer) {
+			if (!contains(source)) {
+				throw new IllegalArgumentException("The source is not in the graph.");
+			} else if (!contains(destination)) {
+				throw new IllegalArgumentException("The destination is not in the graph.");
+			}
+			ArrayList<String[]> link = new ArrayList<String[]>();
+			link.add(new String[] { source, destination });
+			Shard sourceShard = shardOf(source);
+			sourceShard.call(ShardServer.ADD_OUT_LINKS, out -> {
+				out.writeBoolean(true);
+				writeLinks(out, link);
+			}, in -> null);
+			try {
+				sendLinks(shardOf(destination), ShardServer.ADD_IN_LINKS, link, in -> null);
+			} catch (RuntimeException e) {
+				// Take the link back from the source shard, so that no shard holds
+				// only one end of it.
+				try {
+					sendLinks(sourceShard, ShardServer.REMOVE_OUT_LINKS, link, in -> in.readInt());
+				} catch (RuntimeException undo) {
+					e.addSuppressed(undo);
+				}
+				throw e;
+			}
+			ranksStale = true;
+		}
+	}
+
+	/**
+	 * Removes a link between two pages. A link not in the graph is ignored.
+	 *
+	 * @param source      The URL of the page the link starts at
+	 * @param destination The URL of the page the link goes to
+	 */
+	public void removeLink(String source, String destination) {
+		if (source == null || destination == null) {
+			return;
+		}
+		synchronized (writer) {
+			ArrayList<String[]> link = new ArrayList<String[]>();
+			link.add(new String[] { source, destination });
+			Shard sourceShard = shardOf(source);
+			int removed = sendLinks(sourceShard, ShardServer.REMOVE_OUT_LINKS, link, in -> in.readInt());
+			if (removed > 0) {
+				try {
+					sendLinks(shardOf(destination), ShardServer.REMOVE_IN_LINKS, link, in -> null);
+				} catch (RuntimeException e) {
+					// Give the link back to the source shard, so that no shard holds
+					// only one end of it.
+					try {
+						sourceShard.call(ShardServer.ADD_OUT_LINKS, out -> {
+							out.writeBoolean(false);
+							writeLinks(out, link);
+						}, in -> null);
+					} catch (RuntimeException undo) {
+						e.addSuppressed(undo);
+					}
+					throw e;
+				}
+				ranksStale = true;
+			}
+		}
+	}
+
+	/**
+	 * Loads pages and links from files in the format
+	 * <code>WebGraph.buildFromFiles</code> reads, sending them to the shards in
+	 * chunks of LOAD_CHUNK, and computes the PageRanks. The pages and links of
+	 * the chunks sent before a failure stay in the graph.
+	 *
+	 * @param pagesFile The file of pages, one URL and its keywords per line
+	 * @param linksFile The file of links, one source and destination per line
+	 * @throws IllegalArgumentException If a file cannot be read or a line is not
+	 *                                  formatted correctly. The message names the
+	 *                                  file and line.
+	 * @throws FullGraphException       If a shard is full
+	 */
+	public void load(Path pagesFile, Path linksFile) throws IllegalArgumentException, FullGraphException {
+		String pagesName = pagesFile.getFileName().toString();
+		String linksName = linksFile.getFileName().toString();
+		synchronized (writer) {
+			// The URLs loaded, so that most lines can be checked without asking
+			// the shards. The shards are asked about the rest a chunk at a time,
+			// and only if they held pages before.
+			HashSet<String> urls = new HashSet<String>();
+			boolean empty = getPageCount() == 0;
+			ArrayList<String[]> chunk = new ArrayList<String[]>(LOAD_CHUNK);
+			int[] lineNumbers = new int[LOAD_CHUNK];
+			try (BufferedReader reader = Files.newBufferedReader(pagesFile, StandardCharsets.UTF_8)) {
+				int lineNumber = 0;
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					lineNumber += 1;
+					String[] tokens = tokens(line);
+					if (tokens.length == 0) {
+						continue;
+					}
+					if (!urls.add(tokens[0])) {
+						throw new IllegalArgumentException(
+								pagesName + ":" + lineNumber + ": The URL " + tokens[0] + " is not unique.");
+					}
+					lineNumbers[chunk.size()] = lineNumber;
+					chunk.add(tokens);
+					if (chunk.size() == LOAD_CHUNK) {
+						loadPages(pagesName, chunk, lineNumbers, empty);
+					}
+				}
+			} catch (IOException e) {
+				throw new IllegalArgumentException(pagesName + ": " + e.getMessage(), e);
+			}
+			loadPages(pagesName, chunk, lineNumbers, empty);
+			ranksStale = true;
+			try (BufferedReader reader = Files.newBufferedReader(linksFile, StandardCharsets.UTF_8)) {
+				int lineNumber = 0;
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					lineNumber += 1;
+					String[] tokens = tokens(line);
+					if (tokens.length == 0) {
+						continue;
+					}
+					lineNumbers[chunk.size()] = lineNumber;
+					chunk.add(tokens);
+					if (chunk.size() == LOAD_CHUNK) {
+						loadLinks(linksName, chunk, lineNumbers, urls, empty);
+					}
+				}
+			} catch (IOException e) {
+				throw new IllegalArgumentException(linksName + ": " + e.getMessage(), e);
+			}
+			loadLinks(linksName, chunk, lineNumbers, urls, empty);
+			updatePageRanks();
+		}
+	}
+
+	/**
+	 * Sends a chunk of pages to their shards and empties the chunk.
+	 *
+	 * @param name        The name of the file of pages
+	 * @param chunk       The tokens of each line
+	 * @param lineNumbers The number of each line
+	 * @param empty       Whether the shards held no pages before the load
+	 */
+	private void loadPages(String name, ArrayList<String[]> chunk, int[] lineNumbers, boolean empty)
+			throws IllegalArgumentException, FullGraphException {
+		if (!empty) {
+			ArrayList<String> pages = new ArrayList<String>(chunk.size());
+			for (String[] tokens : chunk) {
+				pages.add(tokens[0]);
+			}
+			boolean[] held = contains(pages);
+			for (int i = 0; i < held.length; i++) {
+				if (held[i]) {
+					throw new IllegalArgumentException(
+							name + ":" + lineNumbers[i] + ": The URL " + pages.get(i) + " is not unique.");
+				}
+			}
+		}
+		ArrayList<ArrayList<String[]>> pages = byShard();
+		for (String[] tokens : chunk) {
+			pages.get(shardOf(tokens[0], shards.length)).add(tokens);
+		}
+		for (int s = 0; s < shards.length; s++) {
+			ArrayList<String[]> own = pages.get(s);
+			if (own.isEmpty()) {
+				continue;
+			}
+			shards[s].update(ShardServer.ADD_PAGES, out -> {
+				out.writeInt(own.size());
+				for (String[] tokens : own) {
+					writePage(out, tokens[0], new LinkedList<String>(Arrays.asList(tokens).subList(1, tokens.length)));
+				}
+			});
+		}
+		chunk.clear();
+	}
+
+	/**
+	 * Checks a chunk of links, sends them to the shards of both their ends,
+	 * and empties the chunk. Links the shards have are skipped.
+	 *
+	 * @param name        The name of the file of links
+	 * @param chunk       The tokens of each line
+	 * @param lineNumbers The number of each line
+	 * @param urls        The URLs of the pages loaded
+	 * @param empty       Whether the shards held no pages before the load
+	 */
+	private void loadLinks(String name, ArrayList<String[]> chunk, int[] lineNumbers, HashSet<String> urls,
+			boolean empty) throws IllegalArgumentException {
+		// Ask the shards about the ends not loaded now, in one request each.
+		HashSet<String> held = new HashSet<String>();
+		if (!empty) {
+			ArrayList<String> unknown = new ArrayList<String>();
+			for (String[] tokens : chunk) {
+				for (String url : tokens) {
+					if (!urls.contains(url)) {
+						unknown.add(url);
+					}
+				}
+			}
+			boolean[] found = contains(unknown);
+			for (int i = 0; i < found.length; i++) {
+				if (found[i]) {
+					held.add(unknown.get(i));
+				}
+			}
+		}
+		ArrayList<ArrayList<String[]>> outLinks = byShard();
+		ArrayList<ArrayList<String[]>> inLinks = byShard();
+		for (int i = 0; i < chunk.size(); i++) {
+			String[] tokens = chunk.get(i);
+			String error = null;
+			if (tokens.length == 1) {
+				error = "Expected a source and a destination URL.";
+			} else if (tokens.length > 2) {
+				error = "Expected only two URLs.";
+			} else if (!urls.contains(tokens[0]) && !held.contains(tokens[0])) {
+				error = "The source is not in the graph.";
+			} else if (!urls.contains(tokens[1]) && !held.contains(tokens[1])) {
+				error = "The destination is not in the graph.";
+			}
+			if (error != null) {
+				throw new IllegalArgumentException(name + ":" + lineNumbers[i] + ": " + error);
+			}
+			outLinks.get(shardOf(tokens[0], shards.length)).add(tokens);
+			inLinks.get(shardOf(tokens[1], shards.length)).add(tokens);
+		}
+		for (int s = 0; s < shards.length; s++) {
+			ArrayList<String[]> own = outLinks.get(s);
+			if (!own.isEmpty()) {
+				shards[s].call(ShardServer.ADD_OUT_LINKS, out -> {
+					out.writeBoolean(false);
+					writeLinks(out, own);
+				}, in -> null);
+			}
+			if (!inLinks.get(s).isEmpty()) {
+				sendLinks(shards[s], ShardServer.ADD_IN_LINKS, inLinks.get(s), in -> null);
+			}
+		}
+		chunk.clear();
+	}
+
+	/**
+	 * Recomputes the PageRank of every page with power iteration across the
+	 * shards, with the damping, tolerance and iteration limit of a
+	 * <code>PageRankEngine</code>'s defaults.
+	 *
+	 * <dl>
+	 * <dt>Postconditions:</dt>
+	 * <dd>All pages on every shard have been assigned their proper
+	 * PageRank.</dd>
+	 * </dl>
+	 */
+	public void updatePageRanks() {
+		synchronized (writer) {
+			int count = shards.length;
+			double damping = parameters.getDamping();
+			// Each shard names the pages of every other shard its links reach.
+			String[][][] reached = all(shard -> shard.call(ShardServer.RANK_PREPARE, out -> {
+				out.writeInt(count);
+				out.writeInt(shard.id);
+				out.writeDouble(damping);
+			}, in -> {
+				String[][] urls = new String[count][];
+				for (int t = 0; t < count; t++) {
+					urls[t] = t == shard.id ? new String[0] : ShardServer.readStrings(in);
+				}
+				return urls;
+			}), String[][].class);
+			all(shard -> {
+				for (int s = 0; s < count; s++) {
+					if (s != shard.id) {
+						String[] urls = reached[s][shard.id];
+						int source = s;
+						shard.call(ShardServer.RANK_RESOLVE, out -> {
+							out.writeInt(source);
+							writeStrings(out, urls);
+						}, in -> null);
+					}
+				}
+				return null;
+			}, Void.class);
+			long pages = getPageCount();
+			iterations = 0;
+			while (iterations < parameters.getMaxIterations()) {
+				iterations += 1;
+				double[][][] shares = all(shard -> shard.call(ShardServer.RANK_SCATTER, out -> {
+				}, in -> {
+					double[][] sent = new double[count][];
+					for (int t = 0; t < count; t++) {
+						sent[t] = t == shard.id ? null : ShardServer.readDoubles(in);
+					}
+					return sent;
+				}), double[][].class);
+				Double[] changes = all(shard -> shard.call(ShardServer.RANK_GATHER, out -> {
+					out.writeInt(count - 1);
+					for (int s = 0; s < count; s++) {
+						if (s != shard.id) {
+							out.writeInt(s);
+							ShardServer.writeDoubles(out, shares[s][shard.id]);
+						}
+					}
+				}, in -> in.readDouble()), Double.class);
+				double change = 0;
+				for (Double c : changes) {
+					change += c;
+				}
+				if (change <= parameters.getTolerance() * pages) {
+					break;
+				}
+			}
+			all(shard -> shard.call(ShardServer.RANK_FINISH, out -> {
+			}, in -> null), Void.class);
+			ranksStale = false;
+		}
+	}
+
+	/**
+	 * @return The number of iterations the last PageRank computation took
+	 */
+	public int getIterations() {
+		synchronized (writer) {
+			return iterations;
+		}
+	}
+
+	/**
+	 * @param url The URL of a page
+	 * @return The PageRank of the page
+	 * @throws IllegalArgumentException If the page is not in the graph
+	 */
+	public double getPageRank(String url) throws IllegalArgumentException {
+		if (url == null) {
+			throw new IllegalArgumentException("The page is not in the graph.");
+		}
+		ensureRanks();
+		return shardOf(url).call(ShardServer.PAGE_RANK, out -> out.writeUTF(url), in -> in.readDouble());
+	}
+
+	/**
+	 * @return The number of pages on every shard
+	 */
+	public int getPageCount() {
+		int pages = 0;
+		for (long[] counts : all(shard -> shard.counts(), long[].class)) {
+			pages += counts[0];
+		}
+		return pages;
+	}
+
+	/**
+	 * @return The number of links on every shard
+	 */
+	public long getLinkCount() {
+		long links = 0;
+		for (long[] counts : all(shard -> shard.counts(), long[].class)) {
+			links += counts[1];
+		}
+		return links;
+	}
+
+	/**
+	 * Searches every shard for the pages that match a query, and merges their
+	 * best results. The index of a result is its index on its shard times the
+	 * number of shards, plus the shard.
+	 *
+	 * @param query  The query to search for, as <code>WebGraph.query</code>
+	 *               reads it
+	 * @param k      The greatest number of results to return
+	 * @param offset The number of better results to skip
+	 * @return The pages that match the query from position offset + 1 on,
+	 *         ordered by score
+	 * @throws IllegalArgumentException If the query is malformed, or k or offset
+	 *                                  is negative
+	 */
+	public ArrayList<SearchResult> query(String query, int k, int offset) throws IllegalArgumentException {
+		if (k < 0 || offset < 0) {
+			throw new IllegalArgumentException("The result count and offset should not be negative.");
+		}
+		ensureRanks();
+		int count = shards.length;
+		// The best offset + k of every shard hold the best offset + k overall.
+		int best = (int) Math.min(Integer.MAX_VALUE, (long) offset + k);
+		@SuppressWarnings("unchecked")
+		ArrayList<SearchResult>[] found = all(shard -> shard.call(ShardServer.QUERY, out -> {
+			out.writeUTF(query);
+			out.writeInt(best);
+			out.writeInt(0);
+		}, in -> {
+			int size = in.readInt();
+			ArrayList<SearchResult> results = new ArrayList<SearchResult>(size);
+			for (int i = 0; i < size; i++) {
+				int index = in.readInt();
+				results.add(new SearchResult(0, index * count + shard.id, in.readUTF(), in.readDouble(),
+						in.readDouble()));
+			}
+			return results;
+		}), ArrayList.class);
+		ArrayList<SearchResult> merged = new ArrayList<SearchResult>();
+		for (ArrayList<SearchResult> results : found) {
+			merged.addAll(results);
+		}
+		merged.sort((a, b) -> a.getScore() != b.getScore() ? Double.compare(b.getScore(), a.getScore())
+				: Integer.compare(a.getIndex(), b.getIndex()));
+		ArrayList<SearchResult> results = new ArrayList<SearchResult>();
+		for (int i = offset; i < merged.size() && i < best; i++) {
+			SearchResult result = merged.get(i);
+			results.add(new SearchResult(i + 1, result.getIndex(), result.getUrl(), result.getPageRank(),
+					result.getScore()));
+		}
+		return results;
+	}
+
+	/**
+	 * Recomputes the PageRanks if the graph changed since they were computed.
+	 */
+	private void ensureRanks() {
+		if (ranksStale) {
+			synchronized (writer) {
+				if (ranksStale) {
+					updatePageRanks();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return Whether a page is on its shard
+	 */
+	private boolean contains(String url) {
+		ArrayList<String> pages = new ArrayList<String>(1);
+		pages.add(url);
+		return contains(pages)[0];
+	}
+
+	/**
+	 * Asks each shard whether it holds pages, in one request per shard.
+	 *
+	 * @param urls The URLs of the pages
+	 * @return Whether each page is on its shard
+	 */
+	private boolean[] contains(ArrayList<String> urls) {
+		boolean[] found = new boolean[urls.size()];
+		for (int s = 0; s < shards.length; s++) {
+			ArrayList<Integer> positions = new ArrayList<Integer>();
+			for (int i = 0; i < urls.size(); i++) {
+				if (shardOf(urls.get(i), shards.length) == s) {
+					positions.add(i);
+				}
+			}
+			if (positions.isEmpty()) {
+				continue;
+			}
+			shards[s].call(ShardServer.CONTAINS, out -> {
+				out.writeInt(positions.size());
+				for (int i : positions) {
+					out.writeUTF(urls.get(i));
+				}
+			}, in -> {
+				for (int i : positions) {
+					found[i] = in.readBoolean();
+				}
+				return null;
+			});
+		}
+		return found;
+	}
+
+	/**
+	 * Makes a request of every shard at once.
+	 *
+	 * @param request The request, made of a shard
+	 * @param type    The type of the answers
+	 * @return The answer of each shard
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T[] all(ShardRequest<T> request, Class<?> type) {
+		ArrayList<Future<T>> futures = new ArrayList<Future<T>>(shards.length);
+		for (Shard shard : shards) {
+			Callable<T> task = () -> request.apply(shard);
+			futures.add(executor.submit(task));
+		}
+		T[] answers = (T[]) Array.newInstance(type, shards.length);
+		RuntimeException failure = null;
+		for (int s = 0; s < shards.length; s++) {
+			try {
+				answers[s] = futures.get(s).get();
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+							: new IllegalStateException(e.getCause());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for the shards.", e);
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return answers;
+	}
+
+	/**
+	 * @return A list of links for each shard
+	 */
+	private ArrayList<ArrayList<String[]>> byShard() {
+		ArrayList<ArrayList<String[]>> lists = new ArrayList<ArrayList<String[]>>(shards.length);
+		for (int s = 0; s < shards.length; s++) {
+			lists.add(new ArrayList<String[]>());
+		}
+		return lists;
+	}
+
+	/**
+	 * Sends a list of links to a shard.
+	 *
+	 * @return The answer of the shard
+	 */
+	private static <T> T sendLinks(Shard shard, int request, ArrayList<String[]> links, Reader<T> answer) {
+		return shard.call(request, out -> writeLinks(out, links), answer);
+	}
+
+	/**
+	 * @return The tokens of a line, split at spaces and tabs
+	 */
+	private static String[] tokens(String line) {
+		String trimmed = line.trim();
+		return trimmed.isEmpty() ? new String[0] : trimmed.split("[ \t\r]+");
+	}
+
+	private static void writePage(DataOutputStream out, String url, LinkedList<String> keywords)
+			throws IOException {
+		out.writeUTF(url);
+		if (keywords == null) {
+			out.writeInt(0);
+			return;
+		}
+		out.writeInt(keywords.size());
+		for (String keyword : keywords) {
+			out.writeUTF(keyword);
+		}
+	}
+
+	private static void writeLinks(DataOutputStream out, ArrayList<String[]> links) throws IOException {
+		out.writeInt(links.size());
+		for (String[] link : links) {
+			out.writeUTF(link[0]);
+			out.writeUTF(link[1]);
+		}
+	}
+
+	private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+		out.writeInt(strings.length);
+		for (String string : strings) {
+			out.writeUTF(string);
+		}
+	}
+
+	/**
+	 * Writes the arguments of a request.
+	 */
+	private interface Writer {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	/**
+	 * Reads the answer to a request.
+	 */
+	private interface Reader<T> {
+		T read(DataInputStream in) throws IOException;
+	}
+
+	/**
+	 * A request made of one shard.
+	 */
+	private interface ShardRequest<T> {
+		T apply(Shard shard) throws FullGraphException;
+	}
+
+	/**
+	 * <code>Shard</code> class is the connection to one shard. Requests on it
+	 * are made one at a time.
+	 */
+	private static final class Shard {
+		final int id;
+		final InetSocketAddress address;
+		private final Socket socket;
+		private final DataInputStream in;
+		private final DataOutputStream out;
+
+		Shard(int id, InetSocketAddress address) throws IOException {
+			this.id = id;
+			this.address = address;
+			this.socket = new Socket(address.getAddress(), address.getPort());
+			socket.setTcpNoDelay(true);
+			this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+
+		/**
+		 * Makes a request that may fill the shard.
+		 *
+		 * @throws FullGraphException If the shard is full
+		 */
+		void update(int request, Writer arguments) throws IllegalArgumentException, FullGraphException {
+			exchange(request, arguments, in -> null);
+		}
+
+		/**
+		 * Makes a request and reads its answer.
+		 *
+		 * @throws IllegalArgumentException If the shard refuses the request
+		 */
+		<T> T call(int request, Writer arguments, Reader<T> answer) throws IllegalArgumentException {
+			try {
+				return exchange(request, arguments, answer);
+			} catch (FullGraphException e) {
+				throw new IllegalArgumentException(e.getMessage(), e);
+			}
+		}
+
+		/**
+		 * @return The number of pages and of links on the shard
+		 */
+		long[] counts() {
+			return call(ShardServer.COUNTS, arguments -> {
+			}, answer -> new long[] { answer.readInt(), answer.readLong() });
+		}
+
+		private synchronized <T> T exchange(int request, Writer arguments, Reader<T> answer)
+				throws IllegalArgumentException, FullGraphException {
+			try {
+				out.writeByte(request);
+				arguments.write(out);
+				out.flush();
+				int status = in.readUnsignedByte();
+				if (status == ShardServer.ILLEGAL) {
+					throw new IllegalArgumentException(in.readUTF());
+				} else if (status == ShardServer.FULL) {
+					throw new FullGraphException(in.readUTF());
+				} else if (status == ShardServer.ERROR) {
+					throw new IllegalStateException("Shard " + id + " at " + address + " failed: " + in.readUTF());
+				}
+				return answer.read(in);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Shard " + id + " at " + address + " failed: " + e.getMessage(), e);
+			}
+		}
+
+		void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Closing anyway.
+			}
+		}
+	}
+
+	/**
+	 * Starts shards, loads a graph into them, and runs queries across them.
+	 *
+	 * Usage: <code>java searchEngine.ShardedWebGraph [shards] [pages file]
+	 * [links file] [queries...]</code>
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.out.println("Usage: java searchEngine.ShardedWebGraph [shards] [pages file] [links file] "
+					+ "[queries...]");
+			return;
+		}
+		int count = Integer.parseInt(args[0]);
+		long start = System.nanoTime();
+		try (ShardedWebGraph graph = launch(count)) {
+			System.out.println(String.format("Started %d shards in %.1f ms.", count, (System.nanoTime() - start) / 1e6));
+			start = System.nanoTime();
+			graph.load(new File(args[1]).toPath(), new File(args[2]).toPath());
+			System.out.println(String.format("Loaded %d pages and %d links in %.1f ms, ranked in %d iterations.",
+					graph.getPageCount(), graph.getLinkCount(), (System.nanoTime() - start) / 1e6,
+					graph.getIterations()));
+			for (int q = 3; q < args.length; q++) {
+				start = System.nanoTime();
+				ArrayList<SearchResult> results = graph.query(args[q], 10, 0);
+				double millis = (System.nanoTime() - start) / 1e6;
+				System.out.println();
+				System.out.println(String.format("%s: %d results in %.3f ms", args[q], results.size(), millis));
+				for (SearchResult result : results) {
+					System.out.println(result);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package searchEngine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * <code>SnapshotReader</code> class reads a snapshot file written by
+ * <code>SnapshotWriter</code>. The file is memory-mapped in windows, and
+ * primitive arrays are copied straight out of the mapping, so opening a
+ * snapshot costs little more than faulting its pages in. Every section's
+ * checksum is verified as the section is read.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+class SnapshotReader implements AutoCloseable {
+	// The file is mapped in windows of at most this many bytes.
+	private static final int WINDOW = 1 << 30;
+
+	private final String name;
+	private final FileChannel channel;
+	private final long size;
+	private final int version;
+	private final int sectionCount;
+	private final CRC32C crc = new CRC32C();
+	private MappedByteBuffer window;
+	private long windowStart;
+	private long position;
+	private int sectionTag;
+	private int sectionChecksum;
+	private long sectionEnd = -1;
+
+	/**
+	 * Returns an instance of SnapshotReader positioned at the first section.
+	 *
+	 * @param file The snapshot file
+	 * @throws IllegalArgumentException If the file is not a snapshot or has an
+	 *                                  unsupported version
+	 */
+	SnapshotReader(Path file) throws IOException, IllegalArgumentException {
+		this.name = file.getFileName().toString();
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		this.size = channel.size();
+		if (size < SnapshotWriter.HEADER_BYTES || readLong() != SnapshotWriter.MAGIC) {
+			channel.close();
+			throw new IllegalArgumentException(name + ": Not a graph snapshot.");
+		}
+		this.version = readInt();
+		if (version < 1 || version > SnapshotWriter.VERSION) {
+			channel.close();
+			throw new IllegalArgumentException(name + ": Unsupported snapshot version " + version + ".");
+		}
+		this.sectionCount = readInt();
+	}
+
+	/**
+	 * @return The format version of the file
+	 */
+	int version() {
+		return version;
+	}
+
+	/**
+	 * @return The number of sections in the file
+	 */
+	int sectionCount() {
+		return sectionCount;
+	}
+
+	/**
+	 * Starts reading the next section.
+	 *
+	 * @param tag The tag the section should have
+	 * @throws IllegalArgumentException If the next section has another tag or
+	 *                                  runs past the end of the file
+	 */
+	void beginSection(int tag) throws IOException, IllegalArgumentException {
+		if (position + SnapshotWriter.SECTION_HEADER_BYTES > size) {
+			throw corrupt("Section " + tag + " is missing.");
+		}
+		sectionTag = readInt();
+		sectionChecksum = readInt();
+		long length = readLong();
+		if (sectionTag != tag) {
+			throw corrupt("Expected section " + tag + " but found section " + sectionTag + ".");
+		} else if (length < 0 || position + length > size) {
+			throw corrupt("Section " + tag + " runs past the end of the file.");
+		}
+		sectionEnd = position + length;
+		crc.reset();
+	}
+
+	/**
+	 * Skips the padding of the current section and verifies its checksum.
+	 *
+	 * @throws IllegalArgumentException If the checksum does not match
+	 */
+	void endSection() throws IOException, IllegalArgumentException {
+		if (position > sectionEnd) {
+			throw corrupt("Section " + sectionTag + " is shorter than its contents.");
+		}
+		while (position < sectionEnd) {
+			take(sectionEnd - position, 1);
+		}
+		if ((int) crc.getValue() != sectionChecksum) {
+			throw corrupt("Section " + sectionTag + " has a bad checksum.");
+		}
+		sectionEnd = -1;
+	}
+
+	int readInt() throws IOException {
+		return take(4, 4).getInt();
+	}
+
+	long readLong() throws IOException {
+		return take(8, 8).getLong();
+	}
+
+	double readDouble() throws IOException {
+		return take(8, 8).getDouble();
+	}
+
+	/**
+	 * Reads count ints into an array starting at offset.
+	 */
+	void readInts(int[] values, int offset, int count) throws IOException {
+		while (count > 0) {
+			ByteBuffer bytes = take(4L * count, 4);
+			int n = bytes.remaining() / 4;
+			bytes.asIntBuffer().get(values, offset, n);
+			offset += n;
+			count -= n;
+		}
+	}
+
+	/**
+	 * Reads count longs into an array starting at offset.
+	 */
+	void readLongs(long[] values, int offset, int count) throws IOException {
+		while (count > 0) {
+			ByteBuffer bytes = take(8L * count, 8);
+			int n = bytes.remaining() / 8;
+			bytes.asLongBuffer().get(values, offset, n);
+			offset += n;
+			count -= n;
+		}
+	}
+
+	/**
+	 * Reads count doubles into an array starting at offset.
+	 */
+	void readDoubles(double[] values, int offset, int count) throws IOException {
+		while (count > 0) {
+			ByteBuffer bytes = take(8L * count, 8);
+			int n = bytes.remaining() / 8;
+			bytes.asDoubleBuffer().get(values, offset, n);
+			offset += n;
+			count -= n;
+		}
+	}
+
+	/**
+	 * Reads count bytes into an array starting at offset.
+	 */
+	void readBytes(byte[] values, int offset, int count) throws IOException {
+		while (count > 0) {
+			ByteBuffer bytes = take(count, 1);
+			int n = bytes.remaining();
+			bytes.get(values, offset, n);
+			offset += n;
+			count -= n;
+		}
+	}
+
+	/**
+	 * Reads count bytes into a buffer starting at offset.
+	 */
+	void readBytes(ByteBuffer values, int offset, int count) throws IOException {
+		while (count > 0) {
+			ByteBuffer bytes = take(count, 1);
+			int n = bytes.remaining();
+			values.put(offset, bytes, bytes.position(), n);
+			offset += n;
+			count -= n;
+		}
+	}
+
+	/**
+	 * Reads an array length, checking that the rest of the section can hold that
+	 * many values of the given width.
+	 *
+	 * @throws IllegalArgumentException If the length is impossible
+	 */
+	int readLength(int width) throws IOException, IllegalArgumentException {
+		int length = readInt();
+		long limit = sectionEnd == -1 ? size : sectionEnd;
+		if (length < 0 || position + (long) width * length > limit) {
+			throw corrupt("Section " + sectionTag + " has a bad array length.");
+		}
+		return length;
+	}
+
+	/**
+	 * @return An exception naming the file and the problem
+	 */
+	IllegalArgumentException corrupt(String message) {
+		return new IllegalArgumentException(name + ": The snapshot is corrupt. " + message);
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+	}
+
+	/**
+	 * Consumes up to the given number of bytes at the current position. Fewer
+	 * bytes are returned only at the end of a window, and always a whole number
+	 * of values of the given width.
+	 *
+	 * @return A little-endian buffer over the consumed bytes
+	 * @throws IllegalArgumentException If the bytes run past the current section
+	 *                                  or the file
+	 */
+	private ByteBuffer take(long bytes, int width) throws IOException, IllegalArgumentException {
+		long limit = sectionEnd == -1 ? size : sectionEnd;
+		if (position + width > limit) {
+			throw corrupt("Unexpected end of " + (sectionEnd == -1 ? "file." : "section " + sectionTag + "."));
+		}
+		if (window == null || position < windowStart || position + width > windowStart + window.capacity()) {
+			windowStart = position;
+			window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW, size - windowStart));
+		}
+		int from = (int) (position - windowStart);
+		int length = (int) Math.min(Math.min(bytes, limit - position), window.capacity() - from);
+		length -= length % width;
+		ByteBuffer slice = window.slice(from, length).order(ByteOrder.LITTLE_ENDIAN);
+		if (sectionEnd != -1) {
+			crc.update(slice.duplicate());
+		}
+		position += length;
+		return slice;
+	}
+}
@@ -0,0 +1,241 @@
+package searchEngine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * <code>SnapshotWriter</code> class writes a graph snapshot file. The file is
+ * a header followed by sections, and each section starts with its tag, the
+ * CRC32C of its payload and the payload length. Payloads are little-endian
+ * and padded to a multiple of 8 bytes, so primitive arrays can be copied out
+ * of a mapped file in bulk.
+ *
+ * The snapshot is written to a temporary file that replaces the target only
+ * once it is complete and forced to disk, so a crash never leaves a torn
+ * snapshot behind.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+class SnapshotWriter implements AutoCloseable {
+	/**
+	 * "WGSNAPSH" read as a little-endian long.
+	 */
+	static final long MAGIC = 0x485350414E534757L;
+	static final int VERSION = 2;
+	static final int HEADER_BYTES = 16;
+	static final int SECTION_HEADER_BYTES = 16;
+
+	private final Path target;
+	private final Path temporary;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final CRC32C crc = new CRC32C();
+	private long position;
+	private long sectionStart = -1;
+	private int sectionTag;
+	private boolean done;
+
+	/**
+	 * Returns an instance of SnapshotWriter that writes the header of a snapshot
+	 * file.
+	 *
+	 * @param target       The file the snapshot replaces once it is committed
+	 * @param sectionCount The number of sections that will be written
+	 */
+	SnapshotWriter(Path target, int sectionCount) throws IOException {
+		this.target = target;
+		this.temporary = target.resolveSibling(target.getFileName() + ".tmp");
+		this.channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putLong(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(sectionCount);
+		flush();
+	}
+
+	/**
+	 * Starts a section. The previous section must have been ended.
+	 *
+	 * @param tag The tag of the section
+	 */
+	void beginSection(int tag) throws IOException {
+		flush();
+		sectionStart = position;
+		sectionTag = tag;
+		position += SECTION_HEADER_BYTES;
+		crc.reset();
+	}
+
+	/**
+	 * Pads the current section, then fills in its length and checksum.
+	 */
+	void endSection() throws IOException {
+		while (((position + buffer.position()) & 7) != 0) {
+			buffer.put((byte) 0);
+		}
+		flush();
+		ByteBuffer header = ByteBuffer.allocate(SECTION_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(sectionTag);
+		header.putInt((int) crc.getValue());
+		header.putLong(position - sectionStart - SECTION_HEADER_BYTES);
+		header.flip();
+		long at = sectionStart;
+		while (header.hasRemaining()) {
+			at += channel.write(header, at);
+		}
+		sectionStart = -1;
+	}
+
+	void writeInt(int value) throws IOException {
+		reserve(4);
+		buffer.putInt(value);
+	}
+
+	void writeLong(long value) throws IOException {
+		reserve(8);
+		buffer.putLong(value);
+	}
+
+	void writeDouble(double value) throws IOException {
+		reserve(8);
+		buffer.putDouble(value);
+	}
+
+	/**
+	 * Writes count ints of an array starting at offset.
+	 */
+	void writeInts(int[] values, int offset, int count) throws IOException {
+		while (count > 0) {
+			reserve(4);
+			int n = Math.min(count, buffer.remaining() / 4);
+			buffer.asIntBuffer().put(values, offset, n);
+			buffer.position(buffer.position() + 4 * n);
+			offset += n;
+			count -= n;
+		}
+	}
+
+	/**
+	 * Writes count ints of a buffer starting at offset.
+	 */
+	void writeInts(IntBuffer values, int offset, int count) throws IOException {
+		while (count > 0) {
+			reserve(4);
+			int n = Math.min(count, buffer.remaining() / 4);
+			buffer.asIntBuffer().put(values.duplicate().limit(offset + n).position(offset));
+			buffer.position(buffer.position() + 4 * n);
+			offset += n;
+			count -= n;
+		}
+	}
+
+	/**
+	 * Writes count longs of an array starting at offset.
+	 */
+	void writeLongs(long[] values, int offset, int count) throws IOException {
+		while (count > 0) {
+			reserve(8);
+			int n = Math.min(count, buffer.remaining() / 8);
+			buffer.asLongBuffer().put(values, offset, n);
+			buffer.position(buffer.position() + 8 * n);
+			offset += n;
+			count -= n;
+		}
+	}
+
+	/**
+	 * Writes count doubles of an array starting at offset.
+	 */
+	void writeDoubles(double[] values, int offset, int count) throws IOException {
+		while (count > 0) {
+			reserve(8);
+			int n = Math.min(count, buffer.remaining() / 8);
+			buffer.asDoubleBuffer().put(values, offset, n);
+			buffer.position(buffer.position() + 8 * n);
+			offset += n;
+			count -= n;
+		}
+	}
+
+	/**
+	 * Writes count bytes of an array starting at offset.
+	 */
+	void writeBytes(byte[] values, int offset, int count) throws IOException {
+		while (count > 0) {
+			reserve(1);
+			int n = Math.min(count, buffer.remaining());
+			buffer.put(values, offset, n);
+			offset += n;
+			count -= n;
+		}
+	}
+
+	/**
+	 * Writes count bytes of a buffer starting at offset.
+	 */
+	void writeBytes(ByteBuffer values, int offset, int count) throws IOException {
+		while (count > 0) {
+			reserve(1);
+			int n = Math.min(count, buffer.remaining());
+			buffer.put(buffer.position(), values, offset, n);
+			buffer.position(buffer.position() + n);
+			offset += n;
+			count -= n;
+		}
+	}
+
+	/**
+	 * Forces the snapshot to disk and moves it over the target file.
+	 */
+	void commit() throws IOException {
+		if (sectionStart != -1) {
+			throw new IllegalStateException("A section is still open.");
+		}
+		flush();
+		channel.force(true);
+		channel.close();
+		Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		done = true;
+	}
+
+	/**
+	 * Closes the file. A snapshot that was not committed is deleted.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!done) {
+			channel.close();
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Flushes the buffer if it has fewer than the given number of bytes left.
+	 */
+	private void reserve(int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			flush();
+		}
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		if (sectionStart != -1) {
+			crc.update(buffer.duplicate());
+		}
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,424 @@
+package searchEngine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * <code>StringDictionary</code> class interns strings as UTF-8 bytes and maps
+ * each one to a dense int id. Lookups use an open-addressing hash table, and
+ * ids stay stable when other strings are removed.
+ *
+ * The bytes of the strings can be kept outside the heap, in which case the
+ * arena they share is released when it grows and when the dictionary is
+ * closed.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+class StringDictionary {
+	private static final long EMPTY = 0;
+	private static final long DELETED = -1;
+
+	private final boolean offHeap;
+	private ByteBuffer arena;
+	private int arenaSize;
+	private int[] offsets;
+	private int[] lengths;
+	private int[] hashes;
+	private int idCount;
+	private int size;
+	// Each slot holds the hash in the high half and id + 1 in the low half, so
+	// most mismatches are rejected without touching the arena. Otherwise it
+	// holds EMPTY or DELETED.
+	private long[] table;
+	private int used;
+
+	/**
+	 * Returns an empty instance of StringDictionary that keeps its strings on
+	 * the heap
+	 */
+	StringDictionary() {
+		this(false);
+	}
+
+	/**
+	 * Returns an empty instance of StringDictionary
+	 *
+	 * @param offHeap true to keep the bytes of the strings outside the heap
+	 */
+	StringDictionary(boolean offHeap) {
+		this.offHeap = offHeap;
+		this.arena = allocate(1024);
+		this.offsets = new int[16];
+		this.lengths = new int[16];
+		this.hashes = new int[16];
+		this.table = new long[32];
+	}
+
+	/**
+	 * @return The number of strings in the dictionary
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return One more than the greatest id ever handed out
+	 */
+	int idLimit() {
+		return idCount;
+	}
+
+	/**
+	 * @return true if the id refers to a string in the dictionary
+	 */
+	boolean contains(int id) {
+		return id >= 0 && id < idCount && lengths[id] >= 0;
+	}
+
+	/**
+	 * Obtains the id of a string.
+	 *
+	 * @param value The string to look for
+	 * @return The id, or -1 if the string is not in the dictionary
+	 */
+	int find(String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		return find(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Obtains the id of a string given as UTF-8 bytes.
+	 *
+	 * @param bytes  The buffer holding the string
+	 * @param offset The offset of the string in the buffer
+	 * @param length The length of the string in bytes
+	 * @return The id, or -1 if the string is not in the dictionary
+	 */
+	int find(byte[] bytes, int offset, int length) {
+		int hash = hash(bytes, offset, length);
+		int mask = table.length - 1;
+		for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+			long entry = table[slot];
+			if (entry == EMPTY) {
+				return -1;
+			}
+			if (entry != DELETED && (int) (entry >>> 32) == hash) {
+				int id = (int) entry - 1;
+				if (equals(id, bytes, offset, length)) {
+					return id;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds a string to the dictionary.
+	 *
+	 * @param value The string to add
+	 * @return The id of the new string, or -1 if it is already in the dictionary
+	 * @throws FullGraphException If the byte arena cannot hold the string
+	 */
+	int add(String value) throws FullGraphException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		return add(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Adds a string given as UTF-8 bytes to the dictionary.
+	 *
+	 * @return The id of the new string, or -1 if it is already in the dictionary
+	 * @throws FullGraphException If the byte arena cannot hold the string
+	 */
+	int add(byte[] bytes, int offset, int length) throws FullGraphException {
+		if (find(bytes, offset, length) != -1) {
+			return -1;
+		}
+		if ((long) arenaSize + length > Integer.MAX_VALUE - 8) {
+			throw new FullGraphException("The dictionary has run out of space.");
+		}
+		if (arenaSize + length > arena.capacity()) {
+			ByteBuffer grown = allocate((int) Math.min(Integer.MAX_VALUE - 8,
+					Math.max((long) arena.capacity() * 2, (long) arenaSize + length)));
+			grown.put(0, arena, 0, arenaSize);
+			OffHeap.free(arena);
+			arena = grown;
+		}
+		if (idCount == offsets.length) {
+			int capacity = offsets.length * 2;
+			offsets = Arrays.copyOf(offsets, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+			hashes = Arrays.copyOf(hashes, capacity);
+		}
+		int id = idCount++;
+		arena.put(arenaSize, bytes, offset, length);
+		offsets[id] = arenaSize;
+		lengths[id] = length;
+		hashes[id] = hash(bytes, offset, length);
+		arenaSize += length;
+		if ((used + 1) * 4L > table.length * 3L) {
+			rehash(size + 1 > table.length / 2 ? table.length * 2 : table.length);
+		}
+		insert(id);
+		size += 1;
+		return id;
+	}
+
+	/**
+	 * Removes a string from the dictionary. Its id is never handed out again.
+	 *
+	 * @param id The id of the string to remove
+	 */
+	void remove(int id) {
+		if (!contains(id)) {
+			return;
+		}
+		int mask = table.length - 1;
+		for (int slot = hashes[id] & mask;; slot = (slot + 1) & mask) {
+			if (table[slot] == slot(id)) {
+				table[slot] = DELETED;
+				break;
+			}
+		}
+		lengths[id] = -1;
+		size -= 1;
+	}
+
+	/**
+	 * @param id The id of a string in the dictionary
+	 * @return The string
+	 */
+	String get(int id) {
+		if (arena.hasArray()) {
+			return new String(arena.array(), offsets[id], lengths[id], StandardCharsets.UTF_8);
+		}
+		byte[] bytes = new byte[lengths[id]];
+		arena.get(offsets[id], bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Appends a string of the dictionary to a buffer. ASCII strings are copied
+	 * byte by byte, without creating a String.
+	 * 
+	 * @param id   The id of a string in the dictionary
+	 * @param text The buffer to append to
+	 */
+	void appendTo(int id, StringBuilder text) {
+		int offset = offsets[id];
+		int end = offset + lengths[id];
+		for (int i = offset; i < end; i++) {
+			if (arena.get(i) < 0) {
+				text.append(get(id));
+				return;
+			}
+		}
+		for (int i = offset; i < end; i++) {
+			text.append((char) arena.get(i));
+		}
+	}
+
+	/**
+	 * @return The number of bytes held by the dictionary
+	 */
+	long bytes() {
+		return arena.capacity() + 12L * offsets.length + 8L * table.length;
+	}
+
+	/**
+	 * Releases the bytes of the strings if they are outside the heap, and
+	 * empties the dictionary. The empty arena is on the heap, so a closed
+	 * dictionary holds nothing outside it until it grows again.
+	 */
+	void close() {
+		OffHeap.free(arena);
+		arena = ByteBuffer.wrap(new byte[1024]);
+		arenaSize = 0;
+		idCount = 0;
+		size = 0;
+		used = 0;
+		Arrays.fill(table, EMPTY);
+	}
+
+	/**
+	 * Copies the strings that are still in the dictionary into a new dictionary,
+	 * renumbered in order so that their ids are dense. The bytes of removed
+	 * strings are left behind, and the hashes are copied rather than computed
+	 * again.
+	 *
+	 * @param ids   The new id of each id, or -1 for ids not in the dictionary
+	 * @param count The number of strings in the dictionary
+	 * @return The new dictionary, which keeps its strings where this one does
+	 */
+	StringDictionary renumber(int[] ids, int count) {
+		StringDictionary compacted = new StringDictionary(offHeap);
+		int bytes = 0;
+		for (int id = 0; id < idCount; id++) {
+			if (ids[id] >= 0) {
+				bytes += lengths[id];
+			}
+		}
+		OffHeap.free(compacted.arena);
+		compacted.arena = allocate(Math.max(1024, bytes));
+		compacted.offsets = new int[Math.max(16, count)];
+		compacted.lengths = new int[Math.max(16, count)];
+		compacted.hashes = new int[Math.max(16, count)];
+		for (int id = 0; id < idCount; id++) {
+			int next = ids[id];
+			if (next >= 0) {
+				compacted.arena.put(compacted.arenaSize, arena, offsets[id], lengths[id]);
+				compacted.offsets[next] = compacted.arenaSize;
+				compacted.lengths[next] = lengths[id];
+				compacted.hashes[next] = hashes[id];
+				compacted.arenaSize += lengths[id];
+			}
+		}
+		compacted.idCount = count;
+		compacted.size = count;
+		int capacity = 32;
+		while (capacity < 2L * count) {
+			capacity <<= 1;
+		}
+		compacted.rehash(capacity);
+		return compacted;
+	}
+
+	/**
+	 * @return A new arena of the given capacity, outside the heap if the
+	 *         dictionary keeps its strings there
+	 */
+	private ByteBuffer allocate(int capacity) {
+		return offHeap ? OffHeap.bytes(capacity) : ByteBuffer.wrap(new byte[capacity]);
+	}
+
+	/**
+	 * Writes the dictionary, hash table included, to a snapshot.
+	 */
+	void write(SnapshotWriter out) throws IOException {
+		out.writeInt(idCount);
+		out.writeInt(size);
+		out.writeInt(used);
+		out.writeInt(idCount);
+		out.writeInts(offsets, 0, idCount);
+		out.writeInt(idCount);
+		out.writeInts(lengths, 0, idCount);
+		out.writeInt(idCount);
+		out.writeInts(hashes, 0, idCount);
+		out.writeInt(table.length);
+		out.writeLongs(table, 0, table.length);
+		out.writeInt(arenaSize);
+		out.writeBytes(arena, 0, arenaSize);
+	}
+
+	/**
+	 * Replaces the contents of the dictionary with one read from a snapshot. The
+	 * hash table is read as it was written, so nothing is rehashed.
+	 *
+	 * @throws IllegalArgumentException If the dictionary in the snapshot is
+	 *                                  inconsistent
+	 */
+	void read(SnapshotReader in) throws IOException, IllegalArgumentException {
+		int ids = in.readInt();
+		int strings = in.readInt();
+		int slots = in.readInt();
+		offsets = readInts(in, ids);
+		lengths = readInts(in, ids);
+		hashes = readInts(in, ids);
+		int capacity = in.readLength(8);
+		if (Integer.bitCount(capacity) != 1 || slots >= capacity) {
+			throw in.corrupt("The hash table has a bad capacity.");
+		}
+		table = new long[capacity];
+		in.readLongs(table, 0, capacity);
+		arenaSize = in.readLength(1);
+		ByteBuffer read = allocate(Math.max(1024, arenaSize));
+		in.readBytes(read, 0, arenaSize);
+		OffHeap.free(arena);
+		arena = read;
+		idCount = ids;
+		size = strings;
+		used = slots;
+	}
+
+	/**
+	 * Reads one of the per-id arrays, leaving room for at least 16 ids.
+	 */
+	private static int[] readInts(SnapshotReader in, int ids) throws IOException, IllegalArgumentException {
+		if (in.readLength(4) != ids) {
+			throw in.corrupt("The dictionary arrays have different lengths.");
+		}
+		int[] values = new int[Math.max(16, ids)];
+		in.readInts(values, 0, ids);
+		return values;
+	}
+
+	/**
+	 * Places an id in the hash table. The table must have a free slot.
+	 */
+	private void insert(int id) {
+		int mask = table.length - 1;
+		int slot = hashes[id] & mask;
+		while (table[slot] != EMPTY) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = slot(id);
+		used += 1;
+	}
+
+	/**
+	 * @return The table slot value of an id
+	 */
+	private long slot(int id) {
+		return ((long) hashes[id] << 32) | (id + 1);
+	}
+
+	/**
+	 * Rebuilds the hash table with the given capacity, dropping deleted slots.
+	 */
+	private void rehash(int capacity) {
+		table = new long[capacity];
+		used = 0;
+		for (int id = 0; id < idCount; id++) {
+			if (lengths[id] >= 0) {
+				insert(id);
+			}
+		}
+	}
+
+	/**
+	 * @return true if the string with the id equals the given bytes
+	 */
+	private boolean equals(int id, byte[] bytes, int offset, int length) {
+		if (lengths[id] != length) {
+			return false;
+		}
+		if (arena.hasArray()) {
+			return Arrays.equals(arena.array(), offsets[id], offsets[id] + length, bytes, offset, offset + length);
+		}
+		for (int i = 0; i < length; i++) {
+			if (arena.get(offsets[id] + i) != bytes[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * FNV-1a hash of the bytes. The low bits of FNV-1a only depend on the low
+	 * bits of each byte, so the result goes through a Murmur3 finalizer before
+	 * it is masked into the table.
+	 */
+	private static int hash(byte[] bytes, int offset, int length) {
+		int hash = 0x811C9DC5;
+		for (int i = offset; i < offset + length; i++) {
+			hash = (hash ^ bytes[i]) * 0x01000193;
+		}
+		hash ^= hash >>> 16;
+		hash *= 0x85EBCA6B;
+		hash ^= hash >>> 13;
+		hash *= 0xC2B2AE35;
+		return hash ^ (hash >>> 16);
+	}
+}
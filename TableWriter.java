@@ -0,0 +1,207 @@
+package searchEngine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * <code>TableWriter</code> class streams a table to an output row by row. A
+ * row is built cell by cell in one reused buffer, padded by hand the way
+ * <code>String.format</code> pads <code>%-Ns</code> and <code>%-N.Df</code>,
+ * and written as a whole, so writing a row allocates nothing however long
+ * the table is.
+ *
+ * Cells are separated by <code>" | "</code>. A cell shorter than its width is
+ * padded with spaces on the right, and a longer one is written in full.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+final class TableWriter {
+	private static final String SEPARATOR = " | ";
+	private static final String LINE_SEPARATOR = System.lineSeparator();
+	private static final long[] POWERS_OF_TEN = { 1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000,
+			100_000_000 };
+	// Numbers at least this large are formatted the slow way, since scaling
+	// them by a power of ten would lose digits.
+	private static final double LARGEST_FAST = 1e15;
+
+	private final Writer out;
+	private final StringBuilder row = new StringBuilder(256);
+	private char[] chars = new char[256];
+	private int cellStart = -1;
+	private final char decimalSeparator = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT))
+			.getDecimalSeparator();
+
+	/**
+	 * Returns an instance of TableWriter that writes to a stream.
+	 *
+	 * @param out     The stream to write to
+	 * @param charset The charset to encode the table in
+	 */
+	TableWriter(OutputStream out, Charset charset) {
+		this.out = new OutputStreamWriter(out, charset);
+	}
+
+	/**
+	 * @return A TableWriter that writes to the current standard output, in the
+	 *         charset <code>System.out</code> prints in
+	 */
+	static TableWriter standardOutput() {
+		// System.out prints in the console's charset if there is a console, and
+		// in the default charset otherwise.
+		String console = System.getProperty("sun.stdout.encoding");
+		Charset charset = Charset.defaultCharset();
+		if (console != null && Charset.isSupported(console)) {
+			charset = Charset.forName(console);
+		}
+		return new TableWriter(System.out, charset);
+	}
+
+	/**
+	 * Starts a cell of the current row, whose text is appended to the buffer
+	 * returned.
+	 *
+	 * @return The row being built
+	 */
+	StringBuilder beginCell() {
+		if (cellStart != -1) {
+			row.append(SEPARATOR);
+		}
+		cellStart = row.length();
+		return row;
+	}
+
+	/**
+	 * Pads the current cell to a width.
+	 *
+	 * @param width The least number of characters in the cell
+	 * @return This writer
+	 */
+	TableWriter endCell(int width) {
+		for (int i = row.length() - cellStart; i < width; i++) {
+			row.append(' ');
+		}
+		return this;
+	}
+
+	/**
+	 * Adds a cell of text.
+	 *
+	 * @param value The text
+	 * @param width The least number of characters in the cell
+	 * @return This writer
+	 */
+	TableWriter cell(CharSequence value, int width) {
+		beginCell().append(value);
+		return endCell(width);
+	}
+
+	/**
+	 * Adds a cell with a whole number.
+	 *
+	 * @param value The number
+	 * @param width The least number of characters in the cell
+	 * @return This writer
+	 */
+	TableWriter cell(long value, int width) {
+		beginCell().append(value);
+		return endCell(width);
+	}
+
+	/**
+	 * Adds a cell with a number rounded half up to a number of decimals, as
+	 * <code>%.Df</code> formats it.
+	 *
+	 * @param value    The number
+	 * @param decimals The number of decimals, at most 8
+	 * @param width    The least number of characters in the cell
+	 * @return This writer
+	 */
+	TableWriter cell(double value, int decimals, int width) {
+		appendFixed(beginCell(), value, decimals);
+		return endCell(width);
+	}
+
+	/**
+	 * Writes the current row and starts a new one.
+	 *
+	 * @throws UncheckedIOException If the output cannot be written
+	 */
+	void endRow() throws UncheckedIOException {
+		row.append(LINE_SEPARATOR);
+		int length = row.length();
+		if (length > chars.length) {
+			chars = new char[Math.max(length, chars.length * 2)];
+		}
+		row.getChars(0, length, chars, 0);
+		row.setLength(0);
+		cellStart = -1;
+		try {
+			out.write(chars, 0, length);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Writes a line that is not made of cells, such as a heading.
+	 *
+	 * @param line The line
+	 * @throws UncheckedIOException If the output cannot be written
+	 */
+	void line(CharSequence line) throws UncheckedIOException {
+		row.setLength(0);
+		row.append(line);
+		endRow();
+	}
+
+	/**
+	 * Writes everything buffered so far to the output.
+	 *
+	 * @throws UncheckedIOException If the output cannot be written
+	 */
+	void flush() throws UncheckedIOException {
+		try {
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Appends a number rounded half up to a number of decimals.
+	 *
+	 * @param text     The text to append to
+	 * @param value    The number
+	 * @param decimals The number of decimals, at most 8
+	 */
+	private void appendFixed(StringBuilder text, double value, int decimals) {
+		if (!(Math.abs(value) < LARGEST_FAST)) {
+			text.append(String.format("%." + decimals + "f", value));
+			return;
+		}
+		// The sign is kept even when the number rounds to zero, as in -0.0000.
+		boolean negative = value < 0 || (value == 0 && 1 / value < 0);
+		long scale = POWERS_OF_TEN[decimals];
+		long scaled = Math.round(Math.abs(value) * scale);
+		if (negative) {
+			text.append('-');
+		}
+		text.append(scaled / scale);
+		if (decimals == 0) {
+			return;
+		}
+		text.append(decimalSeparator);
+		long fraction = scaled % scale;
+		for (long digit = scale / 10; digit > fraction && digit > 1; digit /= 10) {
+			text.append('0');
+		}
+		text.append(fraction);
+	}
+}
@@ -0,0 +1,513 @@
+package searchEngine;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * <code>TermTrie</code> class is a sorted, read-only trie of keywords packed
+ * into arrays, for finding keywords by prefix, by wildcard pattern and within
+ * a number of edits without comparing against every keyword.
+ *
+ * The nodes are numbered breadth first, so the children of a node are
+ * numbered one after another in order of their characters, right after the
+ * children of the node before it. A node is then only its character, the
+ * number of its first child, the term id of the keyword ending at it and the
+ * run of sorted keywords below it, and the children of node n are the nodes
+ * from children[n] up to children[n + 1]. A prefix shared by many keywords
+ * is stored once.
+ *
+ * Each keyword also has a weight, which the owner keeps up to date, held in
+ * a tree of maximums over the sorted keywords. Since the keywords with a
+ * prefix are one run of the sorted order, the heaviest of them are found by
+ * descending the tree from the few nodes covering that run, without visiting
+ * the rest of them.
+ *
+ * A pattern is matched by walking the trie with the set of positions of the
+ * pattern that the characters so far can reach, so a branch is left as soon
+ * as no position is reachable. A keyword within a number of edits is found
+ * the same way with a row of the Levenshtein table per node, left as soon as
+ * every entry of the row is over the number of edits.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+final class TermTrie {
+	/**
+	 * Matches any sequence of characters in a pattern, including none.
+	 */
+	static final char ANY = '*';
+	/**
+	 * Matches exactly one character in a pattern.
+	 */
+	static final char ONE = '?';
+
+	// The character leading to each node. The root has none.
+	private final char[] labels;
+	// The first child of each node, with one more entry for the end.
+	private final int[] children;
+	// The term id of the keyword ending at each node, or -1.
+	private final int[] terms;
+	// The sorted keywords from first[n] up to last[n] are at or below node n.
+	private final int[] first;
+	private final int[] last;
+	// The term id of each keyword in sorted order, and the position of each
+	// term id in that order, or -1.
+	private final int[] ids;
+	private final int[] positions;
+	// The largest weight under each node of a binary tree whose leaves, from
+	// leaves on, are the weights of the keywords in sorted order.
+	private final int[] weights;
+	private final int leaves;
+	// The length of the longest keyword.
+	private final int depth;
+
+	private TermTrie(char[] labels, int[] children, int[] terms, int[] first, int[] last, int[] ids, int[] weights,
+			int depth, int idLimit) {
+		this.labels = labels;
+		this.children = children;
+		this.terms = terms;
+		this.first = first;
+		this.last = last;
+		this.ids = ids;
+		this.depth = depth;
+		this.positions = new int[idLimit];
+		Arrays.fill(positions, -1);
+		for (int i = 0; i < ids.length; i++) {
+			positions[ids[i]] = i;
+		}
+		this.leaves = Integer.highestOneBit(Math.max(1, ids.length - 1)) * 2;
+		this.weights = new int[2 * leaves];
+		for (int i = 0; i < ids.length; i++) {
+			this.weights[leaves + i] = weights[i];
+		}
+		for (int node = leaves - 1; node > 0; node--) {
+			this.weights[node] = Math.max(this.weights[2 * node], this.weights[2 * node + 1]);
+		}
+	}
+
+	/**
+	 * Builds a trie of keywords.
+	 *
+	 * @param keywords The distinct keywords, in any order
+	 * @param ids      The term id of each keyword
+	 * @param weights  The weight of each keyword, not negative
+	 * @param count    The number of keywords
+	 * @param idLimit  One more than the greatest term id the trie can hold
+	 * @return The trie
+	 */
+	static TermTrie build(String[] keywords, int[] ids, int[] weights, int count, int idLimit) {
+		Integer[] order = new Integer[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> keywords[a].compareTo(keywords[b]));
+		String[] sorted = new String[count];
+		int[] sortedIds = new int[count];
+		int[] sortedWeights = new int[count];
+		int depth = 0;
+		for (int i = 0; i < count; i++) {
+			sorted[i] = keywords[order[i]];
+			sortedIds[i] = ids[order[i]];
+			sortedWeights[i] = weights[order[i]];
+			depth = Math.max(depth, sorted[i].length());
+		}
+		// Each node stands for the run of sorted keywords from[n] to to[n] that
+		// share its first level[n] characters.
+		int capacity = 16;
+		char[] labels = new char[capacity];
+		int[] children = new int[capacity + 1];
+		int[] terms = new int[capacity];
+		int[] from = new int[capacity];
+		int[] to = new int[capacity];
+		int[] level = new int[capacity];
+		to[0] = count;
+		int nodes = 1;
+		for (int n = 0; n < nodes; n++) {
+			int lo = from[n];
+			int hi = to[n];
+			int d = level[n];
+			terms[n] = -1;
+			if (lo < hi && sorted[lo].length() == d) {
+				terms[n] = sortedIds[lo];
+				lo += 1;
+			}
+			children[n] = nodes;
+			while (lo < hi) {
+				char c = sorted[lo].charAt(d);
+				int end = lo + 1;
+				while (end < hi && sorted[end].charAt(d) == c) {
+					end++;
+				}
+				if (nodes == capacity) {
+					capacity *= 2;
+					labels = Arrays.copyOf(labels, capacity);
+					children = Arrays.copyOf(children, capacity + 1);
+					terms = Arrays.copyOf(terms, capacity);
+					from = Arrays.copyOf(from, capacity);
+					to = Arrays.copyOf(to, capacity);
+					level = Arrays.copyOf(level, capacity);
+				}
+				labels[nodes] = c;
+				from[nodes] = lo;
+				to[nodes] = end;
+				level[nodes] = d + 1;
+				nodes += 1;
+				lo = end;
+			}
+		}
+		children[nodes] = nodes;
+		return new TermTrie(Arrays.copyOf(labels, nodes), Arrays.copyOf(children, nodes + 1),
+				Arrays.copyOf(terms, nodes), Arrays.copyOf(from, nodes), Arrays.copyOf(to, nodes), sortedIds,
+				sortedWeights, depth, idLimit);
+	}
+
+	/**
+	 * @return One more than the greatest term id the trie can hold. Keywords
+	 *         with greater ids were added after it was built.
+	 */
+	int idLimit() {
+		return positions.length;
+	}
+
+	/**
+	 * Changes the weight of a keyword. Keywords not in the trie are ignored.
+	 *
+	 * @param term   The term id of the keyword
+	 * @param weight The new weight, not negative
+	 */
+	void weigh(int term, int weight) {
+		if (term >= positions.length || positions[term] < 0) {
+			return;
+		}
+		int node = leaves + positions[term];
+		weights[node] = weight;
+		for (node /= 2; node > 0; node /= 2) {
+			int max = Math.max(weights[2 * node], weights[2 * node + 1]);
+			if (weights[node] == max) {
+				break;
+			}
+			weights[node] = max;
+		}
+	}
+
+	/**
+	 * @return The term id of a keyword, or -1 if it is not in the trie
+	 */
+	int find(String keyword) {
+		int node = walk(0, keyword, keyword.length());
+		return node == -1 ? -1 : terms[node];
+	}
+
+	/**
+	 * Finds the keywords that start with a prefix, in sorted order.
+	 *
+	 * @param prefix  The prefix
+	 * @param matches Receives the term id of each keyword found
+	 */
+	void prefix(String prefix, Matches matches) {
+		int node = walk(0, prefix, prefix.length());
+		if (node != -1) {
+			subtree(node, matches);
+		}
+	}
+
+	/**
+	 * Finds the heaviest keywords that start with a prefix, heaviest first and
+	 * in sorted order among equal weights. Keywords of weight 0 are left out.
+	 *
+	 * @param prefix  The prefix
+	 * @param count   The greatest number of keywords to find
+	 * @param matches Receives the term id of each keyword found
+	 */
+	void top(String prefix, int count, Matches matches) {
+		int node = walk(0, prefix, prefix.length());
+		if (node == -1 || count <= 0) {
+			return;
+		}
+		// Tree nodes are taken heaviest first, then leftmost first, so a leaf is
+		// taken only once every node that could hold a better keyword is split.
+		PriorityQueue<Integer> queue = new PriorityQueue<Integer>((a, b) -> weights[a] != weights[b]
+				? Integer.compare(weights[b], weights[a]) : Integer.compare(start(a), start(b)));
+		for (int lo = leaves + first[node], hi = leaves + last[node]; lo < hi; lo /= 2, hi /= 2) {
+			if ((lo & 1) == 1) {
+				queue.add(lo++);
+			}
+			if ((hi & 1) == 1) {
+				queue.add(--hi);
+			}
+		}
+		while (count > 0 && !queue.isEmpty() && weights[queue.peek()] > 0) {
+			int tree = queue.poll();
+			if (tree >= leaves) {
+				matches.match(ids[tree - leaves], 0);
+				count -= 1;
+			} else {
+				queue.add(2 * tree);
+				queue.add(2 * tree + 1);
+			}
+		}
+	}
+
+	/**
+	 * @return The position of the first keyword under a node of the tree of
+	 *         weights
+	 */
+	private int start(int tree) {
+		int height = Integer.numberOfLeadingZeros(tree) - Integer.numberOfLeadingZeros(leaves);
+		return (tree << height) - leaves;
+	}
+
+	/**
+	 * Finds the keywords that match a pattern, in sorted order.
+	 *
+	 * @param pattern The pattern, in which ANY matches any characters and ONE
+	 *                matches one character
+	 * @param matches Receives the term id of each keyword found
+	 */
+	void wildcard(String pattern, Matches matches) {
+		// The characters before the first wildcard lead to one node.
+		int literal = 0;
+		while (literal < pattern.length() && !isWildcard(pattern.charAt(literal))) {
+			literal++;
+		}
+		int node = walk(0, pattern, literal);
+		if (node == -1) {
+			return;
+		} else if (literal == pattern.length()) {
+			if (terms[node] >= 0) {
+				matches.match(terms[node], 0);
+			}
+			return;
+		} else if (literal == pattern.length() - 1 && pattern.charAt(literal) == ANY) {
+			subtree(node, matches);
+			return;
+		}
+		boolean[][] states = new boolean[depth - literal + 1][pattern.length() + 1];
+		states[0][literal] = true;
+		close(pattern, states[0]);
+		wildcard(pattern, node, states, 0, matches);
+	}
+
+	/**
+	 * Finds the keywords within a number of edits of a keyword, in sorted
+	 * order. An edit inserts, deletes or replaces one character.
+	 *
+	 * @param keyword  The keyword
+	 * @param maxEdits The greatest number of edits
+	 * @param matches  Receives the term id of each keyword found and its
+	 *                 number of edits
+	 */
+	void fuzzy(String keyword, int maxEdits, Matches matches) {
+		int m = keyword.length();
+		int[][] rows = new int[depth + 1][m + 1];
+		for (int j = 0; j <= m; j++) {
+			rows[0][j] = j;
+		}
+		if (m <= maxEdits && terms[0] >= 0) {
+			matches.match(terms[0], m);
+		}
+		fuzzy(keyword, maxEdits, 0, rows, 0, matches);
+	}
+
+	/**
+	 * @return The node reached from a node by the first length characters of a
+	 *         string, or -1 if there is none
+	 */
+	private int walk(int node, String text, int length) {
+		for (int i = 0; i < length && node != -1; i++) {
+			node = child(node, text.charAt(i));
+		}
+		return node;
+	}
+
+	/**
+	 * @return The child of a node with a character, or -1 if there is none
+	 */
+	private int child(int node, char c) {
+		int lo = children[node];
+		int hi = children[node + 1] - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (labels[mid] < c) {
+				lo = mid + 1;
+			} else if (labels[mid] > c) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Visits every keyword at or below a node, in sorted order.
+	 */
+	private void subtree(int node, Matches matches) {
+		for (int position = first[node]; position < last[node]; position++) {
+			matches.match(ids[position], 0);
+		}
+	}
+
+	/**
+	 * Visits the keywords below a node that complete a pattern.
+	 *
+	 * @param states The positions of the pattern reachable at each level below
+	 *               the node the walk started from
+	 * @param level  The level of the node
+	 */
+	private void wildcard(String pattern, int node, boolean[][] states, int level, Matches matches) {
+		boolean[] current = states[level];
+		if (current[pattern.length()] && terms[node] >= 0) {
+			matches.match(terms[node], 0);
+		}
+		if (children[node] == children[node + 1]) {
+			return;
+		}
+		boolean[] next = states[level + 1];
+		for (int child = children[node]; child < children[node + 1]; child++) {
+			if (step(pattern, current, labels[child], next)) {
+				wildcard(pattern, child, states, level + 1, matches);
+			}
+		}
+	}
+
+	/**
+	 * Visits the keywords below a node within a number of edits of a keyword.
+	 *
+	 * @param rows  The row of the Levenshtein table at each level
+	 * @param level The level of the node
+	 */
+	private void fuzzy(String keyword, int maxEdits, int node, int[][] rows, int level, Matches matches) {
+		int m = keyword.length();
+		int[] previous = rows[level];
+		int[] row = rows[level + 1];
+		for (int child = children[node]; child < children[node + 1]; child++) {
+			char c = labels[child];
+			row[0] = previous[0] + 1;
+			int best = row[0];
+			for (int j = 1; j <= m; j++) {
+				int cost = keyword.charAt(j - 1) == c ? 0 : 1;
+				row[j] = Math.min(Math.min(previous[j] + 1, row[j - 1] + 1), previous[j - 1] + cost);
+				best = Math.min(best, row[j]);
+			}
+			if (row[m] <= maxEdits && terms[child] >= 0) {
+				matches.match(terms[child], row[m]);
+			}
+			if (best <= maxEdits && children[child] < children[child + 1]) {
+				fuzzy(keyword, maxEdits, child, rows, level + 1, matches);
+			}
+		}
+	}
+
+	/**
+	 * @return true if a character of a pattern is a wildcard
+	 */
+	static boolean isWildcard(char c) {
+		return c == ANY || c == ONE;
+	}
+
+	/**
+	 * @return true if a keyword matches a pattern. Used for keywords added
+	 *         since the trie was built.
+	 */
+	static boolean matches(String pattern, String keyword) {
+		boolean[] current = new boolean[pattern.length() + 1];
+		boolean[] next = new boolean[pattern.length() + 1];
+		current[0] = true;
+		close(pattern, current);
+		for (int i = 0; i < keyword.length(); i++) {
+			if (!step(pattern, current, keyword.charAt(i), next)) {
+				return false;
+			}
+			boolean[] swap = current;
+			current = next;
+			next = swap;
+		}
+		return current[pattern.length()];
+	}
+
+	/**
+	 * @return The number of edits between two keywords, or maxEdits + 1 if it
+	 *         is more than maxEdits. Used for keywords added since the trie was
+	 *         built.
+	 */
+	static int distance(String a, String b, int maxEdits) {
+		if (Math.abs(a.length() - b.length()) > maxEdits) {
+			return maxEdits + 1;
+		}
+		int[] previous = new int[a.length() + 1];
+		int[] row = new int[a.length() + 1];
+		for (int j = 0; j <= a.length(); j++) {
+			previous[j] = j;
+		}
+		for (int i = 0; i < b.length(); i++) {
+			row[0] = i + 1;
+			int best = row[0];
+			for (int j = 1; j <= a.length(); j++) {
+				int cost = a.charAt(j - 1) == b.charAt(i) ? 0 : 1;
+				row[j] = Math.min(Math.min(previous[j] + 1, row[j - 1] + 1), previous[j - 1] + cost);
+				best = Math.min(best, row[j]);
+			}
+			if (best > maxEdits) {
+				return maxEdits + 1;
+			}
+			int[] swap = previous;
+			previous = row;
+			row = swap;
+		}
+		return Math.min(previous[a.length()], maxEdits + 1);
+	}
+
+	/**
+	 * Moves the reachable positions of a pattern past one character.
+	 *
+	 * @param current The positions reachable before the character
+	 * @param c       The character
+	 * @param next    Set to the positions reachable after it
+	 * @return true if any position is reachable after it
+	 */
+	private static boolean step(String pattern, boolean[] current, char c, boolean[] next) {
+		Arrays.fill(next, false);
+		for (int i = 0; i < pattern.length(); i++) {
+			if (current[i]) {
+				char p = pattern.charAt(i);
+				if (p == ANY) {
+					next[i] = true;
+				} else if (p == ONE || p == c) {
+					next[i + 1] = true;
+				}
+			}
+		}
+		return close(pattern, next);
+	}
+
+	/**
+	 * Adds the positions reachable by letting ANY match nothing.
+	 *
+	 * @return true if any position is reachable
+	 */
+	private static boolean close(String pattern, boolean[] positions) {
+		boolean any = false;
+		for (int i = 0; i <= pattern.length(); i++) {
+			if (positions[i]) {
+				any = true;
+				if (i < pattern.length() && pattern.charAt(i) == ANY) {
+					positions[i + 1] = true;
+				}
+			}
+		}
+		return any;
+	}
+
+	/**
+	 * <code>Matches</code> interface receives the keywords a lookup finds.
+	 */
+	interface Matches {
+		/**
+		 * @param term  The term id of a keyword found
+		 * @param edits The number of edits from the keyword looked for, or 0 for
+		 *              lookups by prefix or pattern
+		 */
+		void match(int term, int edits);
+	}
+}
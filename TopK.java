@@ -0,0 +1,107 @@
+package searchEngine;
+
+/**
+ * <code>TopK</code> class keeps the k best (id, score) pairs offered to it in
+ * a bounded min-heap of primitives. Higher scores are better, and equal
+ * scores prefer the smaller id, which matches a stable sort of ids in
+ * ascending order.
+ *
+ * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
+ *         Brook ID: 110261379
+ **/
+class TopK {
+	private final int capacity;
+	// Heap ordered so that the worst pair kept is at the root.
+	private final int[] ids;
+	private final double[] scores;
+	private int size;
+
+	/**
+	 * Returns an empty instance of TopK
+	 *
+	 * @param capacity The number of pairs to keep
+	 */
+	TopK(int capacity) {
+		this.capacity = capacity;
+		this.ids = new int[capacity];
+		this.scores = new double[capacity];
+	}
+
+	/**
+	 * @return The number of pairs kept
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Offers a pair, which is kept if it is among the best seen so far.
+	 */
+	void offer(int id, double score) {
+		if (size < capacity) {
+			int i = size++;
+			// Sift up.
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (!worse(id, score, ids[parent], scores[parent])) {
+					break;
+				}
+				ids[i] = ids[parent];
+				scores[i] = scores[parent];
+				i = parent;
+			}
+			ids[i] = id;
+			scores[i] = score;
+		} else if (capacity > 0 && worse(ids[0], scores[0], id, score)) {
+			siftDown(id, score);
+		}
+	}
+
+	/**
+	 * Empties the heap into arrays, best first.
+	 *
+	 * @param ids    The array to fill with the ids kept
+	 * @param scores The array to fill with their scores
+	 */
+	void drain(int[] ids, double[] scores) {
+		while (size > 0) {
+			ids[size - 1] = this.ids[0];
+			scores[size - 1] = this.scores[0];
+			size -= 1;
+			if (size > 0) {
+				siftDown(this.ids[size], this.scores[size]);
+			}
+		}
+	}
+
+	/**
+	 * Places a pair at the root and moves it down to its place.
+	 */
+	private void siftDown(int id, double score) {
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && worse(ids[child + 1], scores[child + 1], ids[child], scores[child])) {
+				child += 1;
+			}
+			if (!worse(ids[child], scores[child], id, score)) {
+				break;
+			}
+			ids[i] = ids[child];
+			scores[i] = scores[child];
+			i = child;
+		}
+		ids[i] = id;
+		scores[i] = score;
+	}
+
+	/**
+	 * @return true if the first pair ranks below the second
+	 */
+	private static boolean worse(int id, double score, int otherId, double otherScore) {
+		return score < otherScore || (score == otherScore && id > otherId);
+	}
+}
@@ -1,6 +1,7 @@
 package searchEngine;
 
 import java.util.Comparator;
+import java.util.function.IntBinaryOperator;
 
 /**
  * Compares two WebPages by their URL in alphabetical order.
@@ -8,9 +9,21 @@ import java.util.Comparator;
  * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
  *         Brook ID: 110261379
  **/
-public class UrlComparator implements Comparator<WebPage> {
+public class UrlComparator implements Comparator<WebPage>, PageStore.Order {
 	@Override
 	public int compare(WebPage w1, WebPage w2) {
 		return w1.getUrl().compareTo(w2.getUrl());
 	}
+
+	@Override
+	public IntBinaryOperator order(PageStore pages) {
+		// Each URL is decoded once rather than once per comparison.
+		String[] urls = new String[pages.idLimit()];
+		for (int id = 0; id < urls.length; id++) {
+			if (pages.contains(id)) {
+				urls[id] = pages.url(id);
+			}
+		}
+		return (id1, id2) -> urls[id1].compareTo(urls[id2]);
+	}
 }
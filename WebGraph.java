@@ -1,25 +1,112 @@
 package searchEngine;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
-import java.util.ListIterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * <code>WebGraph</code> class simulates the web with a directed graph.
  *
+ * Reads may run on many threads at once. Mutations, including a committed
+ * <code>Batch</code>, hold an exclusive lock, so readers never see a
+ * half-applied change.
+ *
+ * A graph can keep its largest arrays, the bytes of its URLs and its links,
+ * outside the Java heap, so that they add nothing to garbage collection
+ * pauses. That memory is released by {@link #close()}, after which the graph
+ * is empty.
+ *
+ * A removed page leaves its index unused, so the indices of the other pages
+ * stay the same and a removal only touches the page's own links. Once removed
+ * pages leave as many unused indices as there are pages, the graph is
+ * compacted in the background: every part of it is rebuilt with the pages
+ * renumbered in order, while readers carry on, and swapped in at once.
+ *
  * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
  *         Brook ID: 110261379
  **/
-public class WebGraph {
-	private static final int MAX_PAGES = 40;
-	private int[][] edges;
-	private LinkedList<WebPage> pages;
-	private int pageCount;
+public class WebGraph implements AutoCloseable {
+	/**
+	 * The default number of bytes the link store may grow to.
+	 */
+	public static final long DEFAULT_MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 2;
+	/**
+	 * The default number of bytes the search result cache may hold.
+	 */
+	public static final long DEFAULT_CACHE_CAPACITY = 16 << 20;
+	/**
+	 * The number of unused indices below which the graph is never compacted in
+	 * the background.
+	 */
+	static final int COMPACT_MINIMUM = 1 << 12;
+	// Sections of a snapshot, in the order they are written.
+	private static final int GRAPH_SECTION = 1;
+	private static final int URL_SECTION = 2;
+	private static final int KEYWORD_SECTION = 3;
+	private static final int PAGE_SECTION = 4;
+	private static final int INDEX_SECTION = 5;
+	private static final int LINK_SECTION = 6;
+	private static final int RANK_SECTION = 7;
+	private static final int SECTION_COUNT = 7;
+	private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "web-graph-compactor");
+		thread.setDaemon(true);
+		return thread;
+	});
+	// The timers of the public operations. Mutations are timed without the wait
+	// for the log, which is timed on its own.
+	private static final Metrics.Timer OPEN_TIMER = Metrics.timer("WebGraph.open");
+	private static final Metrics.Timer SAVE_TIMER = Metrics.timer("WebGraph.save");
+	private static final Metrics.Timer CHECKPOINT_TIMER = Metrics.timer("WebGraph.checkpoint");
+	private static final Metrics.Timer GET_INDEX_TIMER = Metrics.timer("WebGraph.getIndex");
+	private static final Metrics.Timer GET_PAGE_RANK_TIMER = Metrics.timer("WebGraph.getPageRank");
+	private static final Metrics.Timer ADD_PAGE_TIMER = Metrics.timer("WebGraph.addPage");
+	private static final Metrics.Timer REMOVE_PAGE_TIMER = Metrics.timer("WebGraph.removePage");
+	private static final Metrics.Timer ADD_LINK_TIMER = Metrics.timer("WebGraph.addLink");
+	private static final Metrics.Timer REMOVE_LINK_TIMER = Metrics.timer("WebGraph.removeLink");
+	private static final Metrics.Timer COMMIT_TIMER = Metrics.timer("WebGraph.Batch.commit");
+	private static final Metrics.Timer AWAIT_LOG_TIMER = Metrics.timer("WebGraph.awaitLog");
+	private static final Metrics.Timer COMPACT_TIMER = Metrics.timer("WebGraph.compact");
+	private static final Metrics.Timer UPDATE_PAGE_RANKS_TIMER = Metrics.timer("WebGraph.updatePageRanks");
+	private static final Metrics.Timer GET_LINK_STRING_TIMER = Metrics.timer("WebGraph.getLinkString");
+	private static final Metrics.Timer SORT_PAGES_TIMER = Metrics.timer("WebGraph.sortPages");
+	private static final Metrics.Timer PRINT_TABLE_TIMER = Metrics.timer("WebGraph.printTable");
+	private static final Metrics.Timer SEARCH_TIMER = Metrics.timer("WebGraph.search");
+	private static final Metrics.Timer QUERY_TIMER = Metrics.timer("WebGraph.query");
+	private static final Metrics.Timer SUGGEST_TIMER = Metrics.timer("WebGraph.suggest");
+	private static final Metrics.Timer PRINT_SEARCH_RESULTS_TIMER = Metrics.timer("WebGraph.printSearchResults");
+	private LinkStore links;
+	private StringDictionary urls;
+	private InvertedIndex keywords;
+	private PageRankEngine ranker;
+	private PageStore pages;
+	private Comparator<WebPage> order;
+	// The LSN of the last mutation applied, and the log mutations are written
+	// to, if any.
+	private long lsn;
+	// Changes whenever a page's score can, which makes score orders stale.
+	private long scoreVersion;
+	// How much PageRank counts in a score, against keyword relevance.
+	private double rankWeight = 0.5;
+	private ResultCache cache = new ResultCache(DEFAULT_CACHE_CAPACITY);
+	private MutationLog log;
+	private ReadWriteLock lock = new ReentrantReadWriteLock();
+	// Whether removals may start a background compaction, and whether one has
+	// been started and not yet run.
+	private boolean autoCompact = true;
+	private boolean compactionScheduled;
 
 	/**
 	 * Constructs a WebGraph object using the indicated files as the source for
@@ -43,68 +130,465 @@ public class WebGraph {
 	 * @return The constructed webgraph
 	 * @throws IllegalArgumentException Thrown if either of the files does not
 	 *                                  reference a valid text file, or if the files
-	 *                                  are not formatted correctly.
+	 *                                  are not formatted correctly. The message
+	 *                                  names the file and line at fault.
 	 */
 	public static WebGraph buildFromFiles(String pagesFilePath, String linksFilePath) throws IllegalArgumentException {
 		try {
-			FileInputStream pagesFile = new FileInputStream(pagesFilePath);
-			InputStreamReader inStream = new InputStreamReader(pagesFile);
-			BufferedReader reader = new BufferedReader(inStream);
-			WebGraph webGraph = new WebGraph();
-			String line = "";
-			while ((line = reader.readLine()) != null) {
-				String[] words = line.trim().split(" ");
-				String url = words[0];
-				LinkedList<String> keywords = new LinkedList(Arrays.asList(Arrays.copyOfRange(words, 1, words.length)));
-				webGraph.addPage(url, keywords);
-			}
-			FileInputStream linksFile = new FileInputStream(linksFilePath);
-			inStream = new InputStreamReader(linksFile);
-			reader = new BufferedReader(inStream);
-			while ((line = reader.readLine()) != null) {
-				String[] words = line.trim().split(" ");
-				String source = words[0];
-				String destination = words[1];
-				webGraph.addLink(source, destination);
-			}
-			reader.close();
-			return webGraph;
-		} catch (Exception e) {
-			System.out.println(e);
-			throw new IllegalArgumentException("One of the paths is invalid.");
+			return new GraphLoader().load(Paths.get(pagesFilePath), Paths.get(linksFilePath));
+		} catch (FullGraphException e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Opens a graph from a snapshot written by {@link #save(Path)}. The file is
+	 * memory-mapped and its arrays are copied out in bulk, so nothing is parsed.
+	 * 
+	 * @param file The snapshot file
+	 * 
+	 *             <dl>
+	 *             <dt>Postconditions:</dt>
+	 *             <dd>The graph is in the state it was saved in, ranks
+	 *             included.</dd>
+	 *             </dl>
+	 * 
+	 * @return The graph stored in the snapshot
+	 * @throws IllegalArgumentException If the file cannot be read, is not a
+	 *                                  snapshot, or fails a checksum. The message
+	 *                                  names the file.
+	 */
+	public static WebGraph open(Path file) throws IllegalArgumentException {
+		return open(file, false);
+	}
+
+	/**
+	 * Opens a graph from a snapshot written by {@link #save(Path)}.
+	 * 
+	 * @param offHeap true to keep the URLs and links of the graph outside the
+	 *                heap
+	 * @return The graph stored in the snapshot
+	 * @throws IllegalArgumentException If the file cannot be read, is not a
+	 *                                  snapshot, or fails a checksum. The message
+	 *                                  names the file.
+	 */
+	public static WebGraph open(Path file, boolean offHeap) throws IllegalArgumentException {
+		long start = Metrics.start();
+		WebGraph graph = new WebGraph(DEFAULT_MEMORY_BUDGET, offHeap);
+		boolean opened = false;
+		try (SnapshotReader in = new SnapshotReader(file)) {
+			if (in.sectionCount() != SECTION_COUNT) {
+				throw in.corrupt("Expected " + SECTION_COUNT + " sections.");
+			}
+			in.beginSection(GRAPH_SECTION);
+			int pageCount = in.readInt();
+			graph.lsn = in.version() >= 2 ? in.readLong() : 0;
+			in.endSection();
+
+			in.beginSection(URL_SECTION);
+			graph.urls.read(in);
+			in.endSection();
+			if (graph.urls.size() != pageCount) {
+				throw in.corrupt("The URL count does not match the page count.");
+			}
+
+			KeywordDictionary dictionary = graph.keywords.dictionary();
+			in.beginSection(KEYWORD_SECTION);
+			dictionary.read(in);
+			in.endSection();
+
+			in.beginSection(PAGE_SECTION);
+			int[] offsets = new int[in.readLength(4)];
+			in.readInts(offsets, 0, offsets.length);
+			int[] pageTerms = new int[in.readLength(4)];
+			in.readInts(pageTerms, 0, pageTerms.length);
+			in.endSection();
+			int limit = graph.urls.idLimit();
+			if (offsets.length != limit + 1 || offsets[limit] != pageTerms.length) {
+				throw in.corrupt("The keywords do not match the pages.");
+			}
+			for (int id = 0; id < limit; id++) {
+				if (offsets[id] < 0 || offsets[id] > offsets[id + 1]) {
+					throw in.corrupt("The keywords do not match the pages.");
+				}
+				if (!graph.urls.contains(id)) {
+					continue;
+				}
+				for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+					if (!dictionary.contains(pageTerms[i])) {
+						throw in.corrupt("A page has an unknown keyword.");
+					}
+				}
+				graph.pages.add(id, Arrays.copyOfRange(pageTerms, offsets[id], offsets[id + 1]),
+						offsets[id + 1] - offsets[id]);
+			}
+
+			in.beginSection(INDEX_SECTION);
+			graph.keywords.read(in, offsets, pageTerms);
+			in.endSection();
+
+			in.beginSection(LINK_SECTION);
+			graph.links.read(in);
+			in.endSection();
+
+			in.beginSection(RANK_SECTION);
+			graph.ranker.read(in);
+			in.endSection();
+			opened = true;
+		} catch (IOException e) {
+			throw new IllegalArgumentException(file.getFileName() + ": " + e.getMessage(), e);
+		} catch (FullGraphException e) {
+			throw new IllegalArgumentException(file.getFileName() + ": " + e.getMessage(), e);
+		} finally {
+			if (!opened) {
+				graph.close();
+			}
+		}
+		graph.assignRanks();
+		OPEN_TIMER.stop(start);
+		return graph;
+	}
+
+	/**
+	 * Writes the graph to a snapshot that {@link #open(Path)} can read. The
+	 * snapshot holds the URLs, the keywords, the inverted index, the links, the
+	 * ranks and the LSN of the last mutation. It replaces the file only once it
+	 * is completely written.
+	 * 
+	 * @param file The snapshot file
+	 * @throws IOException If the snapshot cannot be written. The file is then
+	 *                     left as it was.
+	 */
+	public void save(Path file) throws IOException {
+		long start = Metrics.start();
+		lock.readLock().lock();
+		try (SnapshotWriter out = new SnapshotWriter(file, SECTION_COUNT)) {
+			out.beginSection(GRAPH_SECTION);
+			out.writeInt(pages.size());
+			out.writeLong(lsn);
+			out.endSection();
+
+			out.beginSection(URL_SECTION);
+			urls.write(out);
+			out.endSection();
+
+			// Each page is written as the term ids of its keywords.
+			int limit = urls.idLimit();
+			int[] offsets = new int[limit + 1];
+			int[] pageTerms = new int[16];
+			int count = 0;
+			for (int id = 0; id < limit; id++) {
+				if (pages.contains(id)) {
+					int[] terms = pages.terms(id);
+					if (count + terms.length > pageTerms.length) {
+						pageTerms = Arrays.copyOf(pageTerms, Math.max(count + terms.length, pageTerms.length * 2));
+					}
+					System.arraycopy(terms, 0, pageTerms, count, terms.length);
+					count += terms.length;
+				}
+				offsets[id + 1] = count;
+			}
+			out.beginSection(KEYWORD_SECTION);
+			keywords.dictionary().write(out);
+			out.endSection();
+
+			out.beginSection(PAGE_SECTION);
+			out.writeInt(offsets.length);
+			out.writeInts(offsets, 0, offsets.length);
+			out.writeInt(count);
+			out.writeInts(pageTerms, 0, count);
+			out.endSection();
+
+			out.beginSection(INDEX_SECTION);
+			keywords.write(out);
+			out.endSection();
+
+			out.beginSection(LINK_SECTION);
+			links.write(out);
+			out.endSection();
+
+			out.beginSection(RANK_SECTION);
+			ranker.write(out);
+			out.endSection();
+
+			out.commit();
+		} finally {
+			lock.readLock().unlock();
+			SAVE_TIMER.stop(start);
+		}
+	}
+
+	/**
+	 * Saves a snapshot and then empties the log, so a restart only replays the
+	 * mutations made after this call. Writers wait while the snapshot is
+	 * written; readers do not.
+	 * 
+	 * @param file The snapshot file
+	 * @throws IOException If the snapshot cannot be written. The log is then
+	 *                     left as it was.
+	 */
+	public void checkpoint(Path file) throws IOException {
+		long start = Metrics.start();
+		lock.readLock().lock();
+		try {
+			save(file);
+			if (log != null) {
+				log.reset(lsn);
+			}
+		} finally {
+			lock.readLock().unlock();
+			CHECKPOINT_TIMER.stop(start);
+		}
+	}
+
+	/**
+	 * Writes every later mutation to a log before it returns. The log must have
+	 * been replayed over the graph first.
+	 * 
+	 * @param log The log to write to
+	 * @throws IOException              If the log cannot be written
+	 * @throws IllegalArgumentException If the log holds mutations the graph does
+	 *                                  not include
+	 */
+	public void attachLog(MutationLog log) throws IOException, IllegalArgumentException {
+		lock.writeLock().lock();
+		try {
+			if (log.getLastLsn() > lsn) {
+				throw new IllegalArgumentException("The log should be replayed first.");
+			} else if (log.getLastLsn() < lsn) {
+				// The graph comes from a snapshot newer than the log.
+				log.reset(lsn);
+			}
+			this.log = log;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Stops writing mutations to the log.
+	 * 
+	 * @return The log that was attached, or null
+	 */
+	MutationLog detachLog() {
+		lock.writeLock().lock();
+		try {
+			MutationLog detached = log;
+			log = null;
+			return detached;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The LSN of the last mutation applied to the graph
+	 */
+	public long getLsn() {
+		lock.readLock().lock();
+		try {
+			return lsn;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Sets the LSN of the last mutation applied to the graph. Used when the
+	 * mutations are logged by someone else.
+	 */
+	void setLsn(long lsn) {
+		lock.writeLock().lock();
+		try {
+			this.lsn = lsn;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Applies the mutations of a batch without logging them or emptying the
+	 * batch, which may belong to another graph. A batch of one mutation is
+	 * applied as a plain call, so it is ranked the same way it was the first
+	 * time. Used by <code>MutationLog</code> and <code>ConcurrentWebGraph</code>.
+	 * The graph must not have a log attached.
+	 */
+	void replay(Batch batch) throws IllegalArgumentException, FullGraphException {
+		lock.writeLock().lock();
+		try {
+			if (batch.size() == 1) {
+				String first = batch.firsts.get(0);
+				String second = batch.seconds.get(0);
+				switch (batch.kinds.get(0)) {
+				case MutationLog.ADD_PAGE:
+					addPage(first, batch.keywordLists.get(0));
+					break;
+				case MutationLog.REMOVE_PAGE:
+					removePage(first);
+					break;
+				case MutationLog.ADD_LINK:
+					addLink(first, second);
+					break;
+				default:
+					removeLink(first, second);
+				}
+			} else if (batch.size() > 1) {
+				apply(batch);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Appends a mutation to the log. Must hold the write lock.
+	 * 
+	 * @return The LSN of the mutation, or 0 if there is no log
+	 */
+	private long record(int kind, String first, String second, LinkedList<String> keywords) {
+		if (log == null) {
+			return 0;
+		}
+		lsn = log.append(kind, first, second, keywords);
+		return lsn;
+	}
+
+	/**
+	 * Waits for a logged mutation to reach the disk. Called without the lock, so
+	 * other writers can join the same force.
+	 */
+	private void await(long logged) {
+		MutationLog current = log;
+		if (logged > 0 && current != null) {
+			long start = Metrics.start();
+			current.sync(logged);
+			AWAIT_LOG_TIMER.stop(start);
 		}
 	}
 
+	/**
+	 * Sets the order in which printTable lists the pages.
+	 * 
+	 * @param comparator The order to list pages in
+	 */
 	public void sortPages(Comparator<WebPage> comparator) {
-		Collections.sort(pages, comparator);
+		long start = Metrics.start();
+		this.order = comparator;
+		SORT_PAGES_TIMER.stop(start);
 	}
 
 	/**
 	 * Returns an instance of WebGraph
 	 */
 	public WebGraph() {
-		this.edges = new int[MAX_PAGES][MAX_PAGES];
-		this.pages = new LinkedList<WebPage>();
-		this.pageCount = 0;
+		this(DEFAULT_MEMORY_BUDGET);
+	}
+
+	/**
+	 * Returns an instance of WebGraph whose links may use up to the given number
+	 * of bytes.
+	 * 
+	 * @param memoryBudget The memory budget of the link store in bytes
+	 */
+	public WebGraph(long memoryBudget) {
+		this(memoryBudget, false);
+	}
+
+	/**
+	 * Returns an instance of WebGraph whose links may use up to the given number
+	 * of bytes, and which may keep its URLs and links outside the heap.
+	 * 
+	 * @param memoryBudget The memory budget of the link store in bytes
+	 * @param offHeap      true to keep the URLs and links outside the heap, until
+	 *                     the graph is closed
+	 */
+	public WebGraph(long memoryBudget, boolean offHeap) {
+		this.links = new LinkStore(memoryBudget, offHeap);
+		this.urls = new StringDictionary(offHeap);
+		this.keywords = new InvertedIndex();
+		this.ranker = new PageRankEngine();
+		this.pages = new PageStore(urls, keywords.dictionary());
+		this.order = new IndexComparator();
+	}
+
+	/**
+	 * @return true if the graph keeps its URLs and links outside the heap
+	 */
+	public boolean isOffHeap() {
+		return links.isOffHeap();
+	}
+
+	/**
+	 * Releases the memory the graph keeps outside the heap, and empties the
+	 * graph. The snapshot and log of the graph, if any, are not touched, so a
+	 * graph that is needed again can be opened from its last checkpoint.
+	 * 
+	 * <dl>
+	 * <dt>Postconditions:</dt>
+	 * <dd>The graph has no pages, holds no memory outside the heap and has
+	 * stopped the threads it ranks pages on.</dd>
+	 * </dl>
+	 */
+	@Override
+	public void close() {
+		lock.writeLock().lock();
+		try {
+			links.close();
+			urls.close();
+			keywords = new InvertedIndex();
+			pages = new PageStore(urls, keywords.dictionary());
+			ranker.close();
+			PageRankEngine emptied = new PageRankEngine();
+			emptied.setParallelism(ranker.getParallelism());
+			emptied.setIncremental(ranker.isIncremental());
+			ranker = emptied;
+			scoreVersion += 1;
+			cache.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
 	}
 
 	/**
-	 * Obtains the index of a webPage in the pages list specified by URL.
+	 * Obtains the index of a webPage specified by URL.
 	 * 
 	 * @param url The URL to search for
-	 * @return The index
+	 * @return The index, or -1 if no page has the URL
 	 */
 	public int getIndex(String url) {
-		int removeIndex = -1;
-		ListIterator<WebPage> list = pages.listIterator();
-		while (list.hasNext()) {
-			WebPage page = list.next();
-			if (page.getUrl().equals(url)) {
-				removeIndex = pages.indexOf(page);
-				break;
+		if (url == null) {
+			return -1;
+		}
+		long start = Metrics.start();
+		lock.readLock().lock();
+		try {
+			return urls.find(url);
+		} finally {
+			lock.readLock().unlock();
+			GET_INDEX_TIMER.stop(start);
+		}
+	}
+
+	/**
+	 * Obtains the PageRank of a webPage specified by URL.
+	 * 
+	 * @param url The URL to search for
+	 * @return The PageRank of the page
+	 * @throws IllegalArgumentException If no page has the URL
+	 */
+	public double getPageRank(String url) throws IllegalArgumentException {
+		long start = Metrics.start();
+		lock.readLock().lock();
+		try {
+			int index = url == null ? -1 : urls.find(url);
+			if (index == -1) {
+				throw new IllegalArgumentException("The page is not in the graph.");
 			}
+			return pages.rank(index);
+		} finally {
+			lock.readLock().unlock();
+			GET_PAGE_RANK_TIMER.stop(start);
 		}
-		return removeIndex;
 	}
 
 	/**
@@ -128,26 +612,337 @@ public class WebGraph {
 	 * 
 	 * @throws IllegalArgumentException If url is not unique and already exists in
 	 *                                  the graph, or if either argument is null.
-	 * @throws FullGraphException       If the graph is already full
+	 * @throws FullGraphException       If the graph has reached its memory budget
 	 */
 	public void addPage(String url, LinkedList<String> keywords) throws IllegalArgumentException, FullGraphException {
-		if (pageCount == MAX_PAGES) {
-			throw new FullGraphException("The graph is already full.");
-		}
 		if (url == null) {
 			throw new IllegalArgumentException("The URL should not be null.");
 		} else if (keywords == null) {
 			throw new IllegalArgumentException("The collection of keywords should not be null.");
 		}
-		ListIterator<WebPage> list = pages.listIterator();
-		while (list.hasNext()) {
-			if (list.next().getUrl().equals(url)) {
-				throw new IllegalArgumentException("The URL should be unique.");
+		long start = Metrics.start();
+		long logged;
+		lock.writeLock().lock();
+		try {
+			int index = insertPage(url, keywords);
+			ranker.nodeAdded(index);
+			updatePageRank(index);
+			logged = record(MutationLog.ADD_PAGE, url, null, keywords);
+		} finally {
+			lock.writeLock().unlock();
+			ADD_PAGE_TIMER.stop(start);
+		}
+		await(logged);
+	}
+
+	/**
+	 * Adds a page without touching its rank.
+	 * 
+	 * @return The index of the new page
+	 */
+	private int insertPage(String url, LinkedList<String> keywords) throws IllegalArgumentException, FullGraphException {
+		if (urls.find(url) != -1) {
+			throw new IllegalArgumentException("The URL should be unique.");
+		}
+		KeywordDictionary dictionary = this.keywords.dictionary();
+		int[] terms = new int[keywords.size()];
+		int count = 0;
+		for (String keyword : keywords) {
+			terms[count++] = dictionary.intern(keyword);
+		}
+		return insertPage(url, terms, count);
+	}
+
+	/**
+	 * Adds a page whose keywords are already term ids.
+	 * 
+	 * @param terms The term ids of the keywords, in order
+	 * @param count The number of term ids in terms
+	 * @return The index of the new page
+	 */
+	private int insertPage(String url, int[] terms, int count) throws IllegalArgumentException, FullGraphException {
+		int index = urls.add(url);
+		if (index == -1) {
+			throw new IllegalArgumentException("The URL should be unique.");
+		}
+		try {
+			links.addNode(index);
+		} catch (FullGraphException e) {
+			urls.remove(index);
+			throw e;
+		}
+		try {
+			pages.add(index, terms, count);
+		} catch (FullGraphException e) {
+			links.removeNode(index);
+			urls.remove(index);
+			throw e;
+		}
+		Bm25 model = keywords.model();
+		int vocabulary = keywords.termCount();
+		int[] added = count == terms.length ? terms : Arrays.copyOf(terms, count);
+		keywords.addPage(index, added);
+		scoreVersion += 1;
+		invalidate(added, model);
+		if (keywords.termCount() != vocabulary) {
+			cache.invalidate(Query.PATTERNS);
+		}
+		return index;
+	}
+
+	/**
+	 * Obtains the index of a page from the UTF-8 bytes of its URL. Used by
+	 * <code>GraphLoader</code>.
+	 * 
+	 * @return The index, or -1 if no page has the URL
+	 */
+	int findPage(byte[] url, int offset, int length) {
+		lock.readLock().lock();
+		try {
+			return urls.find(url, offset, length);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Replaces the lock of the graph with one that does nothing, and stops
+	 * removals from compacting the graph in the background. Used by
+	 * <code>ConcurrentWebGraph</code>, which never lets a reader and a writer at
+	 * the same copy of the graph, and compacts its copies itself.
+	 */
+	void disableLocking() {
+		lock = NoLock.INSTANCE;
+		autoCompact = false;
+	}
+
+	/**
+	 * Renumbers the pages in order so that their indices are dense again,
+	 * dropping the indices removed pages left unused. The renumbered graph is
+	 * built while readers carry on and writers wait, and then swapped in at
+	 * once. Ranks, links and keywords are carried over as they are, so searches
+	 * give the same results, with the new indices.
+	 * 
+	 * <dl>
+	 * <dt>Postconditions:</dt>
+	 * <dd>The pages have the indices 0 to one less than the number of pages, in
+	 * the order of their old indices.</dd>
+	 * </dl>
+	 */
+	public void compact() {
+		long start = Metrics.start();
+		Renumbering renumbering;
+		long version;
+		lock.readLock().lock();
+		try {
+			version = scoreVersion;
+			renumbering = pages.removedCount() > 0 ? renumber() : null;
+		} finally {
+			lock.readLock().unlock();
+		}
+		lock.writeLock().lock();
+		try {
+			compactionScheduled = false;
+			if (scoreVersion != version) {
+				// A writer got in first, so renumber again now that none can.
+				if (renumbering != null) {
+					renumbering.discard();
+				}
+				renumbering = pages.removedCount() > 0 ? renumber() : null;
 			}
+			if (renumbering != null) {
+				install(renumbering);
+			}
+		} finally {
+			lock.writeLock().unlock();
+			COMPACT_TIMER.stop(start);
 		}
-		pages.addLast(new WebPage(url, keywords, pageCount));
-		pageCount += 1;
-		updatePageRanks();
+	}
+
+	/**
+	 * @return true if removed pages have left enough indices unused that the
+	 *         graph should be compacted
+	 */
+	boolean needsCompaction() {
+		lock.readLock().lock();
+		try {
+			return pages.removedCount() >= Math.max(COMPACT_MINIMUM, pages.size());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Starts a background compaction if the graph needs one. Must hold the write
+	 * lock.
+	 */
+	private void maybeCompact() {
+		if (!autoCompact || compactionScheduled
+				|| pages.removedCount() < Math.max(COMPACT_MINIMUM, pages.size())) {
+			return;
+		}
+		compactionScheduled = true;
+		COMPACTOR.execute(this::compact);
+	}
+
+	/**
+	 * Builds every part of the graph that is indexed by page, with the pages
+	 * renumbered in order. Must hold the lock.
+	 */
+	private Renumbering renumber() {
+		int limit = urls.idLimit();
+		int[] ids = new int[limit];
+		int count = 0;
+		for (int id = 0; id < limit; id++) {
+			ids[id] = pages.contains(id) ? count++ : -1;
+		}
+		StringDictionary renumberedUrls = urls.renumber(ids, count);
+		return new Renumbering(ids, count, renumberedUrls, pages.renumber(ids, renumberedUrls),
+				keywords.renumber(ids, count), links.renumber(ids, count));
+	}
+
+	/**
+	 * Swaps in a renumbered graph and releases the parts it replaces. Must hold
+	 * the write lock.
+	 */
+	private void install(Renumbering renumbering) {
+		LinkStore previousLinks = links;
+		StringDictionary previousUrls = urls;
+		urls = renumbering.urls;
+		pages = renumbering.pages;
+		keywords = renumbering.keywords;
+		links = renumbering.links;
+		ranker.renumber(renumbering.ids, renumbering.count);
+		scoreVersion += 1;
+		cache.clear();
+		previousLinks.close();
+		previousUrls.close();
+	}
+
+	/**
+	 * <code>Renumbering</code> class holds the parts of a graph rebuilt by
+	 * {@link WebGraph#compact()} until they are swapped in.
+	 */
+	private static final class Renumbering {
+		// The new index of each old index, or -1 for an unused one.
+		final int[] ids;
+		final int count;
+		final StringDictionary urls;
+		final PageStore pages;
+		final InvertedIndex keywords;
+		final LinkStore links;
+
+		Renumbering(int[] ids, int count, StringDictionary urls, PageStore pages, InvertedIndex keywords,
+				LinkStore links) {
+			this.ids = ids;
+			this.count = count;
+			this.urls = urls;
+			this.pages = pages;
+			this.keywords = keywords;
+			this.links = links;
+		}
+
+		/**
+		 * Releases the memory the parts keep outside the heap, for a renumbering
+		 * that is not swapped in.
+		 */
+		void discard() {
+			links.close();
+			urls.close();
+		}
+	}
+
+	/**
+	 * @return A deep copy of the graph, made by writing a snapshot and opening
+	 *         it again, so there is no second copying path to keep in step with
+	 *         the snapshot format
+	 * @throws IOException If the temporary snapshot cannot be written
+	 */
+	WebGraph copy() throws IOException {
+		Path file = Files.createTempFile("webgraph", ".snapshot");
+		try {
+			save(file);
+			WebGraph copy = open(file, isOffHeap());
+			copy.ranker.setParallelism(ranker.getParallelism());
+			copy.order = order;
+			copy.rankWeight = rankWeight;
+			copy.cache.setCapacity(cache.getCapacity());
+			return copy;
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * @return The URL dictionary. Used by <code>GraphLoader</code>, which reads
+	 *         it from many threads while nothing writes to the graph.
+	 */
+	StringDictionary urlDictionary() {
+		return urls;
+	}
+
+	/**
+	 * Adds a page without ranking it. Used by <code>GraphLoader</code>, which
+	 * ranks every page once all links are loaded.
+	 * 
+	 * @param terms The term ids of the keywords, interned in the keyword
+	 *              dictionary
+	 * @param count The number of term ids in terms
+	 * @return The index of the new page
+	 */
+	int loadPage(String url, int[] terms, int count) throws IllegalArgumentException, FullGraphException {
+		lock.writeLock().lock();
+		try {
+			return insertPage(url, terms, count);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The keyword dictionary. Used by <code>GraphLoader</code>, which
+	 *         interns the keywords of each page before loading it.
+	 */
+	KeywordDictionary keywordDictionary() {
+		return keywords.dictionary();
+	}
+
+	/**
+	 * Replaces the links of the graph and ranks every page. Used by
+	 * <code>GraphLoader</code>.
+	 * 
+	 * @param sources      The source indices of the links in each chunk
+	 * @param destinations The destination indices of the links in each chunk
+	 * @param counts       The number of links in each chunk
+	 * @param pool         The pool to sort the links on, or null
+	 */
+	void loadLinks(int[][] sources, int[][] destinations, int[] counts, ForkJoinPool pool)
+			throws FullGraphException {
+		lock.writeLock().lock();
+		try {
+			links.load(urls.idLimit(), sources, destinations, counts, pool);
+			updatePageRanks();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a page whose links have already been removed.
+	 */
+	private void deletePage(int index) {
+		urls.remove(index);
+		int[] terms = pages.terms(index);
+		Bm25 model = keywords.model();
+		int vocabulary = keywords.termCount();
+		keywords.removePage(index, terms);
+		pages.remove(index);
+		scoreVersion += 1;
+		invalidate(terms, model);
+		if (keywords.termCount() != vocabulary) {
+			cache.invalidate(Query.PATTERNS);
+		}
+		maybeCompact();
 	}
 
 	/**
@@ -157,11 +952,11 @@ public class WebGraph {
 	 * 
 	 *            <dt>Postconditions:</dt>
 	 *            <dd>The WebPage with the indicated URL has been removed from the
-	 *            graph, and it's corresponding row and column has been removed from
-	 *            the adjacency matrix. All pages that has an index greater than the
-	 *            index that was removed should decrease their index value by 1. If
-	 *            url is null or could not be found in pages, the method ignores the
-	 *            input and does nothing.</dd>
+	 *            graph, and all of its links have been removed from the link
+	 *            store. The indices of the remaining pages do not change until
+	 *            the graph is next compacted. If url is null or could not be
+	 *            found in pages, the method ignores the input and does
+	 *            nothing.</dd>
 	 *            </dl>
 	 */
 	public void removePage(String url) {
@@ -169,21 +964,38 @@ public class WebGraph {
 		if (url == null) {
 			return;
 		}
-		// Find index if exists
-		int removeIndex = getIndex(url);
-		if (removeIndex == -1) {
-			return;
-		}
-		// Remove page
-		pages.remove(removeIndex);
-		pageCount -= 1;
-		// Update indices
-		ListIterator<WebPage> list = pages.listIterator(removeIndex);
-		while (list.hasNext()) {
-			WebPage page = list.next();
-			page.setIndex(page.getIndex() - 1);
+		long start = Metrics.start();
+		long logged;
+		lock.writeLock().lock();
+		try {
+			// Find index if exists
+			int removeIndex = urls.find(url);
+			if (removeIndex == -1) {
+				return;
+			}
+			// Remove page and its links
+			if (ranker.isIncremental()) {
+				for (int destination : links.outNeighbors(removeIndex)) {
+					links.removeEdge(removeIndex, destination);
+					updatePageRanks(ranker.linkRemoved(links, removeIndex, destination));
+				}
+				for (int source : links.inNeighbors(removeIndex)) {
+					links.removeEdge(source, removeIndex);
+					updatePageRanks(ranker.linkRemoved(links, source, removeIndex));
+				}
+			} else {
+				links.removeNode(removeIndex);
+			}
+			deletePage(removeIndex);
+			if (!ranker.isIncremental()) {
+				updatePageRanks();
+			}
+			logged = record(MutationLog.REMOVE_PAGE, url, null, null);
+		} finally {
+			lock.writeLock().unlock();
+			REMOVE_PAGE_TIMER.stop(start);
 		}
-		updatePageRanks();
+		await(logged);
 	}
 
 	/**
@@ -194,24 +1006,39 @@ public class WebGraph {
 	 * @param destination The destination of the link
 	 * @throws IllegalArgumentException If either of the URLs are null or could not
 	 *                                  be found in pages.
+	 * @throws FullGraphException       If the graph has reached its memory budget
 	 */
-	public void addLink(String source, String destination) throws IllegalArgumentException {
+	public void addLink(String source, String destination) throws IllegalArgumentException, FullGraphException {
 		if (source == null || destination == null) {
 			throw new IllegalArgumentException("A URL should not be null.");
 		}
 
-		int sourceIndex = getIndex(source);
-		int destinationIndex = getIndex(destination);
-		if (sourceIndex == -1) {
-			throw new IllegalArgumentException("The source is not in the graph.");
-		} else if (destinationIndex == -1) {
-			throw new IllegalArgumentException("The destination is not in the graph.");
-		} else if (edges[sourceIndex][destinationIndex] == 1) {
-			throw new IllegalArgumentException("That link already exists.");
-		}
+		long start = Metrics.start();
+		long logged;
+		lock.writeLock().lock();
+		try {
+			int sourceIndex = urls.find(source);
+			int destinationIndex = urls.find(destination);
+			if (sourceIndex == -1) {
+				throw new IllegalArgumentException("The source is not in the graph.");
+			} else if (destinationIndex == -1) {
+				throw new IllegalArgumentException("The destination is not in the graph.");
+			} else if (links.hasEdge(sourceIndex, destinationIndex)) {
+				throw new IllegalArgumentException("That link already exists.");
+			}
 
-		edges[sourceIndex][destinationIndex] = 1;
-		updatePageRanks();
+			links.addEdge(sourceIndex, destinationIndex);
+			if (ranker.isIncremental()) {
+				updatePageRanks(ranker.linkAdded(links, sourceIndex, destinationIndex));
+			} else {
+				updatePageRanks();
+			}
+			logged = record(MutationLog.ADD_LINK, source, destination, null);
+		} finally {
+			lock.writeLock().unlock();
+			ADD_LINK_TIMER.stop(start);
+		}
+		await(logged);
 	}
 
 	/**
@@ -232,46 +1059,177 @@ public class WebGraph {
 			return;
 		}
 
-		int sourceIndex = getIndex(source);
-		int destinationIndex = getIndex(destination);
-		if (sourceIndex == -1) {
-			return;
-		} else if (destinationIndex == -1) {
-			return;
+		long start = Metrics.start();
+		long logged;
+		lock.writeLock().lock();
+		try {
+			int sourceIndex = urls.find(source);
+			int destinationIndex = urls.find(destination);
+			if (sourceIndex == -1) {
+				return;
+			} else if (destinationIndex == -1) {
+				return;
+			}
+
+			if (!links.removeEdge(sourceIndex, destinationIndex)) {
+				return;
+			}
+			if (ranker.isIncremental()) {
+				updatePageRanks(ranker.linkRemoved(links, sourceIndex, destinationIndex));
+			} else {
+				updatePageRanks();
+			}
+			logged = record(MutationLog.REMOVE_LINK, source, destination, null);
+		} finally {
+			lock.writeLock().unlock();
+			REMOVE_LINK_TIMER.stop(start);
 		}
+		await(logged);
+	}
 
-		edges[sourceIndex][destinationIndex] = 0;
-		updatePageRanks();
+	/**
+	 * @return The engine that computes PageRank for this graph. Its damping
+	 *         factor, tolerance, iteration cap and incremental mode can be
+	 *         configured.
+	 */
+	public PageRankEngine getRanker() {
+		return ranker;
 	}
 
 	/**
-	 * Calculates and assigns the PageRank for the specified page.
+	 * Assigns the PageRank last computed by the ranker to the specified page.
 	 * 
-	 * @param page The page to update the pageRank of
+	 * @param page The page to update the pageRank of, which is found in the
+	 *             graph by its index
 	 */
 	public void updatePageRank(WebPage page) {
-		ListIterator<WebPage> list = pages.listIterator();
-		int pageRank = 0;
-		while (list.hasNext()) {
-			int sourceIndex = pages.indexOf(list.next());
-			if (edges[sourceIndex][page.getIndex()] == 1) {
-				pageRank += 1;
+		if (pages.contains(page.getIndex())) {
+			updatePageRank(page.getIndex());
+		}
+	}
+
+	/**
+	 * Assigns the PageRank last computed by the ranker to the page with an id.
+	 */
+	private void updatePageRank(int id) {
+		assignRank(id);
+		invalidate(pages.terms(id), keywords.model());
+	}
+
+	/**
+	 * Assigns a page its rank without touching the result cache, for callers
+	 * that clear the cache themselves.
+	 */
+	private void assignRank(int id) {
+		pages.setRank(id, ranker.score(id));
+		scoreVersion += 1;
+	}
+
+	/**
+	 * Assigns every page its rank in one pass over the page store, without
+	 * touching the result cache.
+	 */
+	private void assignRanks() {
+		int limit = pages.idLimit();
+		for (int id = 0; id < limit; id++) {
+			if (pages.contains(id)) {
+				pages.setRank(id, ranker.score(id));
 			}
 		}
-		page.setRank(pageRank);
+		scoreVersion += 1;
+	}
+
+	/**
+	 * Drops the cached searches a change to a page can affect: those for its
+	 * keywords, or every search if the change moved the relevance statistics.
+	 * 
+	 * @param terms The term ids of the keywords of the page that changed
+	 * @param model The relevance statistics before the change
+	 */
+	private void invalidate(int[] terms, Bm25 model) {
+		if (keywords.model() != model) {
+			cache.clear();
+			return;
+		}
+		KeywordDictionary dictionary = keywords.dictionary();
+		for (int term : terms) {
+			cache.invalidate(dictionary.get(term));
+		}
 	}
 
 	/**
-	 * Calculates and assigns the PageRank for every page in the WebGraph.
+	 * Recomputes the PageRank of every page in the WebGraph with power iteration.
 	 * 
 	 * <dt>Postconditions:</dt>
 	 * <dd>All WebPages in the graph have been assigned their proper PageRank.</dd>
 	 * </dl>
 	 */
 	public void updatePageRanks() {
-		ListIterator<WebPage> list = pages.listIterator();
-		while (list.hasNext()) {
-			updatePageRank(list.next());
+		long start = Metrics.start();
+		lock.writeLock().lock();
+		try {
+			ranker.compute(links);
+			assignRanks();
+			cache.clear();
+		} finally {
+			lock.writeLock().unlock();
+			UPDATE_PAGE_RANKS_TIMER.stop(start);
+		}
+	}
+
+	/**
+	 * @return The URLs of the pages, in order of index
+	 */
+	ArrayList<String> listUrls() {
+		lock.readLock().lock();
+		try {
+			ArrayList<String> list = new ArrayList<String>(pages.size());
+			int limit = pages.idLimit();
+			for (int id = 0; id < limit; id++) {
+				if (pages.contains(id)) {
+					list.add(pages.url(id));
+				}
+			}
+			return list;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Replaces the PageRank of pages with scores computed elsewhere. Used by
+	 * <code>ShardServer</code>, whose pages link to pages in other processes.
+	 * 
+	 * @param urls   The URLs of the pages. URLs not in the graph are skipped.
+	 * @param scores The score of each page
+	 * @param count  The number of pages
+	 */
+	void setPageRanks(String[] urls, double[] scores, int count) {
+		lock.writeLock().lock();
+		try {
+			for (int i = 0; i < count; i++) {
+				int id = this.urls.find(urls[i]);
+				if (id != -1) {
+					ranker.setScore(id, scores[i]);
+				}
+			}
+			assignRanks();
+			cache.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Assigns the PageRank of the pages whose score the ranker has changed.
+	 * 
+	 * @param ids The ids of the changed pages
+	 */
+	private void updatePageRanks(int[] ids) {
+		for (int id : ids) {
+			if (pages.contains(id)) {
+				updatePageRank(id);
+			}
 		}
 	}
 
@@ -279,60 +1237,743 @@ public class WebGraph {
 	 * @return A list of indices that correspond to the webpages that url links to.
 	 */
 	public String getLinkString(String url) {
-		int index = getIndex(url);
-		int[] destinations = edges[index];
-		String linkString = "";
-		for (int i = 0; i < destinations.length; i++) {
-			if (destinations[i] == 1) {
-				linkString += (linkString.equals("") ? i : ", " + i);
+		long start = Metrics.start();
+		int[] destinations;
+		lock.readLock().lock();
+		try {
+			destinations = links.outNeighbors(getIndex(url));
+		} finally {
+			lock.readLock().unlock();
+		}
+		StringBuilder linkString = new StringBuilder(8 * destinations.length);
+		appendList(linkString, destinations);
+		GET_LINK_STRING_TIMER.stop(start);
+		return linkString.toString();
+	}
+
+	/**
+	 * Appends numbers separated by commas.
+	 * 
+	 * @param text    The text to append to
+	 * @param numbers The numbers
+	 */
+	private static void appendList(StringBuilder text, int[] numbers) {
+		for (int i = 0; i < numbers.length; i++) {
+			if (i > 0) {
+				text.append(", ");
 			}
+			text.append(numbers[i]);
 		}
-		return linkString;
 	}
 
 	/**
 	 * Prints the WebGraph in tabular form
 	 */
 	public void printTable() {
-		String heading = String.format("%-6s | %-25s | %-10s | %-20s | %-30s", "Index", "URL", "PageRank", "Links",
-				"Keywords");
-		System.out.println("\n" + heading);
-		System.out.println(
+		printTable(order);
+	}
+
+	/**
+	 * Prints the WebGraph in tabular form in the given order, without changing
+	 * the order set by sortPages.
+	 * 
+	 * @param comparator The order to list pages in
+	 */
+	public void printTable(Comparator<WebPage> comparator) {
+		printTable(comparator, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Prints one page of the WebGraph in tabular form in the given order. The
+	 * rows are streamed to the output as they are made, so printing a large
+	 * graph takes memory for one row at a time.
+	 * 
+	 * @param comparator The order to list pages in
+	 * @param offset     The number of earlier pages to skip
+	 * @param limit      The greatest number of pages to print
+	 * @return true if pages remain after the ones printed
+	 * @throws IllegalArgumentException If offset or limit is negative
+	 */
+	public boolean printTable(Comparator<WebPage> comparator, int offset, int limit) throws IllegalArgumentException {
+		if (offset < 0 || limit < 0) {
+			throw new IllegalArgumentException("The row count and offset should not be negative.");
+		}
+		long start = Metrics.start();
+		TableWriter table = TableWriter.standardOutput();
+		table.line("");
+		table.cell("Index", 6).cell("URL", 25).cell("PageRank", 10).cell("Links", 20).cell("Keywords", 30).endRow();
+		table.line(
 				"==========================================================================================================================");
-		ListIterator<WebPage> list = pages.listIterator();
-		while (list.hasNext()) {
-			WebPage webPage = list.next();
-			System.out.println(webPage.toString(getLinkString(webPage.getUrl())));
+		lock.readLock().lock();
+		try {
+			int[] ids = pages.sort(comparator);
+			int end = (int) Math.min(ids.length, (long) offset + limit);
+			KeywordDictionary dictionary = keywords.dictionary();
+			for (int i = offset; i < end; i++) {
+				int id = ids[i];
+				table.cell(id, 6);
+				urls.appendTo(id, table.beginCell());
+				table.endCell(25).cell(pages.rank(id), 4, 10);
+				appendList(table.beginCell(), links.outNeighbors(id));
+				table.endCell(20);
+				StringBuilder cell = table.beginCell();
+				int[] terms = pages.terms(id);
+				for (int t = 0; t < terms.length; t++) {
+					if (t > 0) {
+						cell.append(", ");
+					}
+					cell.append(dictionary.get(terms[t]));
+				}
+				table.endCell(30).endRow();
+			}
+			return end < ids.length;
+		} finally {
+			lock.readLock().unlock();
+			table.flush();
+			PRINT_TABLE_TIMER.stop(start);
 		}
 	}
 
 	/**
-	 * Prints a table of search results.
+	 * @return How much PageRank counts in the score search results are ordered
+	 *         by, from 0 for not at all to 1 for only PageRank
+	 */
+	public double getRankWeight() {
+		return rankWeight;
+	}
+
+	/**
+	 * Sets how much PageRank counts in the score search results are ordered by.
+	 * A page's score is <code>(1 - weight) * relevance + weight * rank</code>,
+	 * where the relevance is the BM25 score of the searched keywords on the page.
+	 * 
+	 * @param weight The weight of PageRank, from 0 to 1
+	 * @throws IllegalArgumentException If the weight is outside [0, 1]
+	 */
+	public void setRankWeight(double weight) throws IllegalArgumentException {
+		if (!(weight >= 0 && weight <= 1)) {
+			throw new IllegalArgumentException("The rank weight should be between 0 and 1.");
+		}
+		lock.writeLock().lock();
+		try {
+			this.rankWeight = weight;
+			scoreVersion += 1;
+			cache.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The number of pages in the graph
+	 */
+	public int getPageCount() {
+		lock.readLock().lock();
+		try {
+			return pages.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The number of links in the graph
+	 */
+	public long getLinkCount() {
+		lock.readLock().lock();
+		try {
+			return links.edgeCount();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The number of distinct keywords in the index
+	 */
+	public int getKeywordCount() {
+		lock.readLock().lock();
+		try {
+			return keywords.termCount();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The counters of the search result cache
+	 */
+	public ResultCache.Statistics getCacheStatistics() {
+		return cache.statistics();
+	}
+
+	/**
+	 * @return The greatest number of bytes the search result cache holds
+	 */
+	public long getCacheCapacity() {
+		return cache.getCapacity();
+	}
+
+	/**
+	 * Sets the greatest number of bytes the search result cache holds. The least
+	 * recently used results are evicted beyond it.
+	 * 
+	 * @param capacity The number of bytes, or 0 to cache nothing
+	 * @throws IllegalArgumentException If the capacity is negative
+	 */
+	public void setCacheCapacity(long capacity) throws IllegalArgumentException {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("The cache capacity should not be negative.");
+		}
+		cache.setCapacity(capacity);
+	}
+
+	/**
+	 * Searches the graph for pages with a keyword.
+	 * 
+	 * @param keyword keyword to search for
+	 * @return The pages with the keyword, ordered by score
+	 * @see #setRankWeight(double)
+	 */
+	public ArrayList<SearchResult> search(String keyword) {
+		return search(keyword, Integer.MAX_VALUE, 0);
+	}
+
+	/**
+	 * Searches the graph for one page of results for a keyword. Only the best
+	 * offset + k pages are ever ordered, so the cost depends on the number of
+	 * pages with the keyword and on k, but not on the size of the graph.
+	 * 
+	 * <dl>
+	 * <dt>Preconditions:</dt>
+	 * <dd>k and offset are not negative.</dd>
+	 * </dl>
 	 * 
 	 * @param keyword keyword to search for
+	 * @param k       The greatest number of results to return
+	 * @param offset  The number of better results to skip
+	 * @return The pages with the keyword from position offset + 1 on, ordered
+	 *         by score
+	 * @throws IllegalArgumentException If k or offset is negative
+	 */
+	public ArrayList<SearchResult> search(String keyword, int k, int offset) throws IllegalArgumentException {
+		if (k < 0 || offset < 0) {
+			throw new IllegalArgumentException("The result count and offset should not be negative.");
+		}
+		long start = Metrics.start();
+		String key = "K" + k + ":" + offset + ":" + keyword;
+		lock.readLock().lock();
+		try {
+			ArrayList<SearchResult> results = cache.get(key);
+			if (results == null) {
+				String[] terms = { keyword };
+				results = results(keywords.get(keyword), terms, k, offset);
+				cache.put(key, terms, results);
+			}
+			return results;
+		} finally {
+			lock.readLock().unlock();
+			SEARCH_TIMER.stop(start);
+		}
+	}
+
+	/**
+	 * Searches the graph for pages that match a query, which combines keywords
+	 * with AND, OR and NOT, as in <code>java threads OR python NOT snakes</code>.
+	 * Keywords may be patterns such as <code>data*</code>, or fuzzy such as
+	 * <code>colour~1</code>.
+	 * 
+	 * @param query The query to search for
+	 * @return The pages that match the query, ordered by score
+	 * @throws IllegalArgumentException If the query is malformed
+	 * @see Query
+	 */
+	public ArrayList<SearchResult> query(String query) throws IllegalArgumentException {
+		return query(query, Integer.MAX_VALUE, 0);
+	}
+
+	/**
+	 * Searches the graph for one page of results for a query.
+	 * 
+	 * <dl>
+	 * <dt>Preconditions:</dt>
+	 * <dd>k and offset are not negative.</dd>
+	 * </dl>
+	 * 
+	 * @param query  The query to search for
+	 * @param k      The greatest number of results to return
+	 * @param offset The number of better results to skip
+	 * @return The pages that match the query from position offset + 1 on,
+	 *         ordered by score
+	 * @throws IllegalArgumentException If the query is malformed, or k or offset
+	 *                                  is negative
+	 * @see Query
+	 */
+	public ArrayList<SearchResult> query(String query, int k, int offset) throws IllegalArgumentException {
+		if (k < 0 || offset < 0) {
+			throw new IllegalArgumentException("The result count and offset should not be negative.");
+		}
+		long start = Metrics.start();
+		Query parsed = Query.parse(query);
+		String key = "Q" + k + ":" + offset + ":" + parsed;
+		lock.readLock().lock();
+		try {
+			ArrayList<SearchResult> results = cache.get(key);
+			if (results == null) {
+				// A page can only match through a keyword that is not negated, so
+				// changes to pages with those keywords are the only ones that matter,
+				// along with new keywords a pattern could stand for.
+				Query expanded = parsed.expand(keywords);
+				String[] terms = expanded.terms();
+				results = results(expanded.evaluate(keywords), terms, k, offset);
+				if (parsed.hasPatterns()) {
+					String[] listed = Arrays.copyOf(terms, terms.length + 1);
+					listed[terms.length] = Query.PATTERNS;
+					cache.put(key, listed, results);
+				} else {
+					cache.put(key, terms, results);
+				}
+			}
+			return results;
+		} finally {
+			lock.readLock().unlock();
+			QUERY_TIMER.stop(start);
+		}
+	}
+
+	/**
+	 * Turns the best pages of a posting list into search results.
+	 * 
+	 * @param matches The pages found, or null for none
+	 * @param terms   The keywords that make a page more relevant
+	 * @param k       The greatest number of results to return
+	 * @param offset  The number of better results to skip
+	 * @return The results from position offset + 1 on, ordered by score
+	 */
+	private ArrayList<SearchResult> results(PostingList matches, String[] terms, int k, int offset) {
+		int end = matches == null ? 0 : (int) Math.min((long) offset + k, matches.size());
+		ArrayList<SearchResult> results = new ArrayList<SearchResult>(Math.max(end - offset, 0));
+		if (end <= offset) {
+			return results;
+		}
+		PostingList.Ranking best = ranking(matches, terms, end);
+		for (int i = offset; i < end; i++) {
+			int id = best.ids[i];
+			results.add(new SearchResult(i + 1, id, pages.url(id), pages.rank(id), best.scores[i]));
+		}
+		return results;
+	}
+
+	/**
+	 * Returns at least the first count pages of a posting list in order of
+	 * score, with ties in order of id. The list is walked once with a bounded
+	 * heap. When the same list is searched again before any score changes, it
+	 * is put in order in full and kept, so later searches only read the pages
+	 * they return.
+	 * 
+	 * @param matches The pages found
+	 * @param terms   The keywords that make a page more relevant
+	 * @param count   The number of pages needed
+	 * @return The best pages, best first
+	 */
+	private PostingList.Ranking ranking(PostingList matches, String[] terms, int count) {
+		PostingList.Ranking ranking = matches.ranking(scoreVersion);
+		if (ranking != null) {
+			return ranking;
+		}
+		boolean keep = matches.markSearched(scoreVersion) || count == matches.size();
+		TopK best = new TopK(keep ? matches.size() : count);
+		double weight = rankWeight;
+		double[] relevance = relevance(matches, terms);
+		for (int i = 0; i < matches.size(); i++) {
+			int id = matches.get(i);
+			best.offer(id, (1 - weight) * relevance[i] + weight * ranker.score(id));
+		}
+		int[] ids = new int[best.size()];
+		double[] scores = new double[best.size()];
+		best.drain(ids, scores);
+		ranking = new PostingList.Ranking(ids, scores, scoreVersion);
+		if (keep) {
+			// A list of the index is only returned by queries whose other keywords
+			// match no page, so every search that returns it ranks it the same.
+			matches.setRanking(ranking);
+		}
+		return ranking;
+	}
+
+	/**
+	 * Sums the BM25 relevance of the searched keywords to each page found. The
+	 * posting list of each keyword is walked alongside the pages found, reading
+	 * one precomputed impact per match.
+	 * 
+	 * @param matches The pages found
+	 * @param terms   The keywords that make a page more relevant
+	 * @return The relevance of each page found, by position
+	 */
+	private double[] relevance(PostingList matches, String[] terms) {
+		double[] relevance = new double[matches.size()];
+		if (rankWeight == 1) {
+			return relevance;
+		}
+		for (String term : terms) {
+			PostingList postings = keywords.get(term);
+			if (postings == null) {
+				continue;
+			}
+			Bm25.Impacts impacts = keywords.impacts(postings);
+			int position = 0;
+			for (int i = 0; i < relevance.length && position < postings.size(); i++) {
+				int id = matches.get(i);
+				position = postings.seek(position, id);
+				if (position < postings.size() && postings.get(position) == id) {
+					relevance[i] += impacts.scale * (impacts.levels[position] & 0xFF);
+				}
+			}
+		}
+		return relevance;
+	}
+
+	/**
+	 * Suggests keywords for the text typed into a search so far. The keywords
+	 * that start with it come first, those on the most pages first, followed by
+	 * the keywords a few edits away from it if there are too few.
+	 * 
+	 * @param prefix The text typed so far
+	 * @param count  The greatest number of keywords to suggest
+	 * @return The keywords suggested, best first
+	 * @throws IllegalArgumentException If prefix is null or count is negative
+	 */
+	public ArrayList<String> suggest(String prefix, int count) throws IllegalArgumentException {
+		if (prefix == null) {
+			throw new IllegalArgumentException("The text to complete should not be null.");
+		} else if (count < 0) {
+			throw new IllegalArgumentException("The suggestion count should not be negative.");
+		}
+		long start = Metrics.start();
+		lock.readLock().lock();
+		try {
+			return keywords.suggest(prefix, count);
+		} finally {
+			lock.readLock().unlock();
+			SUGGEST_TIMER.stop(start);
+		}
+	}
+
+	/**
+	 * Prints a table of search results.
+	 * 
+	 * @param query keyword, or query combining keywords, to search for
+	 * @throws IllegalArgumentException If the query is malformed
+	 * @see #query(String)
+	 */
+	public void printSearchResults(String query) throws IllegalArgumentException {
+		printSearchResults(query, Integer.MAX_VALUE, 0);
+	}
+
+	/**
+	 * Prints one page of a table of search results. The rows are streamed to
+	 * the output as they are made.
+	 * 
+	 * @param query  keyword, or query combining keywords, to search for
+	 * @param k      The greatest number of results to print
+	 * @param offset The number of better results to skip
+	 * @return The number of results printed, plus one if results remain after
+	 *         them, so 0 if nothing was found and more than k if there are more
+	 * @throws IllegalArgumentException If the query is malformed, or k or offset
+	 *                                  is negative
+	 * @see #query(String, int, int)
+	 */
+	public int printSearchResults(String query, int k, int offset) throws IllegalArgumentException {
+		long start = Metrics.start();
+		// One more result than printed tells whether any remain.
+		ArrayList<SearchResult> results = query(query, k == Integer.MAX_VALUE ? k : k + 1, offset);
+		if (results.isEmpty()) {
+			System.out.println("\nNo search results found for " + query + ".");
+			PRINT_SEARCH_RESULTS_TIMER.stop(start);
+			return 0;
+		}
+		TableWriter table = TableWriter.standardOutput();
+		try {
+			table.cell("Rank", 6).cell("Score", 10).cell("PageRank", 10).cell("URL", 25).endRow();
+			table.line("========================================================================");
+			int count = Math.min(k, results.size());
+			for (int i = 0; i < count; i++) {
+				SearchResult result = results.get(i);
+				table.cell(result.getPosition(), 6).cell(result.getScore(), 4, 10).cell(result.getPageRank(), 4, 10)
+						.cell(result.getUrl(), 25).endRow();
+			}
+			return results.size();
+		} finally {
+			table.flush();
+			PRINT_SEARCH_RESULTS_TIMER.stop(start);
+		}
+	}
+
+	/**
+	 * Starts a batch of mutations. Nothing in the batch touches the graph until
+	 * it is committed.
+	 * 
+	 * @return An empty batch for this graph
+	 */
+	public Batch beginBatch() {
+		return new Batch();
+	}
+
+	/**
+	 * <code>Batch</code> class buffers page and link mutations and applies them
+	 * to the graph in one pass. Ranks are recomputed once, at commit.
+	 */
+	public class Batch {
+		private static final int ADD_PAGE = MutationLog.ADD_PAGE;
+		private static final int REMOVE_PAGE = MutationLog.REMOVE_PAGE;
+		private static final int ADD_LINK = MutationLog.ADD_LINK;
+		private static final int REMOVE_LINK = MutationLog.REMOVE_LINK;
+
+		private ArrayList<Integer> kinds = new ArrayList<Integer>();
+		private ArrayList<String> firsts = new ArrayList<String>();
+		private ArrayList<String> seconds = new ArrayList<String>();
+		private ArrayList<LinkedList<String>> keywordLists = new ArrayList<LinkedList<String>>();
+
+		private Batch() {
+		}
+
+		/**
+		 * @return The number of mutations in the batch
+		 */
+		public int size() {
+			return kinds.size();
+		}
+
+		/**
+		 * Buffers {@link WebGraph#addPage(String, LinkedList)}.
+		 * 
+		 * @return This batch
+		 */
+		public Batch addPage(String url, LinkedList<String> keywords) {
+			return buffer(ADD_PAGE, url, null, keywords);
+		}
+
+		/**
+		 * Buffers {@link WebGraph#removePage(String)}.
+		 * 
+		 * @return This batch
+		 */
+		public Batch removePage(String url) {
+			return buffer(REMOVE_PAGE, url, null, null);
+		}
+
+		/**
+		 * Buffers {@link WebGraph#addLink(String, String)}.
+		 * 
+		 * @return This batch
+		 */
+		public Batch addLink(String source, String destination) {
+			return buffer(ADD_LINK, source, destination, null);
+		}
+
+		/**
+		 * Buffers {@link WebGraph#removeLink(String, String)}.
+		 * 
+		 * @return This batch
+		 */
+		public Batch removeLink(String source, String destination) {
+			return buffer(REMOVE_LINK, source, destination, null);
+		}
+
+		/**
+		 * Validates every mutation in order and then applies them all. Either the
+		 * whole batch is applied or none of it is. The batch is empty afterwards.
+		 * 
+		 * <dl>
+		 * <dt>Postconditions:</dt>
+		 * <dd>The graph is in the state the mutations would have left it in one at
+		 * a time, and every page has been assigned its PageRank. If the graph has
+		 * a log, the batch is in it as one record.</dd>
+		 * </dl>
+		 * 
+		 * @throws IllegalArgumentException If a mutation would have thrown on its
+		 *                                  own. The message names the mutation.
+		 * @throws FullGraphException       If the batch does not fit in the memory
+		 *                                  budget
+		 */
+		public void commit() throws IllegalArgumentException, FullGraphException {
+			long start = Metrics.start();
+			long logged = 0;
+			lock.writeLock().lock();
+			try {
+				apply(this);
+				if (log != null && size() > 0) {
+					logged = appendTo(log);
+					lsn = logged;
+				}
+			} finally {
+				lock.writeLock().unlock();
+				clear();
+				COMMIT_TIMER.stop(start);
+			}
+			await(logged);
+		}
+
+		/**
+		 * Appends the batch to a log as one record.
+		 * 
+		 * @return The LSN of the record
+		 */
+		long appendTo(MutationLog log) {
+			return log.append(kinds, firsts, seconds, keywordLists);
+		}
+
+		/**
+		 * Empties the batch.
+		 */
+		void clear() {
+			kinds.clear();
+			firsts.clear();
+			seconds.clear();
+			keywordLists.clear();
+		}
+
+		/**
+		 * Buffers a mutation of the given kind. Used by <code>MutationLog</code>.
+		 * 
+		 * @return This batch
+		 */
+		Batch add(int kind, String first, String second, LinkedList<String> keywords) {
+			return buffer(kind, first, second, keywords);
+		}
+
+		private Batch buffer(int kind, String first, String second, LinkedList<String> keywords) {
+			kinds.add(kind);
+			firsts.add(first);
+			seconds.add(second);
+			keywordLists.add(keywords);
+			return this;
+		}
+	}
+
+	/**
+	 * Validates and applies a batch. Must hold the write lock.
+	 */
+	private void apply(Batch batch) throws IllegalArgumentException, FullGraphException {
+		// Simulate the batch over the current graph. New pages get the ids the
+		// dictionary will hand out, and ids are never reused, so a link can be
+		// tracked by its pair of ids alone.
+		HashMap<String, Integer> addedUrls = new HashMap<String, Integer>();
+		HashSet<String> removedUrls = new HashSet<String>();
+		LongHashSet present = new LongHashSet();
+		LongHashSet absent = new LongHashSet();
+		LongHashSet removedIds = new LongHashSet();
+		int nextIndex = urls.idLimit();
+		for (int i = 0; i < batch.size(); i++) {
+			String first = batch.firsts.get(i);
+			String second = batch.seconds.get(i);
+			String error = null;
+			switch (batch.kinds.get(i)) {
+			case Batch.ADD_PAGE: {
+				if (first == null) {
+					error = "The URL should not be null.";
+				} else if (batch.keywordLists.get(i) == null) {
+					error = "The collection of keywords should not be null.";
+				} else if (find(first, addedUrls, removedUrls) != -1) {
+					error = "The URL should be unique.";
+				} else {
+					addedUrls.put(first, nextIndex++);
+				}
+				break;
+			}
+			case Batch.REMOVE_PAGE: {
+				int index = first == null ? -1 : find(first, addedUrls, removedUrls);
+				if (index != -1) {
+					removedIds.add(index);
+					if (addedUrls.remove(first) == null) {
+						removedUrls.add(first);
+					}
+				}
+				break;
+			}
+			default: {
+				boolean add = batch.kinds.get(i) == Batch.ADD_LINK;
+				if (first == null || second == null) {
+					error = add ? "A URL should not be null." : null;
+					break;
+				}
+				int sourceIndex = find(first, addedUrls, removedUrls);
+				int destinationIndex = find(second, addedUrls, removedUrls);
+				if (sourceIndex == -1) {
+					error = add ? "The source is not in the graph." : null;
+					break;
+				} else if (destinationIndex == -1) {
+					error = add ? "The destination is not in the graph." : null;
+					break;
+				}
+				long key = EdgeBuffer.key(sourceIndex, destinationIndex);
+				boolean exists = present.contains(key) || (!absent.contains(key)
+						&& links.hasEdge(sourceIndex, destinationIndex));
+				if (add && exists) {
+					error = "That link already exists.";
+				} else if (add) {
+					present.add(key);
+					absent.remove(key);
+				} else if (exists) {
+					absent.add(key);
+					present.remove(key);
+				}
+			}
+			}
+			if (error != null) {
+				throw new IllegalArgumentException("Mutation " + (i + 1) + ": " + error);
+			}
+		}
+		links.checkBudget(nextIndex, links.edgeCount() + present.size());
+
+		// Pages, in order, so they receive the ids simulated above. Their links
+		// are dealt with below.
+		for (int i = 0; i < batch.size(); i++) {
+			if (batch.kinds.get(i) == Batch.ADD_PAGE) {
+				insertPage(batch.firsts.get(i), batch.keywordLists.get(i));
+			} else if (batch.kinds.get(i) == Batch.REMOVE_PAGE && batch.firsts.get(i) != null) {
+				int index = urls.find(batch.firsts.get(i));
+				if (index != -1) {
+					deletePage(index);
+				}
+			}
+		}
+		// Links, all at once. Links touching a removed page are dropped.
+		LongHashSet adds = new LongHashSet();
+		LongHashSet removes = new LongHashSet();
+		for (long key : present.toSortedArray()) {
+			if (!removedIds.contains(EdgeBuffer.source(key)) && !removedIds.contains(EdgeBuffer.destination(key))
+					&& !links.hasEdge(EdgeBuffer.source(key), EdgeBuffer.destination(key))) {
+				adds.add(key);
+			}
+		}
+		for (long key : absent.toSortedArray()) {
+			if (links.hasEdge(EdgeBuffer.source(key), EdgeBuffer.destination(key))) {
+				removes.add(key);
+			}
+		}
+		for (long index : removedIds.toSortedArray()) {
+			int id = (int) index;
+			for (int destination : links.outNeighbors(id)) {
+				removes.add(EdgeBuffer.key(id, destination));
+			}
+			for (int source : links.inNeighbors(id)) {
+				removes.add(EdgeBuffer.key(source, id));
+			}
+		}
+		links.apply(adds.toSortedArray(), removes.toSortedArray());
+		updatePageRanks();
+	}
+
+	/**
+	 * @return The index a URL would have partway through a batch, or -1
 	 */
-	public void printSearchResults(String keyword) {
-		sortPages(new RankComparator());
-		ListIterator<WebPage> list = pages.listIterator();
-		int i = 1;
-		boolean hasResults = false;
-		String table = "";
-		String header = String.format("%-6s | %-10s | %-25s", "Rank", "PageRank", "URL");
-		table += header;
-		table += "\n===========================================================";
-		while (list.hasNext()) {
-			WebPage webPage = list.next();
-			if (webPage.getKeywords().contains(keyword)) {
-				table += String.format("\n%-6s | %-10s | %-25s", i, webPage.getRank(), webPage.getUrl());
-				i += 1;
-				hasResults = true;
-			}
-		}
-		if (!hasResults) {
-			System.out.println("\nNo search results found for the keyword " + keyword + ".");
-		} else {
-			System.out.println(table);
+	private int find(String url, HashMap<String, Integer> addedUrls, HashSet<String> removedUrls) {
+		Integer added = addedUrls.get(url);
+		if (added != null) {
+			return added;
 		}
+		return removedUrls.contains(url) ? -1 : urls.find(url);
 	}
 
 }
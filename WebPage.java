@@ -1,31 +1,46 @@
 package searchEngine;
 
 import java.util.LinkedList;
-import java.util.ListIterator;
 
 /**
  * <code>WebPage</code> class represents a hyperlinked document on the web.
  *
+ * A page keeps its keywords as term ids of a <code>KeywordDictionary</code>,
+ * packed into a byte array, and turns them back into Strings only when asked.
+ *
+ * The pages of a graph are held by the graph's <code>PageStore</code>, and a
+ * WebPage of a graph is only a view of one page there, which reads the
+ * store's arrays and cannot be changed. Such views share the graph's
+ * dictionary, so each distinct keyword is stored once however many pages
+ * have it.
+ *
  * @author Sayan Sivakumaran e-mail: sayan.sivakumaran@stonybrook.edu Stony
  *         Brook ID: 110261379
  **/
 public class WebPage {
-	private String url;
+	// The store this is a view of, or null if the page is not in a graph.
+	private PageStore store;
 	private int index;
-	private int rank;
-	private LinkedList<String> keywords;
+	// The fields below are only used when the page is not in a graph.
+	private String url;
+	private double rank;
+	// The term ids of the keywords, in order, packed by KeywordDictionary.
+	private byte[] terms;
+	private KeywordDictionary dictionary;
 
 	/**
 	 * @return The url of this instance
 	 */
 	public String getUrl() {
-		return url;
+		return store == null ? url : store.url(index);
 	}
 
 	/**
 	 * @param url The new url to set
+	 * @throws IllegalArgumentException If the page is in a graph
 	 */
-	public void setUrl(String url) {
+	public void setUrl(String url) throws IllegalArgumentException {
+		checkDetached();
 		this.url = url;
 	}
 
@@ -38,41 +53,91 @@ public class WebPage {
 
 	/**
 	 * @param index The new index to set
+	 * @throws IllegalArgumentException If the page is in a graph
 	 */
-	public void setIndex(int index) {
+	public void setIndex(int index) throws IllegalArgumentException {
+		checkDetached();
 		this.index = index;
 	}
 
 	/**
 	 * @return The rank of this instance
 	 */
-	public int getRank() {
-		return rank;
+	public double getRank() {
+		return store == null ? rank : store.rank(index);
 	}
 
 	/**
 	 * @param rank The new rank to set
+	 * @throws IllegalArgumentException If the page is in a graph
 	 */
-	public void setRank(int rank) {
+	public void setRank(double rank) throws IllegalArgumentException {
+		checkDetached();
 		this.rank = rank;
 	}
 
 	/**
-	 * @return The keywords of this instance
+	 * @return A new list of the keywords of this instance. Changing the list does
+	 *         not change the page.
 	 */
 	public LinkedList<String> getKeywords() {
+		KeywordDictionary dictionary = dictionary();
+		LinkedList<String> keywords = new LinkedList<String>();
+		for (int term : getTerms()) {
+			keywords.add(dictionary.get(term));
+		}
 		return keywords;
 	}
 
 	/**
 	 * @param keywords The new keywords to set
+	 * @throws IllegalArgumentException If the page is in a graph, or if the
+	 *                                  dictionary cannot hold the keywords
+	 */
+	public void setKeywords(LinkedList<String> keywords) throws IllegalArgumentException {
+		checkDetached();
+		int[] ids = new int[keywords.size()];
+		int count = 0;
+		try {
+			for (String keyword : keywords) {
+				ids[count++] = dictionary.intern(keyword);
+			}
+		} catch (FullGraphException e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+		this.terms = KeywordDictionary.pack(ids, 0, count);
+	}
+
+	/**
+	 * @return The term ids of the keywords of this instance, in order
+	 */
+	int[] getTerms() {
+		return store == null ? KeywordDictionary.unpack(terms) : store.terms(index);
+	}
+
+	/**
+	 * @return The number of keywords of this instance
+	 */
+	int keywordCount() {
+		return store == null ? KeywordDictionary.count(terms) : store.keywordCount(index);
+	}
+
+	private KeywordDictionary dictionary() {
+		return store == null ? dictionary : store.dictionary();
+	}
+
+	/**
+	 * @throws IllegalArgumentException If the page is a view of a graph's page,
+	 *                                  which only the graph may change
 	 */
-	public void setKeywords(LinkedList<String> keywords) {
-		this.keywords = keywords;
+	private void checkDetached() throws IllegalArgumentException {
+		if (store != null) {
+			throw new IllegalArgumentException("A page in a graph cannot be changed directly.");
+		}
 	}
 
 	/**
-	 * Returns an instance of WebPage
+	 * Returns an instance of WebPage with a keyword dictionary of its own
 	 * 
 	 * @param url      The url of the page
 	 * @param index    The index of the page in WebGraph's list
@@ -81,22 +146,34 @@ public class WebPage {
 	public WebPage(String url, LinkedList<String> keywords, int index) {
 		this.url = url;
 		this.index = index;
-		this.keywords = keywords;
+		this.dictionary = new KeywordDictionary();
+		setKeywords(keywords);
+	}
+
+	/**
+	 * Returns an instance of WebPage that is a view of a page of a graph
+	 * 
+	 * @param store The store of the graph
+	 * @param index The id of the page in the store
+	 */
+	WebPage(PageStore store, int index) {
+		this.store = store;
+		this.index = index;
 	}
 
 	/**
 	 * @return A string list of keywords
 	 */
 	public String keywordsToString() {
-		String keywordList = "";
-		ListIterator<String> list = keywords.listIterator();
-		while (list.hasNext()) {
-			if (!keywordList.equals("")) {
-				keywordList += ", ";
+		KeywordDictionary dictionary = dictionary();
+		StringBuilder keywordList = new StringBuilder();
+		for (int term : getTerms()) {
+			if (keywordList.length() > 0) {
+				keywordList.append(", ");
 			}
-			keywordList += list.next();
+			keywordList.append(dictionary.get(term));
 		}
-		return keywordList;
+		return keywordList.toString();
 	}
 
 	/**
@@ -104,14 +181,16 @@ public class WebPage {
 	 */
 	@Override
 	public String toString() {
-		return String.format("%-6s | %-25s | %-10s | %-20s | %-30s", index, url, rank, "---", keywordsToString());
+		return String.format("%-6s | %-25s | %-10.4f | %-20s | %-30s", index, getUrl(), getRank(), "---",
+				keywordsToString());
 	}
 
 	/**
 	 * @return a string of data members in tabular form
 	 */
 	public String toString(String links) {
-		return String.format("%-6s | %-25s | %-10s | %-20s | %-30s", index, url, rank, links, keywordsToString());
+		return String.format("%-6s | %-25s | %-10.4f | %-20s | %-30s", index, getUrl(), getRank(), links,
+				keywordsToString());
 	}
 
 }